@@ -0,0 +1,206 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.benchmarks;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tigris.gef.base.Diagram;
+import org.tigris.gef.base.Editor;
+import org.tigris.gef.base.LayerPerspective;
+import org.tigris.gef.graph.presentation.DefaultGraphModel;
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigEdge;
+import org.tigris.gef.presentation.FigEdgePoly;
+import org.tigris.gef.presentation.FigNode;
+import org.tigris.gef.presentation.FigRect;
+import org.tigris.gef.presentation.FigText;
+
+/**
+ * Builds the diagrams the benchmarks run against. Half of the Figs in the
+ * layer are nodes laid out on a grid, each a rectangle with a text label, the
+ * other half are edges. Most edges join a node to its left hand neighbour but
+ * every tenth joins the node to the first node, so that node is a hub with
+ * many edges. All of the nodes lie within a frame, the first Fig in the
+ * layer. Every node and edge is owned by an Element so that the diagram can be
+ * saved as PGML and read back.
+ */
+public class DiagramFixture {
+
+    /** The distance between the top left corners of neighbouring nodes. */
+    public static final int SPACING = 80;
+
+    public static final int NODE_WIDTH = 60;
+
+    public static final int NODE_HEIGHT = 40;
+
+    private final Editor editor;
+
+    private final LayerPerspective layer;
+
+    private final List<FigNode> nodes = new ArrayList<FigNode>();
+
+    private final List<FigEdge> edges = new ArrayList<FigEdge>();
+
+    private final List<FigText> texts = new ArrayList<FigText>();
+
+    private final Map<String, Element> elements = new HashMap<String, Element>();
+
+    private final int columns;
+
+    private final int rows;
+
+    /** A node that reports the frame it lies in as its enclosing Fig. */
+    public static class Node extends FigNode {
+        private Fig encloser;
+
+        public Node() {
+        }
+
+        public Node(Object owner, Collection figs, Fig encloser) {
+            super(owner, figs);
+            this.encloser = encloser;
+        }
+
+        public Fig getEnclosingFig() {
+            return encloser;
+        }
+    }
+
+    /** The model element owning a node or edge. */
+    public static class Element {
+        private final String id;
+
+        public Element(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Build a diagram.
+     * 
+     * @param figCount
+     *                the number of Figs in the layer, nodes and edges
+     */
+    public DiagramFixture(int figCount) {
+        DefaultGraphModel graphModel = new DefaultGraphModel();
+        layer = new LayerPerspective("benchmark", graphModel);
+        editor = new Editor(graphModel, null, layer);
+        // measure the diagram, not the grid underneath it
+        editor.setGridHidden(true);
+
+        int nodeCount = Math.max(2, figCount / 2);
+        int edgeCount = figCount - nodeCount;
+        columns = (int) Math.ceil(Math.sqrt(nodeCount));
+        rows = (nodeCount + columns - 1) / columns;
+        Fig frame = new FigRect(-10, -10, columns * SPACING, rows * SPACING);
+        layer.add(frame);
+        for (int i = 0; i < nodeCount; ++i) {
+            int x = (i % columns) * SPACING;
+            int y = (i / columns) * SPACING;
+            FigRect body = new FigRect(x, y, NODE_WIDTH, NODE_HEIGHT,
+                    Color.black, Color.white);
+            FigText label = new FigText(x + 2, y + 2, NODE_WIDTH - 4, 20);
+            label.setText("Node " + i);
+            FigNode node = new Node(createElement("node" + i), Arrays
+                    .asList(new Fig[] {body, label}), frame);
+            layer.add(node);
+            nodes.add(node);
+            texts.add(label);
+        }
+        for (int i = 0; i < edgeCount; ++i) {
+            int source = i % (nodeCount - 1) + 1;
+            int dest = (i % 10 == 0) ? 0 : source - 1;
+            FigEdge edge = connect(nodes.get(source), nodes.get(dest));
+            edge.setOwner(createElement("edge" + i));
+            layer.add(edge);
+            edges.add(edge);
+        }
+    }
+
+    private Element createElement(String id) {
+        Element element = new Element(id);
+        elements.put(id, element);
+        return element;
+    }
+
+    private static FigEdge connect(FigNode source, FigNode dest) {
+        FigEdgePoly edge = new FigEdgePoly();
+        edge.setSourcePortFig((Fig) source.getFigs().get(0));
+        edge.setSourceFigNode(source);
+        edge.setDestPortFig((Fig) dest.getFigs().get(0));
+        edge.setDestFigNode(dest);
+        edge.computeRoute();
+        return edge;
+    }
+
+    public Editor getEditor() {
+        return editor;
+    }
+
+    public LayerPerspective getLayer() {
+        return layer;
+    }
+
+    public Diagram createDiagram() {
+        return new Diagram("benchmark", layer.getGraphModel(), layer);
+    }
+
+    public List<FigNode> getNodes() {
+        return nodes;
+    }
+
+    public List<FigEdge> getEdges() {
+        return edges;
+    }
+
+    public List<FigText> getTexts() {
+        return texts;
+    }
+
+    /** The owners of the nodes and edges keyed by their id. */
+    public Map<String, Element> getElements() {
+        return elements;
+    }
+
+    /** The node that every tenth edge is attached to. */
+    public FigNode getHub() {
+        return nodes.get(0);
+    }
+
+    /** The area covered by all of the nodes. */
+    public Rectangle getExtent() {
+        return new Rectangle(0, 0, columns * SPACING, rows * SPACING);
+    }
+}
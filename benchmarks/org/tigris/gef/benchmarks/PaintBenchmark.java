@@ -0,0 +1,129 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tigris.gef.base.LayerPerspective;
+import org.tigris.gef.presentation.CachingFigPainter;
+
+/**
+ * Measures LayerDiagram.paintContents onto an offscreen image. The viewport
+ * case paints the part of the diagram an editor window would show, the whole
+ * diagram case scales everything down to fit, as an overview or an export
+ * would. The cached case paints the viewport through a CachingFigPainter
+ * that has already drawn every Fig in it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PaintBenchmark {
+
+    private static final int WIDTH = 1024;
+
+    private static final int HEIGHT = 768;
+
+    @Param({"1000", "10000", "100000"})
+    public int figCount;
+
+    private LayerPerspective layer;
+
+    private BufferedImage image;
+
+    private double scale;
+
+    private CachingFigPainter painter;
+
+    @Setup
+    public void setUp() {
+        DiagramFixture fixture = new DiagramFixture(figCount);
+        layer = fixture.getLayer();
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Rectangle extent = fixture.getExtent();
+        scale = Math.min((double) WIDTH / extent.width, (double) HEIGHT
+                / extent.height);
+        painter = new CachingFigPainter();
+        paintViewportCached();
+    }
+
+    @Benchmark
+    public BufferedImage paintViewport() {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.white);
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            g.setClip(0, 0, WIDTH, HEIGHT);
+            layer.paintContents(g);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage paintViewportCached() {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.white);
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            g.setClip(0, 0, WIDTH, HEIGHT);
+            layer.paintContents(g, painter);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage paintWholeDiagram() {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.white);
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            g.scale(scale, scale);
+            layer.paintContents(g);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+}
@@ -0,0 +1,112 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tigris.gef.base.Diagram;
+import org.tigris.gef.ocl.OCLExpander;
+import org.tigris.gef.ocl.TemplateReader;
+import org.tigris.gef.persistence.pgml.PGMLStackParser;
+import org.tigris.gef.persistence.pgml.PgmlWriter;
+
+/**
+ * Measures saving and loading PGML. The two saves are the paths
+ * SavePGMLAction takes, expanding the PGML.tee template or streaming with
+ * PgmlWriter, without the file dialog. The load reads back what the
+ * streaming save wrote using PGMLStackParser.readDiagram.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PgmlBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int figCount;
+
+    private Diagram diagram;
+
+    private OCLExpander expander;
+
+    private Map<String, ?> elements;
+
+    private byte[] pgml;
+
+    @Setup
+    public void setUp() throws Exception {
+        DiagramFixture fixture = new DiagramFixture(figCount);
+        diagram = fixture.createDiagram();
+        elements = fixture.getElements();
+        expander = new OCLExpander(TemplateReader.getInstance().read(
+                "/org/tigris/gef/xml/dtd/PGML.tee"));
+        pgml = saveStreaming().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public String saveTemplate() throws Exception {
+        StringWriter writer = new StringWriter();
+        diagram.preSave();
+        try {
+            expander.expand(writer, diagram);
+        } finally {
+            diagram.postSave();
+        }
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String saveStreaming() throws Exception {
+        StringWriter writer = new StringWriter();
+        diagram.preSave();
+        try {
+            new PgmlWriter(writer).write(diagram);
+        } finally {
+            diagram.postSave();
+        }
+        return writer.toString();
+    }
+
+    @Benchmark
+    public Diagram load() throws Exception {
+        PGMLStackParser parser = new PGMLStackParser(elements);
+        return parser.readDiagram(new ByteArrayInputStream(pgml), true);
+    }
+}
@@ -0,0 +1,138 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.benchmarks;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tigris.gef.base.EdgeRouter;
+import org.tigris.gef.base.LayerDiagram;
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigNode;
+import org.tigris.gef.presentation.FigRect;
+
+/**
+ * Measures routing 2000 rectilinear edges around 1000 nodes scattered over
+ * a 3000 by 3000 diagram. Nearby edges join nodes at most 300 pixels apart,
+ * as most edges of a diagram do, the others join any two nodes. The target
+ * is well under a second for the nearby edges.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RoutingBenchmark {
+
+    private static final int NODES = 1000;
+
+    private static final int EDGES = 2000;
+
+    private static final int SIZE = 3000;
+
+    /** The edge leaves the right side of its source node. */
+    private static final int RIGHT = -2;
+
+    /** The edge enters the left side of its destination node. */
+    private static final int LEFT = 2;
+
+    @Param({"true", "false"})
+    public boolean nearby;
+
+    private EdgeRouter router;
+
+    private Point[] starts;
+
+    private Point[] ends;
+
+    @Setup
+    public void setUp() {
+        LayerDiagram layer = new LayerDiagram();
+        Random random = new Random(42);
+        List<FigNode> nodes = new ArrayList<FigNode>();
+        List<Rectangle> taken = new ArrayList<Rectangle>();
+        while (nodes.size() < NODES) {
+            Rectangle r = new Rectangle(random.nextInt(SIZE), random
+                    .nextInt(SIZE), 40 + random.nextInt(60),
+                    30 + random.nextInt(30));
+            Rectangle around = new Rectangle(r);
+            around.grow(20, 20);
+            boolean free = true;
+            for (Rectangle t : taken) {
+                free &= !t.intersects(around);
+            }
+            if (free) {
+                taken.add(r);
+                FigNode node = new FigNode(null, Arrays
+                        .asList(new Fig[] {new FigRect(r.x, r.y, r.width,
+                                r.height)}));
+                layer.add(node);
+                nodes.add(node);
+            }
+        }
+        router = layer.getEdgeRouter();
+        starts = new Point[EDGES];
+        ends = new Point[EDGES];
+        int count = 0;
+        while (count < EDGES) {
+            FigNode from = nodes.get(random.nextInt(NODES));
+            FigNode to = nodes.get(random.nextInt(NODES));
+            if (from == to || (nearby
+                    && from.getCenter().distance(to.getCenter()) > 300)) {
+                continue;
+            }
+            Rectangle fr = from.routingRect();
+            Rectangle tr = to.routingRect();
+            starts[count] = new Point(fr.x + fr.width, fr.y + fr.height / 2);
+            ends[count++] = new Point(tr.x, tr.y + tr.height / 2);
+        }
+    }
+
+    @Benchmark
+    public int route() {
+        int points = 0;
+        for (int i = 0; i < EDGES; ++i) {
+            Point[] route = router.route(starts[i], RIGHT, ends[i], LEFT);
+            points += route == null ? 0 : route.length;
+        }
+        return points;
+    }
+}
@@ -33,7 +33,6 @@ import java.awt.*;
 import java.net.*;
 
 import org.tigris.gef.graph.presentation.*;
-import org.tigris.gef.persistence.svg.SvgParser;
 import org.tigris.gef.util.Util;
 
 /**
@@ -86,7 +85,8 @@ public class CmdOpenSVG extends Cmd implements FilenameFilter {
             try {
                 Globals.showStatus("Reading " + path + filename + "...");
                 URL url = Util.fileToURL(new File(path + filename));
-                Diagram diag = SvgParser.SINGLETON.readDiagram(url);
+                Diagram diag = EditorContext.getCurrent().getSvgParser()
+                        .readDiagram(url);
                 Editor ed = new Editor(diag);
                 Globals.showStatus("Read " + path + filename);
                 JGraphFrame jgf = new JGraphFrame(path + filename, ed);
@@ -105,7 +105,12 @@ public class CmdSavePGML extends Cmd implements FilenameFilter {
                 FileWriter fw = new FileWriter(path + filename);
                 System.out.println("Cmd save in PGML...");
 
-                _expander.expand(fw, d);
+                d.preSave();
+                try {
+                    _expander.expand(fw, d);
+                } finally {
+                    d.postSave();
+                }
                 System.out.println("save done");
                 Globals.showStatus("Wrote " + path + filename);
                 fw.close();
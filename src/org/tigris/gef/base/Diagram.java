@@ -40,7 +40,7 @@ import java.util.Vector;
 
 import org.tigris.gef.graph.GraphController;
 import org.tigris.gef.graph.GraphEvent;
-import org.tigris.gef.graph.GraphListener;
+import org.tigris.gef.graph.BulkGraphListener;
 import org.tigris.gef.graph.GraphModel;
 import org.tigris.gef.graph.presentation.DefaultGraphModel;
 import org.tigris.gef.presentation.Fig;
@@ -54,7 +54,7 @@ import org.tigris.gef.ui.ToolBar;
  * GraphModel stores the connected graph representation, without any graphics.
  * The Layer stores all the Figs.
  */
-public class Diagram implements Serializable, GraphListener {
+public class Diagram implements Serializable, BulkGraphListener {
 
     private static final long serialVersionUID = 4847606736320428403L;
 
@@ -383,6 +383,16 @@ public class Diagram implements Serializable, GraphListener {
         }
     }
 
+    /** Tell listeners once about all the nodes of a bulk update. */
+    public void nodesAdded(GraphEvent e) {
+        nodeAdded(e);
+    }
+
+    /** Tell listeners once about all the edges of a bulk update. */
+    public void edgesAdded(GraphEvent e) {
+        edgeAdded(e);
+    }
+
     public void nodeRemoved(GraphEvent e) {
 
         try {
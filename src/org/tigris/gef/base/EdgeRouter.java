@@ -0,0 +1,81 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Point;
+
+import org.tigris.gef.presentation.Fig;
+
+/**
+ * Finds routes for rectilinear edges around the other Figs of a LayerDiagram.
+ * A router keeps whatever it needs to know about the Figs it routes around,
+ * so the layer tells it about every Fig that is added, removed or moved, in
+ * the same way as it tells its SpatialIndex.
+ * 
+ * @see LayerDiagram#setEdgeRouter(EdgeRouter)
+ * @see OrthogonalEdgeRouter
+ */
+public interface EdgeRouter {
+
+    /**
+     * A Fig has been added to the layer.
+     * 
+     * @param f the Fig added
+     */
+    void add(Fig f);
+
+    /**
+     * A Fig has been removed from the layer. Figs the router does not know
+     * about are ignored.
+     * 
+     * @param f the Fig removed
+     */
+    void remove(Fig f);
+
+    /**
+     * The bounds of a Fig in the layer may have changed. Figs the router does
+     * not know about are ignored.
+     * 
+     * @param f the Fig that has changed
+     */
+    void update(Fig f);
+
+    /** All Figs have been removed from the layer. */
+    void clear();
+
+    /**
+     * Find a rectilinear route between two points. Each point lies just
+     * outside the node it leaves from or arrives at, on the side given by its
+     * sector as replied by FigNode.getPortSector: -1 is the top, 1 the bottom,
+     * 2 the left and -2 the right.
+     * 
+     * @param start the point to leave from
+     * @param startSector the side of its node that start lies on
+     * @param end the point to arrive at
+     * @param endSector the side of its node that end lies on
+     * @return the start point, each point where the route bends and the end
+     *         point, or null if no route was found
+     */
+    Point[] route(Point start, int startSector, Point end, int endSector);
+}
@@ -35,7 +35,9 @@ import org.tigris.gef.event.ModeChangeListener;
 import org.tigris.gef.graph.GraphEdgeRenderer;
 import org.tigris.gef.graph.GraphModel;
 import org.tigris.gef.graph.GraphNodeRenderer;
+import org.tigris.gef.presentation.CachingFigPainter;
 import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigPainter;
 import org.tigris.gef.presentation.FigText;
 import org.tigris.gef.presentation.FigTextEditor;
 import org.tigris.gef.presentation.TextEditor;
@@ -75,8 +77,9 @@ import java.util.List;
  * <p>
  * 
  * When Figs change visible state (e.g. color, size, or position) they tell
- * their Layer that they are damageAll and need to be repainted. The Layer tells
- * all Editors that are editing the Fig.
+ * their Layer that they are damaged and need to be repainted. The Layer tells
+ * all Editors that are editing the Fig, and each Editor's RedrawManager
+ * repaints just the damaged areas.
  * 
  * A major goal of GEF is to make it easy to extend the framework for
  * application to a specific domain. It is very important that new functionality
@@ -110,6 +113,12 @@ public class Editor implements Serializable, MouseListener,
      */
     public static final int GRIP_SIZE = 8;
 
+    /**
+     * The margin added around the bounds of a damaged Fig. Line ends, arrow
+     * heads and selection handles are drawn a little outside the bounds.
+     */
+    public static final int DAMAGE_MARGIN = 24;
+
     // //////////////////////////////////////////////////////////////
     // instance variables
 
@@ -184,6 +193,12 @@ public class Editor implements Serializable, MouseListener,
 
     private RenderingHints _renderingHints = new RenderingHints(null);
 
+    /**
+     * The FigPainter used to paint the Figs of the layers, or null to have
+     * the Figs paint themselves.
+     */
+    private transient FigPainter _figPainter = null;
+
     /** The context menu for this editor */
     private transient JPopupMenu _popup = null;
 
@@ -191,6 +206,9 @@ public class Editor implements Serializable, MouseListener,
 
     private FigTextEditor _activeTextEditor = null;
 
+    /** Collects damaged areas until they are repainted. */
+    private transient RedrawManager _redrawer;
+
     // //////////////////////////////////////////////////////////////
     // constructors and related functions
 
@@ -539,7 +557,23 @@ public class Editor implements Serializable, MouseListener,
      * already be scaled accordingly.
      */
     public void damaged(int x, int y, int width, int height) {
-        getJComponent().repaint(0, x, y, width, height);
+        if (jComponent == null) {
+            return;
+        }
+        getRedrawManager().add(x, y, width, height);
+    }
+
+    /**
+     * Record a damaged region given in diagram co-ordinates. The region is
+     * grown by DAMAGE_MARGIN and scaled before being recorded.
+     * 
+     * @param r the damaged region, this is not modified
+     */
+    public void damagedRegion(Rectangle r) {
+        Rectangle bounds = new Rectangle(r);
+        bounds.grow(DAMAGE_MARGIN, DAMAGE_MARGIN);
+        scaleRect(bounds);
+        damaged(bounds);
     }
 
     /**
@@ -554,12 +588,30 @@ public class Editor implements Serializable, MouseListener,
         damaged(bounds);
     }
 
+    /**
+     * Record the area covered by the given Fig as damaged. This will take the
+     * current scale into account.
+     * 
+     * @param f the Fig to redraw
+     */
     public void damaged(Fig f) {
-        // - if (_redrawer == null) _redrawer = new RedrawManager(this);
-        // the line above should not be needed, but without it I get
-        // NullPointerExceptions...
-        // - if (f != null) _redrawer.add(f);
-        ((JComponent) getJComponent()).repaint();
+        if (f != null) {
+            if (_figPainter instanceof CachingFigPainter) {
+                ((CachingFigPainter) _figPainter).invalidate(f);
+            }
+            damagedRegion(f.getBounds());
+        }
+    }
+
+    /**
+     * Reply the RedrawManager that collects the damaged areas of this Editor
+     * until they are repainted.
+     */
+    public RedrawManager getRedrawManager() {
+        if (_redrawer == null) {
+            _redrawer = new RedrawManager(this);
+        }
+        return _redrawer;
     }
 
     public void scaleRect(Rectangle bounds) {
@@ -601,7 +653,7 @@ public class Editor implements Serializable, MouseListener,
             g2.setRenderingHints(_renderingHints);
             g2.scale(_scale, _scale);
         }
-        getLayerManager().paint(g);
+        getLayerManager().paint(g, _figPainter);
         // getLayerManager().getActiveLayer().paint(g);
         if (_canSelectElements) {
             _selectionManager.paint(g);
@@ -609,6 +661,21 @@ public class Editor implements Serializable, MouseListener,
         }
     }
 
+    /**
+     * Set the FigPainter used to paint the Figs of the layers. A
+     * CachingFigPainter is told of every Fig this Editor is told is damaged.
+     * 
+     * @param painter the painter, or null to have the Figs paint themselves
+     */
+    public void setFigPainter(FigPainter painter) {
+        _figPainter = painter;
+        damageAll();
+    }
+
+    public FigPainter getFigPainter() {
+        return _figPainter;
+    }
+
     public void print(Graphics g) {
         getLayerManager().paint(g);
     }
@@ -979,6 +1046,16 @@ public class Editor implements Serializable, MouseListener,
         remove(f);
     }
 
+    /**
+     * The given Fig has left a layer this Editor is showing. The bitmap the
+     * FigPainter keeps for it, if any, is thrown away.
+     */
+    void figLeft(Fig f) {
+        if (_figPainter instanceof CachingFigPainter) {
+            ((CachingFigPainter) _figPainter).invalidate(f);
+        }
+    }
+
     public void setShouldPaint(boolean shouldPaint) {
         _shouldPaint = shouldPaint;
     }
@@ -0,0 +1,311 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+
+package org.tigris.gef.base;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tigris.gef.persistence.svg.SvgParser;
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.undo.UndoManager;
+
+/**
+ * The services that editing and rendering a diagram share: the current
+ * Editor, the UndoManager, the dispatch of property changes and the SVG
+ * parser. The static accessors in Globals, UndoManager.getInstance() and
+ * friends delegate to the context of the calling thread, which is the
+ * default context unless another one has been made current on that thread.
+ * <p>
+ * 
+ * A server that renders diagrams concurrently gives each job a context of
+ * its own:
+ * 
+ * <pre>
+ * EditorContext previous = EditorContext.setCurrent(new EditorContext());
+ * try {
+ *     // load and render a diagram
+ * } finally {
+ *     EditorContext.setCurrent(previous);
+ * }
+ * </pre>
+ * 
+ * The diagrams must then only be used on the thread the context is current
+ * on, while it is current.
+ */
+public class EditorContext {
+
+    private static final Log LOG = LogFactory.getLog(EditorContext.class);
+
+    private static final EditorContext DEFAULT = new EditorContext();
+
+    private static final ThreadLocal<EditorContext> CURRENT =
+        new ThreadLocal<EditorContext>();
+
+    /** The Editor that most recently contained the mouse. */
+    private Editor curEditor;
+
+    private UndoManager undoManager = new UndoManager();
+
+    /**
+     * A dictionary of PropertyChangeListeners for sources other than Figs,
+     * which keep their own. This Hashtable has the sources as keys and arrays
+     * of up to Globals.MAX_LISTENERS listeners as values.
+     */
+    private Hashtable<Object, PropertyChangeListener[]> pcListeners =
+        new Hashtable<Object, PropertyChangeListener[]>();
+
+    private PropertyChangeListener universalListener;
+
+    private SvgParser svgParser;
+
+    /** The number of calls to suspendPropChanges not yet resumed. */
+    private int suspendCount;
+
+    /**
+     * The property changes held back while suspended, by source and property
+     * name, as pairs of the first old and the last new value.
+     */
+    private Map<Object, Map<String, Object[]>> suspendedChanges =
+        new LinkedHashMap<Object, Map<String, Object[]>>();
+
+    /** Reply the context used by threads that have not been given one. */
+    public static EditorContext getDefault() {
+        return DEFAULT;
+    }
+
+    /** Reply the context of the calling thread. */
+    public static EditorContext getCurrent() {
+        EditorContext context = CURRENT.get();
+        return context == null ? DEFAULT : context;
+    }
+
+    /**
+     * Make the given context the one of the calling thread.
+     * 
+     * @param context
+     *                the context, or null for the default context
+     * @return the context the thread had before
+     */
+    public static EditorContext setCurrent(EditorContext context) {
+        EditorContext previous = getCurrent();
+        if (context == null || context == DEFAULT) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+        return previous;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // accessors
+
+    /** Reply the Editor that most recently contained the mouse. */
+    public Editor getEditor() {
+        return curEditor;
+    }
+
+    /** Set the current Editor. */
+    public void setEditor(Editor editor) {
+        curEditor = editor;
+    }
+
+    public UndoManager getUndoManager() {
+        return undoManager;
+    }
+
+    public void setUndoManager(UndoManager manager) {
+        if (manager == null) {
+            throw new IllegalArgumentException("An UndoManager is required");
+        }
+        undoManager = manager;
+    }
+
+    /** Reply the parser that reads SVG diagrams in this context. */
+    public synchronized SvgParser getSvgParser() {
+        if (svgParser == null) {
+            svgParser = new SvgParser();
+        }
+        return svgParser;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // property changes
+
+    /**
+     * Add a listener to a source. Now the listener will get notifications of
+     * all property change events from that source.
+     */
+    public void addPropertyChangeListener(Object src,
+            PropertyChangeListener l) {
+        if (src instanceof Fig) {
+            ((Fig) src).addPropertyChangeListener(l);
+            return;
+        }
+        PropertyChangeListener listeners[] = pcListeners.get(src);
+        if (listeners == null) {
+            listeners = new PropertyChangeListener[Globals.MAX_LISTENERS];
+            pcListeners.put(src, listeners);
+        }
+        // debugging warning
+        if (LOG.isDebugEnabled() && pcListeners.size() > 100) {
+            LOG.debug("pcListeners size = " + pcListeners.size());
+        }
+        for (int i = 0; i < listeners.length; ++i)
+            if (listeners[i] == null) {
+                listeners[i] = l;
+                return;
+            }
+        if (LOG.isDebugEnabled())
+            LOG.debug("ran out of listeners!");
+    }
+
+    public void removePropertyChangeListener(Object s,
+            PropertyChangeListener listener) {
+        if (s instanceof Fig) {
+            ((Fig) s).removePropertyChangeListener(listener);
+            return;
+        }
+        PropertyChangeListener listeners[] = pcListeners.get(s);
+        boolean found = false;
+        if (listeners == null)
+            return;
+        for (int i = 0; i < listeners.length; ++i) {
+            if (listeners[i] == listener) {
+                listeners[i] = null;
+                found = true;
+            }
+        }
+        if (LOG.isDebugEnabled() && !found) {
+            LOG.debug("listener not found!");
+        }
+        for (int i = 0; i < listeners.length; ++i)
+            if (listeners[i] != null)
+                return;
+        // s has no listeners, keep Hashtable size reasonable
+        pcListeners.remove(s);
+    }
+
+    /** Reply the listener told of the property changes of every source. */
+    public PropertyChangeListener getUniversalPropertyChangeListener() {
+        return universalListener;
+    }
+
+    public void setUniversalPropertyChangeListener(PropertyChangeListener pcl) {
+        universalListener = pcl;
+    }
+
+    /**
+     * Hold back property changes until resumePropChanges is called as often
+     * as this. Changes to the same property of the same source are coalesced
+     * into one, from the first old value to the last new value, so that a
+     * bulk edit such as dragging many Figs tells the listeners once of each
+     * change.
+     */
+    public void suspendPropChanges() {
+        ++suspendCount;
+    }
+
+    /**
+     * End a suspendPropChanges. When the last one ends, the changes held back
+     * are sent in the order they were first made.
+     */
+    public void resumePropChanges() {
+        if (suspendCount == 0) {
+            throw new IllegalStateException(
+                    "Property changes are not suspended");
+        }
+        if (--suspendCount > 0 || suspendedChanges.isEmpty()) {
+            return;
+        }
+        Map<Object, Map<String, Object[]>> changes = suspendedChanges;
+        suspendedChanges = new LinkedHashMap<Object, Map<String, Object[]>>();
+        for (Map.Entry<Object, Map<String, Object[]>> source : changes
+                .entrySet()) {
+            for (Map.Entry<String, Object[]> change : source.getValue()
+                    .entrySet()) {
+                Object[] values = change.getValue();
+                deliverPropChange(source.getKey(), change.getKey(),
+                        values[0], values[1]);
+            }
+        }
+    }
+
+    public boolean isPropChangesSuspended() {
+        return suspendCount > 0;
+    }
+
+    /**
+     * Send a property change event to the listeners of src, or hold it back
+     * while property changes are suspended.
+     */
+    public void firePropChange(Object src, String propName, Object oldValue,
+            Object newValue) {
+        if (suspendCount > 0) {
+            Map<String, Object[]> changes = suspendedChanges.get(src);
+            if (changes == null) {
+                changes = new LinkedHashMap<String, Object[]>();
+                suspendedChanges.put(src, changes);
+            }
+            Object[] values = changes.get(propName);
+            if (values == null) {
+                changes.put(propName, new Object[] {oldValue, newValue});
+            } else {
+                values[1] = newValue;
+            }
+            return;
+        }
+        deliverPropChange(src, propName, oldValue, newValue);
+    }
+
+    private void deliverPropChange(Object src, String propName,
+            Object oldValue, Object newValue) {
+        if (src instanceof Fig) {
+            ((Fig) src).deliverPropChange(propName, oldValue, newValue);
+            return;
+        }
+        if (oldValue != null && oldValue.equals(newValue))
+            return;
+        PropertyChangeListener listeners[] = pcListeners.get(src);
+        PropertyChangeListener universal = universalListener;
+        if (listeners == null && universal == null)
+            return;
+        PropertyChangeEvent evt = new PropertyChangeEvent(src, propName,
+                oldValue, newValue);
+        if (listeners != null) {
+            // needs-more-work: should be thread safe, clone array?
+            for (int i = 0; i < listeners.length; ++i) {
+                if (listeners[i] != null)
+                    listeners[i].propertyChange(evt);
+            }
+        }
+        if (universal != null)
+            universal.propertyChange(evt);
+    }
+}
@@ -0,0 +1,519 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A GraphLayout that treats nodes as charges pushing each other apart and
+ * edges as springs pulling their ends together, after Fruchterman and
+ * Reingold. Each step moves every node along the sum of its forces, by no
+ * more than a distance that shrinks from step to step.
+ * <p>
+ * The push from all other nodes is found with a Barnes-Hut quadtree: a
+ * square of the tree far enough away acts as one charge at its centre of
+ * mass, so a step takes time in proportion to n log n rather than n squared.
+ * The tree is built once per step, then the forces on the nodes are summed
+ * by several threads, each for its own share of the nodes.
+ * <p>
+ * Nodes are treated as points kept apart by an ideal distance of the given
+ * edge length plus the mean size of the nodes. The layout starts from where
+ * the nodes are, with a small random shake from a fixed seed so that the
+ * same graph is always laid out the same way.
+ */
+public class ForceDirectedLayout implements GraphLayout {
+
+    /** The length of an edge at rest by default, not counting node sizes. */
+    public static final int DEFAULT_EDGE_LENGTH = 4 * LayerPerspective.GAP;
+
+    /** The number of steps by default. */
+    public static final int DEFAULT_ITERATIONS = 200;
+
+    /**
+     * By default a square of the quadtree acts as one charge when its side
+     * is less than this times its distance from the node.
+     */
+    public static final double DEFAULT_THETA = 0.8;
+
+    /** How strongly all nodes are pulled towards their centre of mass. */
+    private static final double GRAVITY = 0.05;
+
+    /** Squares are not split below this side, they hold several nodes. */
+    private static final double MIN_SQUARE = 0.01;
+
+    /** The number of shares of the nodes for each thread. */
+    private static final int SHARES_PER_THREAD = 4;
+
+    private int edgeLength = DEFAULT_EDGE_LENGTH;
+
+    private int iterations = DEFAULT_ITERATIONS;
+
+    private double theta = DEFAULT_THETA;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // //////////////////////////////////////////////////////////////
+    // accessors
+
+    /**
+     * Set the length of an edge at rest, not counting the size of the nodes.
+     * 
+     * @param length the length in pixels
+     * @throws IllegalArgumentException if the length is negative
+     */
+    public void setEdgeLength(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative length " + length);
+        }
+        edgeLength = length;
+    }
+
+    public int getEdgeLength() {
+        return edgeLength;
+    }
+
+    /**
+     * Set the number of steps. More steps take longer but settle the nodes
+     * better.
+     * 
+     * @param iterations the number of steps
+     * @throws IllegalArgumentException if iterations is negative
+     */
+    public void setIterations(int iterations) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException("Negative iterations "
+                    + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Set how far away a square of the quadtree must be to act as one
+     * charge, as the ratio of its side to its distance. 0 sums the force of
+     * every node exactly, higher values are faster and rougher.
+     * 
+     * @param theta the ratio
+     * @throws IllegalArgumentException if theta is negative
+     */
+    public void setTheta(double theta) {
+        if (theta < 0) {
+            throw new IllegalArgumentException("Negative theta " + theta);
+        }
+        this.theta = theta;
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    /**
+     * Set the number of threads summing forces. By default there is one for
+     * each processor.
+     * 
+     * @param threads the number of threads
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Too few threads " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // GraphLayout implementation
+
+    public Point[] layout(final LayoutGraph graph) {
+        final int n = graph.getNodeCount();
+        Point[] locations = new Point[n];
+        if (n == 0) {
+            return locations;
+        }
+        double size = 0;
+        for (int i = 0; i < n; ++i) {
+            size += (graph.getWidth(i) + graph.getHeight(i)) / 2.0;
+        }
+        final double k = edgeLength + size / n;
+
+        final double[] xs = new double[n];
+        final double[] ys = new double[n];
+        Random random = new Random(0);
+        for (int i = 0; i < n; ++i) {
+            xs[i] = graph.getX(i) + graph.getWidth(i) / 2.0
+                    + (random.nextDouble() - 0.5) * k / 2;
+            ys[i] = graph.getY(i) + graph.getHeight(i) / 2.0
+                    + (random.nextDouble() - 0.5) * k / 2;
+        }
+
+        final double[] dxs = new double[n];
+        final double[] dys = new double[n];
+        final QuadTree tree = new QuadTree(n);
+        final double[] centre = new double[2];
+        List<Callable<Object>> shares = new ArrayList<Callable<Object>>();
+        int shareCount = Math.min(n, threads * SHARES_PER_THREAD);
+        for (int s = 0; s < shareCount; ++s) {
+            final int from = (int) ((long) n * s / shareCount);
+            final int to = (int) ((long) n * (s + 1) / shareCount);
+            shares.add(new Callable<Object>() {
+                public Object call() {
+                    computeForces(graph, tree, xs, ys, centre, k, from, to,
+                            dxs, dys);
+                    return null;
+                }
+            });
+        }
+
+        ExecutorService executor = threads > 1 && n > 1 ? Executors
+                .newFixedThreadPool(threads) : null;
+        try {
+            double start = k * Math.sqrt(n);
+            for (int step = 0; step < iterations; ++step) {
+                tree.build(xs, ys);
+                centre[0] = tree.centreX[0];
+                centre[1] = tree.centreY[0];
+                if (executor == null) {
+                    computeForces(graph, tree, xs, ys, centre, k, 0, n, dxs,
+                            dys);
+                } else if (!runAll(executor, shares)) {
+                    break;
+                }
+                // cool down from the size of the whole drawing to nothing
+                double limit = start * (iterations - step) / iterations;
+                for (int i = 0; i < n; ++i) {
+                    double length = Math.sqrt(dxs[i] * dxs[i] + dys[i]
+                            * dys[i]);
+                    if (length > limit) {
+                        dxs[i] *= limit / length;
+                        dys[i] *= limit / length;
+                    }
+                    xs[i] += dxs[i];
+                    ys[i] += dys[i];
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+
+        double left = Double.MAX_VALUE;
+        double top = Double.MAX_VALUE;
+        for (int i = 0; i < n; ++i) {
+            left = Math.min(left, xs[i] - graph.getWidth(i) / 2.0);
+            top = Math.min(top, ys[i] - graph.getHeight(i) / 2.0);
+        }
+        for (int i = 0; i < n; ++i) {
+            locations[i] = new Point((int) Math.round(xs[i]
+                    - graph.getWidth(i) / 2.0 - left)
+                    + LayerPerspective.GAP, (int) Math.round(ys[i]
+                    - graph.getHeight(i) / 2.0 - top)
+                    + LayerPerspective.GAP);
+        }
+        return locations;
+    }
+
+    /**
+     * Run the shares of a step and wait for them all. Reply false if the
+     * thread was interrupted, leaving the layout where it is.
+     */
+    private static boolean runAll(ExecutorService executor,
+            List<Callable<Object>> shares) {
+        try {
+            for (Future<Object> done : executor.invokeAll(shares)) {
+                done.get();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause.toString());
+        }
+    }
+
+    /**
+     * Sum the forces on the nodes from one to just before another, into the
+     * given arrays. Reads only the positions and the tree, and writes only
+     * the forces of its own nodes, so shares may run at the same time.
+     */
+    private void computeForces(LayoutGraph graph, QuadTree tree,
+            double[] xs, double[] ys, double[] centre, double k, int from,
+            int to, double[] dxs, double[] dys) {
+        double k2 = k * k;
+        double[] force = new double[2];
+        for (int i = from; i < to; ++i) {
+            force[0] = 0;
+            force[1] = 0;
+            tree.repulse(i, xs, ys, theta * theta, k2, force);
+            attract(graph.getSuccessors(i), xs, ys, i, k, force);
+            attract(graph.getPredecessors(i), xs, ys, i, k, force);
+            // gravity keeps parts of the graph that are not connected from
+            // drifting apart
+            double gx = centre[0] - xs[i];
+            double gy = centre[1] - ys[i];
+            double distance = Math.sqrt(gx * gx + gy * gy);
+            dxs[i] = force[0] + GRAVITY * gx * distance / k;
+            dys[i] = force[1] + GRAVITY * gy * distance / k;
+        }
+    }
+
+    /**
+     * Add the pull on a node from the given neighbours to the force. Each
+     * pulls with a force of d * d / k along the edge.
+     */
+    private static void attract(int[] others, double[] xs, double[] ys,
+            int node, double k, double[] force) {
+        for (int j = 0; j < others.length; ++j) {
+            double dx = xs[others[j]] - xs[node];
+            double dy = ys[others[j]] - ys[node];
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            force[0] += dx * distance / k;
+            force[1] += dy * distance / k;
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // inner classes
+
+    /**
+     * A Barnes-Hut quadtree over the positions of the nodes, kept in arrays
+     * indexed by square. The children of a square always come after it, so
+     * the masses are summed in one pass from the last square to the first.
+     */
+    private static final class QuadTree {
+        private double[] left;
+        private double[] top;
+        private double[] side;
+        private double[] mass;
+        private double[] centreX;
+        private double[] centreY;
+
+        /** The first of the four children of each square, or -1 for leaves. */
+        private int[] children;
+
+        /** The first node in each leaf, or -1 if it is empty. */
+        private int[] first;
+
+        /** The next node in the same leaf as each node, or -1. */
+        private final int[] next;
+
+        private int count;
+
+        QuadTree(int nodeCount) {
+            next = new int[nodeCount];
+            allocate(2 * nodeCount + 1);
+        }
+
+        private void allocate(int capacity) {
+            left = grow(left, capacity);
+            top = grow(top, capacity);
+            side = grow(side, capacity);
+            mass = grow(mass, capacity);
+            centreX = grow(centreX, capacity);
+            centreY = grow(centreY, capacity);
+            int[] grownChildren = new int[capacity];
+            int[] grownFirst = new int[capacity];
+            if (children != null) {
+                System.arraycopy(children, 0, grownChildren, 0, count);
+                System.arraycopy(first, 0, grownFirst, 0, count);
+            }
+            children = grownChildren;
+            first = grownFirst;
+        }
+
+        private double[] grow(double[] values, int capacity) {
+            double[] grown = new double[capacity];
+            if (values != null) {
+                System.arraycopy(values, 0, grown, 0, count);
+            }
+            return grown;
+        }
+
+        /** Rebuild the tree over the given positions. */
+        void build(double[] xs, double[] ys) {
+            int n = next.length;
+            double minX = Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < n; ++i) {
+                minX = Math.min(minX, xs[i]);
+                minY = Math.min(minY, ys[i]);
+                maxX = Math.max(maxX, xs[i]);
+                maxY = Math.max(maxY, ys[i]);
+            }
+            count = 0;
+            newSquare(minX, minY, Math.max(maxX - minX, maxY - minY) + 1);
+            for (int i = 0; i < n; ++i) {
+                insert(i, xs, ys);
+            }
+            for (int q = count - 1; q >= 0; --q) {
+                double m = 0;
+                double sumX = 0;
+                double sumY = 0;
+                if (children[q] < 0) {
+                    for (int b = first[q]; b >= 0; b = next[b]) {
+                        ++m;
+                        sumX += xs[b];
+                        sumY += ys[b];
+                    }
+                } else {
+                    for (int c = children[q]; c < children[q] + 4; ++c) {
+                        m += mass[c];
+                        sumX += mass[c] * centreX[c];
+                        sumY += mass[c] * centreY[c];
+                    }
+                }
+                mass[q] = m;
+                if (m > 0) {
+                    centreX[q] = sumX / m;
+                    centreY[q] = sumY / m;
+                }
+            }
+        }
+
+        private int newSquare(double x, double y, double length) {
+            if (count == side.length) {
+                allocate(count * 2);
+            }
+            left[count] = x;
+            top[count] = y;
+            side[count] = length;
+            children[count] = -1;
+            first[count] = -1;
+            return count++;
+        }
+
+        private int quadrant(int q, double x, double y) {
+            double half = side[q] / 2;
+            return (x >= left[q] + half ? 1 : 0)
+                    + (y >= top[q] + half ? 2 : 0);
+        }
+
+        private void insert(int node, double[] xs, double[] ys) {
+            int q = 0;
+            while (true) {
+                if (children[q] >= 0) {
+                    q = children[q] + quadrant(q, xs[node], ys[node]);
+                } else if (first[q] < 0 || side[q] < MIN_SQUARE) {
+                    next[node] = first[q];
+                    first[q] = node;
+                    return;
+                } else {
+                    // a leaf holding one node, split it and go on
+                    double x = left[q];
+                    double y = top[q];
+                    double half = side[q] / 2;
+                    int c = newSquare(x, y, half);
+                    newSquare(x + half, y, half);
+                    newSquare(x, y + half, half);
+                    newSquare(x + half, y + half, half);
+                    children[q] = c;
+                    int other = first[q];
+                    first[q] = -1;
+                    int target = c + quadrant(q, xs[other], ys[other]);
+                    next[other] = -1;
+                    first[target] = other;
+                }
+            }
+        }
+
+        /**
+         * Add the push on a node from all the others to the force. Each
+         * pushes with a force of k * k / d, and a square far enough away
+         * pushes as its mass of nodes at its centre of mass.
+         */
+        void repulse(int node, double[] xs, double[] ys, double theta2,
+                double k2, double[] force) {
+            double x = xs[node];
+            double y = ys[node];
+            int[] stack = new int[64];
+            int depth = 0;
+            stack[depth++] = 0;
+            while (depth > 0) {
+                int q = stack[--depth];
+                if (mass[q] == 0) {
+                    continue;
+                }
+                if (children[q] < 0) {
+                    for (int b = first[q]; b >= 0; b = next[b]) {
+                        if (b == node) {
+                            continue;
+                        }
+                        double dx = x - xs[b];
+                        double dy = y - ys[b];
+                        double d2 = dx * dx + dy * dy;
+                        if (d2 == 0) {
+                            // in the same place, push apart by number
+                            dx = node < b ? -MIN_SQUARE : MIN_SQUARE;
+                            d2 = dx * dx;
+                        }
+                        force[0] += dx * k2 / d2;
+                        force[1] += dy * k2 / d2;
+                    }
+                    continue;
+                }
+                double dx = x - centreX[q];
+                double dy = y - centreY[q];
+                double d2 = dx * dx + dy * dy;
+                if (side[q] * side[q] < theta2 * d2) {
+                    force[0] += dx * k2 * mass[q] / d2;
+                    force[1] += dy * k2 * mass[q] / d2;
+                } else {
+                    if (depth + 4 > stack.length) {
+                        int[] grown = new int[stack.length * 2];
+                        System.arraycopy(stack, 0, grown, 0, depth);
+                        stack = grown;
+                    }
+                    for (int c = children[q]; c < children[q] + 4; ++c) {
+                        stack[depth++] = c;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigNode;
+
+/**
+ * Finds free places for new nodes in a region of a LayerDiagram. Nodes are
+ * put in columns from the top left of the region, each column as wide as its
+ * widest node. Once the region is full further columns go to its right.
+ * <p>
+ * The index remembers where the last node went, so each search carries on
+ * from there instead of starting again at the top left. A node in the way,
+ * found through the spatial index of the layer, is skipped in one step. The
+ * places this index gave to nodes that are later removed are remembered and
+ * filled first, smallest first, so a hole too small for a node is never
+ * looked at for it.
+ * 
+ * @see LayerPerspective#addNodeTypeRegion(Class, Rectangle)
+ */
+final class FreeSpaceIndex {
+
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final LayerDiagram layer;
+
+    private final Rectangle region;
+
+    /** The left side and width of the column being filled. */
+    private int columnX;
+    private int columnWidth;
+
+    /** The top of the next place in the column being filled. */
+    private int nextY;
+
+    /** The places given to nodes, until the nodes are removed. */
+    private final Map<Fig, Rectangle> placed = new WeakHashMap<Fig, Rectangle>();
+
+    /** The places of removed nodes, by size. */
+    private final SortedSet<Rectangle> holes = new TreeSet<Rectangle>(
+            new HoleOrder());
+
+    /** Temp var used to collect Figs from the spatial index. */
+    private final List<Fig> found = new ArrayList<Fig>();
+
+    FreeSpaceIndex(LayerDiagram layer, Rectangle region) {
+        this.layer = layer;
+        this.region = new Rectangle(region);
+        columnX = region.x;
+        nextY = region.y;
+    }
+
+    /** Move the given node to a free place and take that place. */
+    void place(Fig node) {
+        int w = node.getWidth();
+        int h = node.getHeight();
+        Rectangle smallest = new Rectangle(NONE, NONE, w, h);
+        for (Iterator<Rectangle> it = holes.tailSet(smallest).iterator(); it
+                .hasNext();) {
+            Rectangle hole = it.next();
+            if (w <= hole.width) {
+                // filled or not, the hole is used up
+                it.remove();
+                Rectangle slot = new Rectangle(hole.x, hole.y, w, h);
+                if (bottomOfNodesIn(slot, node) == NONE) {
+                    node.setLocation(slot.x, slot.y);
+                    placed.put(node, slot);
+                    return;
+                }
+            }
+        }
+
+        Rectangle slot = new Rectangle(columnX, nextY, w, h);
+        while (true) {
+            if (slot.y > region.y
+                    && slot.y + h > region.y + region.height) {
+                // this column is full, start the next one
+                columnX += Math.max(columnWidth, w) + LayerPerspective.GAP;
+                columnWidth = 0;
+                slot.setLocation(columnX, region.y);
+            }
+            int bottom = bottomOfNodesIn(slot, node);
+            if (bottom == NONE) {
+                break;
+            }
+            slot.y = bottom + LayerPerspective.GAP;
+        }
+        node.setLocation(slot.x, slot.y);
+        placed.put(node, slot);
+        columnWidth = Math.max(columnWidth, w);
+        nextY = slot.y + h + LayerPerspective.GAP;
+    }
+
+    /**
+     * A node has been removed, the place this index gave it may be filled
+     * again. Nodes placed some other way leave no hole.
+     */
+    void release(Fig node) {
+        Rectangle slot = placed.remove(node);
+        if (slot != null) {
+            holes.add(slot);
+        }
+    }
+
+    /**
+     * Reply the lowest bottom of the nodes other than the given one that
+     * intersect the given place, or NONE if the place is free.
+     */
+    private int bottomOfNodesIn(Rectangle slot, Fig node) {
+        int bottom = NONE;
+        found.clear();
+        layer.getSpatialIndex().query(slot, found);
+        for (Fig f : found) {
+            if (f != node && f instanceof FigNode && f.intersects(slot)) {
+                bottom = Math.max(bottom, f.getY() + f.getHeight());
+            }
+        }
+        found.clear();
+        return bottom;
+    }
+
+    /** Orders holes by height, then width, then position. */
+    private static class HoleOrder implements Comparator<Rectangle> {
+        public int compare(Rectangle a, Rectangle b) {
+            if (a.height != b.height) {
+                return a.height < b.height ? -1 : 1;
+            }
+            if (a.width != b.width) {
+                return a.width < b.width ? -1 : 1;
+            }
+            if (a.y != b.y) {
+                return a.y < b.y ? -1 : 1;
+            }
+            return a.x < b.x ? -1 : (a.x == b.x ? 0 : 1);
+        }
+    }
+}
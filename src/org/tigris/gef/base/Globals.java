@@ -38,12 +38,10 @@ import java.awt.Component;
 import java.awt.Frame;
 import java.awt.Image;
 import java.awt.MediaTracker;
-import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Vector;
 
@@ -396,129 +394,78 @@ public class Globals {
     // //////////////////////////////////////////////////////////////
     // Methods that keep track of the current editor
 
-    /** The Editor that most recently contained the mouse. */
-    protected static Editor _curEditor;
-
-    /** Set the current Editor. */
+    /** Set the current Editor of the current EditorContext. */
     public static void curEditor(Editor ce) {
-        _curEditor = ce;
+        EditorContext.getCurrent().setEditor(ce);
     }
 
-    /** Reply the Editor that most recently contained the mouse. */
+    /**
+     * Reply the Editor that most recently contained the mouse, in the current
+     * EditorContext.
+     */
     public static Editor curEditor() {
-        return _curEditor;
+        return EditorContext.getCurrent().getEditor();
     }
 
     // //////////////////////////////////////////////////////////////
     // a light-weight data-structure for tracking PropertyChangeListeners
 
     /**
-     * A global dictionary of PropertyChangeListeners for Figs. Most Figs will
-     * not have any listeners at any given moment, so I did not want to allocate
-     * an instance variable to hold listeners. Instead I use this global
-     * Hashtable with Figs and keys and arrays of up to 4 listeners as values.
+     * Figs keep their own PropertyChangeListeners. Those of other sources are
+     * kept by the current EditorContext, in arrays of up to MAX_LISTENERS
+     * listeners per source.
      * <p>
      * 
      * Note: It is important that all listeners eventually remove themselves by
-     * calling removePropertyChangeListener. Otherwise this table will keep
+     * calling removePropertyChangeListener. Otherwise the context will keep
      * pointers that can reduce garbage collection.
      */
 
-    protected static Hashtable _pcListeners = new Hashtable();
-    protected static PropertyChangeListener universalListener = null;
-
-    /** The most listeners a Fig can have, 4. */
+    /** The most listeners a source other than a Fig can have, 4. */
     public static int MAX_LISTENERS = 4;
 
     /**
-     * Add a listener to a Fig. Now the listener will get notifications of all
-     * property change events from that Fig.
+     * Add a listener to a source. Now the listener will get notifications of
+     * all property change events from that source.
      */
     public static void addPropertyChangeListener(Object src,
             PropertyChangeListener l) {
-        PropertyChangeListener listeners[] = (PropertyChangeListener[]) _pcListeners
-                .get(src);
-        if (listeners == null) {
-            listeners = new PropertyChangeListener[MAX_LISTENERS];
-            _pcListeners.put(src, listeners);
-        }
-        // debugging warning
-        if (LOG.isDebugEnabled() && _pcListeners.size() > 100) {
-            LOG.debug("_pcListeners size = " + _pcListeners.size());
-        }
-        for (int i = 0; i < MAX_LISTENERS; ++i)
-            if (listeners[i] == null) {
-                listeners[i] = l;
-                return;
-            }
-        if (LOG.isDebugEnabled())
-            LOG.debug("ran out of listeners!");
+        EditorContext.getCurrent().addPropertyChangeListener(src, l);
     }
 
     public static void addUniversalPropertyChangeListener(
             PropertyChangeListener pcl) {
-        universalListener = pcl;
+        EditorContext.getCurrent().setUniversalPropertyChangeListener(pcl);
     }
 
     public static void removeUniversalPropertyChangeListener() {
-        universalListener = null;
+        EditorContext.getCurrent().setUniversalPropertyChangeListener(null);
     }
 
     public static void removePropertyChangeListener(Object s,
             PropertyChangeListener listener) {
-        PropertyChangeListener listeners[] = (PropertyChangeListener[]) _pcListeners
-                .get(s);
-        boolean found = false;
-        if (listeners == null)
-            return;
-        for (int i = 0; i < MAX_LISTENERS; ++i) {
-            if (listeners[i] == listener) {
-                listeners[i] = null;
-                found = true;
-            }
-        }
-        if (LOG.isDebugEnabled() && !found) {
-            LOG.debug("listener not found!");
-        }
-        for (int i = 0; i < MAX_LISTENERS; ++i)
-            if (listeners[i] != null)
-                return;
-        // s has no listeners, keep Hashtable size reasonable
-        _pcListeners.remove(s);
+        EditorContext.getCurrent().removePropertyChangeListener(s, listener);
     }
 
     /** Send a property change event to listeners of the src Fig. */
     public static void firePropChange(Object src, String propName,
             boolean oldV, boolean newV) {
-        firePropChange(src, propName, new Boolean(oldV), new Boolean(newV));
+        firePropChange(src, propName, Boolean.valueOf(oldV), Boolean
+                .valueOf(newV));
     }
 
     /** Send a property change event to listeners of the src Fig. */
     public static void firePropChange(Object src, String propName, int oldV,
             int newV) {
-        firePropChange(src, propName, new Integer(oldV), new Integer(newV));
+        firePropChange(src, propName, Integer.valueOf(oldV), Integer
+                .valueOf(newV));
     }
 
     /** Send a property change event to listeners of the src Fig. */
     public static void firePropChange(Object src, String propName,
             Object oldValue, Object newValue) {
-        if (oldValue != null && oldValue.equals(newValue))
-            return;
-        PropertyChangeListener listeners[] = (PropertyChangeListener[]) _pcListeners
-                .get(src);
-        if (listeners == null && universalListener == null)
-            return;
-        PropertyChangeEvent evt = new PropertyChangeEvent(src, propName,
-                oldValue, newValue);
-        if (listeners != null) {
-            // needs-more-work: should be thread safe, clone array?
-            for (int i = 0; i < MAX_LISTENERS; ++i) {
-                if (listeners[i] != null)
-                    listeners[i].propertyChange(evt);
-            }
-        }
-        if (universalListener != null)
-            universalListener.propertyChange(evt);
+        EditorContext.getCurrent().firePropChange(src, propName, oldValue,
+                newValue);
     }
 
 } /* end class Globals */
@@ -32,6 +32,7 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -350,6 +351,18 @@ public abstract class Layer implements java.io.Serializable {
     public void remove(Fig f) {
     }
 
+    /**
+     * Remove several Figs from this layer. By default each Fig is removed in
+     * turn.
+     * 
+     * @see LayerDiagram#removeAll(Collection)
+     */
+    public void removeAll(Collection<? extends Fig> figs) {
+        for (Fig f : figs) {
+            remove(f);
+        }
+    }
+
     public void add(DiagramElement f) {
         add((Fig) f);
     }
@@ -432,6 +445,18 @@ public abstract class Layer implements java.io.Serializable {
     public void reorder(Fig f, int function) {
     }
 
+    /**
+     * Reorder several Figs in this layer. By default each Fig is reordered in
+     * turn.
+     * 
+     * @see LayerDiagram#reorderAll(Collection, int)
+     */
+    public void reorderAll(Collection<? extends Fig> figs, int function) {
+        for (Fig f : figs) {
+            reorder(f, function);
+        }
+    }
+
     // //////////////////////////////////////////////////////////////
     // painting methods
 
@@ -525,6 +550,100 @@ public abstract class Layer implements java.io.Serializable {
         }
     }
 
+    /**
+     * A Fig in this Layer has changed state and needs to be redrawn. Notify all
+     * Editors showing this Layer that they should record the area it covers as
+     * damaged.
+     *
+     * @param f the Fig to redraw
+     */
+    public void damaged(Fig f) {
+        if (editors == null) {
+            return;
+        }
+
+        int count = editors.size();
+        for (int editorIndex = 0; editorIndex < count; ++editorIndex) {
+            Editor editor = (Editor) editors.get(editorIndex);
+            editor.damaged(f);
+        }
+    }
+
+    /**
+     * The bounds of a Fig in this Layer may have changed. Notify the
+     * SelectionManagers of all Editors showing this Layer, as the Fig may be
+     * selected.
+     *
+     * @param f the top level Fig whose bounds may have changed
+     */
+    void selectionBoundsChanged(Fig f) {
+        if (editors == null) {
+            return;
+        }
+
+        int count = editors.size();
+        for (int editorIndex = 0; editorIndex < count; ++editorIndex) {
+            Editor editor = (Editor) editors.get(editorIndex);
+            editor.getSelectionManager().figBoundsChanged(f);
+        }
+    }
+
+    /**
+     * An area of this Layer needs to be redrawn, typically because a Fig has
+     * moved away from it. Notify all Editors showing this Layer that they
+     * should record the damage.
+     *
+     * @param r the area to redraw in diagram co-ordinates
+     */
+    public void damaged(Rectangle r) {
+        if (editors == null) {
+            return;
+        }
+
+        int count = editors.size();
+        for (int editorIndex = 0; editorIndex < count; ++editorIndex) {
+            Editor editor = (Editor) editors.get(editorIndex);
+            editor.damagedRegion(r);
+        }
+    }
+
+    /**
+     * The bounds of a Fig in this Layer may have changed. By default this does
+     * nothing. LayerDiagram uses it to keep its SpatialIndex up to date.
+     *
+     * @param f the top level Fig whose bounds may have changed
+     */
+    public void figBoundsChanged(Fig f) {
+    }
+
+    /**
+     * A Fig in this Layer has been given a new owner. By default this does
+     * nothing. LayerDiagram uses it to keep its index of presentations by
+     * owner up to date.
+     *
+     * @param f the Fig whose owner has changed
+     */
+    public void figOwnerChanged(Fig f) {
+    }
+
+    /**
+     * A Fig has left this Layer. Notify all Editors showing this Layer, so
+     * that they let go of anything they keep for painting it.
+     *
+     * @param f the top level Fig that was removed
+     */
+    void figLeft(Fig f) {
+        if (editors == null) {
+            return;
+        }
+
+        int count = editors.size();
+        for (int editorIndex = 0; editorIndex < count; ++editorIndex) {
+            Editor editor = (Editor) editors.get(editorIndex);
+            editor.figLeft(f);
+        }
+    }
+
     /**
      * A Fig in this Layer has been deleted. Notify all Editors so that they can
      * deselect the Fig.
@@ -27,19 +27,28 @@
 package org.tigris.gef.base;
 
 import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.EventObject;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.tigris.gef.presentation.Fig;
 import org.tigris.gef.presentation.FigNode;
 import org.tigris.gef.presentation.FigPainter;
+import org.tigris.gef.util.EnumerationPredicate;
+import org.tigris.gef.util.PredFigInRect;
+import org.tigris.gef.util.PredFigNodeInRect;
 
 /**
  * A Layer like found in many drawing applications. It contains a collection of
@@ -54,8 +63,49 @@ public class LayerDiagram extends Layer {
 
     private List<LayerListener> listeners = new ArrayList<LayerListener>();
 
-    /** The Fig's that are contained in this layer. */
-    private List<Fig> contents = new ArrayList<Fig>();
+    /**
+     * The Fig's that are contained in this layer, from back to front. This is
+     * always a ZOrderList, it is only declared as a List so that it is
+     * serialized as before.
+     */
+    private List<Fig> contents = new ZOrderList();
+
+    /**
+     * The spatial index used to find the Figs in an area without scanning all
+     * contents. This is not serialized, it is rebuilt from the contents when
+     * first needed.
+     */
+    private transient SpatialIndex spatialIndex;
+
+    /**
+     * The router that rectilinear edges use to find their way around the
+     * nodes of this layer. This is not serialized, it is created when first
+     * needed.
+     */
+    private transient EdgeRouter edgeRouter;
+
+    /**
+     * The owner that each Fig in contents is indexed under. Every Fig in
+     * contents has an entry, so this also serves as a fast membership test.
+     * This is not serialized, it is rebuilt from the contents when first
+     * needed.
+     */
+    private transient Map<Fig, Object> figOwners;
+
+    /**
+     * The Figs in contents that present each (non null) owner. This is kept
+     * in step with figOwners.
+     */
+    private transient Map<Object, List<Fig>> ownerFigs;
+
+    /** The number of bulk adds started and not yet ended. */
+    private transient int bulkAddDepth;
+
+    /**
+     * The Figs added since the outermost bulk add started. Their damage and
+     * listener events are held back until it ends.
+     */
+    private transient List<Fig> bulkAdded;
 
     /** A counter so that layers have default names like 'One', 'Two', ... */
     private static int nextLayerNumbered = 1;
@@ -138,10 +188,18 @@ public class LayerDiagram extends Layer {
                     "Attempted to add a null fig to a LayerDiagram");
         }
 
-        if (!contents.contains(f)) {
-            contents.remove(f); // act like a set
+        if (!contains(f)) {
             contents.add(f);
             f.setLayer(this);
+            indexOwner(f);
+            getSpatialIndex().add(f);
+            if (edgeRouter != null) {
+                edgeRouter.add(f);
+            }
+            if (bulkAddDepth > 0) {
+                bulkAdded.add(f);
+                return;
+            }
             f.endTrans();
             for (LayerListener listener : listeners) {
                 listener.figAdded(new EventObject(f));
@@ -149,6 +207,87 @@ public class LayerDiagram extends Layer {
         }
     }
 
+    /**
+     * Add several Figs to the contents of this layer, on top of all other
+     * items, as a single bulk add.
+     * 
+     * @param figs
+     *                the figs to add
+     * @throws IllegalArgumentException
+     *                 if any fig is null
+     * @see #startBulkAdd()
+     */
+    public void addAll(Collection<? extends Fig> figs) {
+        startBulkAdd();
+        try {
+            for (Fig f : figs) {
+                add(f);
+            }
+        } finally {
+            endBulkAdd();
+        }
+    }
+
+    /**
+     * Start adding many Figs. Until the matching call to endBulkAdd the Figs
+     * given to add or insertAt are put in the layer as usual, but they are
+     * not damaged and listeners are not told about them. Bulk adds may be
+     * nested, only the outermost one has any effect.
+     */
+    public void startBulkAdd() {
+        if (bulkAddDepth++ == 0) {
+            bulkAdded = new ArrayList<Fig>();
+        }
+    }
+
+    /**
+     * End adding many Figs. When the outermost bulk add ends the area covered
+     * by all of the Figs added is damaged once and listeners are told about
+     * them. A BulkLayerListener gets one figsAdded event, any other
+     * LayerListener gets figAdded for each Fig.
+     */
+    public void endBulkAdd() {
+        if (bulkAddDepth == 0) {
+            throw new IllegalStateException(
+                    "endBulkAdd called without startBulkAdd");
+        }
+        if (--bulkAddDepth > 0) {
+            return;
+        }
+        List<Fig> added = bulkAdded;
+        bulkAdded = null;
+        if (added.isEmpty()) {
+            return;
+        }
+
+        Rectangle area = null;
+        for (Fig f : added) {
+            f.translateAnnotations();
+            if (area == null) {
+                area = f.getBounds();
+            } else {
+                area.add(f.getBounds());
+            }
+        }
+        damaged(area);
+
+        EventObject event = new EventObject(Collections.unmodifiableList(added));
+        for (LayerListener listener : listeners) {
+            if (listener instanceof BulkLayerListener) {
+                ((BulkLayerListener) listener).figsAdded(event);
+            } else {
+                for (Fig f : added) {
+                    listener.figAdded(new EventObject(f));
+                }
+            }
+        }
+    }
+
+    /** Reply true if a bulk add has been started and not yet ended. */
+    public boolean isBulkAdding() {
+        return bulkAddDepth > 0;
+    }
+
     /**
      * Add a Fig to the contents of this layer. Items are added on top of all
      * other items.
@@ -168,6 +307,19 @@ public class LayerDiagram extends Layer {
             boolean fireEvent = !contents.remove(f); // act like a set
             contents.add(index, f);
             f.setLayer(this);
+            if (fireEvent) {
+                indexOwner(f);
+            }
+            getSpatialIndex().add(f);
+            if (edgeRouter != null) {
+                edgeRouter.add(f);
+            }
+            if (bulkAddDepth > 0 && (fireEvent || bulkAdded.contains(f))) {
+                if (fireEvent) {
+                    bulkAdded.add(f);
+                }
+                return;
+            }
             f.endTrans();
             if (fireEvent) {
                 for (LayerListener listener : listeners) {
@@ -197,10 +349,68 @@ public class LayerDiagram extends Layer {
 
     /** Remove the given Fig from this layer. */
     public void remove(Fig f) {
-        if (contents.contains(f)) {
+        if (contains(f)) {
             contents.remove(f);
+            unindexOwner(f);
+            getSpatialIndex().remove(f);
+            if (edgeRouter != null) {
+                edgeRouter.remove(f);
+            }
             f.endTrans();
+            figLeft(f);
             f.setLayer(null);
+            if (bulkAddDepth > 0 && bulkAdded.remove(f)) {
+                // listeners were never told it was added
+                return;
+            }
+            for (LayerListener listener : listeners) {
+                listener.figRemoved(new EventObject(f));
+            }
+        }
+    }
+
+    /**
+     * Remove several Figs from this layer. This costs one pass over the
+     * contents however many Figs are removed, and the area they covered is
+     * damaged once. Listeners are told about each Fig removed. Figs that are
+     * not in this layer are ignored.
+     * 
+     * @param figs
+     *                the figs to remove
+     */
+    public void removeAll(Collection<? extends Fig> figs) {
+        List<Fig> removed = new ArrayList<Fig>(figs.size());
+        Rectangle area = null;
+        for (Fig f : figs) {
+            if (contains(f)) {
+                contents.remove(f);
+                unindexOwner(f);
+                getSpatialIndex().remove(f);
+                if (edgeRouter != null) {
+                    edgeRouter.remove(f);
+                }
+                removed.add(f);
+                if (area == null) {
+                    area = f.getBounds();
+                } else {
+                    area.add(f.getBounds());
+                }
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+
+        for (Fig f : removed) {
+            f.translateAnnotations();
+        }
+        damaged(area);
+        for (Fig f : removed) {
+            figLeft(f);
+            f.setLayer(null);
+            if (bulkAddDepth > 0 && bulkAdded.remove(f)) {
+                continue;
+            }
             for (LayerListener listener : listeners) {
                 listener.figRemoved(new EventObject(f));
             }
@@ -214,7 +424,8 @@ public class LayerDiagram extends Layer {
      * @return
      */
     public boolean contains(Fig f) {
-        return contents.contains(f);
+        buildOwnerIndex();
+        return figOwners.containsKey(f);
     }
 
     /**
@@ -240,15 +451,15 @@ public class LayerDiagram extends Layer {
     }
 
     /**
-     * Reply the 'top' Fig under the given (mouse) coordinates. Needs-More-Work:
-     * For now, just do a linear search. Later, optimize this routine using Quad
-     * Trees (or other) techniques.
+     * Reply the 'top' Fig under the given (mouse) coordinates. Only the Figs
+     * that the spatial index finds near the rectangle are tested.
      */
     public Fig hit(Rectangle r) {
+        List<Fig> candidates = getFigsNear(r);
 
         /* search backward so that highest item is found first */
-        for (int i = contents.size() - 1; i >= 0; i--) {
-            Fig f = (Fig) contents.get(i);
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            Fig f = candidates.get(i);
             if (f.hit(r)) {
                 return f;
             }
@@ -257,17 +468,233 @@ public class LayerDiagram extends Layer {
         return null;
     }
 
+    /**
+     * Reply an enumeration of all the Figs in this Layer that intersect given
+     * Rectangle, in back to front order.
+     */
+    public Enumeration elementsIn(Rectangle r) {
+        return new EnumerationPredicate(Collections
+                .enumeration(getFigsNear(r)), new PredFigInRect(r));
+    }
+
+    /**
+     * Reply an enumeration of all the FigNodes in this Layer that intersect
+     * given Rectangle, in back to front order.
+     */
+    public Enumeration nodesIn(Rectangle r) {
+        return new EnumerationPredicate(Collections
+                .enumeration(getFigsNear(r)), new PredFigNodeInRect(r));
+    }
+
     /** Delete all Fig's from this layer. */
     public void removeAll() {
         for (int i = contents.size() - 1; i >= 0; i--) {
             Fig f = (Fig) contents.get(i);
+            figLeft(f);
             f.setLayer(null);
         }
 
         contents.clear();
+        if (bulkAdded != null) {
+            bulkAdded.clear();
+        }
+        figOwners = null;
+        ownerFigs = null;
+        getSpatialIndex().clear();
+        if (edgeRouter != null) {
+            edgeRouter.clear();
+        }
         // notify?
     }
 
+    // //////////////////////////////////////////////////////////////
+    // spatial indexing
+
+    /**
+     * Replace the spatial index used to find the Figs in an area. The new
+     * index is populated with the current contents of this layer.
+     * 
+     * @param index the new index
+     * @throws IllegalArgumentException if the index is null
+     */
+    public void setSpatialIndex(SpatialIndex index) {
+        if (index == null) {
+            throw new IllegalArgumentException(
+                    "A LayerDiagram must have a spatial index");
+        }
+        index.clear();
+        for (Fig f : contents) {
+            index.add(f);
+        }
+        spatialIndex = index;
+    }
+
+    /**
+     * Reply the spatial index used to find the Figs in an area. A QuadTreeIndex
+     * is created if none has been set.
+     * 
+     * @return the spatial index
+     */
+    public SpatialIndex getSpatialIndex() {
+        if (spatialIndex == null) {
+            setSpatialIndex(new QuadTreeIndex());
+        }
+        return spatialIndex;
+    }
+
+    /**
+     * Keep the spatial index up to date when one of our Figs changes its
+     * bounds. The area the Fig used to cover is damaged so that it is cleared
+     * on the next repaint. The selection managers of our editors are told as
+     * well, as the Fig may be selected.
+     */
+    public void figBoundsChanged(Fig f) {
+        if (spatialIndex != null) {
+            Rectangle oldBounds = spatialIndex.update(f);
+            if (oldBounds != null) {
+                damaged(oldBounds);
+            }
+        }
+        if (edgeRouter != null) {
+            edgeRouter.update(f);
+        }
+        selectionBoundsChanged(f);
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // edge routing
+
+    /**
+     * Replace the router that rectilinear edges use to find their way around
+     * the nodes of this layer. The new router is told about the current
+     * contents of this layer.
+     * 
+     * @param router the new router
+     * @throws IllegalArgumentException if the router is null
+     */
+    public void setEdgeRouter(EdgeRouter router) {
+        if (router == null) {
+            throw new IllegalArgumentException(
+                    "A LayerDiagram must have an edge router");
+        }
+        router.clear();
+        for (Fig f : contents) {
+            router.add(f);
+        }
+        edgeRouter = router;
+    }
+
+    /**
+     * Reply the router that rectilinear edges use to find their way around
+     * the nodes of this layer. An OrthogonalEdgeRouter is created if none has
+     * been set.
+     * 
+     * @return the edge router
+     */
+    public EdgeRouter getEdgeRouter() {
+        if (edgeRouter == null) {
+            setEdgeRouter(new OrthogonalEdgeRouter(this));
+        }
+        return edgeRouter;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // owner indexing
+
+    /**
+     * Keep the owner index up to date when one of our Figs is given a new
+     * owner.
+     */
+    public void figOwnerChanged(Fig f) {
+        if (figOwners != null && figOwners.containsKey(f)) {
+            unindexOwner(f);
+            indexOwner(f);
+        }
+    }
+
+    /** Build the owner index from the contents if it does not exist yet. */
+    private void buildOwnerIndex() {
+        if (figOwners == null) {
+            figOwners = new IdentityHashMap<Fig, Object>(contents.size() * 2);
+            ownerFigs = new IdentityHashMap<Object, List<Fig>>();
+            for (Fig f : contents) {
+                indexOwner(f);
+            }
+        }
+    }
+
+    /** Record the given Fig under its current owner. */
+    private void indexOwner(Fig f) {
+        buildOwnerIndex();
+        Object owner = f.getOwner();
+        figOwners.put(f, owner);
+        if (owner != null) {
+            List<Fig> figs = ownerFigs.get(owner);
+            if (figs == null) {
+                figs = new ArrayList<Fig>(1);
+                ownerFigs.put(owner, figs);
+            }
+            figs.add(f);
+        }
+    }
+
+    /** Forget the given Fig, using the owner it was recorded under. */
+    private void unindexOwner(Fig f) {
+        if (figOwners == null) {
+            return;
+        }
+        Object owner = figOwners.remove(f);
+        if (owner != null) {
+            List<Fig> figs = ownerFigs.get(owner);
+            if (figs != null) {
+                for (int i = 0; i < figs.size(); ++i) {
+                    if (figs.get(i) == f) {
+                        figs.remove(i);
+                        break;
+                    }
+                }
+                if (figs.isEmpty()) {
+                    ownerFigs.remove(owner);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reply the Figs whose bounds intersect the given rectangle, in back to
+     * front order. Figs whose shape does not actually intersect the rectangle
+     * may be included.
+     */
+    private List<Fig> getFigsNear(Rectangle r) {
+        List<Fig> figs = new ArrayList<Fig>();
+        getSpatialIndex().query(r, figs);
+        sortByZOrder(figs);
+        return figs;
+    }
+
+    /** Sort the given Figs from this layer into back to front order. */
+    private void sortByZOrder(List<Fig> figs) {
+        if (figs.size() > 1) {
+            Collections.sort(figs, new Comparator<Fig>() {
+                public int compare(Fig f1, Fig f2) {
+                    return getZOrder(f1) - getZOrder(f2);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reply a key for the position of the given Fig in the contents, a higher
+     * key is further to the front.
+     */
+    private int getZOrder(Fig f) {
+        return getZOrderList().getKey(f);
+    }
+
+    private ZOrderList getZOrderList() {
+        return (ZOrderList) contents;
+    }
+
     /**
      * Find the FigNode that is being used to visualize the given NetPort, or
      * null if there is none in this layer.
@@ -288,9 +715,25 @@ public class LayerDiagram extends Layer {
 
     /**
      * Find the Fig that visualise the given model element in this layer, or
-     * null if there is none.
+     * null if there is none. Figs are looked up by the owner they had when
+     * they were added or last given an owner through Fig.setOwner.
      */
     public Fig presentationFor(Object obj) {
+        if (obj != null) {
+            buildOwnerIndex();
+            List<Fig> figs = ownerFigs.get(obj);
+            if (figs == null) {
+                return null;
+            }
+            Fig first = figs.get(0);
+            for (int i = 1; i < figs.size(); ++i) {
+                if (getZOrder(figs.get(i)) < getZOrder(first)) {
+                    first = figs.get(i);
+                }
+            }
+            return first;
+        }
+
         int figCount = contents.size();
         for (int figIndex = 0; figIndex < figCount; ++figIndex) {
             Fig fig = (Fig) contents.get(figIndex);
@@ -307,6 +750,17 @@ public class LayerDiagram extends Layer {
      * or null if there is none.
      */
     public List presentationsFor(Object obj) {
+        if (obj != null) {
+            buildOwnerIndex();
+            List<Fig> figs = ownerFigs.get(obj);
+            if (figs == null) {
+                return new ArrayList();
+            }
+            List<Fig> presentations = new ArrayList<Fig>(figs);
+            sortByZOrder(presentations);
+            return presentations;
+        }
+
         ArrayList presentations = new ArrayList();
         int figCount = contents.size();
         for (int figIndex = 0; figIndex < figCount; ++figIndex) {
@@ -320,6 +774,12 @@ public class LayerDiagram extends Layer {
     }
 
     public int presentationCountFor(Object obj) {
+        if (obj != null) {
+            buildOwnerIndex();
+            List<Fig> figs = ownerFigs.get(obj);
+            return figs == null ? 0 : figs.size();
+        }
+
         int count = 0;
         int figCount = contents.size();
         for (int figIndex = 0; figIndex < figCount; ++figIndex) {
@@ -348,7 +808,22 @@ public class LayerDiagram extends Layer {
         Rectangle clipBounds = g.getClipBounds();
         Iterator<Fig> figsIter;
         synchronized (contents) {
-            figsIter = (new ArrayList<Fig>(contents)).iterator();
+            List<Fig> figs = null;
+            if (clipBounds != null) {
+                figs = new ArrayList<Fig>();
+                getSpatialIndex().query(clipBounds, figs);
+                // If most of the layer is visible then the spatial index
+                // gains nothing over painting in contents order
+                if (figs.size() > contents.size() / 2) {
+                    figs = null;
+                } else {
+                    sortByZOrder(figs);
+                }
+            }
+            if (figs == null) {
+                figs = new ArrayList<Fig>(contents);
+            }
+            figsIter = figs.iterator();
         }
         while (figsIter.hasNext()) {
             Fig fig = (Fig) figsIter.next();
@@ -367,14 +842,12 @@ public class LayerDiagram extends Layer {
 
     /** Reorder the given Fig in this layer. */
     public void sendToBack(Fig f) {
-        contents.remove(f);
-        contents.add(0, f);
+        getZOrderList().sendToBack(f);
     }
 
     /** Reorder the given Fig in this layer. */
     public void bringToFront(Fig f) {
-        contents.remove(f);
-        contents.add(f);
+        getZOrderList().bringToFront(f);
     }
 
     /**
@@ -383,32 +856,18 @@ public class LayerDiagram extends Layer {
      * Maybe...
      */
     public void sendBackward(Fig f) {
-        int i = contents.indexOf(f);
-        if (i == -1 || i == 0) {
-            return;
-        }
-
-        final Fig prevFig = contents.get(i - 1);
-        contents.set(i, prevFig);
-        contents.set(i - 1, f);
+        getZOrderList().sendBackward(f);
     }
 
     /** Reorder the given Fig in this layer. */
     public void bringForward(Fig f) {
-        int i = contents.indexOf(f);
-        if (i == -1 || i == contents.size() - 1) {
-            return;
-        }
-
-        final Fig nextFig = this.contents.get(i + 1);
-        contents.set(i, nextFig);
-        contents.set(i + 1, f);
+        getZOrderList().bringForward(f);
     }
 
     /** Reorder the given Fig in this layer. */
     public void bringInFrontOf(Fig f1, Fig f2) {
-        int i1 = this.contents.indexOf(f1);
-        int i2 = this.contents.indexOf(f2);
+        int i1 = getZOrder(f1);
+        int i2 = getZOrder(f2);
         if (i1 == -1) {
             return;
         }
@@ -421,8 +880,7 @@ public class LayerDiagram extends Layer {
             return;
         }
 
-        this.contents.remove(f1);
-        this.contents.add(i2, f1);
+        getZOrderList().bringInFrontOf(f1, f2);
         // Object frontFig = this.contents.elementAt(i1);
         // Object backFig = this.contents.elementAt(i2);
         // this.contents.setElementAt(frontFig, i2);
@@ -451,12 +909,88 @@ public class LayerDiagram extends Layer {
         }
     }
 
+    /**
+     * Reorder several Figs in this layer in one pass over the contents. The
+     * Figs keep their order relative to one another. Sending them to the back
+     * or bringing them to the front moves them all there together. Sending
+     * them backward or bringing them forward moves each past the next Fig that
+     * is not being moved. Figs that are not in this layer are ignored.
+     * 
+     * @param figs
+     *                the Figs to reorder
+     * @param function
+     *                one of the ReorderAction constants
+     */
+    public void reorderAll(Collection<? extends Fig> figs, int function) {
+        Map<Fig, Fig> moving = new IdentityHashMap<Fig, Fig>();
+        for (Fig f : figs) {
+            if (contains(f)) {
+                moving.put(f, f);
+            }
+        }
+        if (moving.isEmpty()) {
+            return;
+        }
+
+        List<Fig> order = new ArrayList<Fig>(contents);
+        int figCount = order.size();
+        switch (function) {
+
+        case ReorderAction.SEND_TO_BACK:
+        case ReorderAction.BRING_TO_FRONT:
+            List<Fig> moved = new ArrayList<Fig>(moving.size());
+            List<Fig> others = new ArrayList<Fig>(figCount - moving.size());
+            for (Fig f : order) {
+                (moving.containsKey(f) ? moved : others).add(f);
+            }
+            order.clear();
+            if (function == ReorderAction.SEND_TO_BACK) {
+                order.addAll(moved);
+                order.addAll(others);
+            } else {
+                order.addAll(others);
+                order.addAll(moved);
+            }
+            break;
+
+        case ReorderAction.SEND_BACKWARD:
+            for (int i = 1; i < figCount; ++i) {
+                if (moving.containsKey(order.get(i))
+                        && !moving.containsKey(order.get(i - 1))) {
+                    Collections.swap(order, i - 1, i);
+                }
+            }
+            break;
+
+        case ReorderAction.BRING_FORWARD:
+            for (int i = figCount - 2; i >= 0; --i) {
+                if (moving.containsKey(order.get(i))
+                        && !moving.containsKey(order.get(i + 1))) {
+                    Collections.swap(order, i, i + 1);
+                }
+            }
+            break;
+
+        default:
+            return;
+        }
+        getZOrderList().setAll(order);
+    }
+
+    /**
+     * Prepare the contents for a save. Besides letting each Fig prepare
+     * itself this works out the id of every Fig in a single pass, so that
+     * Fig.getId does not have to search the contents for each Fig written.
+     */
     public void preSave() {
         validate();
         for (int i = 0; i < this.contents.size(); i++) {
             Fig f = (Fig) this.contents.get(i);
             f.preSave();
         }
+        for (int i = this.contents.size() - 1; i >= 0; --i) {
+            this.contents.get(i).cacheId("Fig" + i);
+        }
     }
 
     /**
@@ -471,6 +1005,11 @@ public class LayerDiagram extends Layer {
                 LOG.error("A fig has been found that should have been removed "
                         + f.toString());
                 this.contents.remove(i);
+                unindexOwner(f);
+                getSpatialIndex().remove(f);
+                if (edgeRouter != null) {
+                    edgeRouter.remove(f);
+                }
                 return false;
             } else if (f.getLayer() != this) {
                 // TODO: Once JRE1.4 is minimum support we should use assertions
@@ -486,7 +1025,9 @@ public class LayerDiagram extends Layer {
 
     public void postSave() {
         for (int i = 0; i < this.contents.size(); i++) {
-            ((Fig) this.contents.get(i)).postSave();
+            Fig f = (Fig) this.contents.get(i);
+            f.clearCachedId();
+            f.postSave();
         }
     }
 
@@ -496,6 +1037,13 @@ public class LayerDiagram extends Layer {
         }
     }
     
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        // contents are written as a plain list
+        contents = new ZOrderList(contents);
+    }
+
     public void addLayerListener(LayerListener listener) {
         listeners.add(listener);
     }
@@ -30,11 +30,11 @@
 package org.tigris.gef.base;
 
 import java.awt.Color;
-import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.PrintGraphics;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -165,18 +165,10 @@ public class LayerGrid extends Layer {
         if (_stamp == null) {
             if (_spacing > _stampHeight)
                 _stampHeight = _stampWidth = _spacing;
-            if (Globals.curEditor() == null) {
-                // this is a bad idea, but it works around a very awkward AWT
-                // requirement: that only frames can make Image instances
-                System.out.println("no editor");
-                Frame frame = new Frame();
-                frame.setVisible(true);
-                _stamp = frame.createImage(_stampWidth, _stampHeight);
-                frame.dispose();
-            } else {
-                _stamp = Globals.curEditor().createImage(_stampWidth,
-                        _stampHeight);
-            }
+            // A BufferedImage needs neither a Frame nor the current Editor,
+            // so the grid can be painted headless and from any thread
+            _stamp = new BufferedImage(_stampWidth, _stampHeight,
+                    BufferedImage.TYPE_INT_ARGB);
             if (_stamp != null) {
                 if (_paintLines)
                     paintLines(_stamp, _paintBackground);
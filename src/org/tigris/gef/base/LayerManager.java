@@ -212,17 +212,13 @@ public class LayerManager implements java.io.Serializable {
         if (_paintActiveOnly)
             _activeLayer.paint(g, painter);
         else {
-            Layer currentActiveLayer = _activeLayer;
-            boolean alwaysOnTopState = currentActiveLayer.isAlwaysOnTop();
-            currentActiveLayer.setAlwaysOnTop(false);
+            // Painting must not change the active layer as the diagram may
+            // be painted from several threads at once
             int count = _layers.size();
             for (int layerIndex = 0; layerIndex < count; ++layerIndex) {
                 Layer tmpLayer = (Layer) _layers.get(layerIndex);
-                setActiveLayer(tmpLayer);
                 tmpLayer.paint(g, painter);
             }
-            setActiveLayer(currentActiveLayer);
-            currentActiveLayer.setAlwaysOnTop(alwaysOnTopState);
         }
     }
 
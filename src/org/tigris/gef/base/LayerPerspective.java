@@ -28,9 +28,15 @@
 
 package org.tigris.gef.base;
 
+import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import org.apache.commons.logging.*;
@@ -46,7 +52,8 @@ import org.tigris.gef.graph.presentation.*;
  * is represented in a GraphModel and controlled by a GraphController.
  */
 
-public class LayerPerspective extends LayerDiagram implements GraphListener {
+public class LayerPerspective extends LayerDiagram implements
+        BulkGraphListener {
 
     private static final long serialVersionUID = -3219953846728127850L;
 
@@ -75,6 +82,9 @@ public class LayerPerspective extends LayerDiagram implements GraphListener {
      */
     private Hashtable _nodeTypeRegions = new Hashtable();
 
+    /** The free space left in each node type region, made when first used. */
+    private transient Map<Class, FreeSpaceIndex> freeSpace;
+
     /**
      * The diagram containing this layer.
      */
@@ -167,15 +177,41 @@ public class LayerPerspective extends LayerDiagram implements GraphListener {
     // node placement
     public void addNodeTypeRegion(Class nodeClass, Rectangle region) {
         _nodeTypeRegions.put(nodeClass, region);
+        if (freeSpace != null) {
+            freeSpace.remove(nodeClass);
+        }
     }
 
+    /**
+     * Move a new node to a free place in the region for its type of node, if
+     * there is one. The free space of each region is indexed, so finding a
+     * place takes about the same time however full the region is.
+     */
     public void putInPosition(Fig f) {
-        Class nodeClass = f.getOwner().getClass();
+        FreeSpaceIndex index = getFreeSpace(f.getOwner().getClass());
+        if (index != null) {
+            index.place(f);
+        }
+    }
+
+    /**
+     * Reply the index of the free space in the region for the given type of
+     * node, or null if there is no such region.
+     */
+    private FreeSpaceIndex getFreeSpace(Class nodeClass) {
         Rectangle placementRegion = (Rectangle) _nodeTypeRegions.get(nodeClass);
-        if (placementRegion != null) {
-            f.setLocation(placementRegion.x, placementRegion.y);
-            bumpOffOtherNodesIn(f, placementRegion, false, true);
+        if (placementRegion == null) {
+            return null;
         }
+        if (freeSpace == null) {
+            freeSpace = new HashMap<Class, FreeSpaceIndex>();
+        }
+        FreeSpaceIndex index = freeSpace.get(nodeClass);
+        if (index == null) {
+            index = new FreeSpaceIndex(this, placementRegion);
+            freeSpace.put(nodeClass, index);
+        }
+        return index;
     }
 
     /**
@@ -186,14 +222,11 @@ public class LayerPerspective extends LayerDiagram implements GraphListener {
         Rectangle bbox = newFig.getBounds();
         int origX = bbox.x, origY = bbox.y;
         int col = 0, row = 0, i = 1;
+        List<Fig> overlappers = new ArrayList<Fig>();
         while (bounds.intersects(bbox)) {
-            Enumeration overlappers = nodesIn(bbox);
-            // If there is nothing overlapping then we are done:
-            if (!overlappers.hasMoreElements())
-                return;
-            // Idem if the only found fig is the one we try to place:
-            if ((overlappers.nextElement() == newFig)
-                    && (!overlappers.hasMoreElements()))
+            // If nothing but the fig we try to place overlaps then we are
+            // done
+            if (!overlapsOtherNode(newFig, bbox, overlappers))
                 return;
             int unitOffset = ((i + 1) / 2) * ((i % 2 == 0) ? -1 : 1);
             if (vertical)
@@ -222,11 +255,97 @@ public class LayerPerspective extends LayerDiagram implements GraphListener {
         }
     }
 
+    /**
+     * Reply true if a FigNode other than the given Fig intersects the given
+     * bounds. The order of the nodes does not matter here, so the spatial
+     * index is asked directly.
+     */
+    private boolean overlapsOtherNode(Fig fig, Rectangle bbox,
+            List<Fig> found) {
+        found.clear();
+        getSpatialIndex().query(bbox, found);
+        for (Fig f : found) {
+            if (f != fig && f instanceof FigNode && f.intersects(bbox)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // automatic layout
+
+    /**
+     * Arrange the nodes of this layer with the given layout. All nodes are
+     * moved as one change: listeners hear of each node once, each edge is
+     * rerouted once after every node has moved, and the layer is damaged
+     * once.
+     * 
+     * @param layout the layout that works out where the nodes go
+     * @see LayeredLayout
+     * @see ForceDirectedLayout
+     */
+    public void layout(GraphLayout layout) {
+        LayoutGraph graph = new LayoutGraph(this);
+        Point[] locations = layout.layout(graph);
+        Set<FigEdge> edges = new LinkedHashSet<FigEdge>();
+        EditorContext context = EditorContext.getCurrent();
+        context.suspendPropChanges();
+        try {
+            for (int i = 0; i < locations.length; ++i) {
+                FigNode node = graph.getFigNode(i);
+                node.setDeferredEdges(edges);
+                try {
+                    node.setLocation(locations[i].x, locations[i].y);
+                } finally {
+                    node.setDeferredEdges(null);
+                }
+            }
+            for (FigEdge edge : edges) {
+                edge.computeRoute();
+            }
+        } finally {
+            context.resumePropChanges();
+        }
+        damageAll();
+    }
+
     // //////////////////////////////////////////////////////////////
     // nofitications and updates
 
     public void nodeAdded(GraphEvent ge) {
-        Object node = ge.getArg();
+        addNodePresentation(ge.getArg());
+    }
+
+    /**
+     * Add Figs for all the nodes of a bulk update as a single bulk add.
+     */
+    public void nodesAdded(GraphEvent ge) {
+        startBulkAdd();
+        try {
+            for (Object node : (List) ge.getArg()) {
+                addNodePresentation(node);
+            }
+        } finally {
+            endBulkAdd();
+        }
+    }
+
+    /**
+     * Add Figs for all the edges of a bulk update as a single bulk add.
+     */
+    public void edgesAdded(GraphEvent ge) {
+        startBulkAdd();
+        try {
+            for (Object edge : (List) ge.getArg()) {
+                addEdgePresentation(edge);
+            }
+        } finally {
+            endBulkAdd();
+        }
+    }
+
+    private void addNodePresentation(Object node) {
         Fig oldDE = presentationFor(node);
         // assumes each node can only appear once in a given layer
         if (null == oldDE) {
@@ -241,7 +360,14 @@ public class LayerPerspective extends LayerDiagram implements GraphListener {
                 putInPosition(newFigNode);
                 if (LOG.isDebugEnabled())
                     LOG.debug("Adding node");
-                add(newFigNode);
+                // part of any bulk add in progress, so a burst of nodes
+                // is damaged and announced together
+                startBulkAdd();
+                try {
+                    add(newFigNode);
+                } finally {
+                    endBulkAdd();
+                }
             }
             // else System.out.println("added node de is null");
         }
@@ -249,7 +375,10 @@ public class LayerPerspective extends LayerDiagram implements GraphListener {
 
     public void edgeAdded(GraphEvent ge) {
         // System.out.println("LayerPerspective got edgeAdded");
-        Object edge = ge.getArg();
+        addEdgePresentation(ge.getArg());
+    }
+
+    private void addEdgePresentation(Object edge) {
         Fig oldFig = presentationFor(edge);
         if (null == oldFig) {
             if (!shouldShow(edge)) {
@@ -260,11 +389,16 @@ public class LayerPerspective extends LayerDiagram implements GraphListener {
                     null);
             if (newFigEdge != null) {
                 newFigEdge.setLayer(this);
-                add(newFigEdge);
-                // insertAt(newFigEdge, 0);
-                newFigEdge.computeRoute();
-                // newFigEdge.reorder(CmdReorder.SEND_TO_BACK, this);
-                newFigEdge.endTrans();
+                // the bulk add damages the edge once its route is known
+                startBulkAdd();
+                try {
+                    add(newFigEdge);
+                    // insertAt(newFigEdge, 0);
+                    newFigEdge.computeRoute();
+                    // newFigEdge.reorder(CmdReorder.SEND_TO_BACK, this);
+                } finally {
+                    endBulkAdd();
+                }
             }
             // else System.out.println("added arc fig is null!!!!!!!!!!!!!!!!");
         }
@@ -283,6 +417,11 @@ public class LayerPerspective extends LayerDiagram implements GraphListener {
                 ((FigNode) node).setHighlight(false);
             }
             remove(node);
+            FreeSpaceIndex index = freeSpace == null ? null : freeSpace
+                    .get(ge.getArg().getClass());
+            if (index != null) {
+                index.release(node);
+            }
         }
     }
 
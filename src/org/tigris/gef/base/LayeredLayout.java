@@ -0,0 +1,654 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A GraphLayout that puts nodes in ranks from top to bottom so that most
+ * edges point downwards, in the manner of Sugiyama. The layout runs in four
+ * steps:
+ * <ol>
+ * <li>Edges that close a cycle are turned around.
+ * <li>Each node is given the rank of the longest path leading to it. Nodes
+ * without incoming edges move down to just above their highest successor.
+ * <li>Edges spanning more than one rank are split by invisible dummy nodes,
+ * and the nodes of each rank are ordered by sweeping the ranks down and up
+ * and sorting each by the mean position of its neighbours in the rank just
+ * swept. The order with the fewest crossings is kept.
+ * <li>Each node is pulled towards its neighbours in the rank above and below,
+ * keeping the order of its rank and the gap between nodes.
+ * </ol>
+ * Nodes without any edges are put in rows below the rest.
+ */
+public class LayeredLayout implements GraphLayout {
+
+    /** The horizontal space between nodes of a rank by default. */
+    public static final int DEFAULT_NODE_GAP = 2 * LayerPerspective.GAP;
+
+    /** The vertical space between ranks by default. */
+    public static final int DEFAULT_RANK_GAP = 4 * LayerPerspective.GAP;
+
+    /** The number of times ranks are reordered by default. */
+    public static final int DEFAULT_SWEEPS = 8;
+
+    /** The number of times nodes are pulled towards their neighbours. */
+    private static final int PLACEMENT_PASSES = 4;
+
+    private int nodeGap = DEFAULT_NODE_GAP;
+
+    private int rankGap = DEFAULT_RANK_GAP;
+
+    private int sweeps = DEFAULT_SWEEPS;
+
+    // //////////////////////////////////////////////////////////////
+    // accessors
+
+    /**
+     * Set the horizontal space between the nodes of a rank.
+     * 
+     * @param gap the space in pixels
+     * @throws IllegalArgumentException if the gap is negative
+     */
+    public void setNodeGap(int gap) {
+        if (gap < 0) {
+            throw new IllegalArgumentException("Negative gap " + gap);
+        }
+        nodeGap = gap;
+    }
+
+    public int getNodeGap() {
+        return nodeGap;
+    }
+
+    /**
+     * Set the vertical space between ranks.
+     * 
+     * @param gap the space in pixels
+     * @throws IllegalArgumentException if the gap is negative
+     */
+    public void setRankGap(int gap) {
+        if (gap < 0) {
+            throw new IllegalArgumentException("Negative gap " + gap);
+        }
+        rankGap = gap;
+    }
+
+    public int getRankGap() {
+        return rankGap;
+    }
+
+    /**
+     * Set the most times the ranks are swept down and up to reduce edge
+     * crossings. Sweeping stops early once crossings no longer go down.
+     * 
+     * @param sweeps the number of sweeps, 0 to keep the first order found
+     * @throws IllegalArgumentException if sweeps is negative
+     */
+    public void setSweeps(int sweeps) {
+        if (sweeps < 0) {
+            throw new IllegalArgumentException("Negative sweeps " + sweeps);
+        }
+        this.sweeps = sweeps;
+    }
+
+    public int getSweeps() {
+        return sweeps;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // GraphLayout implementation
+
+    public Point[] layout(LayoutGraph graph) {
+        int n = graph.getNodeCount();
+        Point[] locations = new Point[n];
+        if (n == 0) {
+            return locations;
+        }
+        IntList[] out = acyclicSuccessors(graph);
+        int[] nodeRanks = rank(out);
+
+        // the layered graph: the nodes, then the dummies splitting long
+        // edges
+        IntList ranks = new IntList();
+        List<IntList> ups = new ArrayList<IntList>();
+        List<IntList> downs = new ArrayList<IntList>();
+        boolean[] isolated = new boolean[n];
+        for (int i = 0; i < n; ++i) {
+            ranks.add(nodeRanks[i]);
+            ups.add(new IntList());
+            downs.add(new IntList());
+            isolated[i] = graph.getSuccessors(i).length == 0
+                    && graph.getPredecessors(i).length == 0;
+        }
+        for (int u = 0; u < n; ++u) {
+            for (int j = 0; j < out[u].size; ++j) {
+                int v = out[u].items[j];
+                int previous = u;
+                for (int r = nodeRanks[u] + 1; r < nodeRanks[v]; ++r) {
+                    int dummy = ranks.size;
+                    ranks.add(r);
+                    ups.add(new IntList());
+                    downs.add(new IntList());
+                    link(previous, dummy, ups, downs);
+                    previous = dummy;
+                }
+                link(previous, v, ups, downs);
+            }
+        }
+        int vertexCount = ranks.size;
+        IntList[] up = ups.toArray(new IntList[vertexCount]);
+        IntList[] down = downs.toArray(new IntList[vertexCount]);
+
+        int[][] layers = initialOrder(ranks, down, isolated);
+        int[] positions = new int[vertexCount];
+        order(layers, up, down, positions);
+
+        double[] widths = new double[vertexCount];
+        for (int i = 0; i < n; ++i) {
+            widths[i] = graph.getWidth(i);
+        }
+        double[] centres = place(layers, up, down, widths);
+
+        // shift the drawing to the margin and stack the ranks
+        double left = Double.MAX_VALUE;
+        double right = -Double.MAX_VALUE;
+        int[] rankHeights = new int[layers.length];
+        for (int i = 0; i < n; ++i) {
+            if (!isolated[i]) {
+                left = Math.min(left, centres[i] - widths[i] / 2);
+                right = Math.max(right, centres[i] + widths[i] / 2);
+                rankHeights[nodeRanks[i]] = Math.max(
+                        rankHeights[nodeRanks[i]], graph.getHeight(i));
+            }
+        }
+        int[] rankTops = new int[layers.length + 1];
+        rankTops[0] = LayerPerspective.GAP;
+        for (int r = 0; r < layers.length; ++r) {
+            rankTops[r + 1] = rankTops[r] + rankHeights[r]
+                    + (rankHeights[r] > 0 ? rankGap : 0);
+        }
+        for (int i = 0; i < n; ++i) {
+            if (!isolated[i]) {
+                int x = (int) Math.round(centres[i] - widths[i] / 2 - left)
+                        + LayerPerspective.GAP;
+                int y = rankTops[nodeRanks[i]]
+                        + (rankHeights[nodeRanks[i]] - graph.getHeight(i))
+                        / 2;
+                locations[i] = new Point(x, y);
+            }
+        }
+        placeIsolated(graph, isolated, locations, rankTops[layers.length],
+                left <= right ? (int) Math.round(right - left) : 0);
+        return locations;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // ranking
+
+    /**
+     * Reply the successors of each node once the edges closing cycles, found
+     * by a depth first search, are turned around.
+     */
+    private IntList[] acyclicSuccessors(LayoutGraph graph) {
+        int n = graph.getNodeCount();
+        IntList[] out = new IntList[n];
+        for (int i = 0; i < n; ++i) {
+            out[i] = new IntList();
+        }
+        // 0 is unvisited, 1 on the search path and 2 done
+        int[] state = new int[n];
+        int[] stack = new int[n];
+        int[] next = new int[n];
+        // start from the sources so that fewer edges are turned around
+        for (int pass = 0; pass < 2; ++pass) {
+            for (int root = 0; root < n; ++root) {
+                if (state[root] != 0
+                        || (pass == 0 && graph.getPredecessors(root).length > 0)) {
+                    continue;
+                }
+                int depth = 0;
+                stack[depth++] = root;
+                state[root] = 1;
+                while (depth > 0) {
+                    int u = stack[depth - 1];
+                    int[] successors = graph.getSuccessors(u);
+                    if (next[u] == successors.length) {
+                        state[u] = 2;
+                        --depth;
+                        continue;
+                    }
+                    int v = successors[next[u]++];
+                    if (state[v] == 1) {
+                        out[v].add(u);
+                    } else {
+                        out[u].add(v);
+                        if (state[v] == 0) {
+                            state[v] = 1;
+                            stack[depth++] = v;
+                        }
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Reply the rank of each node of an acyclic graph, counted from 0 at the
+     * top. Nodes without edges get rank 0.
+     */
+    private int[] rank(IntList[] out) {
+        int n = out.length;
+        int[] inCounts = new int[n];
+        for (int u = 0; u < n; ++u) {
+            for (int j = 0; j < out[u].size; ++j) {
+                ++inCounts[out[u].items[j]];
+            }
+        }
+        boolean[] sources = new boolean[n];
+        int[] sorted = new int[n];
+        int count = 0;
+        for (int u = 0; u < n; ++u) {
+            if (inCounts[u] == 0) {
+                sources[u] = true;
+                sorted[count++] = u;
+            }
+        }
+        int[] ranks = new int[n];
+        for (int k = 0; k < count; ++k) {
+            int u = sorted[k];
+            for (int j = 0; j < out[u].size; ++j) {
+                int v = out[u].items[j];
+                ranks[v] = Math.max(ranks[v], ranks[u] + 1);
+                if (--inCounts[v] == 0) {
+                    sorted[count++] = v;
+                }
+            }
+        }
+        // move sources down to just above their highest successor, whose
+        // rank does not depend on any source moved
+        int lowest = Integer.MAX_VALUE;
+        for (int u = 0; u < n; ++u) {
+            if (sources[u] && out[u].size > 0) {
+                ranks[u] = Integer.MAX_VALUE;
+                for (int j = 0; j < out[u].size; ++j) {
+                    ranks[u] = Math.min(ranks[u], ranks[out[u].items[j]] - 1);
+                }
+            }
+            if (!sources[u] || out[u].size > 0) {
+                lowest = Math.min(lowest, ranks[u]);
+            }
+        }
+        for (int u = 0; u < n; ++u) {
+            if (!sources[u] || out[u].size > 0) {
+                ranks[u] -= lowest;
+            }
+        }
+        return ranks;
+    }
+
+    private static void link(int from, int to, List<IntList> ups,
+            List<IntList> downs) {
+        downs.get(from).add(to);
+        ups.get(to).add(from);
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // ordering
+
+    /**
+     * Reply the vertices of each rank in the order a depth first search
+     * along the edges first meets them, so that connected vertices start
+     * out near each other.
+     */
+    private int[][] initialOrder(IntList ranks, IntList[] down,
+            boolean[] isolated) {
+        int vertexCount = ranks.size;
+        int rankCount = 0;
+        for (int v = 0; v < vertexCount; ++v) {
+            if (v >= isolated.length || !isolated[v]) {
+                rankCount = Math.max(rankCount, ranks.items[v] + 1);
+            }
+        }
+        IntList[] layers = new IntList[rankCount];
+        for (int r = 0; r < rankCount; ++r) {
+            layers[r] = new IntList();
+        }
+        boolean[] visited = new boolean[vertexCount];
+        IntList stack = new IntList();
+        for (int root = 0; root < isolated.length; ++root) {
+            if (isolated[root] || visited[root]) {
+                continue;
+            }
+            stack.add(root);
+            while (stack.size > 0) {
+                int v = stack.items[--stack.size];
+                if (visited[v]) {
+                    continue;
+                }
+                visited[v] = true;
+                layers[ranks.items[v]].add(v);
+                for (int j = down[v].size - 1; j >= 0; --j) {
+                    if (!visited[down[v].items[j]]) {
+                        stack.add(down[v].items[j]);
+                    }
+                }
+            }
+        }
+        int[][] result = new int[rankCount][];
+        for (int r = 0; r < rankCount; ++r) {
+            result[r] = layers[r].toArray();
+        }
+        return result;
+    }
+
+    /**
+     * Reorder the ranks to reduce crossings, and set the position of each
+     * vertex within its rank.
+     */
+    private void order(int[][] layers, IntList[] up, IntList[] down,
+            int[] positions) {
+        setPositions(layers, positions);
+        if (layers.length < 2) {
+            return;
+        }
+        long best = crossings(layers, down, positions);
+        int[][] bestLayers = copy(layers);
+        double[] keys = new double[positions.length];
+        int stale = 0;
+        for (int s = 0; s < sweeps && best > 0; ++s) {
+            for (int r = 1; r < layers.length; ++r) {
+                sortByMean(layers[r], up, positions, keys);
+            }
+            for (int r = layers.length - 2; r >= 0; --r) {
+                sortByMean(layers[r], down, positions, keys);
+            }
+            long crossings = crossings(layers, down, positions);
+            if (crossings < best) {
+                best = crossings;
+                bestLayers = copy(layers);
+                stale = 0;
+            } else if (++stale == 2) {
+                break;
+            }
+        }
+        for (int r = 0; r < layers.length; ++r) {
+            layers[r] = bestLayers[r];
+        }
+        setPositions(layers, positions);
+    }
+
+    private static void setPositions(int[][] layers, int[] positions) {
+        for (int r = 0; r < layers.length; ++r) {
+            for (int i = 0; i < layers[r].length; ++i) {
+                positions[layers[r][i]] = i;
+            }
+        }
+    }
+
+    private static int[][] copy(int[][] layers) {
+        int[][] result = new int[layers.length][];
+        for (int r = 0; r < layers.length; ++r) {
+            result[r] = layers[r].clone();
+        }
+        return result;
+    }
+
+    /**
+     * Sort a rank by the mean position of the neighbours of each vertex in
+     * the rank next to it. Vertices without neighbours there keep their
+     * position as key.
+     */
+    private static void sortByMean(int[] layer, IntList[] neighbours,
+            int[] positions, double[] keys) {
+        Integer[] sorted = new Integer[layer.length];
+        for (int i = 0; i < layer.length; ++i) {
+            int v = layer[i];
+            IntList others = neighbours[v];
+            if (others.size == 0) {
+                keys[v] = positions[v];
+            } else {
+                double sum = 0;
+                for (int j = 0; j < others.size; ++j) {
+                    sum += positions[others.items[j]];
+                }
+                keys[v] = sum / others.size;
+            }
+            sorted[i] = Integer.valueOf(v);
+        }
+        // a stable sort, so ties keep their order
+        Arrays.sort(sorted, new KeyOrder(keys));
+        for (int i = 0; i < layer.length; ++i) {
+            layer[i] = sorted[i].intValue();
+            positions[layer[i]] = i;
+        }
+    }
+
+    /** Reply the number of edge crossings between all adjacent ranks. */
+    private static long crossings(int[][] layers, IntList[] down,
+            int[] positions) {
+        long total = 0;
+        for (int r = 0; r + 1 < layers.length; ++r) {
+            total += crossings(layers[r], layers[r + 1].length, down,
+                    positions);
+        }
+        return total;
+    }
+
+    /**
+     * Reply the number of crossings between the edges leaving a rank,
+     * counted with an accumulator tree over the positions of the rank below
+     * as described by Barth, Juenger and Mutzel.
+     */
+    private static long crossings(int[] north, int southSize,
+            IntList[] down, int[] positions) {
+        int first = 1;
+        while (first < southSize) {
+            first <<= 1;
+        }
+        long[] tree = new long[2 * first - 1];
+        first -= 1;
+        long crossings = 0;
+        int[] ends = new int[4];
+        for (int i = 0; i < north.length; ++i) {
+            IntList others = down[north[i]];
+            if (ends.length < others.size) {
+                ends = new int[others.size];
+            }
+            for (int j = 0; j < others.size; ++j) {
+                ends[j] = positions[others.items[j]];
+            }
+            Arrays.sort(ends, 0, others.size);
+            for (int j = 0; j < others.size; ++j) {
+                int index = ends[j] + first;
+                ++tree[index];
+                while (index > 0) {
+                    if (index % 2 != 0) {
+                        crossings += tree[index + 1];
+                    }
+                    index = (index - 1) / 2;
+                    ++tree[index];
+                }
+            }
+        }
+        return crossings;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // placement
+
+    /**
+     * Reply the x coordinate of the centre of each vertex, found by pulling
+     * the vertices of each rank towards their neighbours in the rank above,
+     * then the rank below, a few times over.
+     */
+    private double[] place(int[][] layers, IntList[] up, IntList[] down,
+            double[] widths) {
+        double[] centres = new double[widths.length];
+        for (int r = 0; r < layers.length; ++r) {
+            int[] layer = layers[r];
+            for (int i = 1; i < layer.length; ++i) {
+                centres[layer[i]] = centres[layer[i - 1]]
+                        + separation(layer[i - 1], layer[i], widths);
+            }
+        }
+        for (int pass = 0; pass < PLACEMENT_PASSES; ++pass) {
+            for (int r = 1; r < layers.length; ++r) {
+                align(layers[r], up, centres, widths);
+            }
+            for (int r = layers.length - 2; r >= 0; --r) {
+                align(layers[r], down, centres, widths);
+            }
+        }
+        return centres;
+    }
+
+    private double separation(int left, int right, double[] widths) {
+        return (widths[left] + widths[right]) / 2 + nodeGap;
+    }
+
+    /**
+     * Move the vertices of a rank as close as possible, by least squares, to
+     * the mean centre of their neighbours while keeping their order and the
+     * gap between them. Less the sum of the separations to its left, each
+     * centre must be no less than the one before, so the best centres are
+     * the isotonic regression of the targets, found by pooling adjacent
+     * violators.
+     */
+    private void align(int[] layer, IntList[] neighbours, double[] centres,
+            double[] widths) {
+        int k = layer.length;
+        double[] offsets = new double[k];
+        double[] sums = new double[k];
+        int[] counts = new int[k];
+        int blocks = 0;
+        for (int i = 0; i < k; ++i) {
+            int v = layer[i];
+            if (i > 0) {
+                offsets[i] = offsets[i - 1]
+                        + separation(layer[i - 1], v, widths);
+            }
+            IntList others = neighbours[v];
+            double target = centres[v];
+            if (others.size > 0) {
+                double sum = 0;
+                for (int j = 0; j < others.size; ++j) {
+                    sum += centres[others.items[j]];
+                }
+                target = sum / others.size;
+            }
+            sums[blocks] = target - offsets[i];
+            counts[blocks++] = 1;
+            while (blocks > 1
+                    && sums[blocks - 2] * counts[blocks - 1] > sums[blocks - 1]
+                            * counts[blocks - 2]) {
+                sums[blocks - 2] += sums[blocks - 1];
+                counts[blocks - 2] += counts[blocks - 1];
+                --blocks;
+            }
+        }
+        int i = 0;
+        for (int b = 0; b < blocks; ++b) {
+            double mean = sums[b] / counts[b];
+            for (int j = 0; j < counts[b]; ++j, ++i) {
+                centres[layer[i]] = mean + offsets[i];
+            }
+        }
+    }
+
+    /**
+     * Put the nodes without edges in rows below the rest, no wider than the
+     * rest or than a square holding them all.
+     */
+    private void placeIsolated(LayoutGraph graph, boolean[] isolated,
+            Point[] locations, int top, int width) {
+        double area = 0;
+        for (int i = 0; i < isolated.length; ++i) {
+            if (isolated[i]) {
+                area += (double) (graph.getWidth(i) + nodeGap)
+                        * (graph.getHeight(i) + nodeGap);
+            }
+        }
+        int limit = Math.max(width, (int) Math.sqrt(area));
+        int x = 0;
+        int y = top;
+        int rowHeight = 0;
+        for (int i = 0; i < isolated.length; ++i) {
+            if (!isolated[i]) {
+                continue;
+            }
+            if (x > 0 && x + graph.getWidth(i) > limit) {
+                x = 0;
+                y += rowHeight + nodeGap;
+                rowHeight = 0;
+            }
+            locations[i] = new Point(x + LayerPerspective.GAP, y);
+            x += graph.getWidth(i) + nodeGap;
+            rowHeight = Math.max(rowHeight, graph.getHeight(i));
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // inner classes
+
+    /** A growable array of ints. */
+    private static final class IntList {
+        private int[] items = new int[2];
+
+        private int size;
+
+        void add(int item) {
+            if (size == items.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(items, 0, grown, 0, size);
+                items = grown;
+            }
+            items[size++] = item;
+        }
+
+        int[] toArray() {
+            int[] result = new int[size];
+            System.arraycopy(items, 0, result, 0, size);
+            return result;
+        }
+    }
+
+    /** Orders vertices by their keys. */
+    private static final class KeyOrder implements Comparator<Integer> {
+        private final double[] keys;
+
+        KeyOrder(double[] keys) {
+            this.keys = keys;
+        }
+
+        public int compare(Integer v1, Integer v2) {
+            return Double.compare(keys[v1.intValue()], keys[v2.intValue()]);
+        }
+    }
+}
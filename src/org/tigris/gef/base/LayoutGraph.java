@@ -0,0 +1,188 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tigris.gef.graph.GraphModel;
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigNode;
+
+/**
+ * A snapshot of the nodes of a LayerPerspective and the edges between them,
+ * in the form a GraphLayout works on. Nodes are numbered from 0, and for each
+ * node the graph keeps its FigNode, its bounds when the snapshot was taken
+ * and the numbers of the nodes it has edges to and from. Edges between nodes
+ * without a FigNode in the layer, and edges from a node to itself, are left
+ * out.
+ * <p>
+ * A LayoutGraph does not change once built, so a layout may read it from
+ * many threads.
+ */
+public class LayoutGraph {
+
+    private final FigNode[] figs;
+
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] widths;
+    private final int[] heights;
+
+    /** The nodes each node has edges to and from, one entry per edge. */
+    private final int[][] successors;
+    private final int[][] predecessors;
+
+    private final int edgeCount;
+
+    /**
+     * Take a snapshot of the nodes and edges of the GraphModel of the given
+     * layer that are shown in the layer.
+     * 
+     * @param lay the layer whose nodes are to be laid out
+     */
+    public LayoutGraph(LayerPerspective lay) {
+        GraphModel gm = lay.getGraphModel();
+        List<FigNode> found = new ArrayList<FigNode>();
+        Map<Object, Integer> indices = new HashMap<Object, Integer>();
+        for (Object node : gm.getNodes()) {
+            Fig f = lay.presentationFor(node);
+            if (f instanceof FigNode && !indices.containsKey(node)) {
+                indices.put(node, Integer.valueOf(found.size()));
+                found.add((FigNode) f);
+            }
+        }
+        int n = found.size();
+        figs = found.toArray(new FigNode[n]);
+        xs = new int[n];
+        ys = new int[n];
+        widths = new int[n];
+        heights = new int[n];
+        for (int i = 0; i < n; ++i) {
+            xs[i] = figs[i].getX();
+            ys[i] = figs[i].getY();
+            widths[i] = figs[i].getWidth();
+            heights[i] = figs[i].getHeight();
+        }
+
+        List edges = gm.getEdges();
+        int[] sources = new int[edges.size()];
+        int[] targets = new int[edges.size()];
+        int[] outCounts = new int[n];
+        int[] inCounts = new int[n];
+        int m = 0;
+        for (Object edge : edges) {
+            int source = indexOf(gm, gm.getSourcePort(edge), indices);
+            int target = indexOf(gm, gm.getDestPort(edge), indices);
+            if (source < 0 || target < 0 || source == target) {
+                continue;
+            }
+            sources[m] = source;
+            targets[m++] = target;
+            ++outCounts[source];
+            ++inCounts[target];
+        }
+        edgeCount = m;
+        successors = new int[n][];
+        predecessors = new int[n][];
+        for (int i = 0; i < n; ++i) {
+            successors[i] = new int[outCounts[i]];
+            predecessors[i] = new int[inCounts[i]];
+            outCounts[i] = 0;
+            inCounts[i] = 0;
+        }
+        for (int e = 0; e < m; ++e) {
+            int source = sources[e];
+            int target = targets[e];
+            successors[source][outCounts[source]++] = target;
+            predecessors[target][inCounts[target]++] = source;
+        }
+    }
+
+    /** Reply the number of the node owning the given port, or -1. */
+    private static int indexOf(GraphModel gm, Object port,
+            Map<Object, Integer> indices) {
+        if (port == null) {
+            return -1;
+        }
+        Integer index = indices.get(gm.getOwner(port));
+        return index == null ? -1 : index.intValue();
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // accessors
+
+    /** Reply the number of nodes. */
+    public int getNodeCount() {
+        return figs.length;
+    }
+
+    /** Reply the number of edges between different nodes. */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /** Reply the FigNode of the given node. */
+    public FigNode getFigNode(int node) {
+        return figs[node];
+    }
+
+    /** Reply the x coordinate of the given node when the snapshot was taken. */
+    public int getX(int node) {
+        return xs[node];
+    }
+
+    /** Reply the y coordinate of the given node when the snapshot was taken. */
+    public int getY(int node) {
+        return ys[node];
+    }
+
+    /** Reply the width of the given node. */
+    public int getWidth(int node) {
+        return widths[node];
+    }
+
+    /** Reply the height of the given node. */
+    public int getHeight(int node) {
+        return heights[node];
+    }
+
+    /**
+     * Reply the nodes that the given node has edges to, one entry per edge.
+     * The array is shared and must not be modified.
+     */
+    public int[] getSuccessors(int node) {
+        return successors[node];
+    }
+
+    /**
+     * Reply the nodes that the given node has edges from, one entry per
+     * edge. The array is shared and must not be modified.
+     */
+    public int[] getPredecessors(int node) {
+        return predecessors[node];
+    }
+}
@@ -40,7 +40,6 @@ import javax.swing.AbstractAction;
 import javax.swing.Icon;
 
 import org.tigris.gef.graph.presentation.JGraphFrame;
-import org.tigris.gef.persistence.svg.SvgParser;
 import org.tigris.gef.util.Localizer;
 import org.tigris.gef.util.Util;
 
@@ -167,7 +166,8 @@ public class OpenSVGAction extends AbstractAction implements FilenameFilter {
             try {
                 Globals.showStatus("Reading " + path + filename + "...");
                 URL url = Util.fileToURL(new File(path + filename));
-                Diagram diag = SvgParser.SINGLETON.readDiagram(url);
+                Diagram diag = EditorContext.getCurrent().getSvgParser()
+                        .readDiagram(url);
                 Editor ed = new Editor(diag);
                 Globals.showStatus("Read " + path + filename);
                 JGraphFrame jgf = new JGraphFrame(path + filename, ed);
@@ -0,0 +1,1045 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigNode;
+
+/**
+ * An EdgeRouter that finds rectilinear routes around the FigNodes of a
+ * LayerDiagram. Routes run along a sparse orthogonal visibility graph: from
+ * each corner of the routing rectangle of a node, and from each end of the
+ * route, a segment runs out horizontally and vertically until it meets
+ * another node. The points of the graph are where these segments cross, and
+ * an A* search that leans towards the end finds a short route between them,
+ * charging each bend as extra length.
+ * <p>
+ * The graph is never built as a whole. The router keeps the coordinates of
+ * the node sides, and works out which stretches of a line are segments from
+ * the spatial index of the layer the first time a route gets to that line.
+ * Where each segment meets the crossing segments is kept along with it.
+ * When a node moves only the lines that cross or touch it, before or after
+ * the move, are forgotten.
+ * <p>
+ * This is the router that LayerDiagram uses by default.
+ */
+public class OrthogonalEdgeRouter implements EdgeRouter {
+
+    /** The extra length a route is charged for each bend by default. */
+    public static final int DEFAULT_BEND_PENALTY = 4 * Fig.BORDER;
+
+    /**
+     * How much more the estimate of the cost still to come weighs than the
+     * cost so far. This makes a search head for the end rather than try
+     * every way there of the same length, at the price of routes that may
+     * be longer than the shortest.
+     */
+    private static final int ESTIMATE_WEIGHT = 2;
+
+    /** A search gives up after visiting this many points. */
+    private static final int MAX_VISITS = 50000;
+
+    private static final int NONE = 0;
+    private static final int HORIZONTAL = 1;
+    private static final int VERTICAL = 2;
+
+    /** Covers the whole width or height of any diagram. */
+    private static final int FAR = Integer.MAX_VALUE / 4;
+
+    private final LayerDiagram layer;
+
+    private int bendPenalty = DEFAULT_BEND_PENALTY;
+
+    /** The routing rectangle of each node, as last recorded. */
+    private final Map<Fig, Rectangle> obstacles =
+        new IdentityHashMap<Fig, Rectangle>();
+
+    /** The number of node sides on each vertical and horizontal line. */
+    private final TreeMap<Integer, int[]> xSides = new TreeMap<Integer, int[]>();
+    private final TreeMap<Integer, int[]> ySides = new TreeMap<Integer, int[]>();
+
+    /** The keys of xSides and ySides in order, rebuilt after they change. */
+    private int[] xs;
+    private int[] ys;
+
+    /** The segments along each line routed along, by coordinate. */
+    private final TreeMap<Integer, Line> rows = new TreeMap<Integer, Line>();
+    private final TreeMap<Integer, Line> columns = new TreeMap<Integer, Line>();
+
+    /** The lines by position in ys and xs, until the next change. */
+    private Line[] rowsAt;
+    private Line[] columnsAt;
+
+    /**
+     * Counts the changes to the nodes. The points where each segment meets
+     * the segments of crossing lines are kept until the next change.
+     */
+    private int generation;
+
+    /** Temp var used to collect Figs from the spatial index. */
+    private final List<Fig> found = new ArrayList<Fig>();
+
+    /**
+     * Create a router for the FigNodes of the given layer. The router starts
+     * empty, the layer adds its contents when the router is set.
+     * 
+     * @param layer the layer whose nodes are routed around
+     */
+    public OrthogonalEdgeRouter(LayerDiagram layer) {
+        this.layer = layer;
+    }
+
+    /**
+     * Set the extra length a route is charged for each bend. The higher the
+     * penalty the longer the detours taken to save a bend.
+     * 
+     * @param penalty the penalty in pixels
+     * @throws IllegalArgumentException if the penalty is negative
+     */
+    public void setBendPenalty(int penalty) {
+        if (penalty < 0) {
+            throw new IllegalArgumentException(
+                    "The bend penalty cannot be negative");
+        }
+        bendPenalty = penalty;
+    }
+
+    public int getBendPenalty() {
+        return bendPenalty;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // EdgeRouter implementation
+
+    public void add(Fig f) {
+        if (!(f instanceof FigNode)) {
+            return;
+        }
+        if (obstacles.containsKey(f)) {
+            update(f);
+            return;
+        }
+        Rectangle r = f.routingRect();
+        obstacles.put(f, r);
+        addSides(r, 1);
+        forgetLines(r);
+    }
+
+    public void remove(Fig f) {
+        Rectangle r = obstacles.remove(f);
+        if (r != null) {
+            addSides(r, -1);
+            forgetLines(r);
+        }
+    }
+
+    public void update(Fig f) {
+        Rectangle old = obstacles.get(f);
+        if (old == null) {
+            return;
+        }
+        Rectangle r = f.routingRect();
+        if (r.equals(old)) {
+            return;
+        }
+        addSides(old, -1);
+        forgetLines(old);
+        obstacles.put(f, r);
+        addSides(r, 1);
+        forgetLines(r);
+    }
+
+    public void clear() {
+        obstacles.clear();
+        xSides.clear();
+        ySides.clear();
+        xs = null;
+        ys = null;
+        rows.clear();
+        columns.clear();
+        rowsAt = null;
+        columnsAt = null;
+        ++generation;
+    }
+
+    public Point[] route(Point start, int startSector, Point end,
+            int endSector) {
+        if (xs == null) {
+            xs = keys(xSides);
+        }
+        if (ys == null) {
+            ys = keys(ySides);
+        }
+        return new Search(start, startSector, end, endSector).run();
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // internal methods
+
+    private void addSides(Rectangle r, int change) {
+        if (count(xSides, r.x, change) | count(xSides, r.x + r.width, change)) {
+            xs = null;
+        }
+        if (count(ySides, r.y, change) | count(ySides, r.y + r.height, change)) {
+            ys = null;
+        }
+    }
+
+    /**
+     * Change the number of sides on a line, replying true if the line has
+     * been added or removed.
+     */
+    private static boolean count(TreeMap<Integer, int[]> sides, int at,
+            int change) {
+        Integer key = Integer.valueOf(at);
+        int[] count = sides.get(key);
+        if (count == null) {
+            sides.put(key, new int[] {change});
+            return true;
+        }
+        count[0] += change;
+        if (count[0] == 0) {
+            sides.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    /** Forget the segments of every line that crosses or touches r. */
+    private void forgetLines(Rectangle r) {
+        ++generation;
+        rowsAt = null;
+        columnsAt = null;
+        rows.subMap(Integer.valueOf(r.y), Integer.valueOf(r.y + r.height + 1))
+                .clear();
+        columns.subMap(Integer.valueOf(r.x),
+                Integer.valueOf(r.x + r.width + 1)).clear();
+    }
+
+    /**
+     * Get the segments along the horizontal line at y or the vertical line at
+     * x, working them out from the spatial index of the layer if they are not
+     * known.
+     */
+    private Line getLine(int at, boolean horizontal) {
+        Integer key = Integer.valueOf(at);
+        TreeMap<Integer, Line> lines = horizontal ? rows : columns;
+        Line line = lines.get(key);
+        if (line == null) {
+            line = findLine(at, horizontal, null);
+            lines.put(key, line);
+        }
+        return line;
+    }
+
+    /**
+     * Get the segments along the line at the given position in ys or xs.
+     * Until the next change to the nodes the lines are kept by position too,
+     * which saves looking them up by coordinate.
+     */
+    private Line getLineAt(int i, boolean horizontal) {
+        Line[] lines = horizontal ? rowsAt : columnsAt;
+        if (lines == null) {
+            lines = new Line[horizontal ? ys.length : xs.length];
+            if (horizontal) {
+                rowsAt = lines;
+            } else {
+                columnsAt = lines;
+            }
+        }
+        if (lines[i] == null) {
+            lines[i] = getLine(horizontal ? ys[i] : xs[i], horizontal);
+        }
+        return lines[i];
+    }
+
+    /**
+     * Work out the segments along a line from the spatial index of the
+     * layer, leaving out the nodes that are ignored if any are given.
+     */
+    private Line findLine(int at, boolean horizontal,
+            Map<Rectangle, Boolean> ignored) {
+        Rectangle band;
+        if (horizontal) {
+            band = new Rectangle(-FAR, at - Fig.BORDER - 1, 2 * FAR,
+                    2 * Fig.BORDER + 2);
+        } else {
+            band = new Rectangle(at - Fig.BORDER - 1, -FAR,
+                    2 * Fig.BORDER + 2, 2 * FAR);
+        }
+        found.clear();
+        layer.getSpatialIndex().query(band, found);
+        List<Rectangle> crossing = new ArrayList<Rectangle>();
+        int[] corners = new int[8];
+        int cornerCount = 0;
+        for (Fig f : found) {
+            Rectangle r = obstacles.get(f);
+            if (r == null) {
+                continue;
+            }
+            int lo = horizontal ? r.y : r.x;
+            int hi = lo + (horizontal ? r.height : r.width);
+            if (lo < at && at < hi) {
+                if (ignored == null || !ignored.containsKey(r)) {
+                    crossing.add(r);
+                }
+            } else if (lo == at || hi == at) {
+                if (cornerCount + 2 > corners.length) {
+                    int[] grown = new int[corners.length * 2];
+                    System.arraycopy(corners, 0, grown, 0, cornerCount);
+                    corners = grown;
+                }
+                corners[cornerCount++] = horizontal ? r.x : r.y;
+                corners[cornerCount++] = horizontal ? r.x + r.width : r.y
+                        + r.height;
+            }
+        }
+        found.clear();
+        return new Line(crossing, corners, cornerCount, horizontal);
+    }
+
+    /**
+     * Reply where the given segment of a line meets the segments of the
+     * crossing lines along node sides, as positions in xs or ys in order.
+     * Lines through the ends of a route are not included.
+     */
+    private int[] getStops(Line line, int segment, int at, boolean horizontal) {
+        if (line.shared != null && line.shared.segments[segment]) {
+            line = line.shared;
+        }
+        if (line.stops == null || line.stopsGeneration != generation) {
+            line.stops = new int[line.size()][];
+            line.stopsGeneration = generation;
+        }
+        int[] stops = line.stops[segment];
+        if (stops != null) {
+            return stops;
+        }
+        int[] crossing = horizontal ? xs : ys;
+        int low = line.low(segment);
+        int high = line.high(segment);
+        int i = Arrays.binarySearch(crossing, low);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        int[] result = new int[8];
+        int count = 0;
+        for (; i < crossing.length && crossing[i] <= high; ++i) {
+            if (getLineAt(i, !horizontal).find(at) >= 0) {
+                if (count == result.length) {
+                    int[] grown = new int[count * 2];
+                    System.arraycopy(result, 0, grown, 0, count);
+                    result = grown;
+                }
+                result[count++] = i;
+            }
+        }
+        stops = new int[count];
+        System.arraycopy(result, 0, stops, 0, count);
+        line.stops[segment] = stops;
+        return stops;
+    }
+
+    /** Add the routing rectangles that have the point strictly inside. */
+    private void addEnclosing(Point p, Map<Rectangle, Boolean> result) {
+        found.clear();
+        layer.getSpatialIndex().query(
+                new Rectangle(p.x - Fig.BORDER, p.y - Fig.BORDER,
+                        2 * Fig.BORDER, 2 * Fig.BORDER), found);
+        for (Fig f : found) {
+            Rectangle r = obstacles.get(f);
+            if (r != null && r.x < p.x && p.x < r.x + r.width && r.y < p.y
+                    && p.y < r.y + r.height) {
+                result.put(r, Boolean.TRUE);
+            }
+        }
+        found.clear();
+    }
+
+    /** Reply how many of the given coordinates are below the given one. */
+    private static int before(int[] coordinates, int at) {
+        int count = 0;
+        for (int i = 0; i < coordinates.length; ++i) {
+            if (coordinates[i] < at) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static Long key(Step step, int rowCount) {
+        return Long.valueOf(((long) step.xi * rowCount + step.yi) * 3
+                + step.dir);
+    }
+
+    /** Remove the points a route goes straight through. */
+    private static void removeStraights(List<Point> points) {
+        for (int i = points.size() - 2; i > 0; --i) {
+            Point a = points.get(i - 1);
+            Point b = points.get(i);
+            Point c = points.get(i + 1);
+            if ((a.x == b.x && b.x == c.x) || (a.y == b.y && b.y == c.y)) {
+                points.remove(i);
+            }
+        }
+    }
+
+    /** Reply the points where the route ending with the given step bends. */
+    private static Point[] points(Step last, int[] xa, int[] ya) {
+        List<Point> points = new ArrayList<Point>();
+        points.add(new Point(xa[last.xi], ya[last.yi]));
+        for (Step step = last; step.parent != null; step = step.parent) {
+            if (step.parent.parent == null || step.parent.dir != step.dir) {
+                points.add(new Point(xa[step.parent.xi], ya[step.parent.yi]));
+            }
+        }
+        Collections.reverse(points);
+        return points.toArray(new Point[points.size()]);
+    }
+
+    private static int direction(int sector) {
+        switch (sector) {
+        case 1:
+        case -1:
+            return VERTICAL;
+        case 2:
+        case -2:
+            return HORIZONTAL;
+        default:
+            return NONE;
+        }
+    }
+
+    private static int[] keys(TreeMap<Integer, int[]> sides) {
+        int[] keys = new int[sides.size()];
+        int i = 0;
+        for (Integer key : sides.keySet()) {
+            keys[i++] = key.intValue();
+        }
+        return keys;
+    }
+
+    /** Reply a and b, in order and once each, if they are not coordinates. */
+    private static int[] missing(int[] coordinates, int a, int b) {
+        boolean hasA = Arrays.binarySearch(coordinates, a) >= 0;
+        boolean hasB = a == b || Arrays.binarySearch(coordinates, b) >= 0;
+        if (hasA) {
+            return hasB ? new int[0] : new int[] {b};
+        }
+        if (hasB) {
+            return new int[] {a};
+        }
+        return a < b ? new int[] {a, b} : new int[] {b, a};
+    }
+
+    /** Reply the sorted coordinates with the sorted extra ones added. */
+    private static int[] merge(int[] coordinates, int[] extra) {
+        if (extra.length == 0) {
+            return coordinates;
+        }
+        int[] result = new int[coordinates.length + extra.length];
+        int from = 0;
+        for (int i = 0; i < extra.length; ++i) {
+            int at = -Arrays.binarySearch(coordinates, extra[i]) - 1;
+            System.arraycopy(coordinates, from, result, from + i, at - from);
+            result[at + i] = extra[i];
+            from = at;
+        }
+        System.arraycopy(coordinates, from, result, from + extra.length,
+                coordinates.length - from);
+        return result;
+    }
+
+    /**
+     * The segments along one line. These are the stretches of the line that
+     * no routing rectangle crosses and that have a corner of a rectangle, or
+     * an end of the route, on them. A route can run along a segment, and turn
+     * where it meets a segment of a crossing line.
+     */
+    private static class Line {
+
+        /**
+         * The ends of the stretches of the line that no routing rectangle
+         * crosses, in order, two for each.
+         */
+        private final int[] ends;
+
+        /** Whether each stretch is a segment, having a corner on it. */
+        private final boolean[] segments;
+
+        /**
+         * The line kept for all routes that this line of one route adds the
+         * ends of the route to, or null.
+         */
+        private final Line shared;
+
+        /** Where each stretch meets crossing segments, as last worked out. */
+        private int[][] stops;
+
+        private int stopsGeneration;
+
+        Line(List<Rectangle> crossing, int[] corners, int cornerCount,
+                final boolean horizontal) {
+            Rectangle[] rects = crossing.toArray(new Rectangle[crossing
+                    .size()]);
+            Arrays.sort(rects, new Comparator<Rectangle>() {
+                public int compare(Rectangle r1, Rectangle r2) {
+                    int lo1 = horizontal ? r1.x : r1.y;
+                    int lo2 = horizontal ? r2.x : r2.y;
+                    return lo1 < lo2 ? -1 : (lo1 == lo2 ? 0 : 1);
+                }
+            });
+            Arrays.sort(corners, 0, cornerCount);
+            int[] result = new int[2 * rects.length + 2];
+            int count = 0;
+            int from = -FAR;
+            for (int i = 0; i <= rects.length; ++i) {
+                int to = FAR;
+                int next = from;
+                if (i < rects.length) {
+                    Rectangle r = rects[i];
+                    to = horizontal ? r.x : r.y;
+                    next = to + (horizontal ? r.width : r.height);
+                    if (to < from) {
+                        // overlaps the rectangles before it
+                        from = Math.max(from, next);
+                        continue;
+                    }
+                }
+                result[count++] = from;
+                result[count++] = to;
+                from = Math.max(from, next);
+            }
+            ends = new int[count];
+            System.arraycopy(result, 0, ends, 0, count);
+            segments = new boolean[count / 2];
+            for (int i = 0; i < segments.length; ++i) {
+                segments[i] = hasCorner(corners, cornerCount, ends[2 * i],
+                        ends[2 * i + 1]);
+            }
+            shared = null;
+        }
+
+        /** Make the line of one route that has its ends on the given line. */
+        Line(Line shared, int[] routeEnds) {
+            this.shared = shared;
+            ends = shared.ends;
+            segments = shared.segments.clone();
+            for (int i = 0; i < routeEnds.length; ++i) {
+                int stretch = shared.stretch(routeEnds[i]);
+                if (stretch >= 0) {
+                    segments[stretch] = true;
+                }
+            }
+        }
+
+        /** Reply true if any of the sorted corners lies from lo to hi. */
+        private static boolean hasCorner(int[] corners, int count, int lo,
+                int hi) {
+            int i = Arrays.binarySearch(corners, 0, count, lo);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i < count && corners[i] <= hi;
+        }
+
+        /**
+         * Reply the position of the stretch that the given point lies on, or
+         * -1 if it is inside a routing rectangle.
+         */
+        int stretch(int at) {
+            int low = 0;
+            int high = segments.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (ends[2 * mid] <= at) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (high >= 0 && at <= ends[2 * high + 1]) {
+                return high;
+            }
+            return -1;
+        }
+
+        /**
+         * Reply the position of the segment that the given point lies on, or
+         * -1 if there is none.
+         */
+        int find(int at) {
+            int stretch = stretch(at);
+            return stretch >= 0 && segments[stretch] ? stretch : -1;
+        }
+
+        int size() {
+            return segments.length;
+        }
+
+        int low(int segment) {
+            return ends[2 * segment];
+        }
+
+        int high(int segment) {
+            return ends[2 * segment + 1];
+        }
+    }
+
+    /**
+     * The search for one route. It knows the lines through the ends of the
+     * route, and the lines it has looked at so far by position.
+     */
+    private class Search {
+
+        private final Point start;
+
+        private final Point end;
+
+        private final int[] xa;
+
+        private final int[] ya;
+
+        private final int endX;
+
+        private final int endY;
+
+        private final int endDir;
+
+        private final int startDir;
+
+        /**
+         * Nodes that enclose either end, such as a package around a class,
+         * cannot be kept out of.
+         */
+        private final Map<Rectangle, Boolean> ignored =
+            new IdentityHashMap<Rectangle, Boolean>();
+
+        /** The coordinates of the ends that are not in xs and ys. */
+        private final int[] xExtra;
+
+        private final int[] yExtra;
+
+        private final Line[] rowLines;
+
+        private final Line[] columnLines;
+
+        private final PriorityQueue<Step> open = new PriorityQueue<Step>();
+
+        private final Map<Long, Step> reached = new HashMap<Long, Step>();
+
+        private final Step first;
+
+        Search(Point start, int startSector, Point end, int endSector) {
+            this.start = start;
+            this.end = end;
+            xExtra = missing(xs, start.x, end.x);
+            yExtra = missing(ys, start.y, end.y);
+            xa = merge(xs, xExtra);
+            ya = merge(ys, yExtra);
+            endX = Arrays.binarySearch(xa, end.x);
+            endY = Arrays.binarySearch(ya, end.y);
+            endDir = direction(endSector);
+            startDir = direction(startSector);
+            addEnclosing(start, ignored);
+            addEnclosing(end, ignored);
+            rowLines = new Line[ya.length];
+            columnLines = new Line[xa.length];
+            first = new Step(Arrays.binarySearch(xa, start.x), Arrays
+                    .binarySearch(ya, start.y), startDir, 0, null);
+        }
+
+        Point[] run() {
+            first.cost = ESTIMATE_WEIGHT * estimate(first);
+            open.add(first);
+            reached.put(key(first, ya.length), first);
+            int visits = 0;
+            while (!open.isEmpty()) {
+                Step step = open.poll();
+                if (step.done) {
+                    continue;
+                }
+                if (step.xi == endX && step.yi == endY) {
+                    return straighten(points(step, xa, ya));
+                }
+                if (++visits > MAX_VISITS) {
+                    return null;
+                }
+                step.done = true;
+                expand(step);
+            }
+            return null;
+        }
+
+        /**
+         * Take the steps out of a route. Where a route goes one way, turns,
+         * and turns back to go the same way again, it can often turn just
+         * once instead. Steps are taken out while the route gets cheaper.
+         */
+        private Point[] straighten(Point[] route) {
+            List<Point> points = new ArrayList<Point>(Arrays.asList(route));
+            int cost = cost(points);
+            int i = 0;
+            while (i + 3 < points.size()) {
+                List<Point> shorter = unstep(points, i, cost);
+                if (shorter == null) {
+                    ++i;
+                } else {
+                    points = shorter;
+                    cost = cost(points);
+                    // the step may now be next to one that comes before it
+                    i = Math.max(0, i - 2);
+                }
+            }
+            return points.toArray(new Point[points.size()]);
+        }
+
+        /**
+         * Reply the route with the step that starts at the given point taken
+         * out, or null if there is no step there, the route would not be
+         * cheaper without it, or a node is in the way.
+         */
+        private List<Point> unstep(List<Point> points, int i, int cost) {
+            Point a = points.get(i);
+            Point b = points.get(i + 1);
+            Point c = points.get(i + 2);
+            Point d = points.get(i + 3);
+            if (a.y == b.y ? Integer.signum(b.x - a.x) != Integer.signum(d.x
+                    - c.x) : Integer.signum(b.y - a.y) != Integer.signum(d.y
+                    - c.y)) {
+                return null;
+            }
+            Point[] corners = {new Point(d.x, a.y), new Point(a.x, d.y)};
+            for (int j = 0; j < corners.length; ++j) {
+                Point corner = corners[j];
+                List<Point> shorter = new ArrayList<Point>(points);
+                shorter.remove(i + 2);
+                shorter.set(i + 1, corner);
+                removeStraights(shorter);
+                if (cost(shorter) < cost && isFree(a, corner)
+                        && isFree(corner, d)) {
+                    return shorter;
+                }
+            }
+            return null;
+        }
+
+        /** Reply the cost of a route, as the search counts it. */
+        private int cost(List<Point> points) {
+            int cost = 0;
+            int lastDir = startDir;
+            for (int i = 1; i < points.size(); ++i) {
+                Point a = points.get(i - 1);
+                Point b = points.get(i);
+                int dir = a.y == b.y ? HORIZONTAL : VERTICAL;
+                cost += Math.abs(b.x - a.x) + Math.abs(b.y - a.y);
+                if (lastDir != NONE && lastDir != dir) {
+                    cost += bendPenalty;
+                }
+                lastDir = dir;
+            }
+            if (endDir != NONE && lastDir != endDir) {
+                cost += bendPenalty;
+            }
+            return cost;
+        }
+
+        /**
+         * Reply true if no node that is not ignored is in the way from a to b,
+         * both of which are points of the graph on one line.
+         */
+        private boolean isFree(Point a, Point b) {
+            if (a.y == b.y) {
+                Line row = row(Arrays.binarySearch(ya, a.y));
+                int stretch = row.stretch(a.x);
+                return stretch >= 0 && stretch == row.stretch(b.x);
+            }
+            Line column = column(Arrays.binarySearch(xa, a.x));
+            int stretch = column.stretch(a.y);
+            return stretch >= 0 && stretch == column.stretch(b.y);
+        }
+
+        /**
+         * Go from a step to the next point of the graph in each direction,
+         * along the segments it lies on.
+         */
+        private void expand(Step step) {
+            int x = xa[step.xi];
+            int y = ya[step.yi];
+            Line row = row(step.yi);
+            int segment = row.find(x);
+            if (segment >= 0) {
+                int[] stops = ignored.isEmpty() ? getStops(row, segment, y,
+                        true) : null;
+                int next = next(stops, step.xi, row.high(segment), step.yi,
+                        true, true);
+                if (next >= 0) {
+                    reach(step, next, step.yi, HORIZONTAL, xa[next] - x);
+                }
+                next = next(stops, step.xi, row.low(segment), step.yi, true,
+                        false);
+                if (next >= 0) {
+                    reach(step, next, step.yi, HORIZONTAL, x - xa[next]);
+                }
+            }
+            Line column = column(step.xi);
+            segment = column.find(y);
+            if (segment >= 0) {
+                int[] stops = ignored.isEmpty() ? getStops(column, segment,
+                        x, false) : null;
+                int next = next(stops, step.yi, column.high(segment),
+                        step.xi, false, true);
+                if (next >= 0) {
+                    reach(step, step.xi, next, VERTICAL, ya[next] - y);
+                }
+                next = next(stops, step.yi, column.low(segment), step.xi,
+                        false, false);
+                if (next >= 0) {
+                    reach(step, step.xi, next, VERTICAL, y - ya[next]);
+                }
+            }
+        }
+
+        /**
+         * Reply the position of the next point of the graph along a segment,
+         * going from a position up or down to a limit, or -1 if there is
+         * none. Without the stops of the segment each crossing line is
+         * looked at in turn.
+         */
+        private int next(int[] stops, int from, int limit, int along,
+                boolean horizontal, boolean up) {
+            int[] coordinates = horizontal ? xa : ya;
+            int at = horizontal ? ya[along] : xa[along];
+            int step = up ? 1 : -1;
+            if (stops == null) {
+                for (int i = from + step; i >= 0 && i < coordinates.length
+                        && (up ? coordinates[i] <= limit
+                                : coordinates[i] >= limit); i += step) {
+                    if ((horizontal ? column(i) : row(i)).find(at) >= 0) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            int[] sides = horizontal ? xs : ys;
+            int coordinate = coordinates[from];
+            // the first stop beyond the coordinate
+            int low = 0;
+            int high = stops.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (up ? sides[stops[mid]] <= coordinate
+                        : sides[stops[mid]] < coordinate) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            int s = up ? low : high;
+            int result = s >= 0 && s < stops.length ? position(stops[s],
+                    horizontal) : -1;
+            // the lines through the ends of the route have no stops
+            result = nearer(result, from, horizontal ? first.xi : first.yi,
+                    limit, at, horizontal, up);
+            return nearer(result, from, horizontal ? endX : endY, limit, at,
+                    horizontal, up);
+        }
+
+        /**
+         * Reply the given position of a line if it is beyond the position
+         * gone from, within the limit, nearer than the given result and has a
+         * point of the graph, or else the given result.
+         */
+        private int nearer(int result, int from, int i, int limit, int at,
+                boolean horizontal, boolean up) {
+            int coordinate = horizontal ? xa[i] : ya[i];
+            if (up ? i <= from || coordinate > limit
+                    || (result >= 0 && i >= result) : i >= from
+                    || coordinate < limit || (result >= 0 && i <= result)) {
+                return result;
+            }
+            if ((horizontal ? column(i) : row(i)).find(at) >= 0) {
+                return i;
+            }
+            return result;
+        }
+
+        /** Record the point reached from a step, unless it was reached cheaper. */
+        private void reach(Step step, int xi, int yi, int dir, int length) {
+            int g = step.g + length;
+            if (step.dir != NONE && step.dir != dir) {
+                g += bendPenalty;
+            }
+            if (xi == endX && yi == endY && endDir != NONE && endDir != dir) {
+                g += bendPenalty;
+            }
+            Step next = new Step(xi, yi, dir, g, step);
+            Long key = key(next, ya.length);
+            Step previous = reached.get(key);
+            if (previous != null) {
+                if (previous.g <= g) {
+                    return;
+                }
+                previous.done = true;
+            }
+            next.cost = g + ESTIMATE_WEIGHT * estimate(next);
+            reached.put(key, next);
+            open.add(next);
+        }
+
+        /**
+         * Estimate the cost still to come from a step, never more than it can
+         * be: the distance left and a bend if one is still needed.
+         */
+        private int estimate(Step step) {
+            int dx = Math.abs(xa[endX] - xa[step.xi]);
+            int dy = Math.abs(ya[endY] - ya[step.yi]);
+            boolean bend = (dx != 0 && dy != 0)
+                    || (dx == 0 && dy != 0 && step.dir == HORIZONTAL)
+                    || (dy == 0 && dx != 0 && step.dir == VERTICAL);
+            return dx + dy + (bend ? bendPenalty : 0);
+        }
+
+        private Line row(int yi) {
+            if (rowLines[yi] == null) {
+                rowLines[yi] = line(yi, true);
+            }
+            return rowLines[yi];
+        }
+
+        private Line column(int xi) {
+            if (columnLines[xi] == null) {
+                columnLines[xi] = line(xi, false);
+            }
+            return columnLines[xi];
+        }
+
+        /**
+         * Get the line at a position in ya or xa. The lines through an end of
+         * the route add that end to the line kept for all routes, and the
+         * lines through a node that is ignored are worked out for this route
+         * alone.
+         */
+        private Line line(int i, boolean horizontal) {
+            int at = horizontal ? ya[i] : xa[i];
+            boolean hasEnd = horizontal ? at == start.y || at == end.y
+                    : at == start.x || at == end.x;
+            Line line;
+            if (crossesIgnored(at, horizontal)) {
+                line = findLine(at, horizontal, ignored);
+            } else if (hasEnd) {
+                line = getLine(at, horizontal);
+            } else {
+                return getLineAt(i - before(horizontal ? yExtra : xExtra, at),
+                        horizontal);
+            }
+            return hasEnd ? new Line(line, endsOn(at, horizontal)) : line;
+        }
+
+        /** Reply the position in xa or ya of a position in xs or ys. */
+        private int position(int i, boolean horizontal) {
+            return i + (horizontal ? before(xExtra, xs[i]) : before(yExtra,
+                    ys[i]));
+        }
+
+        /** Reply true if the line at the given coordinate crosses an ignored node. */
+        private boolean crossesIgnored(int at, boolean horizontal) {
+            for (Rectangle r : ignored.keySet()) {
+                int lo = horizontal ? r.y : r.x;
+                int hi = lo + (horizontal ? r.height : r.width);
+                if (lo < at && at < hi) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Reply where the ends of the route that lie on a line are along it. */
+        int[] endsOn(int at, boolean horizontal) {
+            boolean onStart = at == (horizontal ? start.y : start.x);
+            boolean onEnd = at == (horizontal ? end.y : end.x);
+            int[] result = new int[(onStart ? 1 : 0) + (onEnd ? 1 : 0)];
+            int n = 0;
+            if (onStart) {
+                result[n++] = horizontal ? start.x : start.y;
+            }
+            if (onEnd) {
+                result[n++] = horizontal ? end.x : end.y;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A point of the search, reached travelling in a direction.
+     */
+    private static class Step implements Comparable<Step> {
+
+        private final int xi;
+
+        private final int yi;
+
+        private final int dir;
+
+        /** The cost of the route so far. */
+        private final int g;
+
+        /** The cost so far plus the estimate of the cost to come. */
+        private int cost;
+
+        private final Step parent;
+
+        /** True once expanded, or once a cheaper way here was found. */
+        private boolean done;
+
+        Step(int xi, int yi, int dir, int g, Step parent) {
+            this.xi = xi;
+            this.yi = yi;
+            this.dir = dir;
+            this.g = g;
+            this.parent = parent;
+        }
+
+        public int compareTo(Step other) {
+            if (cost != other.cost) {
+                return cost < other.cost ? -1 : 1;
+            }
+            // prefer the step further along
+            return other.g < g ? -1 : (other.g == g ? 0 : 1);
+        }
+    }
+}
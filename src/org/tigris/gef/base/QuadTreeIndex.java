@@ -0,0 +1,277 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+
+package org.tigris.gef.base;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tigris.gef.presentation.Fig;
+
+/**
+ * A SpatialIndex implemented as a loose quadtree. Each Fig is stored in the
+ * smallest cell that contains the center of its bounding box and is at least
+ * as large as the Fig. Every cell is searched as if it were twice its size so
+ * a Fig never needs to be stored in more than one cell. Cells are only split
+ * into quadrants when they fill up, so sparse diagrams stay shallow.
+ * <p>
+ * Figs whose center lies outside the area covered by the tree are kept in
+ * the root cell, which is always searched.
+ * <p>
+ * This is the index that LayerDiagram uses by default.
+ */
+public class QuadTreeIndex implements SpatialIndex {
+
+    /** The number of Figs a cell holds before it is split into quadrants. */
+    private static final int CELL_CAPACITY = 16;
+
+    /** Cells are never split into quadrants smaller than this. */
+    private static final int MIN_CELL_SIZE = 16;
+
+    /** The root cell covers -ROOT_EXTENT to +ROOT_EXTENT in x and y. */
+    private static final int ROOT_EXTENT = 1 << 24;
+
+    private final Cell root = new Cell(-ROOT_EXTENT, -ROOT_EXTENT,
+            2 * ROOT_EXTENT);
+
+    /** The entry of each Fig in the tree, used for updates and removal. */
+    private final Map<Fig, Entry> entries = new IdentityHashMap<Fig, Entry>();
+
+    /** Temp var used to read bounds without doing memory allocation. */
+    private final Rectangle bounds = new Rectangle();
+
+    public void add(Fig f) {
+        Entry entry = entries.get(f);
+        if (entry != null) {
+            update(f);
+            return;
+        }
+        entry = new Entry(f);
+        entry.setBounds(f.getBounds(bounds));
+        entries.put(f, entry);
+        insert(entry);
+    }
+
+    public void remove(Fig f) {
+        Entry entry = entries.remove(f);
+        if (entry != null) {
+            entry.cell.entries.remove(entry);
+        }
+    }
+
+    public Rectangle update(Fig f) {
+        Entry entry = entries.get(f);
+        if (entry == null) {
+            return null;
+        }
+        f.getBounds(bounds);
+        if (entry.hasBounds(bounds)) {
+            return null;
+        }
+        Rectangle oldBounds = new Rectangle(entry.x, entry.y, entry.w, entry.h);
+        entry.cell.entries.remove(entry);
+        entry.setBounds(bounds);
+        insert(entry);
+        return oldBounds;
+    }
+
+    public void clear() {
+        entries.clear();
+        root.entries.clear();
+        root.quadrants = null;
+    }
+
+    public void query(Rectangle r, Collection<Fig> result) {
+        query(root, r, result);
+    }
+
+    /**
+     * Find how many Figs are in the index.
+     * 
+     * @return the number of Figs
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void query(Cell cell, Rectangle r, Collection<Fig> result) {
+        List<Entry> cellEntries = cell.entries;
+        int count = cellEntries.size();
+        for (int i = 0; i < count; ++i) {
+            Entry entry = cellEntries.get(i);
+            if (intersects(r, entry.x, entry.y, entry.w, entry.h)) {
+                result.add(entry.fig);
+            }
+        }
+        if (cell.quadrants != null) {
+            for (int i = 0; i < 4; ++i) {
+                Cell quadrant = cell.quadrants[i];
+                int half = quadrant.size / 2;
+                if (intersects(r, quadrant.x - half, quadrant.y - half,
+                        quadrant.size * 2, quadrant.size * 2)) {
+                    query(quadrant, r, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Place the entry in the deepest cell that will take it, splitting cells
+     * as they become full.
+     */
+    private void insert(Entry entry) {
+        Cell cell = root;
+        while (true) {
+            if (cell.quadrants == null) {
+                if (cell.entries.size() < CELL_CAPACITY
+                        || cell.size / 2 < MIN_CELL_SIZE) {
+                    break;
+                }
+                split(cell);
+            }
+            Cell quadrant = cell.quadrantFor(entry);
+            if (quadrant == null) {
+                break;
+            }
+            cell = quadrant;
+        }
+        cell.entries.add(entry);
+        entry.cell = cell;
+    }
+
+    /**
+     * Divide a full cell into quadrants and push down the entries that fit in
+     * one of them.
+     */
+    private void split(Cell cell) {
+        int half = cell.size / 2;
+        cell.quadrants = new Cell[] { new Cell(cell.x, cell.y, half),
+                new Cell(cell.x + half, cell.y, half),
+                new Cell(cell.x, cell.y + half, half),
+                new Cell(cell.x + half, cell.y + half, half) };
+        List<Entry> oldEntries = cell.entries;
+        cell.entries = new ArrayList<Entry>();
+        int count = oldEntries.size();
+        for (int i = 0; i < count; ++i) {
+            Entry entry = oldEntries.get(i);
+            Cell quadrant = cell.quadrantFor(entry);
+            if (quadrant == null) {
+                quadrant = cell;
+            }
+            quadrant.entries.add(entry);
+            entry.cell = quadrant;
+        }
+    }
+
+    /**
+     * Test for intersection in the same way as Fig.intersects(Rectangle). Long
+     * arithmetic is used so that huge rectangles do not overflow.
+     */
+    private static boolean intersects(Rectangle r, long x, long y, long w,
+            long h) {
+        return !(((long) r.x + r.width < x) || ((long) r.y + r.height < y)
+                || (r.x > x + w) || (r.y > y + h));
+    }
+
+    /** A square area of the tree and the entries stored at that level. */
+    private static final class Cell {
+
+        final int x;
+
+        final int y;
+
+        final int size;
+
+        List<Entry> entries = new ArrayList<Entry>();
+
+        /** The four quadrants of this cell, or null if not yet split. */
+        Cell[] quadrants;
+
+        Cell(int x, int y, int size) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+
+        /**
+         * Reply the quadrant that the entry belongs in, or null if the entry
+         * is too large for a quadrant or is centered outside this cell.
+         */
+        Cell quadrantFor(Entry entry) {
+            int half = size / 2;
+            if (entry.w > half || entry.h > half) {
+                return null;
+            }
+            long centerX = (long) entry.x + entry.w / 2;
+            long centerY = (long) entry.y + entry.h / 2;
+            if (centerX < x || centerY < y || centerX >= (long) x + size
+                    || centerY >= (long) y + size) {
+                return null;
+            }
+            int index = 0;
+            if (centerX >= x + half) {
+                index += 1;
+            }
+            if (centerY >= y + half) {
+                index += 2;
+            }
+            return quadrants[index];
+        }
+    }
+
+    /** The bounds of one Fig as recorded in the tree. */
+    private static final class Entry {
+
+        final Fig fig;
+
+        int x;
+
+        int y;
+
+        int w;
+
+        int h;
+
+        Cell cell;
+
+        Entry(Fig fig) {
+            this.fig = fig;
+        }
+
+        void setBounds(Rectangle r) {
+            x = r.x;
+            y = r.y;
+            w = r.width;
+            h = r.height;
+        }
+
+        boolean hasBounds(Rectangle r) {
+            return x == r.x && y == r.y && w == r.width && h == r.height;
+        }
+    }
+}
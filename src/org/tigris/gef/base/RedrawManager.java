@@ -0,0 +1,149 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+
+package org.tigris.gef.base;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+/**
+ * Collects the areas of an Editor that need to be redrawn and repaints them
+ * together once the events currently being processed have been handled.
+ * Overlapping or nearby areas are merged, but areas that are far apart are
+ * repainted separately, so that changing two Figs in opposite corners of a
+ * large diagram does not repaint everything in between. Swing's own
+ * RepaintManager would merge them all into a single rectangle.
+ * <p>
+ * All areas are in the scaled co-ordinates of the Editor's JComponent.
+ * 
+ * @see Editor#damaged(int, int, int, int)
+ */
+public class RedrawManager implements Runnable {
+
+    /**
+     * The most separate areas kept. Beyond this they are all merged into one
+     * as the cost of many small repaints outweighs the area saved.
+     */
+    private static final int MAX_AREAS = 16;
+
+    private final Editor editor;
+
+    /** The areas waiting to be repainted. */
+    private final List<Rectangle> areas = new ArrayList<Rectangle>();
+
+    /** True if a repaint has been requested but has not yet run. */
+    private boolean scheduled = false;
+
+    public RedrawManager(Editor editor) {
+        this.editor = editor;
+    }
+
+    /**
+     * Record an area that needs to be redrawn. The repaint happens later on
+     * the event dispatch thread, this may be called from any thread.
+     */
+    public synchronized void add(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Rectangle area = new Rectangle(x, y, width, height);
+        boolean merged;
+        do {
+            merged = false;
+            for (int i = areas.size() - 1; i >= 0; --i) {
+                Rectangle other = areas.get(i);
+                if (shouldMerge(area, other)) {
+                    area.add(other);
+                    areas.remove(i);
+                    merged = true;
+                }
+            }
+        } while (merged);
+        areas.add(area);
+
+        if (areas.size() > MAX_AREAS) {
+            Rectangle all = areas.get(0);
+            for (int i = 1; i < areas.size(); ++i) {
+                all.add(areas.get(i));
+            }
+            areas.clear();
+            areas.add(all);
+        }
+
+        if (!scheduled) {
+            scheduled = true;
+            SwingUtilities.invokeLater(this);
+        }
+    }
+
+    /**
+     * Reply the areas waiting to be repainted. This is a copy, so it will not
+     * change as more damage is recorded.
+     */
+    public synchronized List<Rectangle> getAreas() {
+        List<Rectangle> copy = new ArrayList<Rectangle>(areas.size());
+        for (Rectangle area : areas) {
+            copy.add(new Rectangle(area));
+        }
+        return copy;
+    }
+
+    /** Repaint all recorded areas now. Must be called on the event thread. */
+    public void run() {
+        // edges rerouted now add their damage to this repaint
+        editor.getSelectionManager().rerouteEdges();
+        List<Rectangle> toRepaint;
+        synchronized (this) {
+            toRepaint = new ArrayList<Rectangle>(areas);
+            areas.clear();
+            scheduled = false;
+        }
+        JComponent component = editor.getJComponent();
+        if (component == null) {
+            return;
+        }
+        for (Rectangle area : toRepaint) {
+            component.paintImmediately(area);
+        }
+    }
+
+    /**
+     * Two areas are merged if they overlap or if repainting the rectangle
+     * enclosing them both costs little more than repainting them separately.
+     */
+    private static boolean shouldMerge(Rectangle a, Rectangle b) {
+        if (a.intersects(b)) {
+            return true;
+        }
+        Rectangle union = a.union(b);
+        long unionArea = (long) union.width * union.height;
+        long separateArea = (long) a.width * a.height + (long) b.width
+                * b.height;
+        return unionArea <= separateArea + separateArea / 2;
+    }
+}
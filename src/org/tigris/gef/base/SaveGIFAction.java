@@ -5,9 +5,13 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.awt.image.FilteredImageSource;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.FutureTask;
 
 import javax.swing.Icon;
 
@@ -35,6 +39,9 @@ public class SaveGIFAction extends SaveGraphicsAction {
      */
     public static final int TRANSPARENT_BG_COLOR = 0x00efefef;
 
+    /** The number of rows of the image rendered by each concurrent task. */
+    private static final int TILE_HEIGHT = 256;
+
     /**
      * Creates a new SaveGIFAction
      * 
@@ -92,17 +99,24 @@ public class SaveGIFAction extends SaveGraphicsAction {
 
         // Create an offscreen image and render the diagram into it.
 
-        Image i = ce.createImage(drawingArea.width * scale, drawingArea.height
-                * scale);
-        Graphics g = i.getGraphics();
-        if (g instanceof Graphics2D) {
-            ((Graphics2D) g).scale(scale, scale);
+        Image i;
+        if (executor != null) {
+            i = renderConcurrently(ce, drawingArea);
+        } else {
+            i = ce.createImage(drawingArea.width * scale, drawingArea.height
+                    * scale);
+            Graphics g = i.getGraphics();
+            if (g instanceof Graphics2D) {
+                ((Graphics2D) g).scale(scale, scale);
+            }
+            g.setColor(new Color(TRANSPARENT_BG_COLOR));
+            g.fillRect(0, 0, drawingArea.width * scale, drawingArea.height
+                    * scale);
+            // a little extra won't hurt
+            g.translate(-drawingArea.x, -drawingArea.y);
+            ce.print(g);
+            g.dispose();
         }
-        g.setColor(new Color(TRANSPARENT_BG_COLOR));
-        g.fillRect(0, 0, drawingArea.width * scale, drawingArea.height * scale);
-        // a little extra won't hurt
-        g.translate(-drawingArea.x, -drawingArea.y);
-        ce.print(g);
 
         // Tell the Acme GIF encoder to save the image as a GIF into the
         // output stream. Use the TransFilter to make the background
@@ -118,10 +132,33 @@ public class SaveGIFAction extends SaveGraphicsAction {
             e.printStackTrace();
         }
 
-        g.dispose();
         // force garbage collection, to prevent out of memory exceptions
-        g = null;
         i = null;
     }
 
+    /**
+     * Render the diagram into an image a strip of TILE_HEIGHT rows at a time,
+     * rendering the strips concurrently on the executor.
+     */
+    private Image renderConcurrently(Editor ce, Rectangle drawingArea)
+            throws IOException {
+        int width = drawingArea.width * scale;
+        int height = drawingArea.height * scale;
+        BufferedImage i = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        TileRenderer renderer = new TileRenderer(ce, drawingArea, scale,
+                new Color(TRANSPARENT_BG_COLOR));
+        List<FutureTask<BufferedImage>> strips =
+            new ArrayList<FutureTask<BufferedImage>>();
+        for (int top = 0; top < height; top += TILE_HEIGHT) {
+            Rectangle strip = new Rectangle(0, top, width, Math.min(
+                    TILE_HEIGHT, height - top));
+            strips.add(renderer.fork(i, 0, top, strip, executor));
+        }
+        for (FutureTask<BufferedImage> strip : strips) {
+            TileRenderer.join(strip);
+        }
+        return i;
+    }
+
 } /* end class SaveGIFAction */
@@ -31,6 +31,7 @@ import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.Executor;
 
 import javax.swing.AbstractAction;
 import javax.swing.Icon;
@@ -50,6 +51,7 @@ public abstract class SaveGraphicsAction extends AbstractAction {
     private static Log LOG = LogFactory.getLog(LayerDiagram.class);
     protected int scale = 1;
     protected OutputStream outputStream;
+    protected transient Executor executor;
 
     protected abstract void saveGraphics(OutputStream s, Editor ce,
             Rectangle drawingArea) throws IOException;
@@ -125,6 +127,23 @@ public abstract class SaveGraphicsAction extends AbstractAction {
         scale = s;
     }
 
+    /**
+     * Set the executor that pixel-based formats render parts of the image on
+     * concurrently. Figs are then painted from several threads at once, so
+     * their paint() methods must not change their own state. With no executor
+     * (the default) the image is rendered on the calling thread.
+     * 
+     * @param e
+     *                the executor, or null
+     */
+    public void setExecutor(Executor e) {
+        executor = e;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
     /**
      * Write the diagram contained by the current editor into an OutputStream as
      * a GIF image. The "outputStream" argument must have been previously set
@@ -10,10 +10,13 @@ import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.FutureTask;
 
 import javax.imageio.ImageIO;
 import javax.swing.Icon;
 
+import org.tigris.gef.persistence.export.PngEncoder;
 import org.tigris.gef.util.Localizer;
 
 /**
@@ -32,6 +35,15 @@ public class SavePNGAction extends SaveGraphicsAction {
      */
     public static final int TRANSPARENT_BG_COLOR = 0x00efefef;
 
+    /** The number of rows of the image rendered at a time by default. */
+    public static final int DEFAULT_TILE_HEIGHT = 256;
+
+    /**
+     * The number of rows of the image rendered at a time, or 0 to render the
+     * whole image at once.
+     */
+    private int tileHeight = DEFAULT_TILE_HEIGHT;
+
     /**
      * Creates a new SavePNGAction
      * 
@@ -80,12 +92,36 @@ public class SavePNGAction extends SaveGraphicsAction {
         super(localize ? Localizer.localize("GefBase", name) : name, icon);
     }
 
+    /**
+     * Set the number of rows of the image to render at a time. The diagram is
+     * rendered in strips of this many rows, each of which is encoded before
+     * the next is rendered, so only one strip of the image is in memory at a
+     * time. With 0 the whole image is rendered at once and then encoded.
+     * 
+     * @param rows the number of rows in a strip, or 0
+     */
+    public void setTileHeight(int rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException(
+                    "The tile height must not be negative");
+        }
+        tileHeight = rows;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
     /**
      * Write the diagram contained by the current editor into an OutputStream as
      * a PNG image.
      */
     protected void saveGraphics(OutputStream s, Editor ce, Rectangle drawingArea)
             throws IOException {
+        if (tileHeight > 0) {
+            saveTiled(s, ce, drawingArea);
+            return;
+        }
 
         // Create an offscreen image and render the diagram into it.
         Image i = new BufferedImage(drawingArea.width * scale,
@@ -108,4 +144,44 @@ public class SavePNGAction extends SaveGraphicsAction {
         g = null;
         i = null;
     }
+
+    /**
+     * Write the diagram as a PNG image, rendering a strip of tileHeight rows
+     * at a time. Each strip is clipped to its part of the diagram, so only the
+     * Figs that reach into it are painted. With an executor the strips just
+     * below the one being encoded are rendered concurrently.
+     */
+    private void saveTiled(OutputStream s, Editor ce, Rectangle drawingArea)
+            throws IOException {
+        int width = drawingArea.width * scale;
+        int height = drawingArea.height * scale;
+        int stripHeight = Math.min(tileHeight, height);
+        TileRenderer renderer = new TileRenderer(ce, drawingArea, scale,
+                new Color(TRANSPARENT_BG_COLOR, true));
+        PngEncoder encoder = new PngEncoder(s, width, height);
+        // Bound the number of strips in memory at once
+        int window = executor == null ? 1 : Runtime.getRuntime()
+                .availableProcessors() + 1;
+        LinkedList<FutureTask<BufferedImage>> pending =
+            new LinkedList<FutureTask<BufferedImage>>();
+        LinkedList<BufferedImage> free = new LinkedList<BufferedImage>();
+        int top = 0;
+        for (int written = 0; written < height;) {
+            while (top < height && pending.size() < window) {
+                BufferedImage strip = free.isEmpty() ? new BufferedImage(
+                        width, stripHeight, BufferedImage.TYPE_INT_ARGB)
+                        : free.removeFirst();
+                int rows = Math.min(stripHeight, height - top);
+                pending.addLast(renderer.fork(strip, 0, 0, new Rectangle(0,
+                        top, width, rows), executor));
+                top += rows;
+            }
+            BufferedImage strip = TileRenderer.join(pending.removeFirst());
+            int rows = Math.min(stripHeight, height - written);
+            encoder.writeRows(strip, 0, rows);
+            written += rows;
+            free.addLast(strip);
+        }
+        encoder.finish();
+    }
 }
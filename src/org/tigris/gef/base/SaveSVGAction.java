@@ -33,7 +33,7 @@ import java.io.OutputStream;
 
 import javax.swing.Icon;
 
-import org.tigris.gef.persistence.SVGWriter;
+import org.tigris.gef.persistence.export.SvgStreamWriter;
 import org.tigris.gef.util.Localizer;
 
 public class SaveSVGAction extends SaveGraphicsAction {
@@ -90,15 +90,11 @@ public class SaveSVGAction extends SaveGraphicsAction {
 
     protected void saveGraphics(OutputStream s, Editor ce, Rectangle drawingArea)
             throws IOException {
-        SVGWriter writer = null;
-        try {
-            writer = new SVGWriter(s, drawingArea);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        if (writer != null) {
-            ce.print(writer);
-            writer.dispose();
+        SvgStreamWriter writer = new SvgStreamWriter(s, drawingArea);
+        ce.print(writer);
+        writer.dispose();
+        if (writer.checkError()) {
+            throw new IOException("Failed to write the SVG");
         }
     }
 
@@ -35,6 +35,8 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -43,9 +45,12 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import javax.swing.event.EventListenerList;
@@ -83,6 +88,33 @@ public class SelectionManager implements Serializable, KeyListener,
      * The collection of Selection instances
      */
     private List<Selection> selections = new ArrayList<Selection>();
+
+    /**
+     * The Selection of each selected Fig, keyed by identity.
+     */
+    private Map<Fig, Selection> figSelections = new IdentityHashMap<Fig, Selection>();
+
+    /**
+     * Unmodifiable snapshots of the selections and of the selected Figs,
+     * rebuilt when first asked for after a change.
+     */
+    private transient List<Selection> selectionsView;
+    private transient List<Fig> figsView;
+
+    /**
+     * The selections bucketed by position for findSelectionAt, rebuilt when
+     * first needed after a selection has changed or a selected Fig has moved.
+     */
+    private transient SelectionGrid selectionGrid;
+
+    /** Tells this manager when a selected Fig has moved. */
+    private PropertyChangeListener boundsListener = new BoundsListener();
+
+    /**
+     * Below this many selections findSelectionAt just tests each of them.
+     */
+    private static final int GRID_THRESHOLD = 32;
+
     private Editor editor;
     private EventListenerList _listeners = new EventListenerList();
     private DragMemento dragMemento;
@@ -108,6 +140,11 @@ public class SelectionManager implements Serializable, KeyListener,
      * Other Figs that are being dragged (ie primitives)
      */
     private List<Fig> _draggingOthers;
+    /**
+     * Edges whose route is out of date. They are rerouted once, before the
+     * next repaint, however many drag events moved their nodes.
+     */
+    private Set<FigEdge> _dirtyEdges = new LinkedHashSet<FigEdge>();
 
     // //////////////////////////////////////////////////////////////
     // constructor
@@ -123,11 +160,13 @@ public class SelectionManager implements Serializable, KeyListener,
      */
     protected void addSelection(Selection s) {
         selections.add(s);
+        indexSelection(s);
+        selectionsChanged();
     }
 
     protected void addFig(Fig f) {
         if (f.isSelectable()) {
-            selections.add(makeSelectionFor(f));
+            addSelection(makeSelectionFor(f));
         }
     }
 
@@ -149,20 +188,66 @@ public class SelectionManager implements Serializable, KeyListener,
     }
 
     protected void removeAllElements() {
+        for (Selection s : selections) {
+            s.getContent().removePropertyChangeListener(boundsListener);
+        }
         selections.clear();
+        figSelections.clear();
+        selectionsChanged();
     }
 
     protected void removeSelection(Selection s) {
-        if (s != null) {
-            selections.remove(s);
+        if (s != null && selections.remove(s)) {
+            unindexSelection(s);
+            selectionsChanged();
         }
     }
 
     protected void removeFig(Fig f) {
-        Selection s = findSelectionFor(f);
-        if (s != null) {
-            selections.remove(s);
+        removeSelection(findSelectionFor(f));
+    }
+
+    /** Make s the Selection of its Fig, unless the Fig already has one. */
+    private void indexSelection(Selection s) {
+        Fig f = s.getContent();
+        if (!figSelections.containsKey(f)) {
+            figSelections.put(f, s);
+        }
+        f.addPropertyChangeListener(boundsListener);
+    }
+
+    private void unindexSelection(Selection s) {
+        Fig f = s.getContent();
+        f.removePropertyChangeListener(boundsListener);
+        if (figSelections.get(f) == s) {
+            figSelections.remove(f);
+            // A Fig only has another Selection if it was added twice
+            if (selections.size() > figSelections.size()) {
+                for (Selection other : selections) {
+                    if (other.getContent() == f) {
+                        figSelections.put(f, other);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Replace all the selections, as undo does. */
+    private void setSelections(ArrayList sels) {
+        removeAllElements();
+        selections = sels;
+        for (Selection s : selections) {
+            indexSelection(s);
         }
+        selectionsChanged();
+    }
+
+    /** Discard everything derived from the list of selections. */
+    private void selectionsChanged() {
+        selectionsView = null;
+        figsView = null;
+        selectionGrid = null;
     }
 
     protected void allDamaged() {
@@ -283,25 +368,41 @@ public class SelectionManager implements Serializable, KeyListener,
     }
 
     public Selection findSelectionFor(Fig f) {
-        // TODO: Why we cannot operate on the list itself?
-        List<Selection> sels = new ArrayList<Selection>(getSelections());
-        for (Selection sel : sels) {
-            if (sel.contains(f)) {
-                return sel;
-            }
-        }
-        return null;
+        return figSelections.get(f);
     }
 
+    /**
+     * Reply the first selection that contains the given point. Once there
+     * are many selections only those whose bounds are near the point are
+     * tested.
+     */
     public Selection findSelectionAt(int x, int y) {
-        // TODO: Why we cannot operate on the list itself?
-        List<Selection> sels = new ArrayList<Selection>(getSelections());
-        for (Selection sel : sels) {
-            if (sel.contains(x, y)) {
-                return sel;
+        int size = selections.size();
+        if (size < GRID_THRESHOLD) {
+            for (int i = 0; i < size; ++i) {
+                Selection sel = selections.get(i);
+                if (sel.contains(x, y)) {
+                    return sel;
+                }
             }
+            return null;
+        }
+        if (selectionGrid == null) {
+            selectionGrid = new SelectionGrid(selections);
+        }
+        return selectionGrid.find(x, y);
+    }
+
+    /**
+     * The bounds of the given top level Fig may have changed. If it is
+     * selected, where the selections are is worked out again when next
+     * needed. LayerDiagram calls this for every change of bounds, including
+     * those that fire no "bounds" property change.
+     */
+    void figBoundsChanged(Fig f) {
+        if (selectionGrid != null && figSelections.containsKey(f)) {
+            selectionGrid = null;
         }
-        return null;
     }
 
     /**
@@ -347,9 +448,16 @@ public class SelectionManager implements Serializable, KeyListener,
         return new Vector(selections);
     }
 
+    /**
+     * Reply an unmodifiable snapshot of the selections. The same snapshot is
+     * returned until the selections change.
+     */
     public List<Selection> getSelections() {
-        return Collections.unmodifiableList(
-                new ArrayList<Selection>(selections));
+        if (selectionsView == null) {
+            selectionsView = Collections.unmodifiableList(
+                    new ArrayList<Selection>(selections));
+        }
+        return selectionsView;
     }
 
     /**
@@ -357,26 +465,23 @@ public class SelectionManager implements Serializable, KeyListener,
      * @deprecated in 0.13 use getSelectedFigs
      */
     public Vector<Fig> getFigs() {
-        Vector<Fig> figs = new Vector<Fig>(selections.size());
-        int selCount = selections.size();
-        for (int i = 0; i < selCount; ++i) {
-            figs.addElement(((Selection) selections.get(i)).getContent());
-        }
-
-        return figs;
+        return new Vector<Fig>(getSelectedFigs());
     }
 
     /**
-     * Reply the collection of all selected Fig's
+     * Reply an unmodifiable snapshot of all selected Fig's. The same snapshot
+     * is returned until the selections change.
      */
     public List<Fig> getSelectedFigs() {
-        List<Fig> figs = new ArrayList<Fig>(selections.size());
-        int selCount = selections.size();
-        for (int i = 0; i < selCount; ++i) {
-            figs.add(((Selection) selections.get(i)).getContent());
+        if (figsView == null) {
+            List<Fig> figs = new ArrayList<Fig>(selections.size());
+            int selCount = selections.size();
+            for (int i = 0; i < selCount; ++i) {
+                figs.add(((Selection) selections.get(i)).getContent());
+            }
+            figsView = Collections.unmodifiableList(figs);
         }
-
-        return figs;
+        return figsView;
     }
 
     /**
@@ -534,20 +639,20 @@ public class SelectionManager implements Serializable, KeyListener,
     // }
 
     /**
-     * When Manager selections are sent to back, each of them is sent to back.
+     * When Manager selections are sent to back, they are all sent to back
+     * together, keeping their order relative to one another.
      */
     public void reorder(int func, Layer lay) {
-        for (Selection sel : selections) {
-            sel.reorder(func, lay);
+        if (selections.size() == 1) {
+            selections.get(0).reorder(func, lay);
+        } else {
+            lay.reorderAll(getFigs(), func);
         }
     }
 
     /** When Manager selections are moved, each of them is moved */
     public void translate(int dx, int dy) {
         Vector affected = new Vector();
-        Vector nonMovingEdges = new Vector();
-        Vector movingEdges = new Vector();
-        Vector nodes = new Vector();
         int selSize = selections.size();
         for (Selection sel : selections) {
             addEnclosed(affected, sel.getContent());
@@ -562,6 +667,23 @@ public class SelectionManager implements Serializable, KeyListener,
             dy = Math.max(-fy, dy);
         }
 
+        // Tell listeners of each moved Fig once, not for each step of the
+        // move
+        EditorContext context = EditorContext.getCurrent();
+        context.suspendPropChanges();
+        try {
+            translateAffected(affected, dx, dy);
+        } finally {
+            selectionGrid = null;
+            context.resumePropChanges();
+        }
+    }
+
+    private void translateAffected(Vector affected, int dx, int dy) {
+        Vector nonMovingEdges = new Vector();
+        Vector movingEdges = new Vector();
+        Vector nodes = new Vector();
+        int size = affected.size();
         for (int i = 0; i < size; ++i) {
             Fig f = (Fig) affected.elementAt(i);
             if (!(f instanceof FigNode)) {
@@ -663,6 +785,10 @@ public class SelectionManager implements Serializable, KeyListener,
             }
         }
 
+        for (FigNode figNode : _draggingNodes) {
+            figNode.setDeferredEdges(_dirtyEdges);
+        }
+
         if (UndoManager.getInstance().isGenerateMementos()) {
             dragMemento = new DragMemento(_draggingNodes, _draggingOthers,
                     _draggingMovingEdges, _draggingNonMovingEdges);
@@ -708,53 +834,53 @@ public class SelectionManager implements Serializable, KeyListener,
         dx = Math.max(-_dragLeftMostFig.getX(), dx);
         dy = Math.max(-_dragTopMostFig.getY(), dy);
         
-        for (FigNode figNode : _draggingNodes) {
-            figNode.getBounds(figBounds);
-            dirtyRegion.add(figBounds.x, figBounds.y);
-            dirtyRegion.add(figBounds.x + dx, figBounds.y + dy);
-            dirtyRegion.add(figBounds.x + figBounds.width, figBounds.y
-                    + figBounds.height);
-            dirtyRegion.add(figBounds.x + figBounds.width + dx, figBounds.y
-                    + figBounds.height + dy);
-            figNode.superTranslate(dx, dy);
-            // the next one will confuse everything if elements and annotations
-            // are selected and moved
-            // figNode.translateAnnotations();
-        }
-
-        for (Fig fig : _draggingOthers) {
-            fig.getBounds(figBounds);
-            dirtyRegion.add(figBounds.x, figBounds.y);
-            dirtyRegion.add(figBounds.x + dx, figBounds.y + dy);
-            dirtyRegion.add(figBounds.x + figBounds.width, figBounds.y
-                    + figBounds.height);
-            dirtyRegion.add(figBounds.x + figBounds.width + dx, figBounds.y
-                    + figBounds.height + dy);
-            fig.translate(dx, dy);
-            fig.translateAnnotations();
-        }
-
-        for (FigEdge figEdge : _draggingMovingEdges) {
-            figEdge.getBounds(figBounds);
-            dirtyRegion.add(figBounds.x, figBounds.y);
-            dirtyRegion.add(figBounds.x + dx, figBounds.y + dy);
-            dirtyRegion.add(figBounds.x + figBounds.width, figBounds.y
-                    + figBounds.height);
-            dirtyRegion.add(figBounds.x + figBounds.width + dx, figBounds.y
-                    + figBounds.height + dy);
-            figEdge.translateEdge(dx, dy);
-            figEdge.translateAnnotations();
-        }
+        EditorContext context = EditorContext.getCurrent();
+        context.suspendPropChanges();
+        try {
+            for (FigNode figNode : _draggingNodes) {
+                figNode.getBounds(figBounds);
+                dirtyRegion.add(figBounds.x, figBounds.y);
+                dirtyRegion.add(figBounds.x + dx, figBounds.y + dy);
+                dirtyRegion.add(figBounds.x + figBounds.width, figBounds.y
+                        + figBounds.height);
+                dirtyRegion.add(figBounds.x + figBounds.width + dx,
+                        figBounds.y + figBounds.height + dy);
+                figNode.superTranslate(dx, dy);
+                // the next one will confuse everything if elements and
+                // annotations are selected and moved
+                // figNode.translateAnnotations();
+            }
 
-        for (FigEdge figEdge : _draggingNonMovingEdges) {
-            figEdge.getBounds(figBounds);
-            dirtyRegion.add(figBounds);
-            figEdge.computeRoute();
-            figEdge.getBounds(figBounds);
-            dirtyRegion.add(figBounds);
-            figEdge.translateAnnotations();
+            for (Fig fig : _draggingOthers) {
+                fig.getBounds(figBounds);
+                dirtyRegion.add(figBounds.x, figBounds.y);
+                dirtyRegion.add(figBounds.x + dx, figBounds.y + dy);
+                dirtyRegion.add(figBounds.x + figBounds.width, figBounds.y
+                        + figBounds.height);
+                dirtyRegion.add(figBounds.x + figBounds.width + dx,
+                        figBounds.y + figBounds.height + dy);
+                fig.translate(dx, dy);
+                fig.translateAnnotations();
+            }
+
+            for (FigEdge figEdge : _draggingMovingEdges) {
+                figEdge.getBounds(figBounds);
+                dirtyRegion.add(figBounds.x, figBounds.y);
+                dirtyRegion.add(figBounds.x + dx, figBounds.y + dy);
+                dirtyRegion.add(figBounds.x + figBounds.width, figBounds.y
+                        + figBounds.height);
+                dirtyRegion.add(figBounds.x + figBounds.width + dx,
+                        figBounds.y + figBounds.height + dy);
+                figEdge.translateEdge(dx, dy);
+                figEdge.translateAnnotations();
+            }
+        } finally {
+            selectionGrid = null;
+            context.resumePropChanges();
         }
 
+        _dirtyEdges.addAll(_draggingNonMovingEdges);
+
         int extraDirt = 24;
         dirtyRegion.x -= extraDirt;
         dirtyRegion.y -= extraDirt;
@@ -791,7 +917,30 @@ public class SelectionManager implements Serializable, KeyListener,
         }
     }
 
+    /**
+     * Reroute the edges left out of date by dragging. This is called by the
+     * RedrawManager before it repaints and when the drag stops, so that each
+     * edge is rerouted at most once per frame rather than on every mouse
+     * event. It is not called from paint, which may run off the event thread.
+     * Must be called on the event thread.
+     */
+    public void rerouteEdges() {
+        if (_dirtyEdges.isEmpty()) {
+            return;
+        }
+        List<FigEdge> edges = new ArrayList<FigEdge>(_dirtyEdges);
+        _dirtyEdges.clear();
+        for (FigEdge figEdge : edges) {
+            figEdge.damage();
+            figEdge.computeRoute();
+            figEdge.translateAnnotations();
+            figEdge.damage();
+        }
+    }
+
     public void stopDrag() {
+        rerouteEdges();
+
         // Set the generate memento mode back to whatever it was before we
         // started dragging
         UndoManager.getInstance().removeMementoLock(this);
@@ -806,6 +955,12 @@ public class SelectionManager implements Serializable, KeyListener,
     }
 
     private void cleanup() {
+        rerouteEdges();
+        if (_draggingNodes != null) {
+            for (FigNode figNode : _draggingNodes) {
+                figNode.setDeferredEdges(null);
+            }
+        }
         _dragTopMostFig = null;
         _dragLeftMostFig = null;
         _draggingNodes = null;
@@ -1147,6 +1302,12 @@ public class SelectionManager implements Serializable, KeyListener,
 
     class DragMemento extends Memento {
 
+        /** The estimated size of a copied Rectangle in bytes. */
+        private static final int RECTANGLE_SIZE = 32;
+
+        /** The estimated size of a copied Point in bytes. */
+        private static final int POINT_SIZE = 24;
+
         Collection draggingNodes;
         List draggingOthers;
         List bounds;
@@ -1262,6 +1423,19 @@ public class SelectionManager implements Serializable, KeyListener,
             undo();
         }
 
+        /**
+         * Count the copied bounds and the copied points of each edge.
+         */
+        public long getSize() {
+            long size = DEFAULT_SIZE + bounds.size() * RECTANGLE_SIZE;
+            Iterator it = points.iterator();
+            while (it.hasNext()) {
+                Point[] pts = (Point[]) it.next();
+                size += 16 + pts.length * (POINT_SIZE + 4);
+            }
+            return size;
+        }
+
         public String toString() {
             return (isStartChain() ? "*" : " ") + "DragMemento";
         }
@@ -1277,7 +1451,7 @@ public class SelectionManager implements Serializable, KeyListener,
 
         public void undo() {
             ArrayList curSelections = new ArrayList(selections);
-            selections = prevSelections;
+            setSelections(prevSelections);
             prevSelections = curSelections;
             editor.damageAll();
         }
@@ -1290,4 +1464,125 @@ public class SelectionManager implements Serializable, KeyListener,
             return (isStartChain() ? "*" : " ") + "SelectionMemento";
         }
     }
+
+    /**
+     * Forgets where the selections are when a selected Fig moves. This
+     * covers Figs that are not in a LayerDiagram.
+     */
+    private class BoundsListener implements PropertyChangeListener,
+            Serializable {
+
+        private static final long serialVersionUID = -4625839640326317826L;
+
+        public void propertyChange(PropertyChangeEvent evt) {
+            if ("bounds".equals(evt.getPropertyName())) {
+                selectionGrid = null;
+            }
+        }
+    }
+
+    /**
+     * The selections bucketed by the cells of a uniform grid that their
+     * bounds reach into. Each bucket holds the positions of its selections in
+     * ascending order, so the first selection containing a point is found by
+     * testing only the selections in its cell.
+     */
+    private static class SelectionGrid {
+
+        /** Selections reaching into more cells than this are not bucketed. */
+        private static final int MAX_CELLS = 64;
+
+        private static final int MIN_CELL_SIZE = 16;
+
+        private Selection[] sels;
+
+        private int cellSize;
+
+        /**
+         * The buckets by cell. The first element of each holds the number of
+         * positions that follow it.
+         */
+        private Map<Long, int[]> cells = new HashMap<Long, int[]>();
+
+        /** The positions of the selections that are not bucketed. */
+        private int[] large = new int[] {0};
+
+        SelectionGrid(List<Selection> selections) {
+            sels = selections.toArray(new Selection[selections.size()]);
+            Rectangle[] bounds = new Rectangle[sels.length];
+            long extent = 0;
+            for (int i = 0; i < sels.length; ++i) {
+                bounds[i] = sels[i].getBounds();
+                bounds[i].grow(Selection.HAND_SIZE, Selection.HAND_SIZE);
+                extent += Math.max(bounds[i].width, bounds[i].height);
+            }
+            cellSize = (int) Math.max(MIN_CELL_SIZE, extent / sels.length);
+            for (int i = 0; i < sels.length; ++i) {
+                Rectangle r = bounds[i];
+                int x0 = cell(r.x);
+                int y0 = cell(r.y);
+                int x1 = cell(r.x + r.width);
+                int y1 = cell(r.y + r.height);
+                if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS) {
+                    large = append(large, i);
+                    continue;
+                }
+                for (int cx = x0; cx <= x1; ++cx) {
+                    for (int cy = y0; cy <= y1; ++cy) {
+                        Long key = key(cx, cy);
+                        int[] bucket = cells.get(key);
+                        int[] grown = append(bucket == null ? new int[] {0}
+                                : bucket, i);
+                        if (grown != bucket) {
+                            cells.put(key, grown);
+                        }
+                    }
+                }
+            }
+        }
+
+        Selection find(int x, int y) {
+            int[] bucket = cells.get(key(cell(x), cell(y)));
+            int bucketCount = bucket == null ? 0 : bucket[0];
+            int i = 1;
+            int j = 1;
+            while (i <= bucketCount || j <= large[0]) {
+                int next;
+                if (j > large[0]
+                        || (i <= bucketCount && bucket[i] < large[j])) {
+                    next = bucket[i++];
+                } else {
+                    next = large[j++];
+                }
+                if (sels[next].contains(x, y)) {
+                    return sels[next];
+                }
+            }
+            return null;
+        }
+
+        private int cell(int coordinate) {
+            return (int) Math.floor((double) coordinate / cellSize);
+        }
+
+        private static Long key(int cx, int cy) {
+            return Long.valueOf(((long) cx << 32) | (cy & 0xffffffffL));
+        }
+
+        /**
+         * Append a position to a bucket, replying a larger copy when it is
+         * full.
+         */
+        private static int[] append(int[] bucket, int position) {
+            int count = bucket[0];
+            if (count + 1 == bucket.length) {
+                int[] grown = new int[bucket.length * 2];
+                System.arraycopy(bucket, 0, grown, 0, bucket.length);
+                bucket = grown;
+            }
+            bucket[count + 1] = position;
+            bucket[0] = count + 1;
+            return bucket;
+        }
+    }
 } /* end class SelectionManager */
\ No newline at end of file
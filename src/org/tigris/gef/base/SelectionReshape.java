@@ -152,6 +152,11 @@ public class SelectionReshape extends Selection implements KeyListener {
                     undo();
                 }
 
+                public long getSize() {
+                    // the polygon and its two coordinate arrays
+                    return DEFAULT_SIZE + 64 + oldPolygon.xpoints.length * 8;
+                }
+
                 public String toString() {
                     return (isStartChain() ? "*" : " ") + "ReshapeMemento "
                             + oldPolygon;
@@ -0,0 +1,87 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+
+package org.tigris.gef.base;
+
+import java.awt.Rectangle;
+import java.util.Collection;
+
+import org.tigris.gef.presentation.Fig;
+
+/**
+ * A spatial index over the Figs of a LayerDiagram. It allows the Figs whose
+ * bounding boxes intersect a given rectangle to be found without visiting
+ * every Fig in the layer. An index only records bounds, it knows nothing of
+ * the back to front ordering of the Figs. Putting the results back into
+ * z-order is left to the LayerDiagram.
+ * <p>
+ * The index works on the bounds a Fig had when it was last added or updated,
+ * so the owner of the index must call update whenever the bounds of a Fig
+ * change.
+ * 
+ * @see LayerDiagram#setSpatialIndex(SpatialIndex)
+ * @see QuadTreeIndex
+ */
+public interface SpatialIndex {
+
+    /**
+     * Record the given Fig at its current bounds. Adding a Fig that is already
+     * in the index just updates its bounds.
+     * 
+     * @param f the Fig to add
+     */
+    void add(Fig f);
+
+    /**
+     * Forget the given Fig. If the Fig is not in the index then do nothing.
+     * 
+     * @param f the Fig to remove
+     */
+    void remove(Fig f);
+
+    /**
+     * The bounds of the given Fig may have changed, record its current
+     * bounds. Figs that are not in the index are ignored.
+     * 
+     * @param f the Fig that has changed
+     * @return the bounds that were recorded for the Fig before this call if
+     *         they differ from its current bounds, otherwise null
+     */
+    Rectangle update(Fig f);
+
+    /** Forget all Figs. */
+    void clear();
+
+    /**
+     * Add to the given collection every Fig in the index whose recorded bounds
+     * intersect the given rectangle. Touching counts as intersecting, in the
+     * same way as Fig.intersects(Rectangle). The order of the results is
+     * undefined and they may include Figs that do not actually intersect the
+     * rectangle, callers are expected to make the final test themselves.
+     * 
+     * @param r the area of interest
+     * @param result the collection to add the Figs to
+     */
+    void query(Rectangle r, Collection<Fig> result);
+}
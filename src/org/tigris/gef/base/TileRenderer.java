@@ -0,0 +1,162 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+
+package org.tigris.gef.base;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Renders rectangular tiles of an exported image of a diagram. Every tile is
+ * painted through a Graphics2D of its own, clipped to the tile, so tiles can
+ * be rendered one after the other or concurrently on the threads of an
+ * Executor. Painting tiles concurrently relies on Fig.paint() not changing
+ * the state of the Figs it paints.
+ */
+public class TileRenderer {
+
+    private Editor editor;
+
+    private Rectangle drawingArea;
+
+    private int scale;
+
+    private Color background;
+
+    /**
+     * Creates a new TileRenderer.
+     * 
+     * @param editor
+     *                the editor whose diagram is exported
+     * @param drawingArea
+     *                the part of the diagram that makes up the image
+     * @param scale
+     *                the number of image pixels to a diagram unit
+     * @param background
+     *                the color the image is cleared to before painting
+     */
+    public TileRenderer(Editor editor, Rectangle drawingArea, int scale,
+            Color background) {
+        this.editor = editor;
+        this.drawingArea = new Rectangle(drawingArea);
+        this.scale = scale;
+        this.background = background;
+    }
+
+    /**
+     * Render a tile of the exported image.
+     * 
+     * @param image
+     *                the image to render the tile into
+     * @param x
+     *                the column of image to render the tile at
+     * @param y
+     *                the row of image to render the tile at
+     * @param tile
+     *                the tile, in the pixel coordinates of the exported image
+     */
+    public void render(BufferedImage image, int x, int y, Rectangle tile) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.translate(x, y);
+            g.clipRect(0, 0, tile.width, tile.height);
+            g.setComposite(AlphaComposite.Src);
+            g.setColor(background);
+            g.fillRect(0, 0, tile.width, tile.height);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.translate(-tile.x, -tile.y);
+            g.scale(scale, scale);
+            g.translate(-drawingArea.x, -drawingArea.y);
+            editor.print(g);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Start rendering a tile of the exported image on the given executor. The
+     * tile must be collected with join(), which renders it on the calling
+     * thread if no thread of the executor has started it yet.
+     * 
+     * @param executor
+     *                the executor to render on, or null to render the tile
+     *                when it is joined
+     * @return the task rendering the tile, which yields image
+     */
+    public FutureTask<BufferedImage> fork(final BufferedImage image,
+            final int x, final int y, final Rectangle tile, Executor executor) {
+        FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(
+                new Callable<BufferedImage>() {
+                    public BufferedImage call() {
+                        render(image, x, y, tile);
+                        return image;
+                    }
+                });
+        if (executor != null) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // the tile will be rendered by join()
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Wait for a tile started by fork() to be rendered. A tile no thread has
+     * started yet is rendered on the calling thread, so tiles are never left
+     * waiting for an executor whose threads are all busy, for instance
+     * exporting other diagrams.
+     * 
+     * @return the image the tile was rendered into
+     */
+    public static BufferedImage join(FutureTask<BufferedImage> task)
+            throws InterruptedIOException {
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rendering");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,487 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import org.tigris.gef.presentation.Fig;
+
+/**
+ * The back to front list of Figs in a LayerDiagram. Every Fig has a slot in
+ * an array, and the slots of the Figs increase from back to front, so the slot
+ * of a Fig serves as a z-order key. The slot of each Fig is kept in an
+ * identity map, so finding a Fig, removing it, swapping it with a neighbour
+ * or bringing it to the front does not search the list.
+ * <p>
+ * A removed Fig leaves an empty slot behind, rather than the Figs in front of
+ * it being moved down. The empty slots are squeezed out the next time a Fig is
+ * needed by its position. So a run of removals costs one pass over the list
+ * rather than one pass for each Fig removed.
+ * <p>
+ * There are spare slots behind the back Fig as well as in front of the front
+ * one, so a Fig is sent to the back without moving any other. A Fig put in
+ * front of another, or inserted by position, moves only the Figs between its
+ * place and the nearest empty slot or the nearer end of the list. That is
+ * often none, as the Fig moved leaves an empty slot where it was, but it can
+ * be up to half of the list when there is no empty slot near.
+ * <p>
+ * The list is serialized as an ArrayList, as LayerDiagram did before this
+ * class was introduced.
+ */
+final class ZOrderList extends AbstractList<Fig> implements RandomAccess,
+        Serializable {
+
+    private static final long serialVersionUID = 2843156071298473719L;
+
+    /** The Figs in back to front order, removed Figs leave null slots. */
+    private transient Fig[] slots;
+
+    /** The first slot in use. */
+    private transient int start;
+
+    /** The slot after the last one in use. */
+    private transient int end;
+
+    /** The number of Figs in the list. */
+    private transient int size;
+
+    /** The slot of each Fig. */
+    private transient Map<Fig, Integer> slotOf;
+
+    /**
+     * The number of times empty slots have been squeezed out. This does not
+     * change the order of the Figs so it is not counted as a modification,
+     * but it moves them to other slots.
+     */
+    private transient int compactions;
+
+    ZOrderList() {
+        slots = new Fig[16];
+        slotOf = new IdentityHashMap<Fig, Integer>();
+    }
+
+    ZOrderList(Collection<? extends Fig> figs) {
+        this();
+        setAll(figs);
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // z-order
+
+    /**
+     * Reply the z-order key of the given Fig, higher keys are further to the
+     * front. The keys of Figs that stay in the list keep their relative order
+     * but may change whenever the list does. Reply -1 if the Fig is not in the
+     * list.
+     */
+    int getKey(Fig f) {
+        Integer slot = slotOf.get(f);
+        return slot == null ? -1 : slot.intValue();
+    }
+
+    /**
+     * Swap the given Fig with the one immediately behind it. Do nothing if it
+     * is at the back or not in the list.
+     */
+    void sendBackward(Fig f) {
+        Integer slot = slotOf.get(f);
+        if (slot != null) {
+            int other = slot.intValue() - 1;
+            while (other >= start && slots[other] == null) {
+                --other;
+            }
+            if (other >= start) {
+                swap(other, slot.intValue());
+            }
+        }
+    }
+
+    /**
+     * Swap the given Fig with the one immediately in front of it. Do nothing
+     * if it is at the front or not in the list.
+     */
+    void bringForward(Fig f) {
+        Integer slot = slotOf.get(f);
+        if (slot != null) {
+            int other = slot.intValue() + 1;
+            while (other < end && slots[other] == null) {
+                ++other;
+            }
+            if (other < end) {
+                swap(slot.intValue(), other);
+            }
+        }
+    }
+
+    /** Move the given Fig to the front of the list. */
+    void bringToFront(Fig f) {
+        if (remove(f)) {
+            add(f);
+        }
+    }
+
+    /** Move the given Fig to the back of the list. */
+    void sendToBack(Fig f) {
+        if (remove(f)) {
+            makeRoomAtBack();
+            put(f, --start);
+            ++size;
+            modCount++;
+        }
+    }
+
+    /**
+     * Move a Fig to just in front of another. Do nothing if either is not in
+     * the list.
+     */
+    void bringInFrontOf(Fig f, Fig other) {
+        if (f == other || !slotOf.containsKey(other) || !remove(f)) {
+            return;
+        }
+        int behind = slotOf.get(other).intValue();
+        // look for the nearest empty slot on either side of the other Fig
+        for (int distance = 1;; ++distance) {
+            int up = behind + distance;
+            if (up >= end || slots[up] == null) {
+                if (up >= end) {
+                    ensureCapacity(end + 1);
+                    up = end++;
+                }
+                move(behind + 1, behind + 2, up - behind - 1);
+                put(f, behind + 1);
+                break;
+            }
+            int down = behind - distance;
+            if (down < start || slots[down] == null) {
+                if (down < start) {
+                    makeRoomAtBack();
+                    behind = slotOf.get(other).intValue();
+                    down = --start;
+                }
+                move(down + 1, down, behind - down);
+                put(f, behind);
+                break;
+            }
+        }
+        ++size;
+        modCount++;
+    }
+
+    /**
+     * Replace the contents with the given Figs, in the given order. The Figs
+     * are taken to be distinct.
+     */
+    void setAll(Collection<? extends Fig> figs) {
+        slots = new Fig[Math.max(16, figs.size() + figs.size() / 2)];
+        slotOf.clear();
+        start = 0;
+        end = 0;
+        for (Fig f : figs) {
+            slotOf.put(f, end);
+            slots[end++] = f;
+        }
+        size = end;
+        modCount++;
+    }
+
+    private void swap(int back, int front) {
+        Fig f = slots[back];
+        slots[back] = slots[front];
+        slots[front] = f;
+        slotOf.put(slots[back], back);
+        slotOf.put(f, front);
+        modCount++;
+    }
+
+    private void put(Fig f, int slot) {
+        slots[slot] = f;
+        slotOf.put(f, slot);
+    }
+
+    /** Move a run of Figs, without empty slots, to other slots. */
+    private void move(int from, int to, int count) {
+        System.arraycopy(slots, from, slots, to, count);
+        for (int i = to; i < to + count; ++i) {
+            slotOf.put(slots[i], i);
+        }
+    }
+
+    /** Squeeze out the slots left empty by removals. */
+    private void compact() {
+        if (size == end - start) {
+            return;
+        }
+        int to = start;
+        for (int from = start; from < end; ++from) {
+            Fig f = slots[from];
+            if (f != null) {
+                if (to != from) {
+                    slots[to] = f;
+                    slotOf.put(f, to);
+                }
+                ++to;
+            }
+        }
+        for (int i = to; i < end; ++i) {
+            slots[i] = null;
+        }
+        end = to;
+        compactions++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > slots.length) {
+            Fig[] larger = new Fig[Math.max(capacity, slots.length * 2)];
+            System.arraycopy(slots, start, larger, start, end - start);
+            slots = larger;
+        }
+    }
+
+    /**
+     * Make sure there is a spare slot behind the back Fig. When there is none
+     * all the Figs are moved forward by as many slots as are in use, so this
+     * happens rarely.
+     */
+    private void makeRoomAtBack() {
+        if (start > 0) {
+            return;
+        }
+        int room = Math.max(16, end);
+        Fig[] larger = new Fig[slots.length + room];
+        System.arraycopy(slots, 0, larger, room, end);
+        slots = larger;
+        start = room;
+        end += room;
+        for (int i = start; i < end; ++i) {
+            if (slots[i] != null) {
+                slotOf.put(slots[i], i);
+            }
+        }
+        // the Figs are in other slots
+        compactions++;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // List API
+
+    public int size() {
+        return size;
+    }
+
+    public Fig get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                    + size);
+        }
+        compact();
+        return slots[start + index];
+    }
+
+    public boolean contains(Object o) {
+        return slotOf.containsKey(o);
+    }
+
+    public int indexOf(Object o) {
+        if (!slotOf.containsKey(o)) {
+            return -1;
+        }
+        compact();
+        return slotOf.get(o).intValue() - start;
+    }
+
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    public boolean add(Fig f) {
+        if (f == null) {
+            throw new IllegalArgumentException("A ZOrderList can't hold null");
+        }
+        ensureCapacity(end + 1);
+        put(f, end++);
+        ++size;
+        modCount++;
+        return true;
+    }
+
+    public void add(int index, Fig f) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                    + size);
+        }
+        if (f == null) {
+            throw new IllegalArgumentException("A ZOrderList can't hold null");
+        }
+        compact();
+        // move the Figs on the shorter side of the place out of the way
+        if (index < size / 2) {
+            makeRoomAtBack();
+            move(start, start - 1, index);
+            --start;
+        } else {
+            ensureCapacity(end + 1);
+            move(start + index, start + index + 1, size - index);
+            ++end;
+        }
+        put(f, start + index);
+        ++size;
+        modCount++;
+    }
+
+    public Fig set(int index, Fig f) {
+        if (f == null) {
+            throw new IllegalArgumentException("A ZOrderList can't hold null");
+        }
+        Fig old = get(index);
+        if (old != f) {
+            slotOf.remove(old);
+            put(f, start + index);
+        }
+        return old;
+    }
+
+    public Fig remove(int index) {
+        Fig f = get(index);
+        remove(f);
+        return f;
+    }
+
+    public boolean remove(Object o) {
+        Integer slot = slotOf.remove(o);
+        if (slot == null) {
+            return false;
+        }
+        slots[slot.intValue()] = null;
+        --size;
+        // keep the slots in use tight when the front or back Fig goes
+        while (end > start && slots[end - 1] == null) {
+            --end;
+        }
+        while (start < end && slots[start] == null) {
+            ++start;
+        }
+        modCount++;
+        return true;
+    }
+
+    public boolean removeAll(Collection<?> c) {
+        boolean changed = false;
+        for (Object o : c) {
+            changed |= remove(o);
+        }
+        return changed;
+    }
+
+    public void clear() {
+        for (int i = start; i < end; ++i) {
+            slots[i] = null;
+        }
+        slotOf.clear();
+        start = 0;
+        end = 0;
+        size = 0;
+        modCount++;
+    }
+
+    public Object[] toArray() {
+        compact();
+        Object[] array = new Object[size];
+        System.arraycopy(slots, start, array, 0, size);
+        return array;
+    }
+
+    /**
+     * Iterate without squeezing out empty slots as Figs are removed through
+     * the iterator.
+     */
+    public Iterator<Fig> iterator() {
+        compact();
+        return new Iterator<Fig>() {
+            private int next = start;
+
+            /** The number of Figs passed that are still in the list. */
+            private int passed = 0;
+
+            private Fig last;
+
+            private int expectedModCount = modCount;
+
+            private int expectedCompactions = compactions;
+
+            public boolean hasNext() {
+                if (expectedCompactions != compactions) {
+                    // the Figs passed are now in the first slots in use
+                    compact();
+                    next = start + passed;
+                    expectedCompactions = compactions;
+                }
+                while (next < end && slots[next] == null) {
+                    ++next;
+                }
+                return next < end;
+            }
+
+            public Fig next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = slots[next++];
+                ++passed;
+                return last;
+            }
+
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                ZOrderList.this.remove(last);
+                --passed;
+                last = null;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    /** Write an ArrayList in place of this list. */
+    private Object writeReplace() {
+        List<Fig> list = new ArrayList<Fig>(this);
+        return list;
+    }
+}
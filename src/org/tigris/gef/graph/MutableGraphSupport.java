@@ -28,11 +28,12 @@
 
 package org.tigris.gef.graph;
 
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.Action;
 
@@ -49,7 +50,22 @@ import org.tigris.gef.presentation.Fig;
 public abstract class MutableGraphSupport implements MutableGraphModel,
         java.io.Serializable {
 
-    private Vector _graphListeners;
+    private List<GraphListener> _graphListeners;
+
+    /** The number of bulk updates started and not yet ended. */
+    private transient int bulkUpdateDepth;
+
+    /**
+     * The events held back since the outermost bulk update started, in the
+     * order they happened.
+     */
+    private transient List<PendingEvent> pendingEvents;
+
+    private static final int NODE_ADDED = 0;
+    private static final int NODE_REMOVED = 1;
+    private static final int EDGE_ADDED = 2;
+    private static final int EDGE_REMOVED = 3;
+    private static final int GRAPH_CHANGED = 4;
 
     private ConnectionConstrainer connectionConstrainer;
 
@@ -261,93 +277,158 @@ public abstract class MutableGraphSupport implements MutableGraphModel,
 
     public void addGraphEventListener(GraphListener listener) {
         if (_graphListeners == null) {
-            _graphListeners = new Vector();
+            _graphListeners = new CopyOnWriteArrayList<GraphListener>();
         }
-        _graphListeners.addElement(listener);
+        _graphListeners.add(listener);
     }
 
     public void removeGraphEventListener(GraphListener listener) {
         if (_graphListeners == null) {
             return;
         }
-        _graphListeners.removeElement(listener);
+        _graphListeners.remove(listener);
     }
 
     // //////////////////////////////////////////////////////////////
     // event notifications
 
     public void fireNodeAdded(Object node) {
-        if (saveAction != null && !saveAction.isEnabled()) {
-            saveAction.setEnabled(true);
-        }
-        if (_graphListeners == null) {
-            return;
-        }
-        GraphEvent ge = new GraphEvent(this, node);
-        Enumeration listeners = _graphListeners.elements();
-        while (listeners.hasMoreElements()) {
-            GraphListener listen = (GraphListener) listeners.nextElement();
-            listen.nodeAdded(ge);
-        }
+        fire(NODE_ADDED, node);
     }
 
     public void fireNodeRemoved(Object node) {
-        if (saveAction != null && !saveAction.isEnabled()) {
-            saveAction.setEnabled(true);
-        }
-        if (_graphListeners == null) {
-            return;
-        }
-        GraphEvent ge = new GraphEvent(this, node);
-        Enumeration listeners = _graphListeners.elements();
-        while (listeners.hasMoreElements()) {
-            GraphListener listen = (GraphListener) listeners.nextElement();
-            listen.nodeRemoved(ge);
-        }
+        fire(NODE_REMOVED, node);
     }
 
     public void fireEdgeAdded(Object edge) {
-        if (saveAction != null && !saveAction.isEnabled()) {
-            saveAction.setEnabled(true);
+        fire(EDGE_ADDED, edge);
+    }
+
+    public void fireEdgeRemoved(Object edge) {
+        fire(EDGE_REMOVED, edge);
+    }
+
+    public void fireGraphChanged() {
+        fire(GRAPH_CHANGED, null);
+    }
+
+    /**
+     * Start changing many nodes and edges. Until the matching call to
+     * endBulkUpdate the graph changes as usual, but listeners are not told.
+     * Bulk updates may be nested, only the outermost one has any effect.
+     */
+    public void startBulkUpdate() {
+        if (bulkUpdateDepth++ == 0) {
+            pendingEvents = new ArrayList<PendingEvent>();
         }
-        if (_graphListeners == null) {
+    }
+
+    /**
+     * End changing many nodes and edges. When the outermost bulk update ends
+     * listeners are told about the changes in the order they happened. A
+     * BulkGraphListener gets one nodesAdded or edgesAdded event for each run
+     * of nodes or edges added one after another, any other GraphListener
+     * gets nodeAdded or edgeAdded for each of them.
+     */
+    public void endBulkUpdate() {
+        if (bulkUpdateDepth == 0) {
+            throw new IllegalStateException(
+                    "endBulkUpdate called without startBulkUpdate");
+        }
+        if (--bulkUpdateDepth > 0) {
             return;
         }
-        GraphEvent ge = new GraphEvent(this, edge);
-        Enumeration listeners = _graphListeners.elements();
-        while (listeners.hasMoreElements()) {
-            GraphListener listen = (GraphListener) listeners.nextElement();
-            listen.edgeAdded(ge);
+        List<PendingEvent> pending = pendingEvents;
+        pendingEvents = null;
+        if (pending.isEmpty() || _graphListeners == null) {
+            return;
+        }
+
+        for (GraphListener listener : _graphListeners) {
+            if (!(listener instanceof BulkGraphListener)) {
+                for (PendingEvent event : pending) {
+                    dispatch(listener, event.kind, new GraphEvent(this,
+                            event.arg));
+                }
+                continue;
+            }
+            BulkGraphListener bulkListener = (BulkGraphListener) listener;
+            int i = 0;
+            while (i < pending.size()) {
+                int kind = pending.get(i).kind;
+                if (kind != NODE_ADDED && kind != EDGE_ADDED) {
+                    dispatch(listener, kind, new GraphEvent(this, pending
+                            .get(i++).arg));
+                    continue;
+                }
+                List<Object> added = new ArrayList<Object>();
+                while (i < pending.size() && pending.get(i).kind == kind) {
+                    added.add(pending.get(i++).arg);
+                }
+                GraphEvent ge = new GraphEvent(this, Collections
+                        .unmodifiableList(added));
+                if (kind == NODE_ADDED) {
+                    bulkListener.nodesAdded(ge);
+                } else {
+                    bulkListener.edgesAdded(ge);
+                }
+            }
         }
     }
 
-    public void fireEdgeRemoved(Object edge) {
+    /** Reply true if a bulk update has been started and not yet ended. */
+    public boolean isBulkUpdating() {
+        return bulkUpdateDepth > 0;
+    }
+
+    private void fire(int kind, Object arg) {
         if (saveAction != null && !saveAction.isEnabled()) {
             saveAction.setEnabled(true);
         }
         if (_graphListeners == null) {
             return;
         }
-        GraphEvent ge = new GraphEvent(this, edge);
-        Enumeration listeners = _graphListeners.elements();
-        while (listeners.hasMoreElements()) {
-            GraphListener listen = (GraphListener) listeners.nextElement();
-            listen.edgeRemoved(ge);
+        if (bulkUpdateDepth > 0) {
+            pendingEvents.add(new PendingEvent(kind, arg));
+            return;
+        }
+        GraphEvent ge = new GraphEvent(this, arg);
+        for (GraphListener listener : _graphListeners) {
+            dispatch(listener, kind, ge);
         }
     }
 
-    public void fireGraphChanged() {
-        if (saveAction != null && !saveAction.isEnabled()) {
-            saveAction.setEnabled(true);
-        }
-        if (_graphListeners == null) {
-            return;
+    private static void dispatch(GraphListener listener, int kind,
+            GraphEvent ge) {
+        switch (kind) {
+        case NODE_ADDED:
+            listener.nodeAdded(ge);
+            break;
+        case NODE_REMOVED:
+            listener.nodeRemoved(ge);
+            break;
+        case EDGE_ADDED:
+            listener.edgeAdded(ge);
+            break;
+        case EDGE_REMOVED:
+            listener.edgeRemoved(ge);
+            break;
+        default:
+            listener.graphChanged(ge);
         }
-        GraphEvent ge = new GraphEvent(this, null);
-        Enumeration listeners = _graphListeners.elements();
-        while (listeners.hasMoreElements()) {
-            GraphListener listen = (GraphListener) listeners.nextElement();
-            listen.graphChanged(ge);
+    }
+
+    /**
+     * A change held back until the end of a bulk update.
+     */
+    private static class PendingEvent {
+        private final int kind;
+
+        private final Object arg;
+
+        PendingEvent(int kind, Object arg) {
+            this.kind = kind;
+            this.arg = arg;
         }
     }
 
@@ -45,9 +45,25 @@ public abstract class AdjacencyListGraphModel extends MutableGraphSupport
     // //////////////////////////////////////////////////////////////
     // instance variables
 
+    /**
+     * The nodes and edges of the graph. Subclasses must not change these
+     * directly but go through addNode, addEdge, removeNode and removeEdge,
+     * which also keep the sets and the adjacency lists below.
+     */
     protected Vector _nodes = new Vector();
     protected Vector _edges = new Vector();
 
+    /** The nodes and edges again, for quick membership tests. */
+    private Set _nodeSet = new HashSet();
+    private Set _edgeSet = new HashSet();
+
+    /**
+     * The edges going to and from each port, by port. Only ports with edges
+     * have an entry.
+     */
+    private Map _inEdges = new HashMap();
+    private Map _outEdges = new HashMap();
+
     // //////////////////////////////////////////////////////////////
     // constructors
 
@@ -76,11 +92,11 @@ public abstract class AdjacencyListGraphModel extends MutableGraphSupport
     // GraphModel implementation
 
     public List getNodes() {
-        return _nodes;
+        return Collections.unmodifiableList(_nodes);
     }
 
     public List getEdges() {
-        return _edges;
+        return Collections.unmodifiableList(_edges);
     }
 
     public abstract List getPorts(Object nodeOrEdge);
@@ -97,26 +113,64 @@ public abstract class AdjacencyListGraphModel extends MutableGraphSupport
         return labeledEgde[1];
     }
 
+    /**
+     * Return an unmodifiable list of the edges going to the given port. The
+     * list is not guaranteed to follow later changes.
+     */
     public List getInEdges(Object port) {
-        Vector res = new Vector();
-        Enumeration edgeEnum = _edges.elements();
-        while (edgeEnum.hasMoreElements()) {
-            Object[] e = (Object[]) edgeEnum.nextElement();
-            if (port == e[1])
-                res.addElement(e);
-        }
-        return res;
+        return edgesAt(_inEdges, port);
     }
 
+    /**
+     * Return an unmodifiable list of the edges going from the given port. The
+     * list is not guaranteed to follow later changes.
+     */
     public List getOutEdges(Object port) {
-        Vector res = new Vector();
-        Enumeration edgeEnum = _edges.elements();
-        while (edgeEnum.hasMoreElements()) {
-            Object[] e = (Object[]) edgeEnum.nextElement();
-            if (port == e[0])
-                res.addElement(e);
+        return edgesAt(_outEdges, port);
+    }
+
+    /** Look the port up without adding an entry for it. */
+    private List edgesAt(Map index, Object port) {
+        List edges = (List) index.get(port);
+        if (edges == null) {
+            return Collections.EMPTY_LIST;
         }
-        return res;
+        return Collections.unmodifiableList(edges);
+    }
+
+    private void addAdjacentEdge(Map index, Object port, Object edge) {
+        List edges = (List) index.get(port);
+        if (edges == null) {
+            edges = new ArrayList();
+            index.put(port, edges);
+        }
+        edges.add(edge);
+    }
+
+    /** Remove the edge, and the entry of the port once it has no edges. */
+    private void removeAdjacentEdge(Map index, Object port, Object edge) {
+        List edges = (List) index.get(port);
+        if (edges != null && edges.remove(edge) && edges.isEmpty()) {
+            index.remove(port);
+        }
+    }
+
+    public boolean containsNode(Object node) {
+        return _nodeSet.contains(node);
+    }
+
+    public boolean containsEdge(Object edge) {
+        return _edgeSet.contains(edge);
+    }
+
+    /** Ask the node that owns the port instead of every node */
+    public boolean containsNodePort(Object port) {
+        Object owner = getOwner(port);
+        if (!containsNode(owner)) {
+            return false;
+        }
+        List ports = getPorts(owner);
+        return ports != null && ports.contains(port);
     }
 
     // //////////////////////////////////////////////////////////////
@@ -134,20 +188,40 @@ public abstract class AdjacencyListGraphModel extends MutableGraphSupport
 
     public void addNode(Object node) {
         _nodes.addElement(node);
+        _nodeSet.add(node);
     }
 
     public void addEdge(Object edge) {
-        if (canAddEdge(edge))
+        if (canAddEdge(edge)) {
+            Object[] e = (Object[]) edge;
             _edges.addElement(edge);
+            _edgeSet.add(edge);
+            addAdjacentEdge(_outEdges, e[0], edge);
+            addAdjacentEdge(_inEdges, e[1], edge);
+        }
     }
 
     public void removeNode(Object node) {
-        _nodes.removeElement(node);
+        if (_nodes.removeElement(node)) {
+            // Only a node added twice is still in the list
+            if (_nodes.size() == _nodeSet.size() - 1
+                    || !_nodes.contains(node)) {
+                _nodeSet.remove(node);
+            }
+        }
         // needs-more-work: remove associated edges
     }
 
     public void removeEdge(Object edge) {
-        _edges.removeElement(edge);
+        if (_edges.removeElement(edge)) {
+            Object[] e = (Object[]) edge;
+            removeAdjacentEdge(_outEdges, e[0], edge);
+            removeAdjacentEdge(_inEdges, e[1], edge);
+            if (_edges.size() == _edgeSet.size() - 1
+                    || !_edges.contains(edge)) {
+                _edgeSet.remove(edge);
+            }
+        }
     }
 
     public boolean canConnect(Object srcNode, Object destNode) {
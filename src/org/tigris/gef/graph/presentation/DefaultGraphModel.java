@@ -31,7 +31,6 @@ package org.tigris.gef.graph.presentation;
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.List;
-import java.util.Vector;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -128,30 +127,14 @@ public class DefaultGraphModel extends MutableGraphSupport implements
         return null; // raise exception
     }
 
-    /** Return all edges going to given port */
+    /** Return an unmodifiable view of all edges going to given port */
     public List getInEdges(Object port) {
-        Vector res = new Vector();
-        Vector edge = ((NetPort) port).getEdges();
-        for (int i = 0; i < edge.size(); i++) {
-            NetEdge ne = (NetEdge) edge.elementAt(i);
-            if (ne.getDestPort() == port) {
-                res.add(ne);
-            }
-        }
-        return res;
+        return ((NetPort) port).getInEdges();
     }
 
-    /** Return all edges going from given port */
+    /** Return an unmodifiable view of all edges going from given port */
     public List getOutEdges(Object port) {
-        Vector res = new Vector();
-        Vector edge = ((NetPort) port).getEdges();
-        for (int i = 0; i < edge.size(); i++) {
-            NetEdge ne = (NetEdge) edge.elementAt(i);
-            if (ne.getSourcePort() == port) {
-                res.add(ne);
-            }
-        }
-        return res;
+        return ((NetPort) port).getOutEdges();
     }
 
     /** Return one end of an edge */
@@ -168,6 +151,43 @@ public class DefaultGraphModel extends MutableGraphSupport implements
         return null; // raise exception
     }
 
+    // //////////////////////////////////////////////////////////////
+    // utility methods
+
+    public boolean containsNode(Object node) {
+        return netList.containsNode(node);
+    }
+
+    public boolean containsEdge(Object edge) {
+        return netList.containsEdge(edge);
+    }
+
+    /** Ask the node that owns the port instead of every node */
+    public boolean containsNodePort(Object port) {
+        if (!(port instanceof NetPort)) {
+            return false;
+        }
+        Object owner = ((NetPort) port).getParent();
+        if (!netList.containsNode(owner)) {
+            return false;
+        }
+        List ports = getPorts(owner);
+        return ports != null && ports.contains(port);
+    }
+
+    /** Ask the edge that owns the port instead of every edge */
+    public boolean containsEdgePort(Object port) {
+        if (!(port instanceof NetPort)) {
+            return false;
+        }
+        Object owner = ((NetPort) port).getParent();
+        if (!netList.containsEdge(owner)) {
+            return false;
+        }
+        List ports = getPorts(owner);
+        return ports != null && ports.contains(port);
+    }
+
     // //////////////////////////////////////////////////////////////
     // interface MutableGraphListener
 
@@ -28,10 +28,14 @@
 
 package org.tigris.gef.graph.presentation;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Vector;
+import java.util.Set;
 
 /**
  * A class that implements the concept of a connected graph. A NetList is not
@@ -52,6 +56,14 @@ public class NetList extends NetPrimitive implements java.io.Serializable {
     /** The edges in the NetList */
     private ArrayList edges = new ArrayList();
 
+    /** The nodes and edges again, for quick membership tests. */
+    private transient Set nodeSet = new HashSet();
+    private transient Set edgeSet = new HashSet();
+
+    /** Unmodifiable views of the nodes and edges. */
+    private transient List nodesView = Collections.unmodifiableList(nodes);
+    private transient List edgesView = Collections.unmodifiableList(edges);
+
     /** The name of this connected graph. */
     String name;
 
@@ -78,42 +90,59 @@ public class NetList extends NetPrimitive implements java.io.Serializable {
     }
 
     /**
-     * Reply the vector of nodes
+     * Reply an unmodifiable view of the nodes, which follows later changes
      */
     public List getNodes() {
-        return nodes;
+        return nodesView;
     }
 
     /**
-     * Reply the vector of edges
+     * Reply an unmodifiable view of the edges, which follows later changes
      */
     public List getEdges() {
-        return edges;
+        return edgesView;
     }
 
-    /** Reply the vector of nodes */
+    /**
+     * Add the nodes to the given collection, or reply the unmodifiable view
+     * of them if none is given
+     */
     public Collection getNodes(Collection c) {
         if (c == null) {
-            return new Vector(nodes);
+            return nodesView;
         } else {
             c.addAll(nodes);
             return c;
         }
     }
 
-    /** Reply the vector of edges */
+    /**
+     * Add the edges to the given collection, or reply the unmodifiable view
+     * of them if none is given
+     */
     public Collection getEdges(Collection c) {
         if (c == null) {
-            return new Vector(edges);
+            return edgesView;
         } else {
             c.addAll(edges);
             return c;
         }
     }
 
+    /** Reply true if the given node is in this NetList. */
+    public boolean containsNode(Object n) {
+        return nodeSet.contains(n);
+    }
+
+    /** Reply true if the given edge is in this NetList. */
+    public boolean containsEdge(Object a) {
+        return edgeSet.contains(a);
+    }
+
     /** Add a node to this NetList. */
     public void addNode(NetNode n) {
         nodes.add(n);
+        nodeSet.add(n);
     }
 
     /**
@@ -121,31 +150,50 @@ public class NetList extends NetPrimitive implements java.io.Serializable {
      * sent out.
      */
     public void removeNode(NetNode n) {
-        if (n != null && nodes.contains(n)) {
+        if (n != null && nodeSet.contains(n)) {
             nodes.remove(n);
+            // Only a node added twice is still in the list
+            if (nodes.size() == nodeSet.size() - 1 || !nodes.contains(n)) {
+                nodeSet.remove(n);
+            }
         }
     }
 
     /** Add a NetEdge to this NetList. */
     public void addEdge(NetEdge a) {
         edges.add(a);
+        edgeSet.add(a);
     }
 
     /** Remove a Edge from this NetList. */
     public void removeEdge(NetEdge a) {
-        if (a != null && edges.contains(a)) {
+        if (a != null && edgeSet.contains(a)) {
             edges.remove(a);
+            if (edges.size() == edgeSet.size() - 1 || !edges.contains(a)) {
+                edgeSet.remove(a);
+            }
         }
     }
 
     /** Remove all the nodes from this NetList. */
     public void removeAllNodes() {
         nodes.clear();
+        nodeSet.clear();
     }
 
     /** Remove all the edges from this NetList. */
     public void removeAllEdges() {
         edges.clear();
+        edgeSet.clear();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        nodeSet = new HashSet(nodes);
+        edgeSet = new HashSet(edges);
+        nodesView = Collections.unmodifiableList(nodes);
+        edgesView = Collections.unmodifiableList(edges);
     }
 
     static final long serialVersionUID = -238774170084340147L;
@@ -58,6 +58,16 @@ public class NetPort extends NetPrimitive implements GraphPortHooks,
      */
     private Vector edges;
 
+    /**
+     * The connected NetEdges that end at this port and those that start from
+     * it, built when first asked for.
+     */
+    private transient List inEdges;
+    private transient List outEdges;
+
+    private transient List inEdgesView;
+    private transient List outEdgesView;
+
     /**
      * The NetNode that this port is a part of.
      */
@@ -99,6 +109,45 @@ public class NetPort extends NetPrimitive implements GraphPortHooks,
         return edges;
     }
 
+    /**
+     * Reply an unmodifiable view of the connected NetEdges whose destination
+     * is this port. The view follows later connections and disconnections.
+     */
+    public List getInEdges() {
+        indexEdges();
+        return inEdgesView;
+    }
+
+    /**
+     * Reply an unmodifiable view of the connected NetEdges whose source is
+     * this port. The view follows later connections and disconnections.
+     */
+    public List getOutEdges() {
+        indexEdges();
+        return outEdgesView;
+    }
+
+    private void indexEdges() {
+        if (inEdges == null) {
+            inEdges = new ArrayList();
+            outEdges = new ArrayList();
+            inEdgesView = Collections.unmodifiableList(inEdges);
+            outEdgesView = Collections.unmodifiableList(outEdges);
+            for (int i = 0; i < edges.size(); i++) {
+                indexEdge((NetEdge) edges.get(i));
+            }
+        }
+    }
+
+    private void indexEdge(NetEdge edge) {
+        if (edge.getDestPort() == this) {
+            inEdges.add(edge);
+        }
+        if (edge.getSourcePort() == this) {
+            outEdges.add(edge);
+        }
+    }
+
     // //////////////////////////////////////////////////////////////
     // net-level operations
 
@@ -109,6 +158,9 @@ public class NetPort extends NetPrimitive implements GraphPortHooks,
      */
     public void addEdge(NetEdge edge) {
         edges.addElement(edge);
+        if (inEdges != null) {
+            indexEdge(edge);
+        }
     }
 
     /**
@@ -118,6 +170,10 @@ public class NetPort extends NetPrimitive implements GraphPortHooks,
      */
     public void removeEdge(NetEdge edge) {
         edges.removeElement(edge);
+        if (inEdges != null) {
+            inEdges.remove(edge);
+            outEdges.remove(edge);
+        }
     }
 
     /**
@@ -22,18 +22,21 @@
 // UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
 package org.tigris.gef.ocl;
 
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -49,9 +52,32 @@ public class OCLEvaluator {
 
     private static final Log LOG = LogFactory.getLog(OCLEvaluator.class);
 
+    /** Marks a property that has neither a getter method nor a field. */
+    private static final Object NO_ACCESSOR = new Object();
+
+    /**
+     * The Method or Field used to read each property found so far, by class
+     * and then by property name. This is shared by all evaluators as it only
+     * depends on the classes involved.
+     * <p>
+     * Classes are weakly held so that they can still be unloaded. A Method or
+     * Field holds its class strongly, so the accessors of each class are only
+     * softly held, or the entry would keep its own key alive. Once they are
+     * cleared the class can go, and if it is still in use its accessors are
+     * simply looked up again.
+     */
+    private static final Map<Class, SoftReference<Map<String, Object>>> accessors =
+        new WeakHashMap<Class, SoftReference<Map<String, Object>>>();
+
     protected Map _scratchBindings = new Hashtable();
     protected StringBuffer _strBuf = new StringBuffer(100);
 
+    /**
+     * The expressions this evaluator has already parsed, keyed by their text.
+     */
+    private Map<String, CompiledExpression> compiledExpressions =
+        new Hashtable<String, CompiledExpression>();
+
     protected OCLEvaluator() {
     }
 
@@ -80,12 +106,8 @@ public class OCLEvaluator {
     }
 
     protected List eval(Map bindings, String expr) throws ExpansionException {
-
-        int firstPos = expr.indexOf(".");
-        if (firstPos < 0) {
-            firstPos = expr.length();
-        }
-        Object target = bindings.get(expr.substring(0, firstPos));
+        CompiledExpression compiled = compile(expr);
+        Object target = bindings.get(compiled.root);
         Vector targets;
 
         if (target instanceof Vector) {
@@ -99,31 +121,22 @@ public class OCLEvaluator {
             return targets;
         }
 
-        String prop = expr.substring(firstPos);
-        List items = eval(bindings, prop, targets);
+        List items = eval(compiled, targets);
         return items;
     } // end of eval()
 
-    private List eval(Map bindings, String expr, List targets)
+    private List eval(CompiledExpression compiled, List targets)
             throws ExpansionException {
-        String partExpr = expr;
+        int step = 0;
         try {
-            while (partExpr.length() > 0) {
+            for (; step < compiled.properties.length; ++step) {
                 List v = new ArrayList();
-                int firstPos = partExpr.indexOf(".");
-                int secPos = partExpr.indexOf(".", firstPos + 1);
-                String property;
-                if (secPos == -1) { // <expr>::= ".<property>"
-                    property = partExpr.substring(firstPos + 1);
-                    partExpr = "";
-                } else { // <expr>::= ".<property>.<expr>"
-                    property = partExpr.substring(firstPos + 1, secPos);
-                    partExpr = partExpr.substring(secPos); // +1
-                }
-
+                String property = compiled.properties[step];
+                String collectionRange = compiled.ranges[step];
                 int numElements = targets.size();
                 for (int i = 0; i < numElements; i++) {
-                    v.add(evaluateProperty(targets.get(i), property));
+                    v.add(evaluateProperty(targets.get(i), property,
+                            collectionRange));
                 }
 
                 targets = new Vector(flatten(v));
@@ -131,13 +144,27 @@ public class OCLEvaluator {
             }
         } catch (Exception e) {
             throw new ExpansionException(
-                    "Exception while expanding the expression " + expr + " ("
-                            + partExpr + ")", e);
+                    "Exception while expanding the expression "
+                            + compiled.path + " (" + compiled.remainders[step]
+                            + ")", e);
         }
 
         return targets;
     } // end of eval()
 
+    /**
+     * Reply the parsed form of an expression, parsing it only the first time
+     * it is seen.
+     */
+    private CompiledExpression compile(String expr) {
+        CompiledExpression compiled = compiledExpressions.get(expr);
+        if (compiled == null) {
+            compiled = new CompiledExpression(expr);
+            compiledExpressions.put(expr, compiled);
+        }
+        return compiled;
+    }
+
     /**
      * Return the first character of a string converted to upper case
      * 
@@ -145,7 +172,7 @@ public class OCLEvaluator {
      *                The string to convert
      * @return the converted string
      */
-    private String toTitleCase(String s) {
+    private static String toTitleCase(String s) {
         if (s.length() > 0) {
             return toUpperCase(s.charAt(0)) + s.substring(1, s.length());
         } else {
@@ -159,7 +186,7 @@ public class OCLEvaluator {
      * @param c
      * @return the upper case equivilent of the input or the input
      */
-    private char toUpperCase(char c) {
+    private static char toUpperCase(char c) {
         final int pos = "abcdefghijklmnopqrstuvwxyz".indexOf(c);
         if (pos == -1)
             return c;
@@ -171,10 +198,13 @@ public class OCLEvaluator {
      * 
      * @param target
      * @param property
+     * @param collectionRange
+     *                the range to extract if the property is a collection, or
+     *                null
      * @return the property value.
      */
-    private Object evaluateProperty(Object target, String property)
-            throws ExpansionException {
+    private Object evaluateProperty(Object target, String property,
+            String collectionRange) throws ExpansionException {
         if (target == null) {
             return null;
         }
@@ -184,34 +214,107 @@ public class OCLEvaluator {
                     + target.getClass().getName());
         }
 
-        String collectionRange = null;
+        Object accessor = getAccessor(target.getClass(), property);
+        if (accessor instanceof Method) {
+            return invokeMethod((Method) accessor, target, collectionRange);
+        }
 
-        int rangePos = property.indexOf('[');
-        if (rangePos >= 0) {
-            collectionRange = property.substring(rangePos);
-            property = property.substring(0, rangePos);
+        if (accessor instanceof Field) {
+            Field f = (Field) accessor;
+            try {
+                return convertCollection(f.get(target), collectionRange);
+            } catch (Exception e) {
+                LOG.error("Failed to get field " + property + " on "
+                        + target.getClass().getName(), e);
+            }
         }
 
-        // First try and find a getter method in the form getProperty()
-        Method method = getMethod(target.getClass(), "get"
-                + toTitleCase(property));
-        if (method != null) {
-            return invokeMethod(method, target, collectionRange);
+        return null;
+    } // end of evaluateProperty
+
+    /**
+     * Read a single named property from a target object, looking it up in the
+     * same way as a property in an expression.
+     * 
+     * @param target
+     *                the object to read the property from
+     * @param property
+     *                the name of the property
+     * @return the property value, or null if the target is null or has no
+     *         such property
+     * @throws ExpansionException
+     *                 if the getter method fails
+     */
+    public static Object getProperty(Object target, String property)
+            throws ExpansionException {
+        if (target == null) {
+            return null;
+        }
+        Object accessor = getAccessor(target.getClass(), property);
+        if (accessor instanceof Method) {
+            return invokeMethod((Method) accessor, target, null);
+        }
+        if (accessor instanceof Field) {
+            try {
+                return convertCollection(((Field) accessor).get(target), null);
+            } catch (Exception e) {
+                throw new ExpansionException(e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reply the Method or Field that reads the named property from instances
+     * of the given class, looking it up only the first time it is needed.
+     * 
+     * @return a Method, a Field or NO_ACCESSOR
+     */
+    private static Object getAccessor(Class targetClass, String property) {
+        synchronized (accessors) {
+            SoftReference<Map<String, Object>> ref = accessors.get(targetClass);
+            Map<String, Object> classAccessors = ref == null ? null : ref.get();
+            if (classAccessors == null) {
+                classAccessors = new HashMap<String, Object>();
+                accessors.put(targetClass,
+                        new SoftReference<Map<String, Object>>(classAccessors));
+            }
+            Object accessor = classAccessors.get(property);
+            if (accessor == null) {
+                accessor = findAccessor(targetClass, property);
+                classAccessors.put(property, accessor);
+            }
+            return accessor;
         }
+    }
+
+    /**
+     * Search a class for the means of reading a named property.
+     * 
+     * @return a Method, a Field or NO_ACCESSOR
+     */
+    private static Object findAccessor(Class targetClass, String property) {
+        // First try and find a getter method in the form getProperty()
+        Method method = getMethod(targetClass, "get" + toTitleCase(property));
 
         // Then try and find a method in the form property()
-        method = getMethod(target.getClass(), property);
-        if (method != null) {
-            return invokeMethod(method, target, collectionRange);
+        if (method == null) {
+            method = getMethod(targetClass, property);
         }
 
         // Then try and find a method in the form Property() TODO: Not good.
         // This allows bad coding style
-        method = getMethod(target.getClass(), toTitleCase(property));
+        if (method == null) {
+            method = getMethod(targetClass, toTitleCase(property));
+            if (method != null) {
+                LOG.warn("Reference to a method with bad naming convention - "
+                        + toTitleCase(property));
+            }
+        }
+
         if (method != null) {
-            LOG.warn("Reference to a method with bad naming convention - "
-                    + toTitleCase(property));
-            return invokeMethod(method, target, collectionRange);
+            method.setAccessible(true);
+            return method;
         }
 
         // We have tried all method forms so lets now try just getting the
@@ -219,24 +322,20 @@ public class OCLEvaluator {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Looking for variable '" + property + "'");
         }
-        Field f = null;
         try {
-            f = target.getClass().getField(property);
-            return convertCollection(f.get(target), collectionRange);
+            return targetClass.getField(property);
         } catch (Exception e) {
             LOG.error("Failed to get field " + property + " on "
-                    + target.getClass().getName(), e);
-            return null;
+                    + targetClass.getName(), e);
+            return NO_ACCESSOR;
         }
-    } // end of evaluateProperty
+    }
 
-    private Object invokeMethod(
+    private static Object invokeMethod(
             final Method method,
             final Object target,
             final String collectionRange) throws ExpansionException {
 
-        method.setAccessible(true);
-        
         if (method != null) {
             try {
                 Object o = method.invoke(target, null); // getter methods take
@@ -347,7 +446,7 @@ public class OCLEvaluator {
      * @throws ExpansionException
      *                 if no such method exists
      */
-    private Method getMethod(Class targetClass, String methodName) {
+    private static Method getMethod(Class targetClass, String methodName) {
 
         Method m[] = targetClass.getMethods();
 
@@ -363,4 +462,65 @@ public class OCLEvaluator {
         return null;
     }
 
+    /**
+     * An expression parsed into the name of its root binding and the chain of
+     * properties to evaluate from there, so that it need not be parsed again
+     * each time it is evaluated.
+     */
+    private static class CompiledExpression {
+        /** The name of the binding the expression starts from. */
+        private String root;
+
+        /** The part of the expression following the root. */
+        private String path;
+
+        /** The properties to evaluate in turn. */
+        private String[] properties;
+
+        /** The collection range of each property, or null. */
+        private String[] ranges;
+
+        /** What is left of the path after each property, for error messages. */
+        private String[] remainders;
+
+        CompiledExpression(String expr) {
+            int firstPos = expr.indexOf(".");
+            if (firstPos < 0) {
+                firstPos = expr.length();
+            }
+            root = expr.substring(0, firstPos);
+            path = expr.substring(firstPos);
+
+            List<String> propertyList = new ArrayList<String>();
+            List<String> remainderList = new ArrayList<String>();
+            String partExpr = path;
+            while (partExpr.length() > 0) {
+                int dotPos = partExpr.indexOf(".");
+                int secPos = partExpr.indexOf(".", dotPos + 1);
+                if (secPos == -1) { // <expr>::= ".<property>"
+                    propertyList.add(partExpr.substring(dotPos + 1));
+                    partExpr = "";
+                } else { // <expr>::= ".<property>.<expr>"
+                    propertyList.add(partExpr.substring(dotPos + 1, secPos));
+                    partExpr = partExpr.substring(secPos);
+                }
+                remainderList.add(partExpr);
+            }
+            remainderList.add("");
+
+            int count = propertyList.size();
+            properties = new String[count];
+            ranges = new String[count];
+            for (int i = 0; i < count; ++i) {
+                String property = propertyList.get(i);
+                int rangePos = property.indexOf('[');
+                if (rangePos >= 0) {
+                    ranges[i] = property.substring(rangePos);
+                    property = property.substring(0, rangePos);
+                }
+                properties[i] = property;
+            }
+            remainders = remainderList.toArray(new String[count + 1]);
+        }
+    }
 }
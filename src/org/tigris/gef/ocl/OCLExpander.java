@@ -49,6 +49,26 @@ public class OCLExpander {
 
     protected OCLEvaluator evaluator;
 
+    /**
+     * The templates that apply to each class of target, as replied by
+     * findTemplatesFor. This is discarded if the template map is replaced.
+     */
+    private Map<Class, List> templatesByClass = new HashMap<Class, List>();
+
+    /** The template map that templatesByClass was built from. */
+    private Map cachedTemplates;
+
+    /** The lines of each template body, keyed by the body. */
+    private Map<String, String[]> templateLines =
+        new HashMap<String, String[]>();
+
+    /**
+     * The static method calls found in expressions, keyed by the text of the
+     * expression.
+     */
+    private Map<String, StaticCall> staticCalls =
+        new HashMap<String, StaticCall>();
+
     private static final Log LOG = LogFactory.getLog(OCLExpander.class);
 
     // //////////////////////////////////////////////////////////////
@@ -152,14 +172,30 @@ public class OCLExpander {
             return;
         }
 
-        StringTokenizer st = new StringTokenizer(expr, "\n\r");
-        int lineNo = 0;
-        while (st.hasMoreTokens()) {
-            String line = st.nextToken();
-            expandLine(printWriter, line, target, prefix, suffix, ++lineNo);
+        String[] lines = getLines(expr);
+        for (int lineNo = 1; lineNo <= lines.length; ++lineNo) {
+            expandLine(printWriter, lines[lineNo - 1], target, prefix, suffix,
+                    lineNo);
         }
     } // end of expand
 
+    /**
+     * Reply the lines of a template body, splitting it only the first time it
+     * is expanded.
+     */
+    private String[] getLines(String body) {
+        String[] lines = templateLines.get(body);
+        if (lines == null) {
+            StringTokenizer st = new StringTokenizer(body, "\n\r");
+            lines = new String[st.countTokens()];
+            for (int i = 0; i < lines.length; ++i) {
+                lines[i] = st.nextToken();
+            }
+            templateLines.put(body, lines);
+        }
+        return lines;
+    }
+
     private void expandLine(PrintWriter pw, String line, Object target,
             String prefix, String suffix, int lineNo) throws ExpansionException {
         // if no embedded expression then output line else
@@ -251,13 +287,34 @@ public class OCLExpander {
 
     /**
      * Find the List of templates that could apply to this target object. That
-     * includes the templates for its class and all superclasses.
-     * Needs-More-Work: should cache.
+     * includes the templates for its class and all superclasses. The result
+     * is cached for each class, so changes made to the contents of the
+     * template map after expansion has started are not seen.
      */
     private List findTemplatesFor(Object target) {
+        if (cachedTemplates != _templates) {
+            templatesByClass.clear();
+            cachedTemplates = _templates;
+        }
+        Class targetClass = target.getClass();
+        List res = templatesByClass.get(targetClass);
+        if (res == null) {
+            res = collectTemplatesFor(targetClass);
+            if (res == null) {
+                res = Collections.EMPTY_LIST;
+            }
+            templatesByClass.put(targetClass, res);
+        }
+        return res;
+    }
+
+    /**
+     * Collect the templates for a class and all its superclasses.
+     */
+    private List collectTemplatesFor(Class targetClass) {
         List res = null;
         boolean shared = true;
-        for (Class c = target.getClass(); c != null; c = c.getSuperclass()) {
+        for (Class c = targetClass; c != null; c = c.getSuperclass()) {
             List temps = (List) _templates.get(c);
             if (temps == null) {
                 continue;
@@ -377,20 +434,11 @@ public class OCLExpander {
         } else {
             // If the expression does not refer to self then the assumption is
             // that it is an expression wrapped in a static method call.
-            int bracketPosn = expr.indexOf('(');
-            String classAndMethod = expr.substring(0, bracketPosn);
-            int lastBracketPosn = expr.lastIndexOf(')');
-            expr = expr.substring(bracketPosn + 1, lastBracketPosn);
-            List values = evaluator.eval(bindings, expr);
+            StaticCall call = getStaticCall(expr);
+            List values = evaluator.eval(bindings, call.argumentExpression);
             ArrayList newValues = new ArrayList(values.size());
-            int methodSeperator = classAndMethod.lastIndexOf('.');
-            String className = classAndMethod.substring(0, methodSeperator);
-            String methodName = classAndMethod.substring(methodSeperator + 1);
 
             try {
-
-                Class clazz = Class.forName(className);
-
                 for (Iterator it = values.iterator(); it.hasNext();) {
 
                     Object o = it.next();
@@ -405,11 +453,7 @@ public class OCLExpander {
                     } else {
                         argClass = o.getClass();
                     }
-                    Method m = getMethod(clazz, argClass, methodName);
-                    if (!Modifier.isStatic(m.getModifiers())) {
-                        throw new ExpansionException("The method "
-                                + m.toString() + " was expected to be static");
-                    }
+                    Method m = call.getMethod(argClass);
 
                     Object[] args = new Object[1];
                     args[0] = o;
@@ -430,6 +474,30 @@ public class OCLExpander {
         }
     }
 
+    /**
+     * Reply the parsed form of an expression wrapped in a static method call,
+     * parsing it only the first time it is seen.
+     */
+    private StaticCall getStaticCall(String expr) throws ExpansionException {
+        StaticCall call = staticCalls.get(expr);
+        if (call == null) {
+            int bracketPosn = expr.indexOf('(');
+            String classAndMethod = expr.substring(0, bracketPosn);
+            int lastBracketPosn = expr.lastIndexOf(')');
+            int methodSeperator = classAndMethod.lastIndexOf('.');
+            String className = classAndMethod.substring(0, methodSeperator);
+            try {
+                call = new StaticCall(Class.forName(className), classAndMethod
+                        .substring(methodSeperator + 1), expr.substring(
+                        bracketPosn + 1, lastBracketPosn));
+            } catch (ClassNotFoundException e) {
+                throw new ExpansionException(e);
+            }
+            staticCalls.put(expr, call);
+        }
+        return call;
+    }
+
     /**
      * Get the Method object from a class which has the given name and a
      * parameter closest to matching the parameter class.
@@ -466,4 +534,36 @@ public class OCLExpander {
                 + parameterClass.getName() + " as the only argument");
     }
 
-}
\ No newline at end of file
+    /**
+     * A static method call parsed from an expression, together with the
+     * methods already chosen for each class of argument.
+     */
+    private class StaticCall {
+        private Class clazz;
+        private String methodName;
+        private String argumentExpression;
+        private Map<Class, Method> methods = new HashMap<Class, Method>();
+
+        StaticCall(Class c, String name, String argExpr) {
+            clazz = c;
+            methodName = name;
+            argumentExpression = argExpr;
+        }
+
+        /**
+         * Reply the static method to call for an argument of the given class.
+         */
+        Method getMethod(Class argClass) throws ExpansionException {
+            Method m = methods.get(argClass);
+            if (m == null) {
+                m = OCLExpander.this.getMethod(clazz, argClass, methodName);
+                if (!Modifier.isStatic(m.getModifiers())) {
+                    throw new ExpansionException("The method "
+                            + m.toString() + " was expected to be static");
+                }
+                methods.put(argClass, m);
+            }
+            return m;
+        }
+    }
+}
@@ -26,6 +26,8 @@ package org.tigris.gef.persistence.export;
 
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JPanel;
 
@@ -43,6 +45,12 @@ public class FontUtility {
      */
     private static final JPanel DUMMY_PANEL = new JPanel();
 
+    /**
+     * The font metrics already obtained, by font.
+     */
+    private static final Map<Font, FontMetrics> METRICS =
+        new ConcurrentHashMap<Font, FontMetrics>();
+
     /**
      * The constructor is not accessible for a utility.
      */
@@ -54,10 +62,15 @@ public class FontUtility {
      * 
      * @param font
      *                The font for which font metrics is to be obtained.
-     * @return the FontMetrics
+     * @return the FontMetrics, the same instance each time for equal fonts
      */
     public static FontMetrics getFontMetrics(Font font) {
-        // return Toolkit.getDefaultToolkit().getFontMetrics(font);
-        return DUMMY_PANEL.getFontMetrics(font);
+        FontMetrics metrics = METRICS.get(font);
+        if (metrics == null) {
+            // return Toolkit.getDefaultToolkit().getFontMetrics(font);
+            metrics = DUMMY_PANEL.getFontMetrics(font);
+            METRICS.put(font, metrics);
+        }
+        return metrics;
     }
 }
@@ -0,0 +1,301 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.persistence.export;
+
+import java.awt.image.BufferedImage;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG image a few rows at a time, so that an image can be saved
+ * without all of it being in memory at once. The image is written as 8 bit
+ * RGBA, with each row given whichever PNG filter leaves the smallest sum of
+ * differences, the way libpng chooses.
+ * <p>
+ * The rows must be written from top to bottom, and there must be exactly as
+ * many as the height the encoder was constructed with. finish() writes the
+ * end of the image but does not close the stream.
+ */
+public class PngEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10,
+        26, 10};
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /** The largest IDAT chunk written. */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int FILTER_NONE = 0;
+
+    private static final int FILTER_SUB = 1;
+
+    private static final int FILTER_UP = 2;
+
+    private static final int FILTER_AVERAGE = 3;
+
+    private static final int FILTER_PAETH = 4;
+
+    /**
+     * Collects the compressed image data and writes it out as IDAT chunks.
+     */
+    private static class ChunkOutputStream extends FilterOutputStream {
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+
+        private int count;
+
+        ChunkOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk(out, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+
+        /** Write the last chunk, leaving the underlying stream open. */
+        public void close() throws IOException {
+            flushChunk();
+        }
+    }
+
+    private final OutputStream out;
+
+    private final int width;
+
+    private final int height;
+
+    private final Deflater deflater;
+
+    private final ChunkOutputStream chunks;
+
+    private final DeflaterOutputStream data;
+
+    /** The pixels of the current row. */
+    private final int[] pixels;
+
+    /**
+     * The bytes of the previous and current row, before filtering. The row
+     * before the first is all zero.
+     */
+    private byte[] previous;
+
+    private byte[] current;
+
+    /** The current row filtered with each of the five filters. */
+    private final byte[][] filtered;
+
+    private int rowsWritten;
+
+    /**
+     * Create an encoder and write the PNG header to the stream.
+     * 
+     * @param out the stream to write the PNG to
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @throws IOException if the header can not be written
+     */
+    public PngEncoder(OutputStream out, int width, int height)
+        throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The image must not be empty");
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        int rowBytes = width * BYTES_PER_PIXEL;
+        pixels = new int[width];
+        previous = new byte[rowBytes];
+        current = new byte[rowBytes];
+        filtered = new byte[5][rowBytes + 1];
+
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bits per sample
+        header[9] = 6; // RGBA
+        writeChunk(out, "IHDR", header, header.length);
+
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        chunks = new ChunkOutputStream(out);
+        data = new DeflaterOutputStream(chunks, deflater, CHUNK_SIZE);
+    }
+
+    /**
+     * Write rows of the image.
+     * 
+     * @param image an image as wide as the PNG holding the rows
+     * @param y the first row of the image to write
+     * @param rows the number of rows to write
+     * @throws IOException if the rows can not be written
+     */
+    public void writeRows(BufferedImage image, int y, int rows)
+        throws IOException {
+        if (image.getWidth() != width) {
+            throw new IllegalArgumentException("The image is "
+                    + image.getWidth() + " pixels wide, not " + width);
+        }
+        if (rowsWritten + rows > height) {
+            throw new IllegalArgumentException("The PNG only has " + height
+                    + " rows");
+        }
+        for (int r = 0; r < rows; ++r) {
+            image.getRGB(0, y + r, width, 1, pixels, 0, width);
+            writeRow();
+        }
+    }
+
+    private void writeRow() throws IOException {
+        byte[] swap = previous;
+        previous = current;
+        current = swap;
+        for (int i = 0, j = 0; i < width; ++i, j += BYTES_PER_PIXEL) {
+            int argb = pixels[i];
+            current[j] = (byte) (argb >> 16);
+            current[j + 1] = (byte) (argb >> 8);
+            current[j + 2] = (byte) argb;
+            current[j + 3] = (byte) (argb >>> 24);
+        }
+        data.write(filter(), 0, current.length + 1);
+        ++rowsWritten;
+    }
+
+    /**
+     * Filter the current row every way, and reply the one with the smallest
+     * sum of absolute differences.
+     */
+    private byte[] filter() {
+        long[] sums = new long[5];
+        for (int i = 0; i < current.length; ++i) {
+            int x = current[i] & 0xff;
+            int a = i >= BYTES_PER_PIXEL ? current[i - BYTES_PER_PIXEL] & 0xff
+                    : 0;
+            int b = previous[i] & 0xff;
+            int c = i >= BYTES_PER_PIXEL ? previous[i - BYTES_PER_PIXEL] & 0xff
+                    : 0;
+            sums[FILTER_NONE] += put(FILTER_NONE, i, x);
+            sums[FILTER_SUB] += put(FILTER_SUB, i, x - a);
+            sums[FILTER_UP] += put(FILTER_UP, i, x - b);
+            sums[FILTER_AVERAGE] += put(FILTER_AVERAGE, i, x - ((a + b) >> 1));
+            sums[FILTER_PAETH] += put(FILTER_PAETH, i, x - paeth(a, b, c));
+        }
+        int best = FILTER_NONE;
+        for (int f = FILTER_SUB; f <= FILTER_PAETH; ++f) {
+            if (sums[f] < sums[best]) {
+                best = f;
+            }
+        }
+        filtered[best][0] = (byte) best;
+        return filtered[best];
+    }
+
+    /**
+     * Store a filtered byte, and reply its size as a signed byte.
+     */
+    private int put(int filter, int i, int value) {
+        byte v = (byte) value;
+        filtered[filter][i + 1] = v;
+        return Math.abs((int) v);
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Write the end of the image. The stream is not closed.
+     * 
+     * @throws IOException if the image can not be written, or not all of the
+     *                 rows have been written
+     */
+    public void finish() throws IOException {
+        if (rowsWritten != height) {
+            throw new IOException("Only " + rowsWritten + " of " + height
+                    + " rows were written");
+        }
+        data.finish();
+        chunks.close();
+        deflater.end();
+        writeChunk(out, "IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data,
+            int length) throws IOException {
+        byte[] header = new byte[8];
+        putInt(header, 0, length);
+        for (int i = 0; i < 4; ++i) {
+            header[4 + i] = (byte) type.charAt(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, length);
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) crc.getValue());
+        out.write(header);
+        out.write(data, 0, length);
+        out.write(trailer);
+    }
+}
@@ -0,0 +1,1185 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.persistence.export;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.AttributedCharacterIterator;
+import java.text.CharacterIterator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.tigris.gef.presentation.Fig;
+
+/**
+ * A Graphics2D which writes SVG to a stream as it is drawn on. Unlike
+ * SvgWriter and SvgWriter2D no DOM is built, each element is written out when
+ * it is drawn, so the memory needed does not grow with the size of the
+ * diagram.
+ * <p>
+ * The transform is applied by the writer, as SvgWriter does, so the SVG uses
+ * plain co-ordinates for anything that is only translated and scaled. Shapes
+ * that are rotated or sheared are written as paths, text and images are given
+ * a transform attribute.
+ * <p>
+ * The fill, stroke and font of an element make up its style. A run of
+ * elements with the same style is wrapped in a group that carries the style,
+ * a lone element carries its own. With CSS classes turned on each style is
+ * written once, as a class in a style element placed before its first use,
+ * and the elements and groups refer to the class.
+ * <p>
+ * The stream is written through a buffer and closed by dispose(). Graphics
+ * methods cannot throw IOException, use checkError() after dispose() to find
+ * out whether all of the SVG was written.
+ */
+public class SvgStreamWriter extends Graphics2D {
+
+    /** The most CSS classes written, later styles are written inline. */
+    public static final int MAX_CLASSES = 1000;
+
+    private static final int SIMPLE_TRANSFORMS = AffineTransform.TYPE_TRANSLATION
+            | AffineTransform.TYPE_UNIFORM_SCALE
+            | AffineTransform.TYPE_GENERAL_SCALE;
+
+    private static final char[] BASE64 = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            + "abcdefghijklmnopqrstuvwxyz0123456789+/").toCharArray();
+
+    /**
+     * The output shared by a writer and the Graphics created from it.
+     */
+    private static class Output {
+        private final PrintWriter writer;
+
+        private final boolean useClasses;
+
+        /** The CSS class name of each style that has been given one. */
+        private final Map<String, String> classes = new HashMap<String, String>();
+
+        /** The style of the current run of elements, or null. */
+        private String runStyle;
+
+        /** The start of the element that began the run, until it has company. */
+        private String pendingName;
+
+        /** The rest of the element that began the run. */
+        private String pendingRest;
+
+        /** Whether the run has been given a group. */
+        private boolean runGrouped;
+
+        /** The names of the elements opened by each beginFig call. */
+        private final LinkedList<String[]> figElements = new LinkedList<String[]>();
+
+        private boolean closed;
+
+        Output(PrintWriter writer, boolean useClasses) {
+            this.writer = writer;
+            this.useClasses = useClasses;
+        }
+
+        /**
+         * Write an element with the given style. The style attribute goes
+         * between name and rest.
+         */
+        void element(String style, String name, String rest) {
+            if (style.equals(runStyle)) {
+                if (!runGrouped) {
+                    writer.print("<g");
+                    writer.print(styleAttribute(runStyle));
+                    writer.println(">");
+                    writer.print(pendingName);
+                    writer.println(pendingRest);
+                    pendingName = null;
+                    pendingRest = null;
+                    runGrouped = true;
+                }
+                writer.print(name);
+                writer.println(rest);
+            } else {
+                endRun();
+                defineClass(style);
+                runStyle = style;
+                pendingName = name;
+                pendingRest = rest;
+            }
+        }
+
+        /** Write out the current run of elements. */
+        void endRun() {
+            if (pendingName != null) {
+                writer.print(pendingName);
+                writer.print(styleAttribute(runStyle));
+                writer.println(pendingRest);
+                pendingName = null;
+                pendingRest = null;
+            }
+            if (runGrouped) {
+                writer.println("</g>");
+                runGrouped = false;
+            }
+            runStyle = null;
+        }
+
+        /**
+         * Write a style element defining a class for a style not seen
+         * before, if classes are in use and there is room for another.
+         */
+        private void defineClass(String style) {
+            if (!useClasses || classes.containsKey(style)
+                    || classes.size() >= MAX_CLASSES) {
+                return;
+            }
+            String name = "s" + classes.size();
+            classes.put(style, name);
+            writer.print("<style type=\"text/css\"><![CDATA[.");
+            writer.print(name);
+            writer.print(" {");
+            writer.print(style);
+            writer.println("}]]></style>");
+        }
+
+        private String styleAttribute(String style) {
+            String name = classes.get(style);
+            if (name != null) {
+                return " class=\"" + name + "\"";
+            }
+            return " style=\"" + escape(style) + "\"";
+        }
+
+        /**
+         * Open the elements grouping a Fig, which are closed by the matching
+         * endFig.
+         */
+        void beginFig(String[] elements, String[] names) {
+            endRun();
+            for (int i = 0; i < elements.length; ++i) {
+                writer.println(elements[i]);
+            }
+            figElements.addFirst(names);
+        }
+
+        void endFig() {
+            endRun();
+            String[] names = figElements.removeFirst();
+            for (int i = names.length - 1; i >= 0; --i) {
+                writer.print("</");
+                writer.print(names[i]);
+                writer.println(">");
+            }
+        }
+    }
+
+    private final Output output;
+
+    /** Whether this writer created the output, rather than being created. */
+    private final boolean root;
+
+    private AffineTransform transform = new AffineTransform();
+
+    private Color foreground = Color.black;
+
+    private Color background = Color.white;
+
+    private Paint paint = Color.black;
+
+    private Stroke stroke = new BasicStroke();
+
+    private Font font = new Font("Verdana", Font.PLAIN, 8);
+
+    private Composite composite = AlphaComposite.SrcOver;
+
+    /** The clip in device co-ordinates. */
+    private Shape clip;
+
+    private RenderingHints renderingHints = new RenderingHints(null);
+
+    private int hInset = 10;
+
+    private int vInset = 10;
+
+    /**
+     * Construct a new SvgStreamWriter which will write to the given stream.
+     * 
+     * @param stream OutputStream to write SVG to
+     * @param drawingArea bounds of the drawing area. These coordinates will be
+     *            used as the SVG frame.
+     * @throws IOException if the stream can not be written as UTF-8
+     */
+    public SvgStreamWriter(OutputStream stream, Rectangle drawingArea)
+        throws IOException {
+        this(stream, drawingArea, false, false);
+    }
+
+    /**
+     * Construct a new SvgStreamWriter which will write to the given stream.
+     * 
+     * @param stream OutputStream to write SVG to
+     * @param drawingArea bounds of the drawing area. These coordinates will be
+     *            used as the SVG frame.
+     * @param isInline If false, it writes the DOCTYPE and XML nodes. If true,
+     *            we don't write them (think on inline SVG)
+     * @param useClasses If true each style is written once as a CSS class,
+     *            otherwise styles are written as style attributes.
+     * @throws IOException if the stream can not be written as UTF-8
+     */
+    public SvgStreamWriter(OutputStream stream, Rectangle drawingArea,
+            boolean isInline, boolean useClasses) throws IOException {
+        PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(stream, "UTF-8")));
+        output = new Output(writer, useClasses);
+        root = true;
+        if (!isInline) {
+            writer.println("<?xml version=\"1.0\" encoding=\"utf-8\" ?>");
+            writer.println("<!DOCTYPE svg PUBLIC "
+                    + "\"-//W3C//DTD SVG 1.1//EN\" "
+                    + "\"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">");
+        }
+        writer.println("<svg xmlns=\"http://www.w3.org/2000/svg\""
+                + " xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\""
+                + (2 * hInset + drawingArea.width) + "\" height=\""
+                + (2 * vInset + drawingArea.height) + "\" version=\"1.1\">");
+        translate(hInset - drawingArea.x, vInset - drawingArea.y);
+    }
+
+    /**
+     * Construct a Graphics drawing to the same output as the given one, with
+     * a copy of its state.
+     */
+    private SvgStreamWriter(SvgStreamWriter parent) {
+        output = parent.output;
+        root = false;
+        transform = new AffineTransform(parent.transform);
+        foreground = parent.foreground;
+        background = parent.background;
+        paint = parent.paint;
+        stroke = parent.stroke;
+        font = parent.font;
+        composite = parent.composite;
+        clip = parent.clip;
+        renderingHints = (RenderingHints) parent.renderingHints.clone();
+    }
+
+    public Graphics create() {
+        return new SvgStreamWriter(this);
+    }
+
+    /**
+     * Finish the SVG document and close the stream, if this is the writer
+     * that was constructed on the stream. Disposing of a Graphics created
+     * from it does nothing.
+     */
+    public void dispose() {
+        if (!root || output.closed) {
+            return;
+        }
+        output.endRun();
+        while (!output.figElements.isEmpty()) {
+            output.endFig();
+        }
+        output.writer.println("</svg>");
+        output.writer.close();
+        output.closed = true;
+    }
+
+    /**
+     * Reply true if writing to the stream has failed.
+     */
+    public boolean checkError() {
+        return output.writer.checkError();
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // grouping
+
+    /**
+     * Begin a new top level fig. All drawing commands between this call and
+     * the call to endFig will be grouped in an SVG group.
+     * 
+     * @param fig the fig which be painted next
+     */
+    public void beginFig(Fig fig) {
+        beginFig(fig, null, null);
+    }
+
+    /**
+     * Begin fig with an optional link and class(s).
+     * 
+     * @param fig the fig which be painted next
+     * @param cssClass the class of the group, or null
+     * @param url the target of a link around the group, or null
+     */
+    public void beginFig(Fig fig, String cssClass, String url) {
+        String group = cssClass == null ? "<g>" : "<g class=\""
+                + escape(cssClass) + "\">";
+        if (url == null) {
+            output.beginFig(new String[] {group}, new String[] {"g"});
+        } else {
+            output.beginFig(new String[] {
+                "<a xlink:href=\"" + escape(url) + "\">", group},
+                    new String[] {"a", "g"});
+        }
+    }
+
+    /**
+     * End the current fig.
+     */
+    public void endFig() {
+        output.endFig();
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // state
+
+    public Color getColor() {
+        return foreground;
+    }
+
+    public void setColor(Color c) {
+        if (c != null) {
+            foreground = c;
+            paint = c;
+        }
+    }
+
+    public Paint getPaint() {
+        return paint;
+    }
+
+    /**
+     * Set the paint. Only colors can be written, for other paints the
+     * current color is used.
+     */
+    public void setPaint(Paint p) {
+        if (p instanceof Color) {
+            setColor((Color) p);
+        } else if (p != null) {
+            paint = p;
+        }
+    }
+
+    public Color getBackground() {
+        return background;
+    }
+
+    public void setBackground(Color color) {
+        background = color;
+    }
+
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    public void setStroke(Stroke s) {
+        if (s != null) {
+            stroke = s;
+        }
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public void setFont(Font f) {
+        if (f != null) {
+            font = f;
+        }
+    }
+
+    public FontMetrics getFontMetrics(Font f) {
+        return FontUtility.getFontMetrics(f);
+    }
+
+    public FontRenderContext getFontRenderContext() {
+        return new FontRenderContext(null, false, false);
+    }
+
+    public Composite getComposite() {
+        return composite;
+    }
+
+    public void setComposite(Composite comp) {
+        if (comp != null) {
+            composite = comp;
+        }
+    }
+
+    public void setPaintMode() {
+    }
+
+    /**
+     * XOR mode can not be written to SVG, so drawing carries on as normal.
+     */
+    public void setXORMode(Color otherColor) {
+    }
+
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return null;
+    }
+
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return renderingHints.get(hintKey);
+    }
+
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        renderingHints.put(hintKey, hintValue);
+    }
+
+    public RenderingHints getRenderingHints() {
+        return (RenderingHints) renderingHints.clone();
+    }
+
+    public void setRenderingHints(Map<?, ?> hints) {
+        renderingHints.clear();
+        renderingHints.putAll(hints);
+    }
+
+    public void addRenderingHints(Map<?, ?> hints) {
+        renderingHints.putAll(hints);
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // transform
+
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    public void setTransform(AffineTransform tx) {
+        transform = new AffineTransform(tx);
+    }
+
+    public void transform(AffineTransform tx) {
+        transform.concatenate(tx);
+    }
+
+    public void translate(int x, int y) {
+        transform.translate(x, y);
+    }
+
+    public void translate(double tx, double ty) {
+        transform.translate(tx, ty);
+    }
+
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    public void shear(double shx, double shy) {
+        transform.shear(shx, shy);
+    }
+
+    /**
+     * Reply true if the transform only translates and scales, so that shapes
+     * can be written with transformed co-ordinates.
+     */
+    private boolean isSimpleTransform() {
+        return (transform.getType() & ~SIMPLE_TRANSFORMS) == 0;
+    }
+
+    private double mapX(double x) {
+        return x * transform.getScaleX() + transform.getTranslateX();
+    }
+
+    private double mapY(double y) {
+        return y * transform.getScaleY() + transform.getTranslateY();
+    }
+
+    /** The factor by which the transform scales lengths. */
+    private double getLengthScale() {
+        return Math.sqrt(Math.abs(transform.getDeterminant()));
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // clipping, which is kept but not written
+
+    public Shape getClip() {
+        if (clip == null) {
+            return null;
+        }
+        try {
+            return transform.createInverse().createTransformedShape(clip);
+        } catch (NoninvertibleTransformException e) {
+            return null;
+        }
+    }
+
+    public Rectangle getClipBounds() {
+        Shape c = getClip();
+        return c == null ? null : c.getBounds();
+    }
+
+    public void setClip(Shape newClip) {
+        clip = newClip == null ? null : transform
+                .createTransformedShape(newClip);
+    }
+
+    public void setClip(int x, int y, int w, int h) {
+        setClip(new Rectangle(x, y, w, h));
+    }
+
+    public void clip(Shape s) {
+        Shape device = transform.createTransformedShape(s);
+        if (clip == null) {
+            clip = device;
+        } else {
+            Area area = new Area(clip);
+            area.intersect(new Area(device));
+            clip = area;
+        }
+    }
+
+    public void clipRect(int x, int y, int w, int h) {
+        clip(new Rectangle(x, y, w, h));
+    }
+
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        if (onStroke) {
+            s = stroke.createStrokedShape(s);
+        }
+        return transform.createTransformedShape(s).intersects(rect);
+    }
+
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // styles
+
+    /** The style for drawing the outline of a shape. */
+    private String getStrokeStyle() {
+        StringBuilder style = new StringBuilder("fill:none;stroke:");
+        appendColor(style, getDrawingColor());
+        appendOpacity(style, "stroke-opacity", getDrawingColor());
+        double scale = getLengthScale();
+        if (stroke instanceof BasicStroke) {
+            BasicStroke bs = (BasicStroke) stroke;
+            style.append(";stroke-width:");
+            appendNumber(style, bs.getLineWidth() * scale);
+            float[] dashes = bs.getDashArray();
+            if (dashes != null && dashes.length > 0) {
+                style.append(";stroke-dasharray:");
+                for (int i = 0; i < dashes.length; ++i) {
+                    if (i > 0) {
+                        style.append(',');
+                    }
+                    appendNumber(style, dashes[i] * scale);
+                }
+                if (bs.getDashPhase() != 0) {
+                    style.append(";stroke-dashoffset:");
+                    appendNumber(style, bs.getDashPhase() * scale);
+                }
+            }
+        } else {
+            style.append(";stroke-width:");
+            appendNumber(style, scale);
+        }
+        return style.toString();
+    }
+
+    /** The style for filling a shape. */
+    private String getFillStyle() {
+        StringBuilder style = new StringBuilder("fill:");
+        appendColor(style, getDrawingColor());
+        appendOpacity(style, "fill-opacity", getDrawingColor());
+        style.append(";stroke:none");
+        return style.toString();
+    }
+
+    /** The style for text in the current font. */
+    private String getTextStyle(double fontSize) {
+        StringBuilder style = new StringBuilder(getFillStyle());
+        style.append(";font-family:'");
+        style.append(font.getFamily().replace('\'', ' ').replace('"', ' '));
+        style.append("';font-size:");
+        appendNumber(style, fontSize);
+        if (font.isBold()) {
+            style.append(";font-weight:bold");
+        }
+        if (font.isItalic()) {
+            style.append(";font-style:italic");
+        }
+        return style.toString();
+    }
+
+    /** The color to draw with, colors are all that can be written. */
+    private Color getDrawingColor() {
+        return paint instanceof Color ? (Color) paint : foreground;
+    }
+
+    private static void appendColor(StringBuilder sb, Color c) {
+        String hex = Integer.toHexString(c.getRGB() & 0xffffff);
+        sb.append('#');
+        for (int i = hex.length(); i < 6; ++i) {
+            sb.append('0');
+        }
+        sb.append(hex);
+    }
+
+    private static void appendOpacity(StringBuilder sb, String property,
+            Color c) {
+        if (c.getAlpha() != 255) {
+            sb.append(';').append(property).append(':');
+            appendNumber(sb, c.getAlpha() / 255.0);
+        }
+    }
+
+    /** Append a number with at most three decimals. */
+    private static void appendNumber(StringBuilder sb, double d) {
+        long thousandths = Math.round(d * 1000);
+        if (thousandths < 0) {
+            sb.append('-');
+            thousandths = -thousandths;
+        }
+        sb.append(thousandths / 1000);
+        int fraction = (int) (thousandths % 1000);
+        if (fraction != 0) {
+            sb.append('.');
+            if (fraction < 100) {
+                sb.append('0');
+            }
+            if (fraction < 10) {
+                sb.append('0');
+            }
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+            }
+            sb.append(fraction);
+        }
+    }
+
+    private static void appendAttribute(StringBuilder sb, String name,
+            double value) {
+        sb.append(' ').append(name).append("=\"");
+        appendNumber(sb, value);
+        sb.append('"');
+    }
+
+    private void appendTransform(StringBuilder sb, AffineTransform tx) {
+        sb.append(" transform=\"matrix(");
+        appendNumber(sb, tx.getScaleX());
+        sb.append(' ');
+        appendNumber(sb, tx.getShearY());
+        sb.append(' ');
+        appendNumber(sb, tx.getShearX());
+        sb.append(' ');
+        appendNumber(sb, tx.getScaleY());
+        sb.append(' ');
+        appendNumber(sb, tx.getTranslateX());
+        sb.append(' ');
+        appendNumber(sb, tx.getTranslateY());
+        sb.append(")\"");
+    }
+
+    /** Escape the characters that are reserved in XML text and attributes. */
+    private static String escape(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            String entity;
+            switch (c) {
+            case '&':
+                entity = "&amp;";
+                break;
+            case '<':
+                entity = "&lt;";
+                break;
+            case '>':
+                entity = "&gt;";
+                break;
+            case '"':
+                entity = "&quot;";
+                break;
+            default:
+                entity = null;
+            }
+            if (entity != null) {
+                if (sb == null) {
+                    sb = new StringBuilder(s.substring(0, i));
+                }
+                sb.append(entity);
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // shapes
+
+    public void draw(Shape s) {
+        writeShape(s, getStrokeStyle());
+    }
+
+    public void fill(Shape s) {
+        writeShape(s, getFillStyle());
+    }
+
+    /**
+     * Write a shape with the given style, as the simplest SVG element that
+     * represents it once transformed.
+     */
+    private void writeShape(Shape s, String style) {
+        StringBuilder rest = new StringBuilder();
+        String name;
+        if (!isSimpleTransform()) {
+            name = "<path";
+            appendPath(rest, transform.createTransformedShape(s));
+        } else if (s instanceof Line2D) {
+            Line2D l = (Line2D) s;
+            name = "<line";
+            appendAttribute(rest, "x1", mapX(l.getX1()));
+            appendAttribute(rest, "y1", mapY(l.getY1()));
+            appendAttribute(rest, "x2", mapX(l.getX2()));
+            appendAttribute(rest, "y2", mapY(l.getY2()));
+        } else if (s instanceof Rectangle2D) {
+            Rectangle2D r = (Rectangle2D) s;
+            name = "<rect";
+            appendBox(rest, r.getX(), r.getY(), r.getWidth(), r.getHeight());
+        } else if (s instanceof RoundRectangle2D) {
+            RoundRectangle2D r = (RoundRectangle2D) s;
+            name = "<rect";
+            appendBox(rest, r.getX(), r.getY(), r.getWidth(), r.getHeight());
+            appendAttribute(rest, "rx", r.getArcWidth() / 2
+                    * transform.getScaleX());
+            appendAttribute(rest, "ry", r.getArcHeight() / 2
+                    * transform.getScaleY());
+        } else if (s instanceof Ellipse2D) {
+            Ellipse2D e = (Ellipse2D) s;
+            name = "<ellipse";
+            appendAttribute(rest, "cx", mapX(e.getCenterX()));
+            appendAttribute(rest, "cy", mapY(e.getCenterY()));
+            appendAttribute(rest, "rx", e.getWidth() / 2
+                    * transform.getScaleX());
+            appendAttribute(rest, "ry", e.getHeight() / 2
+                    * transform.getScaleY());
+        } else if (s instanceof Polygon) {
+            Polygon p = (Polygon) s;
+            name = "<polygon";
+            appendPoints(rest, p.xpoints, p.ypoints, p.npoints);
+        } else {
+            name = "<path";
+            appendPath(rest, transform.createTransformedShape(s));
+        }
+        rest.append("/>");
+        output.element(style, name, rest.toString());
+    }
+
+    private void appendBox(StringBuilder sb, double x, double y, double w,
+            double h) {
+        appendAttribute(sb, "x", mapX(x));
+        appendAttribute(sb, "y", mapY(y));
+        appendAttribute(sb, "width", w * transform.getScaleX());
+        appendAttribute(sb, "height", h * transform.getScaleY());
+    }
+
+    /** Append the points attribute, the transform must be simple. */
+    private void appendPoints(StringBuilder sb, int[] xs, int[] ys, int n) {
+        sb.append(" points=\"");
+        for (int i = 0; i < n; ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            appendNumber(sb, mapX(xs[i]));
+            sb.append(',');
+            appendNumber(sb, mapY(ys[i]));
+        }
+        sb.append('"');
+    }
+
+    /** Append the d attribute of a path for a shape already transformed. */
+    private void appendPath(StringBuilder sb, Shape s) {
+        sb.append(" d=\"");
+        double[] coords = new double[6];
+        PathIterator pi = s.getPathIterator(null);
+        boolean first = true;
+        while (!pi.isDone()) {
+            int points;
+            char command;
+            switch (pi.currentSegment(coords)) {
+            case PathIterator.SEG_MOVETO:
+                command = 'M';
+                points = 1;
+                break;
+            case PathIterator.SEG_LINETO:
+                command = 'L';
+                points = 1;
+                break;
+            case PathIterator.SEG_QUADTO:
+                command = 'Q';
+                points = 2;
+                break;
+            case PathIterator.SEG_CUBICTO:
+                command = 'C';
+                points = 3;
+                break;
+            default:
+                command = 'Z';
+                points = 0;
+            }
+            if (!first) {
+                sb.append(' ');
+            }
+            first = false;
+            sb.append(command);
+            for (int i = 0; i < points * 2; ++i) {
+                sb.append(i % 2 == 0 ? ' ' : ',');
+                appendNumber(sb, coords[i]);
+            }
+            pi.next();
+        }
+        sb.append('"');
+    }
+
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Float(x1, y1, x2, y2));
+    }
+
+    public void drawRect(int x, int y, int w, int h) {
+        draw(new Rectangle(x, y, w, h));
+    }
+
+    public void fillRect(int x, int y, int w, int h) {
+        fill(new Rectangle(x, y, w, h));
+    }
+
+    public void clearRect(int x, int y, int w, int h) {
+        Paint old = paint;
+        paint = background;
+        fillRect(x, y, w, h);
+        paint = old;
+    }
+
+    public void drawRoundRect(int x, int y, int w, int h, int arcw, int arch) {
+        draw(new RoundRectangle2D.Float(x, y, w, h, arcw, arch));
+    }
+
+    public void fillRoundRect(int x, int y, int w, int h, int arcw, int arch) {
+        fill(new RoundRectangle2D.Float(x, y, w, h, arcw, arch));
+    }
+
+    public void drawOval(int x, int y, int w, int h) {
+        draw(new Ellipse2D.Float(x, y, w, h));
+    }
+
+    public void fillOval(int x, int y, int w, int h) {
+        fill(new Ellipse2D.Float(x, y, w, h));
+    }
+
+    public void drawArc(int x, int y, int w, int h, int startAngle,
+            int arcAngle) {
+        draw(new Arc2D.Float(x, y, w, h, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    public void fillArc(int x, int y, int w, int h, int startAngle,
+            int arcAngle) {
+        fill(new Arc2D.Float(x, y, w, h, startAngle, arcAngle, Arc2D.PIE));
+    }
+
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        if (nPoints < 1) {
+            return;
+        }
+        if (isSimpleTransform()) {
+            StringBuilder rest = new StringBuilder();
+            appendPoints(rest, xPoints, yPoints, nPoints);
+            rest.append("/>");
+            output.element(getStrokeStyle(), "<polyline", rest.toString());
+        } else {
+            GeneralPath path = new GeneralPath();
+            path.moveTo(xPoints[0], yPoints[0]);
+            for (int i = 1; i < nPoints; ++i) {
+                path.lineTo(xPoints[i], yPoints[i]);
+            }
+            draw(path);
+        }
+    }
+
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        draw(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        fill(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // text
+
+    public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    public void drawString(String str, float x, float y) {
+        StringBuilder rest = new StringBuilder();
+        String style;
+        if (isSimpleTransform()) {
+            appendAttribute(rest, "x", mapX(x));
+            appendAttribute(rest, "y", mapY(y));
+            style = getTextStyle(font.getSize2D() * transform.getScaleY());
+        } else {
+            appendAttribute(rest, "x", x);
+            appendAttribute(rest, "y", y);
+            appendTransform(rest, transform);
+            style = getTextStyle(font.getSize2D());
+        }
+        rest.append('>').append(escape(str)).append("</text>");
+        output.element(style, "<text", rest.toString());
+    }
+
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    /**
+     * Draw the characters of the iterator in the current font, their
+     * attributes are ignored.
+     */
+    public void drawString(AttributedCharacterIterator iterator, float x,
+            float y) {
+        StringBuilder sb = new StringBuilder();
+        for (char c = iterator.first(); c != CharacterIterator.DONE; c = iterator
+                .next()) {
+            sb.append(c);
+        }
+        drawString(sb.toString(), x, y);
+    }
+
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        fill(g.getOutline(x, y));
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // images, which are embedded as PNG data
+
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+        AffineTransform tx = new AffineTransform(transform);
+        if (xform != null) {
+            tx.concatenate(xform);
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try {
+            if (!ImageIO.write(img, "png", png)) {
+                return;
+            }
+        } catch (IOException e) {
+            return;
+        }
+        StringBuilder rest = new StringBuilder();
+        appendAttribute(rest, "width", img.getWidth());
+        appendAttribute(rest, "height", img.getHeight());
+        appendTransform(rest, tx);
+        rest.append(" xlink:href=\"data:image/png;base64,");
+        appendBase64(rest, png.toByteArray());
+        rest.append("\"/>");
+        output.endRun();
+        output.writer.print("<image");
+        output.writer.println(rest);
+    }
+
+    private static void appendBase64(StringBuilder sb, byte[] data) {
+        for (int i = 0; i < data.length; i += 3) {
+            int b = (data[i] & 0xff) << 16;
+            if (i + 1 < data.length) {
+                b |= (data[i + 1] & 0xff) << 8;
+            }
+            if (i + 2 < data.length) {
+                b |= data[i + 2] & 0xff;
+            }
+            sb.append(BASE64[(b >> 18) & 0x3f]);
+            sb.append(BASE64[(b >> 12) & 0x3f]);
+            sb.append(i + 1 < data.length ? BASE64[(b >> 6) & 0x3f] : '=');
+            sb.append(i + 2 < data.length ? BASE64[b & 0x3f] : '=');
+        }
+    }
+
+    public void drawRenderableImage(RenderableImage img,
+            AffineTransform xform) {
+        drawRenderedImage(img.createDefaultRendering(), xform);
+    }
+
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+        BufferedImage filtered = op == null ? img : op.filter(img, null);
+        drawRenderedImage(filtered, AffineTransform.getTranslateInstance(x, y));
+    }
+
+    public boolean drawImage(Image img, AffineTransform xform,
+            ImageObserver observer) {
+        BufferedImage image = toBufferedImage(img, observer);
+        if (image == null) {
+            return false;
+        }
+        drawRenderedImage(image, xform);
+        return true;
+    }
+
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return drawImage(img, AffineTransform.getTranslateInstance(x, y),
+                observer);
+    }
+
+    public boolean drawImage(Image img, int x, int y, int width, int height,
+            ImageObserver observer) {
+        BufferedImage image = toBufferedImage(img, observer);
+        if (image == null) {
+            return false;
+        }
+        AffineTransform xform = AffineTransform.getTranslateInstance(x, y);
+        xform.scale((double) width / image.getWidth(), (double) height
+                / image.getHeight());
+        drawRenderedImage(image, xform);
+        return true;
+    }
+
+    public boolean drawImage(Image img, int x, int y, Color bgcolor,
+            ImageObserver observer) {
+        BufferedImage image = toBufferedImage(img, observer);
+        if (image == null) {
+            return false;
+        }
+        return drawImage(img, x, y, image.getWidth(), image.getHeight(),
+                bgcolor, observer);
+    }
+
+    public boolean drawImage(Image img, int x, int y, int width, int height,
+            Color bgcolor, ImageObserver observer) {
+        fillBackground(bgcolor, x, y, width, height);
+        return drawImage(img, x, y, width, height, observer);
+    }
+
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2,
+            int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+        BufferedImage image = toBufferedImage(img, observer);
+        if (image == null) {
+            return false;
+        }
+        int left = Math.max(0, Math.min(sx1, sx2));
+        int top = Math.max(0, Math.min(sy1, sy2));
+        int right = Math.min(image.getWidth(), Math.max(sx1, sx2));
+        int bottom = Math.min(image.getHeight(), Math.max(sy1, sy2));
+        if (right <= left || bottom <= top) {
+            return true;
+        }
+        double kx = (double) (dx2 - dx1) / (sx2 - sx1);
+        double ky = (double) (dy2 - dy1) / (sy2 - sy1);
+        AffineTransform xform = AffineTransform.getTranslateInstance(dx1
+                + (left - sx1) * kx, dy1 + (top - sy1) * ky);
+        xform.scale(kx, ky);
+        drawRenderedImage(image.getSubimage(left, top, right - left, bottom
+                - top), xform);
+        return true;
+    }
+
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2,
+            int sx1, int sy1, int sx2, int sy2, Color bgcolor,
+            ImageObserver observer) {
+        fillBackground(bgcolor, Math.min(dx1, dx2), Math.min(dy1, dy2), Math
+                .abs(dx2 - dx1), Math.abs(dy2 - dy1));
+        return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2,
+                observer);
+    }
+
+    private void fillBackground(Color bgcolor, int x, int y, int w, int h) {
+        if (bgcolor != null) {
+            Paint old = paint;
+            paint = bgcolor;
+            fillRect(x, y, w, h);
+            paint = old;
+        }
+    }
+
+    /**
+     * Reply the image as a BufferedImage, or null if it is not loaded yet.
+     */
+    private static BufferedImage toBufferedImage(Image img,
+            ImageObserver observer) {
+        if (img instanceof BufferedImage) {
+            return (BufferedImage) img;
+        }
+        int width = img.getWidth(observer);
+        int height = img.getHeight(observer);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            if (!g.drawImage(img, 0, 0, observer)) {
+                return null;
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+}
@@ -43,6 +43,7 @@ import javax.xml.parsers.SAXParserFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.tigris.gef.base.Diagram;
+import org.tigris.gef.base.LayerDiagram;
 import org.tigris.gef.presentation.Fig;
 import org.tigris.gef.presentation.FigCircle;
 import org.tigris.gef.presentation.FigEdge;
@@ -78,6 +79,8 @@ public class PGMLStackParser implements HandlerStack, HandlerFactory {
     private XMLReader xmlReader;
     private Map ownerRegistry;
     private Diagram diagram;
+    /** The layer of the diagram being read while Figs are bulk added to it. */
+    private LayerDiagram bulkLayer;
     private HashMap figRegistry;
 
     private HashMap translationTable = new HashMap();
@@ -175,6 +178,8 @@ public class PGMLStackParser implements HandlerStack, HandlerFactory {
             throw new SAXException(e);
         } catch (ParserConfigurationException e) {
             throw new SAXException(e);
+        } finally {
+            endBulkAdd();
         }
     }
 
@@ -253,6 +258,8 @@ public class PGMLStackParser implements HandlerStack, HandlerFactory {
             throw new SAXException(e);
         } catch (ParserConfigurationException e) {
             throw new SAXException(e);
+        } finally {
+            endBulkAdd();
         }
     }
 
@@ -276,7 +283,24 @@ public class PGMLStackParser implements HandlerStack, HandlerFactory {
      *                The diagram.
      */
     public void setDiagram(Diagram theDiagram) {
+        endBulkAdd();
         diagram = theDiagram;
+        if (diagram != null && diagram.getLayer() != null) {
+            bulkLayer = diagram.getLayer();
+            bulkLayer.startBulkAdd();
+        }
+    }
+
+    /**
+     * End the bulk add started when the diagram was set, so that the Figs read
+     * are damaged and announced to the layer's listeners together.
+     */
+    private void endBulkAdd() {
+        if (bulkLayer != null) {
+            LayerDiagram layer = bulkLayer;
+            bulkLayer = null;
+            layer.endBulkAdd();
+        }
     }
 
     /**
@@ -31,7 +31,6 @@ import java.util.List;
 import org.tigris.gef.base.Layer;
 import org.tigris.gef.presentation.Fig;
 import org.tigris.gef.presentation.FigEdge;
-import org.tigris.gef.presentation.FigGroup;
 
 /**
  * Utility methods referred to by PGML.tee
@@ -149,28 +148,7 @@ public class PgmlUtility {
         if (f == null) {
             throw new IllegalArgumentException("A fig must be supplied");
         }
-        if (f.getGroup() != null) {
-            String groupId = f.getGroup().getId();
-            if (f.getGroup() instanceof FigGroup) {
-                FigGroup group = (FigGroup) f.getGroup();
-                return groupId + "." + ((List) group.getFigs()).indexOf(f);
-            } else if (f.getGroup() instanceof FigEdge) {
-                FigEdge edge = (FigEdge) f.getGroup();
-                return groupId + "."
-                        + (((List) edge.getPathItemFigs()).indexOf(f) + 1);
-            } else {
-                return groupId + ".0";
-            }
-        }
-
-        Layer layer = f.getLayer();
-        if (layer == null) {
-            return "LAYER_NULL";
-        }
-
-        List c = (List) layer.getContents();
-        int index = c.indexOf(f);
-        return "Fig" + index;
+        return f.getId();
     }
 
 }
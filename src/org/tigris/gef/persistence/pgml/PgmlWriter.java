@@ -0,0 +1,461 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+
+package org.tigris.gef.persistence.pgml;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.tigris.gef.base.Diagram;
+import org.tigris.gef.base.LayerPerspective;
+import org.tigris.gef.ocl.ExpansionException;
+import org.tigris.gef.ocl.OCLEvaluator;
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigCircle;
+import org.tigris.gef.presentation.FigEdge;
+import org.tigris.gef.presentation.FigGroup;
+import org.tigris.gef.presentation.FigInk;
+import org.tigris.gef.presentation.FigLine;
+import org.tigris.gef.presentation.FigPoly;
+import org.tigris.gef.presentation.FigRRect;
+import org.tigris.gef.presentation.FigRect;
+import org.tigris.gef.presentation.FigSpline;
+import org.tigris.gef.presentation.FigText;
+
+/**
+ * Writes a Diagram as PGML by walking its Figs directly. The output is the
+ * same, byte for byte, as expanding the template /org/tigris/gef/xml/dtd/PGML.tee
+ * with an OCLExpander, but no expressions are evaluated and no intermediate
+ * buffers are built for nested elements.
+ * <p>
+ * Figs of a class that the template has no entry for are written as their
+ * toString(), as the template does. A value the template requires that is
+ * null causes an IOException, where the template would fail with an
+ * ExpansionException.
+ * 
+ * @see org.tigris.gef.base.SavePGMLAction
+ */
+public class PgmlWriter {
+
+    /** The indentation of each Fig within the pgml element. */
+    private static final String FIG_INDENT = "  ";
+
+    private Writer writer;
+
+    private String lineSeparator = System.getProperty("line.separator");
+
+    /**
+     * Construct a PgmlWriter that writes to the given Writer. The Writer is
+     * buffered if it is not already.
+     * 
+     * @param w
+     *                the Writer to write to
+     */
+    public PgmlWriter(Writer w) {
+        if (w == null) {
+            throw new IllegalArgumentException("A writer must be supplied");
+        }
+        if (w instanceof BufferedWriter) {
+            writer = w;
+        } else {
+            writer = new BufferedWriter(w);
+        }
+    }
+
+    /**
+     * Construct a PgmlWriter that writes to the given stream using the
+     * platform's default encoding, as OCLExpander does.
+     * 
+     * @param stream
+     *                the stream to write to
+     */
+    public PgmlWriter(OutputStream stream) {
+        this(new OutputStreamWriter(stream));
+    }
+
+    /**
+     * Write the given diagram. The output is flushed but not closed.
+     * 
+     * @param diagram
+     *                the diagram to write
+     * @throws IOException
+     *                 if writing fails or the diagram is missing a value that
+     *                 PGML requires
+     */
+    public void write(Diagram diagram) throws IOException {
+        writeLine("<?xml version=\"1.0\" encoding=\"utf-8\" ?>");
+        writeLine("<!DOCTYPE pgml SYSTEM \"pgml.dtd\">");
+        writeAttribute("", "<pgml description=\"", diagram
+                .getClassAndModelID(), "self.classAndModelID", diagram);
+        writeAttribute("", "      name=\"", diagram.getName(), "self.name",
+                diagram);
+        writeLine(">");
+        LayerPerspective layer = diagram.getLayer();
+        writeValues(FIG_INDENT, layer.getContentsNoEdges());
+        writeValues(FIG_INDENT, layer.getContentsEdgesOnly());
+        writeLine("</pgml>");
+        writer.flush();
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // values
+
+    /**
+     * Write each of the given values, as a list of results is written by the
+     * template.
+     */
+    private void writeValues(String prefix, List values) throws IOException {
+        int size = values.size();
+        for (int i = 0; i < size; ++i) {
+            writeValue(prefix, values.get(i));
+        }
+    }
+
+    /**
+     * Write a value that stands alone on its lines. Values that the template
+     * has an entry for are written in full, anything else as the text of its
+     * toString().
+     */
+    private void writeValue(String prefix, Object value) throws IOException {
+        if (value == null) {
+            throw new IOException("A null value was found where PGML "
+                    + "requires a Fig or point");
+        }
+
+        if (value instanceof FigRRect) {
+            writeRRect(prefix, (FigRRect) value);
+        } else if (value instanceof FigRect) {
+            writeRect(prefix, (FigRect) value);
+        } else if (value instanceof FigCircle) {
+            writeCircle(prefix, (FigCircle) value);
+        } else if (value instanceof FigText) {
+            writeText(prefix, (FigText) value);
+        } else if (value instanceof FigLine) {
+            writeLine(prefix, (FigLine) value);
+        } else if (value instanceof FigSpline || value instanceof FigInk) {
+            writePoly(prefix, (FigPoly) value, 0);
+        } else if (value instanceof FigPoly) {
+            writePoly(prefix, (FigPoly) value, 1);
+        } else if (value instanceof FigGroup) {
+            writeGroup(prefix, (FigGroup) value);
+        } else if (value instanceof FigEdge) {
+            writeEdge(prefix, (FigEdge) value);
+        } else if (value instanceof Rectangle) {
+            writeBounds(prefix, (Rectangle) value);
+        } else if (value instanceof Point) {
+            writePoint(prefix, (Point) value);
+        } else if (value instanceof Color) {
+            Color color = (Color) value;
+            writeLine(prefix + color.getRed() + " " + color.getGreen() + " "
+                    + color.getBlue());
+        } else {
+            writer.write(prefix);
+            writer.write(escape(value.toString()));
+            writer.write(lineSeparator);
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // Figs
+
+    private void writeRect(String prefix, FigRect fig) throws IOException {
+        writeAttribute(prefix, "<rectangle name=\"", fig.getId(), "self.id",
+                fig);
+        writeBounds(prefix + "  ", fig.getBounds());
+        writeFillAndStroke(prefix + "  ", fig);
+        writeLine(prefix + "/>");
+    }
+
+    private void writeRRect(String prefix, FigRRect fig) throws IOException {
+        writeAttribute(prefix, "<rectangle name=\"", fig.getId(), "self.id",
+                fig);
+        writeBounds(prefix + "  ", fig.getBounds());
+        writeFillAndStroke(prefix + "  ", fig);
+        writeAttribute(prefix, "  rounding=\"", fig.getCornerRadius());
+        writeLine(prefix + "/>");
+    }
+
+    private void writeCircle(String prefix, FigCircle fig) throws IOException {
+        writeAttribute(prefix, "<ellipse name=\"", fig.getId(), "self.id", fig);
+        Point center = fig.getCenter();
+        writeAttribute(prefix, "  x=\"", center.x);
+        writeAttribute(prefix, "  y=\"", center.y);
+        writeAttribute(prefix, "  rx=\"", fig.getHalfWidth());
+        writeAttribute(prefix, "  ry=\"", fig.getHalfHeight());
+        writeFillAndStroke(prefix + "  ", fig);
+        writeLine(prefix + "/>");
+    }
+
+    private void writeText(String prefix, FigText fig) throws IOException {
+        writeAttribute(prefix, "<text name=\"", fig.getId(), "self.id", fig);
+        writeAttribute(prefix, "  context=\"", fig.getContext(),
+                "self.context", fig);
+        writeAttribute(prefix, "  x=\"", fig.getX());
+        writeAttribute(prefix, "  y=\"", fig.getY());
+        writeFillAndStroke(prefix + "  ", fig);
+        writeAttribute(prefix, "  font=\"", fig.getFontFamily(),
+                "self.fontFamily", fig);
+        writeAttribute(prefix, "  textsize=\"", fig.getFontSize());
+        writeText(prefix + ">", fig.getText(), "</text>", "self.text", fig);
+    }
+
+    private void writeLine(String prefix, FigLine fig) throws IOException {
+        writePathStart(prefix, fig);
+        writeMoveTo(prefix, fig.getX1(), fig.getY1());
+        writeLine(prefix + "  <lineto x=\"" + fig.getX2() + "\"");
+        writeLine(prefix + "          y=\"" + fig.getY2() + "\" />");
+        writeLine(prefix + "</path>");
+    }
+
+    /**
+     * Write a FigPoly, FigSpline or FigInk. The template for a FigPoly skips
+     * the first point after the moveto, the others repeat it.
+     */
+    private void writePoly(String prefix, FigPoly fig, int firstLineTo)
+            throws IOException {
+        writePathStart(prefix, fig);
+        Point first = fig.getFirstPoint();
+        if (first == null) {
+            throw nullValue("self.firstPoint", fig);
+        }
+        writeMoveTo(prefix, first.x, first.y);
+        Point[] points = fig.getPoints();
+        String pointPrefix = prefix + "  ";
+        for (int i = firstLineTo; i < points.length; ++i) {
+            writeValue(pointPrefix, points[i]);
+        }
+        writeLine(prefix + "</path>");
+    }
+
+    private void writeGroup(String prefix, FigGroup fig) throws IOException {
+        writeAttribute(prefix, "<group name=\"", fig.getId(), "self.id", fig);
+        writeAttribute(prefix, "     description=\"", fig
+                .classNameAndBounds(), "self.classNameAndBounds", fig);
+        writeAttribute(prefix, "     href=\"", getOwnerId(fig),
+                "self.owner.id", fig);
+        writeAttribute(prefix, "     shown=\"", fig.getVisState());
+        writeFillAndStroke(prefix + "     ", fig);
+        writeLine(prefix + ">");
+        writeLine(prefix + "  <private>");
+        Fig enclosingFig = fig.getEnclosingFig();
+        writeAttribute(prefix, "    enclosingFig=\"",
+                enclosingFig == null ? null : enclosingFig.getId(),
+                "self.enclosingFig.id", fig);
+        writeLine(prefix + "  </private>");
+        writeValues(prefix + "  ", fig.getFigs());
+        writeLine(prefix + "</group>");
+    }
+
+    private void writeEdge(String prefix, FigEdge fig) throws IOException {
+        writeAttribute(prefix, "<group name=\"", fig.getId(), "self.id", fig);
+        writeAttribute(prefix, "     description=\"", fig.getClass()
+                .getName(), "self.class.name", fig);
+        writeAttribute(prefix, "     href=\"", getOwnerId(fig),
+                "self.owner.id", fig);
+        writeAttribute(prefix, "     stroke=\"", fig.getLineWidth());
+        writeColor(prefix + "     strokecolor=\"", fig.getLineColor(),
+                "self.lineColor", fig);
+        writeLine(prefix + ">");
+        writeLine(prefix + "  <private>");
+        writeAttribute(prefix, "    sourcePortFig=\"", getId(fig
+                .getSourcePortFig()), "self.sourcePortFig.id", fig);
+        writeAttribute(prefix, "    destPortFig=\"", getId(fig
+                .getDestPortFig()), "self.destPortFig.id", fig);
+        writeAttribute(prefix, "    sourceFigNode=\"", getId(fig
+                .getSourceFigNode()), "self.sourceFigNode.id", fig);
+        writeAttribute(prefix, "    destFigNode=\"", getId(fig
+                .getDestFigNode()), "self.destFigNode.id", fig);
+        writeLine(prefix + "  </private>");
+        Fig routeFig = fig.getFig();
+        if (routeFig == null) {
+            throw nullValue("self.fig", fig);
+        }
+        writeValue(prefix + "  ", routeFig);
+        writeLine(prefix + "  <annotations>");
+        if (fig.getAnnotationStrategy() == null) {
+            throw nullValue("self.annotationStrategy.annotationsVector", fig);
+        }
+        writeValues(prefix + "      ", fig.getAnnotationStrategy()
+                .getAnnotationsVector());
+        writeLine(prefix + "  </annotations>");
+        writeLine(prefix + "</group>");
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // parts shared by several Figs
+
+    private void writeFillAndStroke(String prefix, Fig fig) throws IOException {
+        writeAttribute(prefix, "fill=\"", fig.getFilled01());
+        writeColor(prefix + "fillcolor=\"", fig.getFillColor(),
+                "self.fillColor", fig);
+        writeAttribute(prefix, "stroke=\"", fig.getLineWidth());
+        writeColor(prefix + "strokecolor=\"", fig.getLineColor(),
+                "self.lineColor", fig);
+    }
+
+    private void writeBounds(String prefix, Rectangle bounds)
+            throws IOException {
+        writeAttribute(prefix, "x=\"", bounds.x);
+        writeAttribute(prefix, "y=\"", bounds.y);
+        writeAttribute(prefix, "width=\"", bounds.width);
+        writeAttribute(prefix, "height=\"", bounds.height);
+    }
+
+    private void writePathStart(String prefix, Fig fig) throws IOException {
+        writeAttribute(prefix, "<path name=\"", fig.getId(), "self.id", fig);
+        writeAttribute(prefix, "  description=\"", fig.getClass().getName(),
+                "self.class.name", fig);
+        writeFillAndStroke(prefix + "  ", fig);
+        writeLine(prefix + ">");
+    }
+
+    private void writeMoveTo(String prefix, int x, int y) throws IOException {
+        writeLine(prefix + "  <moveto x=\"" + x + "\"");
+        writeLine(prefix + "          y=\"" + y + "\" />");
+    }
+
+    private void writePoint(String prefix, Point point) throws IOException {
+        writeLine(prefix + "<lineto x=\"" + point.x + "\"");
+        writeLine(prefix + "        y=\"" + point.y + "\" />");
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // low level output
+
+    private void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.write(lineSeparator);
+    }
+
+    /** Write a line holding a single numeric attribute. */
+    private void writeAttribute(String prefix, String start, int value)
+            throws IOException {
+        writer.write(prefix);
+        writer.write(start);
+        writer.write(Integer.toString(value));
+        writer.write('"');
+        writer.write(lineSeparator);
+    }
+
+    /** Write a line holding a single text attribute. */
+    private void writeAttribute(String prefix, String start, Object value,
+            String expression, Object target) throws IOException {
+        writeText(prefix + start, value, "\"", expression, target);
+    }
+
+    /** Write a line holding a Color attribute. */
+    private void writeColor(String start, Color color, String expression,
+            Object target) throws IOException {
+        if (color == null) {
+            throw nullValue(expression, target);
+        }
+        writeLine(start + color.getRed() + " " + color.getGreen() + " "
+                + color.getBlue() + "\"");
+    }
+
+    /** Write escaped text between a start and an end on one line. */
+    private void writeText(String start, Object value, String end,
+            String expression, Object target) throws IOException {
+        if (value == null) {
+            throw nullValue(expression, target);
+        }
+        writer.write(start);
+        writer.write(escape(value.toString()));
+        writer.write(end);
+        writer.write(lineSeparator);
+    }
+
+    private IOException nullValue(String expression, Object target) {
+        return new IOException("Evaluated the expression '" + expression
+                + "' to null on object of class "
+                + target.getClass().getName());
+    }
+
+    private String getId(Fig fig) {
+        return fig == null ? null : fig.getId();
+    }
+
+    /**
+     * Reply the id of the owner of a Fig. Owners can be of any class so this
+     * is looked up in the same way as the template does.
+     */
+    private Object getOwnerId(Fig fig) throws IOException {
+        try {
+            return OCLEvaluator.getProperty(fig.getOwner(), "id");
+        } catch (ExpansionException e) {
+            IOException ioe = new IOException("Failed to get the id of "
+                    + fig.getOwner());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    /**
+     * Replace the characters that have a special meaning in XML by their
+     * entities. Only allocates when there is something to replace.
+     */
+    private static String escape(String s) {
+        int length = s.length();
+        int i = 0;
+        while (i < length && "&<>\"'".indexOf(s.charAt(i)) < 0) {
+            ++i;
+        }
+        if (i == length) {
+            return s;
+        }
+
+        StringBuffer sb = new StringBuffer(length + 16);
+        sb.append(s, 0, i);
+        for (; i < length; ++i) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            case '\'':
+                sb.append("&apos;");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
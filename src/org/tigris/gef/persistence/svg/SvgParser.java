@@ -47,6 +47,10 @@ public class SvgParser extends DefaultHandler {
     // //////////////////////////////////////////////////////////////
     // static variables
 
+    /**
+     * @deprecated as readDiagram is synchronized, this parser reads one
+     *             diagram at a time. Use the parser of an EditorContext.
+     */
     public static SvgParser SINGLETON = new SvgParser();
 
     // //////////////////////////////////////////////////////////////
@@ -86,7 +90,7 @@ public class SvgParser extends DefaultHandler {
     // //////////////////////////////////////////////////////////////
     // constructors
 
-    protected SvgParser() {
+    public SvgParser() {
     }
 
     public void characters(char[] ch, int start, int length) {
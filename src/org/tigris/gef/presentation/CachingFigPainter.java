@@ -0,0 +1,395 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.presentation;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tigris.gef.base.Editor;
+
+/**
+ * A FigPainter that keeps a bitmap of each Fig it has painted, and paints the
+ * bitmap again the next time the Fig is painted at the same scale and
+ * position, instead of calling the paint method of the Fig. This saves laying
+ * out text, building spline curves and the geometry of arrow heads for the
+ * Figs of a diagram that have not changed since they were last painted.
+ * <p>
+ * The bitmap of a Fig is thrown away when the Fig fires a property change
+ * event, when its bounds no longer match those it was drawn with, or when
+ * invalidate is called for it. Figs whose appearance changes without any of
+ * these must be invalidated by whoever changes them. An Editor using this
+ * painter invalidates each Fig it is told is damaged.
+ * <p>
+ * The bitmaps are kept in least recently used order and the oldest are thrown
+ * away once they use more than a given amount of memory. A bitmap painted
+ * since the Graphics being painted to last changed is never thrown away to
+ * make room for another, the Fig that has no room is painted directly, so a
+ * diagram with more Figs in view than there is room for keeps the bitmaps it
+ * has rather than drawing every Fig again on every repaint. Figs that are
+ * bigger than a bitmap is allowed to be, or that are drawn through a rotating
+ * or shearing transform, are also painted directly.
+ */
+public class CachingFigPainter implements FigPainter, PropertyChangeListener {
+
+    /** The default amount of memory the bitmaps may use, in bytes. */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * The default margin around the bounds of a Fig, other than an edge, that
+     * is included in its bitmap, on top of its line width.
+     */
+    public static final int DEFAULT_MARGIN = 2;
+
+    /** The most pixels a single bitmap may have. */
+    public static final int MAX_PIXELS = 512 * 512;
+
+    /** The bytes used by one pixel of a bitmap. */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /** The transforms a Fig can be drawn through and still be cached. */
+    private static final int CACHEABLE_TRANSFORMS = AffineTransform.TYPE_TRANSLATION
+            | AffineTransform.TYPE_UNIFORM_SCALE
+            | AffineTransform.TYPE_GENERAL_SCALE;
+
+    /**
+     * The bitmap of a Fig, and the bounds, scale and sub-pixel offset it was
+     * drawn at.
+     */
+    private static class Entry {
+        private final BufferedImage image;
+        private final Rectangle bounds;
+        private final double scaleX;
+        private final double scaleY;
+        private final double offsetX;
+        private final double offsetY;
+
+        /** The pass in which the bitmap was last painted. */
+        private int pass;
+
+        Entry(BufferedImage image, Rectangle bounds, double scaleX,
+                double scaleY, double offsetX, double offsetY) {
+            this.image = image;
+            this.bounds = bounds;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        boolean matches(Rectangle b, double sx, double sy, double ox,
+                double oy) {
+            return bounds.equals(b) && scaleX == sx && scaleY == sy
+                    && Math.abs(offsetX - ox) < 0.01
+                    && Math.abs(offsetY - oy) < 0.01;
+        }
+
+        long getSize() {
+            return (long) image.getWidth() * image.getHeight()
+                    * BYTES_PER_PIXEL;
+        }
+    }
+
+    /** The bitmaps of the Figs, least recently painted first. */
+    private final Map<Fig, Entry> entries = new LinkedHashMap<Fig, Entry>(16,
+            0.75f, true);
+
+    /** The memory used by the bitmaps in entries, in bytes. */
+    private long memorySize;
+
+    /** The most memory the bitmaps may use, in bytes. */
+    private long maxBytes;
+
+    /**
+     * The margin around the bounds of a Fig, other than an edge, that is
+     * included in its bitmap on top of its line width, in diagram
+     * co-ordinates.
+     */
+    private final int margin;
+
+    /** The Graphics painted to most recently. */
+    private Graphics lastGraphics;
+
+    /**
+     * The number of times the Graphics painted to has changed, each new
+     * Graphics is taken to be a new repaint.
+     */
+    private int pass;
+
+    /** The number of Figs painted from their bitmaps. */
+    private long hits;
+
+    /** The number of Figs that have been drawn to a new bitmap. */
+    private long misses;
+
+    /**
+     * Create a painter that may use DEFAULT_MAX_BYTES of memory for its
+     * bitmaps.
+     */
+    public CachingFigPainter() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Create a painter that may use the given amount of memory for its
+     * bitmaps.
+     * 
+     * @param maxBytes the most memory the bitmaps may use
+     */
+    public CachingFigPainter(long maxBytes) {
+        this(maxBytes, DEFAULT_MARGIN);
+    }
+
+    /**
+     * Create a painter that may use the given amount of memory for its
+     * bitmaps, and includes the given margin around each Fig in its bitmap.
+     * Anything a Fig paints outside of its bounds grown by its margin is lost.
+     * 
+     * @param maxBytes the most memory the bitmaps may use
+     * @param margin the margin around each Fig other than an edge, on top of
+     *                its line width, in diagram co-ordinates
+     */
+    public CachingFigPainter(long maxBytes, int margin) {
+        if (maxBytes < 0 || margin < 0) {
+            throw new IllegalArgumentException(
+                    "The memory and margin must not be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.margin = margin;
+    }
+
+    /**
+     * Paint the bitmap of the Fig if there is an up to date one, otherwise
+     * draw the Fig to a new bitmap and paint that.
+     */
+    public void paint(Graphics g, Fig f) {
+        if (!(g instanceof Graphics2D) || !f.isVisible()) {
+            f.paint(g);
+            return;
+        }
+        if (g != lastGraphics) {
+            lastGraphics = g;
+            ++pass;
+        }
+        Graphics2D g2 = (Graphics2D) g;
+        AffineTransform transform = g2.getTransform();
+        double sx = transform.getScaleX();
+        double sy = transform.getScaleY();
+        if ((transform.getType() & ~CACHEABLE_TRANSFORMS) != 0 || sx <= 0
+                || sy <= 0) {
+            f.paint(g);
+            return;
+        }
+
+        Rectangle bounds = f.getBounds();
+        int margin = getMargin(f);
+        double x = transform.getTranslateX() + (bounds.x - margin) * sx;
+        double y = transform.getTranslateY() + (bounds.y - margin) * sy;
+        int deviceX = (int) Math.floor(x);
+        int deviceY = (int) Math.floor(y);
+        double offsetX = x - deviceX;
+        double offsetY = y - deviceY;
+
+        Entry entry = entries.get(f);
+        if (entry != null
+                && !entry.matches(bounds, sx, sy, offsetX, offsetY)) {
+            remove(f);
+            entry = null;
+        }
+        if (entry == null) {
+            int width = (int) Math.ceil((bounds.width + 2 * margin) * sx
+                    + offsetX);
+            int height = (int) Math.ceil((bounds.height + 2 * margin) * sy
+                    + offsetY);
+            long size = (long) width * height * BYTES_PER_PIXEL;
+            if ((long) width * height > MAX_PIXELS || !makeRoom(size)) {
+                f.paint(g);
+                return;
+            }
+            entry = new Entry(draw(g2, f, width, height, bounds, margin, sx,
+                    sy, offsetX, offsetY), bounds, sx, sy, offsetX, offsetY);
+            add(f, entry);
+            ++misses;
+        } else {
+            ++hits;
+        }
+        entry.pass = pass;
+
+        g2.setTransform(new AffineTransform());
+        g2.drawImage(entry.image, deviceX, deviceY, null);
+        g2.setTransform(transform);
+    }
+
+    /**
+     * Reply the margin around the bounds of a Fig that is included in its
+     * bitmap, in diagram co-ordinates. Edges are given the margin an Editor
+     * repaints around a damaged Fig, so that their arrow heads fit.
+     * Subclasses may give more room to Figs known to paint outside their
+     * bounds.
+     */
+    protected int getMargin(Fig f) {
+        if (f instanceof FigEdge) {
+            return Editor.DAMAGE_MARGIN;
+        }
+        return margin + f.getLineWidth();
+    }
+
+    /**
+     * Draw the Fig to a new bitmap using the rendering settings of the given
+     * Graphics.
+     */
+    private BufferedImage draw(Graphics2D g, Fig f, int width, int height,
+            Rectangle bounds, int margin, double sx, double sy,
+            double offsetX, double offsetY) {
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D ig = image.createGraphics();
+        try {
+            ig.setRenderingHints(g.getRenderingHints());
+            ig.setFont(g.getFont());
+            ig.setColor(g.getColor());
+            ig.setStroke(g.getStroke());
+            ig.translate(offsetX, offsetY);
+            ig.scale(sx, sy);
+            ig.translate(margin - bounds.x, margin - bounds.y);
+            f.paint(ig);
+        } finally {
+            ig.dispose();
+        }
+        return image;
+    }
+
+    private void add(Fig f, Entry entry) {
+        entries.put(f, entry);
+        memorySize += entry.getSize();
+        f.addPropertyChangeListener(this);
+    }
+
+    /**
+     * Throw away the least recently painted bitmaps until there is room for
+     * a bitmap of the given size, but not those painted in this pass.
+     * 
+     * @return true if there is room
+     */
+    private boolean makeRoom(long size) {
+        Iterator<Map.Entry<Fig, Entry>> it = entries.entrySet().iterator();
+        while (memorySize + size > maxBytes && it.hasNext()) {
+            Map.Entry<Fig, Entry> eldest = it.next();
+            if (eldest.getValue().pass == pass) {
+                return false;
+            }
+            it.remove();
+            memorySize -= eldest.getValue().getSize();
+            eldest.getKey().removePropertyChangeListener(this);
+        }
+        return memorySize + size <= maxBytes;
+    }
+
+    private void remove(Fig f) {
+        Entry entry = entries.remove(f);
+        if (entry != null) {
+            memorySize -= entry.getSize();
+            f.removePropertyChangeListener(this);
+        }
+    }
+
+    /**
+     * Throw away the bitmap of a Fig, so that it is drawn again the next time
+     * it is painted.
+     * 
+     * @param f the Fig that has changed
+     */
+    public void invalidate(Fig f) {
+        remove(f);
+    }
+
+    /**
+     * Throw away all the bitmaps.
+     */
+    public void invalidateAll() {
+        Iterator<Fig> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            it.next().removePropertyChangeListener(this);
+        }
+        entries.clear();
+        memorySize = 0;
+    }
+
+    /**
+     * A Fig that has a bitmap has changed, so its bitmap is thrown away.
+     */
+    public void propertyChange(PropertyChangeEvent pce) {
+        Object source = pce.getSource();
+        if (source instanceof Fig) {
+            remove((Fig) source);
+        }
+    }
+
+    /**
+     * Set the most memory the bitmaps may use. The least recently painted
+     * bitmaps are thrown away until they fit.
+     * 
+     * @param maxBytes the most memory the bitmaps may use, in bytes
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException(
+                    "The memory must not be negative");
+        }
+        this.maxBytes = maxBytes;
+        ++pass;
+        makeRoom(0);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** Reply the memory used by the bitmaps, in bytes. */
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    /** Reply the number of Figs that have a bitmap. */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Reply the number of times a Fig was painted from its bitmap. */
+    public long getHits() {
+        return hits;
+    }
+
+    /** Reply the number of times a Fig was drawn to a new bitmap. */
+    public long getMisses() {
+        return misses;
+    }
+}
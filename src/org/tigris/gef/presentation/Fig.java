@@ -44,6 +44,7 @@ import javax.swing.JMenu;
 import org.tigris.gef.base.AlignAction;
 import org.tigris.gef.base.CmdReorder;
 import org.tigris.gef.base.Editor;
+import org.tigris.gef.base.EditorContext;
 import org.tigris.gef.base.Geometry;
 import org.tigris.gef.base.Globals;
 import org.tigris.gef.base.Layer;
@@ -122,6 +123,21 @@ public abstract class Fig implements DiagramElement, Cloneable,
      */
     private transient Object owner;
 
+    /**
+     * The id of this Fig, remembered while a save is in progress so that
+     * getId does not have to search for this Fig amongst its siblings.
+     * 
+     * @see #cacheId
+     */
+    private transient String cachedId;
+
+    /**
+     * The PropertyChangeListeners of this Fig, or null if it has none. The
+     * array is replaced rather than changed when a listener is added or
+     * removed, so firing needs neither a lock nor a copy.
+     */
+    private transient volatile PropertyChangeListener[] listeners;
+
     /**
      * X coordinate of the Fig's bounding box. It is the responsibility of
      * subclasses to make sure this value is ALWAYS up-to-date.
@@ -449,21 +465,55 @@ public abstract class Fig implements DiagramElement, Cloneable,
      * in any particular order.
      * <p>
      * 
-     * Since most Fig's will never have any listeners, and I want Figs to be
-     * fairly light-weight objects, listeners are kept in a global Hashtable,
-     * keyed by Fig. NOTE: It is important that all listeners eventually remove
-     * themselves, otherwise this will prevent garbage collection.
-     */
-    final public void addPropertyChangeListener(PropertyChangeListener l) {
-        Globals.addPropertyChangeListener(this, l);
+     * Since most Fig's will never have any listeners, a Fig without listeners
+     * keeps no array for them. NOTE: It is important that all listeners
+     * eventually remove themselves, otherwise this will prevent garbage
+     * collection of the listeners.
+     */
+    final public synchronized void addPropertyChangeListener(
+            PropertyChangeListener l) {
+        PropertyChangeListener[] old = listeners;
+        if (old == null) {
+            listeners = new PropertyChangeListener[] {l};
+        } else {
+            PropertyChangeListener[] ls =
+                new PropertyChangeListener[old.length + 1];
+            System.arraycopy(old, 0, ls, 0, old.length);
+            ls[old.length] = l;
+            listeners = ls;
+        }
     }
 
     /**
      * Remove this PropertyChangeListener from the JavaBeans internal list. If
      * the PropertyChangeListener isn't on the list, silently do nothing.
      */
-    final public void removePropertyChangeListener(PropertyChangeListener l) {
-        Globals.removePropertyChangeListener(this, l);
+    final public synchronized void removePropertyChangeListener(
+            PropertyChangeListener l) {
+        PropertyChangeListener[] old = listeners;
+        if (old == null) {
+            return;
+        }
+        for (int i = 0; i < old.length; ++i) {
+            if (old[i] == l) {
+                if (old.length == 1) {
+                    listeners = null;
+                } else {
+                    PropertyChangeListener[] ls =
+                new PropertyChangeListener[old.length - 1];
+                    System.arraycopy(old, 0, ls, 0, i);
+                    System.arraycopy(old, i + 1, ls, i, ls.length - i);
+                    listeners = ls;
+                }
+                return;
+            }
+        }
+    }
+
+    /** Reply the PropertyChangeListeners of this Fig. */
+    public PropertyChangeListener[] getPropertyChangeListeners() {
+        PropertyChangeListener[] ls = listeners;
+        return ls == null ? new PropertyChangeListener[0] : ls.clone();
     }
 
     /**
@@ -570,7 +620,11 @@ public abstract class Fig implements DiagramElement, Cloneable,
 
     public Object clone() {
         try {
-            return super.clone();
+            Fig copy = (Fig) super.clone();
+            // the copy starts without the listeners and id of the original
+            copy.listeners = null;
+            copy.cachedId = null;
+            return copy;
         } catch (CloneNotSupportedException e) {
             return null;
         }
@@ -698,19 +752,51 @@ public abstract class Fig implements DiagramElement, Cloneable,
     }
 
     /**
-     * This Fig has changed in some way, tell its Layer to record my bounding
-     * box as a damageAll region so that I will eventualy be redrawn.
+     * This Fig has changed in some way, tell its Layer to record the bounding
+     * box of my outermost group as a damaged region so that I will eventualy
+     * be redrawn. If my bounds have changed the area I used to cover is
+     * damaged too.
      */
     public void damage() {
         Layer lay = getLayer();
-        Fig group = getGroup();
-        while (lay == null && group != null) {
-            lay = group.getLayer();
-            group = group.getGroup();
+        Fig top = this;
+        while (top.group != null) {
+            top = top.group;
+            if (lay == null) {
+                lay = top.getLayer();
+            }
         }
         if (lay != null) {
-            lay.damageAll();
-            // lay.damaged(this);
+            lay.damaged(top);
+        }
+        boundsChanged();
+    }
+
+    /**
+     * Tell the Layer that the bounds of this Fig have changed if they differ
+     * from the given ones. calcBounds sets the bounds directly, without firing
+     * "bounds", so overrides that may move or resize a top level Fig call
+     * this when they are done.
+     */
+    protected final void boundsChangedFrom(int oldX, int oldY, int oldW,
+            int oldH) {
+        if (_x != oldX || _y != oldY || _w != oldW || _h != oldH) {
+            boundsChanged();
+        }
+    }
+
+    /**
+     * Tell the Layer of the outermost group containing this Fig that its
+     * bounds may have changed, so that the Layer can keep any spatial index up
+     * to date.
+     */
+    private void boundsChanged() {
+        Fig top = this;
+        while (top.group != null) {
+            top = top.group;
+        }
+        if (top.layer != null) {
+            top.layer.figBoundsChanged(top);
         }
     }
 
@@ -1030,24 +1116,80 @@ public abstract class Fig implements DiagramElement, Cloneable,
     }
 
     final public void firePropChange(String propName, int oldV, int newV) {
-        firePropChange(propName, new Integer(oldV), new Integer(newV));
+        if (hasPropChangeObservers()) {
+            firePropChange(propName, Integer.valueOf(oldV), Integer
+                    .valueOf(newV));
+        }
     }
 
     /**
      * Creates a PropertyChangeEvent and calls all registered listeners
-     * propertyChanged() method.
+     * propertyChanged() method. While property changes are suspended in the
+     * current EditorContext the change is held back and coalesced with later
+     * changes to the same property instead.
      */
     final public void firePropChange(String propName, Object oldV, Object newV) {
-        Globals.firePropChange(this, propName, oldV, newV);
+        if ("bounds".equals(propName)) {
+            boundsChanged();
+        }
+        if (hasPropChangeObservers()) {
+            EditorContext.getCurrent().firePropChange(this, propName, oldV,
+                    newV);
+        }
+    }
+
+    final public void firePropChange(String propName, boolean oldV, boolean newV) {
+        if (hasPropChangeObservers()) {
+            firePropChange(propName, Boolean.valueOf(oldV), Boolean
+                    .valueOf(newV));
+        }
+    }
+
+    /**
+     * Send a property change to the listeners of this Fig, the universal
+     * listener of the current EditorContext and the group of this Fig. The
+     * listeners are only told of actual changes, the group is told of all.
+     * EditorContext calls this to deliver changes that were held back while
+     * property changes were suspended.
+     */
+    final public void deliverPropChange(String propName, Object oldV,
+            Object newV) {
+        PropertyChangeListener[] ls = listeners;
+        PropertyChangeListener universal = EditorContext.getCurrent()
+                .getUniversalPropertyChangeListener();
+        boolean changed = oldV == null || !oldV.equals(newV);
+        if (!changed) {
+            ls = null;
+            universal = null;
+        }
+        if (ls == null && universal == null && group == null) {
+            return;
+        }
+        PropertyChangeEvent pce = new PropertyChangeEvent(this, propName,
+                oldV, newV);
+        if (ls != null) {
+            for (int i = 0; i < ls.length; ++i) {
+                ls[i].propertyChange(pce);
+            }
+        }
+        if (universal != null) {
+            universal.propertyChange(pce);
+        }
         if (group != null) {
-            PropertyChangeEvent pce = new PropertyChangeEvent(this, propName,
-                    oldV, newV);
             group.propertyChange(pce);
         }
     }
 
-    final public void firePropChange(String propName, boolean oldV, boolean newV) {
-        firePropChange(propName, new Boolean(oldV), new Boolean(newV));
+    /**
+     * Reply whether anything hears of the property changes of this Fig, so
+     * that firing them can be skipped, together with creating their values,
+     * when nothing does.
+     */
+    protected final boolean hasPropChangeObservers() {
+        return listeners != null
+                || group != null
+                || EditorContext.getCurrent()
+                        .getUniversalPropertyChangeListener() != null;
     }
 
     /**
@@ -1241,6 +1383,10 @@ public abstract class Fig implements DiagramElement, Cloneable,
      * USED BY PGML.tee
      */
     public String getId() {
+        if (cachedId != null) {
+            return cachedId;
+        }
+
         if (getGroup() != null) {
             String gID = getGroup().getId();
             if (getGroup() instanceof FigGroup) {
@@ -1595,6 +1741,26 @@ public abstract class Fig implements DiagramElement, Cloneable,
     public void postLoad() {
     }
 
+    /**
+     * Remember the id of this Fig, and of any Figs it contains, so that
+     * getId can reply it without searching. This is called by the layer
+     * before a save and must be followed by a call to clearCachedId once the
+     * save is complete.
+     * 
+     * @param id
+     *                the id of this Fig, as getId would calculate it
+     */
+    public void cacheId(String id) {
+        cachedId = id;
+    }
+
+    /**
+     * Forget the ids remembered by cacheId.
+     */
+    public void clearCachedId() {
+        cachedId = null;
+    }
+
     public void postSave() {
     }
 
@@ -1662,7 +1828,7 @@ public abstract class Fig implements DiagramElement, Cloneable,
                 && (newX != _x || newY != _y || newWidth != _w || newHeight != _h)) {
             MutableGraphSupport.enableSaveAction();
             if (UndoManager.getInstance().isGenerateMementos()) {
-                Memento memento = new Memento() {
+                class BoundsMemento extends Memento {
                     int oldX = _x;
 
                     int oldY = _y;
@@ -1671,26 +1837,54 @@ public abstract class Fig implements DiagramElement, Cloneable,
 
                     int oldHeight = _h;
 
+                    int redoX = newX;
+
+                    int redoY = newY;
+
+                    int redoWidth = newWidth;
+
+                    int redoHeight = newHeight;
+
                     public void undo() {
                         setBoundsImpl(oldX, oldY, oldWidth, oldHeight);
                         damage();
                     }
 
                     public void redo() {
-                        setBoundsImpl(newX, newY, newWidth, newHeight);
+                        setBoundsImpl(redoX, redoY, redoWidth, redoHeight);
                         damage();
                     }
 
                     public void dispose() {
                     }
 
+                    protected Object getTarget() {
+                        return Fig.this;
+                    }
+
+                    /**
+                     * Keep the original bounds and take the final bounds from
+                     * a later BoundsMemento.
+                     */
+                    protected boolean coalesce(Memento later) {
+                        if (!(later instanceof BoundsMemento)) {
+                            return false;
+                        }
+                        BoundsMemento m = (BoundsMemento) later;
+                        redoX = m.redoX;
+                        redoY = m.redoY;
+                        redoWidth = m.redoWidth;
+                        redoHeight = m.redoHeight;
+                        return true;
+                    }
+
                     public String toString() {
                         return (isStartChain() ? "*" : " ") + "BoundsMemento "
                                 + oldX + ", " + oldY + ", " + oldWidth + ", "
                                 + oldHeight;
                     }
-                };
-                UndoManager.getInstance().addMemento(memento);
+                }
+                UndoManager.getInstance().addMemento(new BoundsMemento());
             }
         }
         setBoundsImpl(newX, newY, newWidth, newHeight);
@@ -1698,6 +1892,14 @@ public abstract class Fig implements DiagramElement, Cloneable,
 
     /** Set the bounds of this Fig. Fires PropertyChangeEvent "bounds". */
     protected void setBoundsImpl(int x, int y, int w, int h) {
+        if (!hasPropChangeObservers()) {
+            _x = x;
+            _y = y;
+            _w = w;
+            _h = h;
+            boundsChanged();
+            return;
+        }
         Rectangle oldBounds = getBounds();
         _x = x;
         _y = y;
@@ -1863,10 +2065,14 @@ public abstract class Fig implements DiagramElement, Cloneable,
 
     /**
      * Sets the owner object of this Fig. Fires PropertyChangeEvent "owner"
+     * and lets the layer know so that it can find this Fig by its owner.
      */
     public void setOwner(Object own) {
         firePropChange("owner", owner, own);
         owner = own;
+        if (layer != null) {
+            layer.figOwnerChanged(this);
+        }
     }
 
     /** Get and set the points along a path for Figs that are path-like. */
@@ -2027,6 +2233,10 @@ public abstract class Fig implements DiagramElement, Cloneable,
 
                 int oldHeight;
 
+                int redoDx = dx;
+
+                int redoDy = dy;
+
                 TranslateMemento(int currentX, int currentY, int currentWidth,
                         int currentHeight) {
                     oldX = currentX;
@@ -2041,10 +2251,27 @@ public abstract class Fig implements DiagramElement, Cloneable,
                 }
 
                 public void redo() {
-                    translateImpl(dx, dy);
+                    translateImpl(redoDx, redoDy);
                     damage();
                 }
 
+                protected Object getTarget() {
+                    return Fig.this;
+                }
+
+                /**
+                 * Keep the original bounds and add the offset of a later
+                 * TranslateMemento.
+                 */
+                protected boolean coalesce(Memento later) {
+                    if (!(later instanceof TranslateMemento)) {
+                        return false;
+                    }
+                    redoDx += ((TranslateMemento) later).redoDx;
+                    redoDy += ((TranslateMemento) later).redoDy;
+                    return true;
+                }
+
                 public String toString() {
                     return (isStartChain() ? "*" : " ") + "TranslateMemento "
                             + oldX + ", " + oldY;
@@ -2066,6 +2293,12 @@ public abstract class Fig implements DiagramElement, Cloneable,
      * transforming... maybe. Fires property "bounds".
      */
     protected void translateImpl(int dx, int dy) {
+        if (!hasPropChangeObservers()) {
+            _x += dx;
+            _y += dy;
+            boundsChanged();
+            return;
+        }
         Rectangle oldBounds = getBounds();
         _x += dx;
         _y += dy;
@@ -140,6 +140,10 @@ public abstract class FigEdge extends Fig implements Highlightable, GraphEdge {
 
     /** Update my bounding box */
     public void calcBounds() {
+        int fromX = _x;
+        int fromY = _y;
+        int fromW = _w;
+        int fromH = _h;
         routeFig.calcBounds();
         Rectangle res = routeFig.getBounds();
         Point loc = new Point();
@@ -165,6 +169,7 @@ public abstract class FigEdge extends Fig implements Highlightable, GraphEdge {
         _y = res.y;
         _w = res.width;
         _h = res.height;
+        boundsChangedFrom(fromX, fromY, fromW, fromH);
     }
 
     final public void cleanUp() {
@@ -180,7 +185,7 @@ public abstract class FigEdge extends Fig implements Highlightable, GraphEdge {
      */
     final public void computeRoute() {
         if (UndoManager.getInstance().isGenerateMementos()) {
-            Memento memento = new Memento() {
+            class ComputeRouteMemento extends Memento {
                 Point[] points = getPoints();
 
                 public void undo() {
@@ -199,12 +204,30 @@ public abstract class FigEdge extends Fig implements Highlightable, GraphEdge {
                 public void dispose() {
                 }
 
+                public long getSize() {
+                    // the array and a Point for each element
+                    return DEFAULT_SIZE + 16 + points.length * 28;
+                }
+
+                protected Object getTarget() {
+                    return FigEdge.this;
+                }
+
+                /**
+                 * The points held are those before the first route was
+                 * computed, undo swaps them with the latest route, so a later
+                 * ComputeRouteMemento adds nothing.
+                 */
+                protected boolean coalesce(Memento later) {
+                    return later instanceof ComputeRouteMemento;
+                }
+
                 public String toString() {
                     return (isStartChain() ? "*" : " ")
                             + "ComputeRouteMemento " + Arrays.toString(points);
                 }
-            };
-            UndoManager.getInstance().addMemento(memento);
+            }
+            UndoManager.getInstance().addMemento(new ComputeRouteMemento());
         }
         computeRouteImpl();
     }
@@ -366,6 +389,34 @@ public abstract class FigEdge extends Fig implements Highlightable, GraphEdge {
 
         return figs;
     }
+
+    /**
+     * Remember the id of this edge, of the Fig that draws its route and of
+     * its path item Figs. Path items are numbered from 1, anything else in
+     * this edge is numbered 0, as getId would reply.
+     */
+    public void cacheId(String id) {
+        super.cacheId(id);
+        if (routeFig != null && routeFig.getGroup() == this) {
+            routeFig.cacheId(id + ".0");
+        }
+        for (int i = _pathItems.size() - 1; i >= 0; --i) {
+            Fig f = getPathItemFig((PathItem) _pathItems.elementAt(i));
+            if (f.getGroup() == this) {
+                f.cacheId(id + "." + (i + 1));
+            }
+        }
+    }
+
+    public void clearCachedId() {
+        super.clearCachedId();
+        if (routeFig != null) {
+            routeFig.clearCachedId();
+        }
+        for (int i = 0; i < _pathItems.size(); i++) {
+            getPathItemFig((PathItem) _pathItems.elementAt(i)).clearCachedId();
+        }
+    }
     
     /**
      * Gets the PathItemPlacementStrategy for the given fig.
@@ -30,11 +30,16 @@ package org.tigris.gef.presentation;
 
 import java.awt.*;
 
+import org.tigris.gef.base.Layer;
+import org.tigris.gef.base.LayerDiagram;
+
 /**
  * A Fig that paints edges between ports. This version automatically routes a
- * rectilinear edge. The routing is not very good. It avoids the source and sink
- * nodes and no other nodes. It is basically case-analysis, and some of the
- * cases are wrong or missing. Anyway, the user can edit the edge by dragging
+ * rectilinear edge. In a LayerDiagram the edge is routed around all the nodes
+ * of the layer by the EdgeRouter of the layer. Elsewhere, or if the router
+ * finds no route, the routing only avoids the source and sink nodes. It is
+ * then basically case-analysis, and some of the cases are wrong or missing.
+ * Anyway, the user can edit the edge by dragging
  * handles. The 0th and last handles are fixed in position so that they stay
  * connected to ports. If the user drags a handle next to a fixed handle, a new
  * vertex is automatically inserted.
@@ -81,10 +86,9 @@ public class FigEdgeRectiline extends FigEdge {
     // routing methods
 
     /**
-     * Find the route that the edge should follow. Basically case analysis to
-     * route around source and destination nodes. Needs-More-Work: A better
-     * algorithm would really be useful. Needs-More-Work: Sometimes the edge can
-     * get non-rectilinear.
+     * Find the route that the edge should follow. The first time this lays
+     * the edge out around the nodes, after that only the end points follow
+     * the ports. Needs-More-Work: Sometimes the edge can get non-rectilinear.
      */
     public void computeRouteImpl() {
         if (!_initiallyLaidOut) {
@@ -143,12 +147,28 @@ public class FigEdgeRectiline extends FigEdge {
         Point srcRRPt = routingRectPoint(srcPt, srcRR, srcSector);
         Point dstRRPt = routingRectPoint(dstPt, dstRR, dstSector);
 
+        Point[] route = null;
+        Layer lay = getLayer();
+        if (lay instanceof LayerDiagram) {
+            route = ((LayerDiagram) lay).getEdgeRouter().route(srcRRPt,
+                    srcSector, dstRRPt, dstSector);
+        }
+        if (route != null) {
+            Point[] points = new Point[route.length + 2];
+            points[0] = srcPt;
+            System.arraycopy(route, 0, points, 1, route.length);
+            points[points.length - 1] = dstPt;
+            setRoute(points);
+            return;
+        }
+
         if (srcSector == 1 || srcSector == -1) {
             xpoints[npoints] = srcPt.x;
             ypoints[npoints++] = srcPt.y;
         }
         xpoints[npoints] = srcPt.x;
         ypoints[npoints++] = srcPt.y;
+
         xpoints[npoints] = srcRRPt.x;
         ypoints[npoints++] = srcRRPt.y;
 
@@ -166,6 +186,42 @@ public class FigEdgeRectiline extends FigEdge {
         ((FigPoly) getFig()).setPolygon(routePoly);
     }
 
+    /**
+     * Set the points of the edge to a rectilinear route. The FigPoly takes
+     * each point to be a turn, from horizontal at the first one, so the points
+     * the route goes straight through are left out and a route that starts
+     * out vertically starts with an empty horizontal segment.
+     */
+    private void setRoute(Point[] route) {
+        int xpoints[] = new int[route.length + 1];
+        int ypoints[] = new int[route.length + 1];
+        int npoints = 0;
+        for (int i = 0; i < route.length; ++i) {
+            Point p = route[i];
+            if (npoints > 0 && xpoints[npoints - 1] == p.x
+                    && ypoints[npoints - 1] == p.y) {
+                continue;
+            }
+            if (npoints > 1) {
+                int x = xpoints[npoints - 1];
+                int y = ypoints[npoints - 1];
+                if ((xpoints[npoints - 2] == x && x == p.x)
+                        || (ypoints[npoints - 2] == y && y == p.y)) {
+                    // goes straight through the last point
+                    --npoints;
+                }
+            }
+            xpoints[npoints] = p.x;
+            ypoints[npoints++] = p.y;
+        }
+        if (npoints > 1 && xpoints[0] == xpoints[1]) {
+            System.arraycopy(xpoints, 0, xpoints, 1, npoints);
+            System.arraycopy(ypoints, 0, ypoints, 1, npoints);
+            ++npoints;
+        }
+        ((FigPoly) getFig()).setPolygon(new Polygon(xpoints, ypoints, npoints));
+    }
+
     /**
      * Reply a point on the given routing rect that is "straight out" from the
      * connection point in the proper direction.
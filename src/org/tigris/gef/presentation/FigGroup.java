@@ -174,6 +174,10 @@ public class FigGroup extends Fig {
         if (suppressCalcBounds) {
             return;
         }
+        int oldX = _x;
+        int oldY = _y;
+        int oldW = _w;
+        int oldH = _h;
         Rectangle boundingBox = null;
 
         int figCount = this.figs.size();
@@ -198,6 +202,7 @@ public class FigGroup extends Fig {
         _y = boundingBox.y;
         _w = boundingBox.width;
         _h = boundingBox.height + extraFrameSpace;
+        boundsChangedFrom(oldX, oldY, oldW, oldH);
     }
     
     /**
@@ -281,6 +286,29 @@ public class FigGroup extends Fig {
         return Collections.unmodifiableList(figs);
     }
     
+    /**
+     * Remember the id of this group and of the Figs in it. The Figs are
+     * visited from the last to the first so that a Fig that appears twice
+     * ends up with the id of its first position, as getId would reply.
+     */
+    public void cacheId(String id) {
+        super.cacheId(id);
+        List<Fig> figList = getFigs();
+        for (int i = figList.size() - 1; i >= 0; --i) {
+            Fig f = figList.get(i);
+            if (f.getGroup() == this) {
+                f.cacheId(id + "." + i);
+            }
+        }
+    }
+
+    public void clearCachedId() {
+        super.clearCachedId();
+        for (Fig f : getFigs()) {
+            f.clearCachedId();
+        }
+    }
+
     public List<DiagramElement> getDiagramElements() {
         return Collections.unmodifiableList(new ArrayList<DiagramElement>(figs));
     }
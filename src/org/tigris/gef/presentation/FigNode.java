@@ -120,6 +120,12 @@ public class FigNode extends FigGroup implements Highlightable, GraphNode, Mouse
      */
     private ArrayList<FigEdge> figEdges = new ArrayList<FigEdge>();
 
+    /**
+     * When not null the edges that need rerouting are added here rather than
+     * rerouted at once.
+     */
+    private transient Collection<FigEdge> deferredEdges;
+
     private int shadowSize = 0;
 
     static {
@@ -541,46 +547,55 @@ public class FigNode extends FigGroup implements Highlightable, GraphNode, Mouse
             int x = getX();
             int y = getY();
 
-            /*
-             * Only create a new shadow image if figure size has changed. Which
-             * does not catch all cases: consider show/hide toggle of a
-             * stereotype on a package: in this case the total size remains, but
-             * the notch at the corner increases/decreases. Hence also check the
-             * "forceRepaint" attribute.
-             */
-            if (width != cachedWidth || height != cachedHeight || forceRepaint) {
-                forceRepaint = false;
-
-                cachedWidth = width;
-                cachedHeight = height;
-
-                BufferedImage img = new BufferedImage(width + 100,
-                        height + 100, BufferedImage.TYPE_INT_ARGB);
-
-                // Paint figure onto offscreen image
-                Graphics ig = img.getGraphics();
-                ig.translate(50 - x, 50 - y);
-                paintOnce(ig);
-
-                // Apply two filters to the image:
-                // 1. Apply LookupOp which converts all pixel data in the
-                // figure to the same shadow color.
-                // 2. Apply ConvolveOp which creates blurred effect around
-                // the edges of the shadow.
-                shadowImage = SHADOW_CONVOLVE_OP.filter(SHADOW_LOOKUP_OP
-                        .filter(img, null), null);
-            }
-
             // Paint shadow image onto canvas
             Graphics2D g2d = (Graphics2D) g;
-            g2d.drawImage(shadowImage, null, x + shadowSize - 50, y
-                    + shadowSize - 50);
+            g2d.drawImage(getShadowImage(x, y, width, height), null, x
+                    + shadowSize - 50, y + shadowSize - 50);
         }
 
         // Paint figure on top of shadow
         paintOnce(g);
     }
 
+    /**
+     * Get the shadow of this FigNode, creating it if it is out of date. This
+     * is synchronized as the FigNode may be painted by several threads at
+     * once.
+     */
+    private synchronized BufferedImage getShadowImage(int x, int y,
+            int width, int height) {
+        /*
+         * Only create a new shadow image if figure size has changed. Which
+         * does not catch all cases: consider show/hide toggle of a
+         * stereotype on a package: in this case the total size remains, but
+         * the notch at the corner increases/decreases. Hence also check the
+         * "forceRepaint" attribute.
+         */
+        if (width != cachedWidth || height != cachedHeight || forceRepaint) {
+            forceRepaint = false;
+
+            cachedWidth = width;
+            cachedHeight = height;
+
+            BufferedImage img = new BufferedImage(width + 100, height + 100,
+                    BufferedImage.TYPE_INT_ARGB);
+
+            // Paint figure onto offscreen image
+            Graphics ig = img.getGraphics();
+            ig.translate(50 - x, 50 - y);
+            paintOnce(ig);
+
+            // Apply two filters to the image:
+            // 1. Apply LookupOp which converts all pixel data in the
+            // figure to the same shadow color.
+            // 2. Apply ConvolveOp which creates blurred effect around
+            // the edges of the shadow.
+            shadowImage = SHADOW_CONVOLVE_OP.filter(SHADOW_LOOKUP_OP.filter(
+                    img, null), null);
+        }
+        return shadowImage;
+    }
+
     /**
      * Paints the FigNode to the given Graphics. Calls super.paint to paint all
      * the Figs contained in the FigNode. Also can draw a highlighting rectangle
@@ -704,7 +719,9 @@ public class FigNode extends FigGroup implements Highlightable, GraphNode, Mouse
      * nothing if undo in progress.
      */
     public void updateEdges() {
-        if (!UndoManager.getInstance().isUndoInProgress()) {
+        if (deferredEdges != null) {
+            deferredEdges.addAll(figEdges);
+        } else if (!UndoManager.getInstance().isUndoInProgress()) {
             int edgeCount = figEdges.size();
             for (int edgeIndex = 0; edgeIndex < edgeCount; ++edgeIndex) {
                 FigEdge fe = (FigEdge) figEdges.get(edgeIndex);
@@ -713,6 +730,19 @@ public class FigNode extends FigGroup implements Highlightable, GraphNode, Mouse
         }
     }
 
+    /**
+     * Defer the rerouting of edges. While set, updateEdges adds the edges of
+     * this FigNode to the given collection instead of rerouting them, so that
+     * the caller can reroute each edge once however often the node moves.
+     * 
+     * @param edges
+     *                the collection to add edges to, or null to reroute them
+     *                immediately again
+     */
+    public void setDeferredEdges(Collection<FigEdge> edges) {
+        deferredEdges = edges;
+    }
+
     public void cleanUp() {
         int edgeCount = figEdges.size();
         for (int i = 0; i < edgeCount; ++i) {
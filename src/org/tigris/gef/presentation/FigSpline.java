@@ -37,7 +37,6 @@ public class FigSpline extends FigPoly {
     protected int[] _yknots = new int[5];
     protected int _nknots;
 
-    protected Polygon _curve;
     protected int _threshold = 5;
     protected int SPLINE_THRESH = 2;
     protected int ARR_WIDTH = 5, ARR_HEIGHT = 16;
@@ -182,19 +181,19 @@ public class FigSpline extends FigPoly {
 
         } else {
             int nSegments = _npoints - 2;
-            _curve = new Polygon();
+            Polygon curve = new Polygon();
             g.setColor(_lineColor);
             for (int i = 0; i <= nSegments - 1; i++) {
-                drawBezier(g, _filled, _fillColor, _curve, _xknots[2 * i],
+                drawBezier(g, _filled, _fillColor, curve, _xknots[2 * i],
                         _yknots[2 * i], _xknots[2 * i + 1], _yknots[2 * i + 1],
                         _xknots[2 * i + 2], _yknots[2 * i + 2]);
             }
             if (_filled) {
                 g.setColor(_fillColor);
-                g.fillPolygon(_curve); // here the curve gets partially
+                g.fillPolygon(curve); // here the curve gets partially
                                         // destroyed
                 g.setColor(_lineColor);
-                g.drawPolyline(_curve.xpoints, _curve.ypoints, _curve.npoints);
+                g.drawPolyline(curve.xpoints, curve.ypoints, curve.npoints);
             }
         }
     }
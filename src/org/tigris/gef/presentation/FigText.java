@@ -37,8 +37,6 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.StringTokenizer;
 
-import javax.swing.JLabel;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -97,6 +95,22 @@ public class FigText extends Fig implements KeyListener, MouseListener {
     private transient FontMetrics _fm;
     private int _lineHeight;
 
+    /**
+     * The lines of the current text as last measured, and as last painted
+     * when that was with other font metrics.
+     */
+    private transient LineLayout layout;
+    private transient LineLayout paintLayout;
+
+    /**
+     * The text last word wrapped, the result, and the width and font it was
+     * wrapped for.
+     */
+    private transient String wrapSource;
+    private transient String wrappedText;
+    private transient int wrapWidth;
+    private transient Font wrapFont;
+
     /** Color of the actual text characters. */
     private Color _textColor = Color.black;
 
@@ -662,7 +676,7 @@ public class FigText extends Fig implements KeyListener, MouseListener {
     void setTextFriend(String s) {
         if (UndoManager.getInstance().isGenerateMementos()
                 && getOwner(this) == null) {
-            Memento memento = new Memento() {
+            class TextMemento extends Memento {
                 String oldText = _curText;
 
                 public void undo() {
@@ -676,8 +690,24 @@ public class FigText extends Fig implements KeyListener, MouseListener {
 
                 public void dispose() {
                 }
-            };
-            UndoManager.getInstance().addMemento(memento);
+
+                public long getSize() {
+                    return DEFAULT_SIZE
+                            + (oldText == null ? 0 : 40 + oldText.length() * 2);
+                }
+
+                protected Object getTarget() {
+                    return FigText.this;
+                }
+
+                /**
+                 * Keep the text from before the first of a run of edits.
+                 */
+                protected boolean coalesce(Memento later) {
+                    return later instanceof TextMemento;
+                }
+            }
+            UndoManager.getInstance().addMemento(new TextMemento());
         }
         _curText = encode(s, System.getProperty("line.separator"));
         calcBounds();
@@ -748,7 +778,6 @@ public class FigText extends Fig implements KeyListener, MouseListener {
             return;
         }
 
-        StringTokenizer lines;
         int lineWidth = getLineWidth();
 
         /* Paint the fill colour of the box. This only becomes visible
@@ -788,20 +817,18 @@ public class FigText extends Fig implements KeyListener, MouseListener {
             g.setFont(_font);
         }
 
-        _fm = g.getFontMetrics(_font);
-        int chunkH = _fm.getHeight() + _lineSpacing;
+        LineLayout lines = getLayout(g.getFontMetrics(_font));
+        int chunkH = lines.height + _lineSpacing;
 
         g.setColor(_textColor);
         int chunkX = _x + _leftMargin + lineWidth;
         // The first line of text has its "baseline" y coordinate at the "ascent" position
-        int chunkY = _y + _topMargin + lineWidth + _fm.getAscent();
-
-        lines = new StringTokenizer(_curText, "" + HARD_RETURN + SOFT_RETURN,
-                true);
-        while (lines.hasMoreTokens()
-                && chunkY <= getHeight() + getY() + _topMargin - _botMargin) {
-            String curLine = lines.nextToken();
-            int chunkW = _fm.stringWidth(curLine);
+        int chunkY = _y + _topMargin + lineWidth + lines.ascent;
+        int maxY = getHeight() + getY() + _topMargin - _botMargin;
+
+        for (int i = 0; i < lines.lines.length && chunkY <= maxY; ++i) {
+            String curLine = lines.lines[i];
+            int chunkW = lines.widths[i];
             switch (_justification) {
             case JUSTIFY_LEFT:
                 break;
@@ -812,14 +839,13 @@ public class FigText extends Fig implements KeyListener, MouseListener {
                 chunkX = _x  + _w - lineWidth - _rightMargin - chunkW;
                 break;
             }
-            if (isHardReturn(curLine) || isSoftReturn(curLine)) {
-                chunkY += chunkH;
-            } else {
+            if (curLine.length() > 0) {
                 if (_underline) {
                     g.drawLine(chunkX, chunkY + 1, chunkX + chunkW, chunkY + 1);
                 }
                 drawString(g, curLine, chunkX, chunkY);
             }
+            chunkY += chunkH;
         }
     }
 
@@ -904,30 +930,11 @@ public class FigText extends Fig implements KeyListener, MouseListener {
         }
 
         /* Calculate the width based on the widest line of a multi-line text: */
-        int overallW = 0;
-        int numLines = 1;
-        StringTokenizer lines = new StringTokenizer(_curText, "" + HARD_RETURN
-                + SOFT_RETURN, true);
-        
-        if (_fm == null) {
-            _fm = new JLabel().getFontMetrics(_font);
-        }
-        
-        while (lines.hasMoreTokens()) {
-            String curLine = lines.nextToken();
-            int chunkW = _fm.stringWidth(curLine);
-            if (curLine.charAt(0) == HARD_RETURN
-                    || curLine.charAt(0) == SOFT_RETURN) {
-                numLines++;
-            } else {
-                overallW = Math.max(chunkW, overallW);
-            }
-        }
-        if (_fm == null) {
-            _lineHeight = _font.getSize();
-        } else {
-            _lineHeight = _fm.getHeight();
-        }
+        LineLayout lines = getLayout(getMetrics());
+        int overallW = lines.maxWidth;
+        int numLines = lines.lines.length;
+        _lineHeight = lines.height;
+
         /* Calculate the height based on the number of lines: */
         int overallH = (_lineHeight + _lineSpacing) * numLines;
 
@@ -1030,27 +1037,12 @@ public class FigText extends Fig implements KeyListener, MouseListener {
         if (_font == null) {
             return;
         }
-        if (_fm == null) {
-            _fm = new JLabel().getFontMetrics(_font);
-        }
-
-        _lineHeight = _fm.getHeight();
+        LineLayout lines = getLayout(getMetrics());
+        _lineHeight = lines.height;
 
         /* Calculate the width based on the widest line of a multi-line text: */
-        int overallW = 0;
-        int numLines = 1;
-        StringTokenizer lines = new StringTokenizer(_curText, "" + HARD_RETURN
-                + SOFT_RETURN, true);
-        while (lines.hasMoreTokens()) {
-            String curLine = lines.nextToken();
-            int chunkW = _fm.stringWidth(curLine);
-            if (curLine.charAt(0) == HARD_RETURN
-                    || curLine.charAt(0) == SOFT_RETURN) {
-                numLines++;
-            } else {
-                overallW = Math.max(chunkW, overallW);
-            }
-        }    
+        int overallW = lines.maxWidth;
+        int numLines = lines.lines.length;
 
         /* Calculate the height based on the number of lines: */
         int overallH = (_lineHeight + _lineSpacing) * numLines;
@@ -1084,6 +1076,39 @@ public class FigText extends Fig implements KeyListener, MouseListener {
         _h = _expandOnly ? Math.max(_h, overallH) : overallH;
     }
 
+    /**
+     * Get the font metrics to measure the text with, from the cache shared by
+     * all text of the same font unless a Graphics has been given for it.
+     */
+    private FontMetrics getMetrics() {
+        if (_fm == null) {
+            _fm = FontUtility.getFontMetrics(_font);
+        }
+        return _fm;
+    }
+
+    /**
+     * Get the lines of the current text measured with the given font metrics,
+     * reusing the last layout if neither has changed since.
+     */
+    private LineLayout getLayout(FontMetrics fm) {
+        LineLayout lines = layout;
+        if (lines != null && lines.matches(_curText, fm)) {
+            return lines;
+        }
+        lines = paintLayout;
+        if (lines != null && lines.matches(_curText, fm)) {
+            return lines;
+        }
+        lines = new LineLayout(_curText, fm);
+        if (fm == _fm) {
+            layout = lines;
+        } else {
+            paintLayout = lines;
+        }
+        return lines;
+    }
+
     /**
      * Creates an internal representation of the text from that provided by
      * setText(String). This involves converting the platform specific line
@@ -1130,6 +1155,12 @@ public class FigText extends Fig implements KeyListener, MouseListener {
                     "Attempted to wordwrap while wordwrap off");
         }
 
+        if (getWidth() == wrapWidth && _font.equals(wrapFont)
+                && (text.equals(wrapSource) || text.equals(wrappedText))) {
+            // Neither the words nor where they have to wrap have changed
+            return wrappedText;
+        }
+
         FontMetrics fm = FontUtility.getFontMetrics(_font);
         int tokenWidth;
 
@@ -1162,7 +1193,11 @@ public class FigText extends Fig implements KeyListener, MouseListener {
             }
         }
 
-        return buffer.toString();
+        wrapSource = text;
+        wrappedText = buffer.toString();
+        wrapWidth = getWidth();
+        wrapFont = _font;
+        return wrappedText;
     }
 
     private int appendToken(StringBuffer sb, String token, int tokenWidth,
@@ -1260,4 +1295,65 @@ public class FigText extends Fig implements KeyListener, MouseListener {
         }
     }
 
+    /**
+     * The lines of a text, split at its hard and soft returns, with their
+     * widths and height in one font. A layout never changes once built, so
+     * it can be kept for as long as the text and font metrics stay the same.
+     */
+    private static final class LineLayout {
+
+        private final String text;
+
+        private final FontMetrics metrics;
+
+        /** The lines, empty where two returns follow each other. */
+        private final String[] lines;
+
+        private final int[] widths;
+
+        private final int maxWidth;
+
+        /** The distance from the top of each line to its baseline. */
+        private final int ascent;
+
+        /** The distance between the baselines of adjacent lines. */
+        private final int height;
+
+        LineLayout(String text, FontMetrics metrics) {
+            this.text = text;
+            this.metrics = metrics;
+            int count = 1;
+            for (int i = 0; i < text.length(); ++i) {
+                char c = text.charAt(i);
+                if (c == HARD_RETURN || c == SOFT_RETURN) {
+                    ++count;
+                }
+            }
+            lines = new String[count];
+            widths = new int[count];
+            int widest = 0;
+            int start = 0;
+            int line = 0;
+            for (int i = 0; i <= text.length(); ++i) {
+                if (i == text.length() || text.charAt(i) == HARD_RETURN
+                        || text.charAt(i) == SOFT_RETURN) {
+                    lines[line] = text.substring(start, i);
+                    widths[line] = lines[line].length() == 0 ? 0 : metrics
+                            .stringWidth(lines[line]);
+                    widest = Math.max(widest, widths[line]);
+                    ++line;
+                    start = i + 1;
+                }
+            }
+            maxWidth = widest;
+            ascent = metrics.getAscent();
+            height = metrics.getHeight();
+        }
+
+        boolean matches(String otherText, FontMetrics otherMetrics) {
+            return (text == otherText || text.equals(otherText))
+                    && (metrics == otherMetrics || metrics.equals(otherMetrics));
+        }
+    }
+
 } /* end class FigText */
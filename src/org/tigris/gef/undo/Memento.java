@@ -7,6 +7,13 @@ package org.tigris.gef.undo;
  * @author Bob Tarling
  */
 public abstract class Memento {
+
+    /**
+     * The estimated size of a memento that holds a few references and
+     * primitive values.
+     */
+    protected static final int DEFAULT_SIZE = 64;
+
     /**
      * Set by the undo framework to flag the first memento of a chain of
      * mementos that represent a single user interaction with the application.
@@ -41,6 +48,45 @@ public abstract class Memento {
     public void dispose() {
     }
 
+    /**
+     * Reply the object that this memento changes, if it changes just one. The
+     * UndoManager only tries to coalesce mementos for the same target.
+     * 
+     * @return the target or null if there is no single target
+     */
+    protected Object getTarget() {
+        return null;
+    }
+
+    /**
+     * Try to absorb a later memento into this one so that undoing this
+     * memento alone returns the target to its state before both, and redoing
+     * it reaches the state after both. The UndoManager offers a memento to
+     * the most recent memento for the same target in the same chain, provided
+     * no memento without a target came between them. Mementos for other
+     * targets may have come between. By default mementos do not coalesce.
+     * 
+     * @param later
+     *                the memento that follows this one
+     * @return true if the later memento has been absorbed and can be
+     *         discarded
+     */
+    protected boolean coalesce(Memento later) {
+        return false;
+    }
+
+    /**
+     * Estimate the memory held by this memento in bytes. The UndoManager
+     * discards the oldest undo chains once the total passes its budget.
+     * Concrete mementos that copy geometry, such as points or bounds, should
+     * override this to add the size of their copies.
+     * 
+     * @return the estimated size in bytes
+     */
+    public long getSize() {
+        return DEFAULT_SIZE;
+    }
+
     public String toString() {
         return (isStartChain() ? "*" : " ") + this.getClass().getName();
     }
@@ -0,0 +1,156 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+
+package org.tigris.gef.undo;
+
+/**
+ * A stack of Mementos held in a circular buffer, so that the oldest chain can
+ * be discarded from the bottom as cheaply as mementos are pushed and popped at
+ * the top. The estimated memory held by the mementos in the stack is kept up
+ * to date as mementos come and go.
+ * 
+ * @see Memento#getSize()
+ */
+public class MementoStack {
+
+    private Memento[] mementos = new Memento[16];
+
+    /**
+     * The size of each memento when it was pushed, so that the total stays
+     * right even if a memento's estimate changes while it is on the stack.
+     */
+    private long[] sizes = new long[16];
+
+    /** The position of the bottom memento in the buffer. */
+    private int bottom = 0;
+
+    private int count = 0;
+
+    private long memorySize = 0;
+
+    /**
+     * Push a memento on to the top of the stack.
+     * 
+     * @param memento
+     *                the memento
+     */
+    public void push(Memento memento) {
+        if (count == mementos.length) {
+            grow();
+        }
+        int index = (bottom + count) % mementos.length;
+        mementos[index] = memento;
+        sizes[index] = memento.getSize();
+        memorySize += sizes[index];
+        ++count;
+    }
+
+    /**
+     * Remove the memento from the top of the stack.
+     * 
+     * @return the memento
+     * @throws IllegalStateException
+     *                 if the stack is empty
+     */
+    public Memento pop() {
+        if (count == 0) {
+            throw new IllegalStateException("The memento stack is empty");
+        }
+        --count;
+        return remove((bottom + count) % mementos.length);
+    }
+
+    /**
+     * Reply the memento at the top of the stack without removing it.
+     * 
+     * @return the memento or null if the stack is empty
+     */
+    public Memento peek() {
+        if (count == 0) {
+            return null;
+        }
+        return mementos[(bottom + count - 1) % mementos.length];
+    }
+
+    /**
+     * Discard the oldest chain of mementos from the bottom of the stack,
+     * disposing of each of them.
+     */
+    public void disposeOldestChain() {
+        do {
+            Memento memento = remove(bottom);
+            bottom = (bottom + 1) % mementos.length;
+            --count;
+            memento.dispose();
+        } while (count > 0 && !mementos[bottom].isStartChain());
+    }
+
+    /**
+     * Empty the stack, disposing of all mementos.
+     */
+    public void clear() {
+        while (count > 0) {
+            pop().dispose();
+        }
+        bottom = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Reply the estimated number of bytes held by the mementos in this stack.
+     * 
+     * @return the estimated memory size
+     */
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    private Memento remove(int index) {
+        Memento memento = mementos[index];
+        mementos[index] = null;
+        memorySize -= sizes[index];
+        return memento;
+    }
+
+    /** Double the capacity of the buffer, moving the bottom to the start. */
+    private void grow() {
+        Memento[] newMementos = new Memento[mementos.length * 2];
+        long[] newSizes = new long[mementos.length * 2];
+        for (int i = 0; i < count; ++i) {
+            int index = (bottom + i) % mementos.length;
+            newMementos[i] = mementos[index];
+            newSizes[i] = sizes[index];
+        }
+        mementos = newMementos;
+        sizes = newSizes;
+        bottom = 0;
+    }
+}
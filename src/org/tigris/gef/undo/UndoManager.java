@@ -4,8 +4,11 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
+
+import org.tigris.gef.base.EditorContext;
 
 /**
  * Manages stacks of Mementos to undo and redo.
@@ -18,6 +21,12 @@ public class UndoManager {
     private final static String FALSE = Boolean.FALSE.toString();
 
     private int undoMax = 100;
+
+    /**
+     * The estimated number of bytes the undo stack may hold before its oldest
+     * chains are discarded.
+     */
+    private long undoMaxSize = 16 * 1024 * 1024;
     private int undoChainCount = 0;
     private int redoChainCount = 0;
 
@@ -27,30 +36,38 @@ public class UndoManager {
 
     private boolean newChain = true;
 
+    /**
+     * The latest memento in the current chain for each target, used to
+     * coalesce mementos for the same target.
+     */
+    private Map chainTargets = new IdentityHashMap();
+
     private boolean undoInProgress = false;
 
-    // TODO: A MementoChainStack may produce some reasuable code for
-    // the undoStack and the redoStack/
-    protected ArrayList undoStack = new ArrayList();
-    protected ArrayList redoStack = new ArrayList();
+    protected MementoStack undoStack = new MementoStack();
+    protected MementoStack redoStack = new MementoStack();
 
     /**
-     * Default to the standard undo manager but applications can set this
-     * themseleves by calling setInstance with some extension of UndoManager.
+     * Create an UndoManager. Each EditorContext has an UndoManager of its
+     * own.
      */
-    private static UndoManager instance = new UndoManager();
-
-    protected UndoManager() {
+    public UndoManager() {
         super();
     }
 
+    /**
+     * Replace the UndoManager of the current EditorContext. Applications can
+     * set this themselves with some extension of UndoManager.
+     */
     public static void setInstance(UndoManager manager) {
-        manager.listeners = instance.listeners;
-        instance = manager;
+        EditorContext context = EditorContext.getCurrent();
+        manager.listeners = context.getUndoManager().listeners;
+        context.setUndoManager(manager);
     }
 
+    /** Reply the UndoManager of the current EditorContext. */
     public static UndoManager getInstance() {
-        return instance;
+        return EditorContext.getCurrent().getUndoManager();
     }
 
     /**
@@ -72,16 +89,80 @@ public class UndoManager {
             emptyRedo();
             incrementUndoChainCount();
             newChain = false;
-            if (undoChainCount > undoMax) {
-                // TODO The undo stack is full, dispose
-                // of the oldest chain.
-            }
+            chainTargets.clear();
+        } else if (coalesce(memento)) {
+            return;
         }
-        undoStack.add(memento);
+        // Any memento without a target may change anything, so mementos
+        // are never merged across one.
+        Object target = memento.getTarget();
+        if (target == null) {
+            chainTargets.clear();
+        } else {
+            chainTargets.put(target, memento);
+        }
+        undoStack.push(memento);
+        trimUndo();
+    }
+
+    /**
+     * Try to merge a memento into the latest memento for the same target in
+     * the current chain.
+     * 
+     * @param memento
+     *                the memento being added
+     * @return true if the memento has been merged and should not be added
+     */
+    private boolean coalesce(Memento memento) {
+        Object target = memento.getTarget();
+        if (target == null) {
+            return false;
+        }
+        Memento previous = (Memento) chainTargets.get(target);
+        if (previous != null && previous.coalesce(memento)) {
+            memento.dispose();
+            return true;
+        }
+        return false;
     }
 
+    /**
+     * Set the maximum number of chains held on the undo stack. The oldest
+     * chains are discarded when there are more.
+     * 
+     * @param max
+     *                the maximum number of undoable chains
+     */
     public void setUndoMax(int max) {
         undoMax = max;
+        trimUndo();
+    }
+
+    /**
+     * Set the estimated number of bytes the undo stack may hold. The oldest
+     * chains are discarded when there is more, although the most recent
+     * chain is always kept.
+     * 
+     * @param bytes
+     *                the memory budget of the undo stack
+     * @see Memento#getSize()
+     */
+    public void setUndoMaxSize(long bytes) {
+        undoMaxSize = bytes;
+        trimUndo();
+    }
+
+    /**
+     * Discard the oldest chains from the undo stack until it is within both
+     * the chain count and the memory budget.
+     */
+    private void trimUndo() {
+        while (undoChainCount > 0 && !undoStack.isEmpty()
+                && (undoChainCount > undoMax || (undoChainCount > 1 && undoStack
+                        .getMemorySize() > undoMaxSize))) {
+            undoStack.disposeOldestChain();
+            decrementUndoChainCount();
+        }
     }
 
     /**
@@ -89,10 +170,11 @@ public class UndoManager {
      */
     public void undo() {
         undoInProgress = true;
+        chainTargets.clear();
         Memento memento;
         boolean startChain = false;
         do {
-            memento = pop(undoStack);
+            memento = undoStack.pop();
             startChain = memento.isStartChain();
             undo(memento);
         } while (!startChain);
@@ -108,7 +190,7 @@ public class UndoManager {
      */
     protected void undo(Memento memento) {
         memento.undo();
-        redoStack.add(memento);
+        redoStack.push(memento);
     }
 
     /**
@@ -116,11 +198,11 @@ public class UndoManager {
      */
     public void redo() {
         undoInProgress = true;
+        chainTargets.clear();
         do {
-            Memento memento = pop(redoStack);
+            Memento memento = redoStack.pop();
             redo(memento);
-        } while (redoStack.size() > 0
-                && !((Memento) redoStack.get(redoStack.size() - 1)).startChain);
+        } while (!redoStack.isEmpty() && !redoStack.peek().startChain);
         incrementUndoChainCount();
         decrementRedoChainCount();
         undoInProgress = false;
@@ -133,15 +215,16 @@ public class UndoManager {
      */
     protected void redo(Memento memento) {
         memento.redo();
-        undoStack.add(memento);
+        undoStack.push(memento);
     }
 
     /**
      * Empty all undoable items from the UndoManager
      */
     public void emptyUndo() {
+        chainTargets.clear();
         if (undoChainCount > 0) {
-            emptyStack(undoStack);
+            undoStack.clear();
             undoChainCount = 0;
             fireCanUndo();
         }
@@ -152,7 +235,7 @@ public class UndoManager {
      */
     private void emptyRedo() {
         if (redoChainCount > 0) {
-            emptyStack(redoStack);
+            redoStack.clear();
             redoChainCount = 0;
             fireCanRedo();
         }
@@ -175,23 +258,6 @@ public class UndoManager {
         newChain = true;
     }
 
-    /**
-     * Empty a list stack disposing of all mementos.
-     * 
-     * @param list
-     *                the list of mementos
-     */
-    private void emptyStack(List list) {
-        for (int i = 0; i < list.size(); ++i) {
-            ((Memento) list.get(i)).dispose();
-        }
-        list.clear();
-    }
-
-    private Memento pop(ArrayList stack) {
-        return (Memento) stack.remove(stack.size() - 1);
-    }
-
     public void addPropertyChangeListener(PropertyChangeListener listener) {
         this.listeners.add(listener);
     }
@@ -0,0 +1,168 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tigris.gef.presentation.FigRect;
+import org.tigris.gef.undo.UndoManager;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the static accessors use the EditorContext of the calling
+ * thread, and the dispatch of property changes.
+ */
+public class EditorContextTest extends TestCase {
+
+    private int events;
+
+    public void testStaticAccessorsUseCurrentContext() {
+        EditorContext context = new EditorContext();
+        Editor outer = new Editor();
+        assertSame(outer, Globals.curEditor());
+        UndoManager outerUndo = UndoManager.getInstance();
+
+        EditorContext previous = EditorContext.setCurrent(context);
+        try {
+            assertSame(EditorContext.getDefault(), previous);
+            assertNull(Globals.curEditor());
+            Editor inner = new Editor();
+            assertSame(inner, context.getEditor());
+            assertSame(context.getUndoManager(), UndoManager.getInstance());
+            assertNotSame(outerUndo, UndoManager.getInstance());
+        } finally {
+            EditorContext.setCurrent(previous);
+        }
+        assertSame(outer, Globals.curEditor());
+        assertSame(outerUndo, UndoManager.getInstance());
+    }
+
+    public void testListenersBelongToContext() {
+        Object source = new Object();
+        PropertyChangeListener listener = new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                ++events;
+            }
+        };
+        EditorContext context = new EditorContext();
+        EditorContext previous = EditorContext.setCurrent(context);
+        try {
+            Globals.addPropertyChangeListener(source, listener);
+            Globals.firePropChange(source, "x", 0, 1);
+            assertEquals(1, events);
+        } finally {
+            EditorContext.setCurrent(previous);
+        }
+        Globals.firePropChange(source, "x", 1, 2);
+        assertEquals(1, events);
+        context.removePropertyChangeListener(source, listener);
+    }
+
+    public void testSuspendedChangesCoalesce() {
+        final List<PropertyChangeEvent> received =
+            new ArrayList<PropertyChangeEvent>();
+        FigRect fig = new FigRect(0, 0, 10, 10);
+        FigRect other = new FigRect(0, 0, 10, 10);
+        PropertyChangeListener listener = new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                received.add(evt);
+            }
+        };
+        fig.addPropertyChangeListener(listener);
+        other.addPropertyChangeListener(listener);
+
+        EditorContext context = EditorContext.getCurrent();
+        context.suspendPropChanges();
+        context.suspendPropChanges();
+        for (int i = 0; i < 10; ++i) {
+            fig.translate(1, 0);
+        }
+        other.setLineWidth(3);
+        fig.setLineWidth(2);
+        context.resumePropChanges();
+        assertTrue(received.isEmpty());
+        context.resumePropChanges();
+
+        assertEquals(3, received.size());
+        PropertyChangeEvent bounds = received.get(0);
+        assertSame(fig, bounds.getSource());
+        assertEquals("bounds", bounds.getPropertyName());
+        assertEquals(0, ((Rectangle) bounds.getOldValue()).x);
+        assertEquals(10, ((Rectangle) bounds.getNewValue()).x);
+        assertEquals("lineWidth", received.get(1).getPropertyName());
+        assertSame(fig, received.get(1).getSource());
+        assertSame(other, received.get(2).getSource());
+
+        fig.removePropertyChangeListener(listener);
+        fig.translate(1, 0);
+        assertEquals(3, received.size());
+        other.removePropertyChangeListener(listener);
+    }
+
+    public void testListenerRemovedWhileFiring() {
+        final FigRect fig = new FigRect(0, 0, 10, 10);
+        PropertyChangeListener first = new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                ++events;
+                fig.removePropertyChangeListener(this);
+            }
+        };
+        PropertyChangeListener second = new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                ++events;
+            }
+        };
+        fig.addPropertyChangeListener(first);
+        fig.addPropertyChangeListener(second);
+        fig.setLineWidth(5);
+        assertEquals(2, events);
+        assertEquals(1, fig.getPropertyChangeListeners().length);
+        fig.setLineWidth(6);
+        assertEquals(3, events);
+        fig.removePropertyChangeListener(second);
+        assertEquals(0, fig.getPropertyChangeListeners().length);
+    }
+
+    public void testCloneHasNoListeners() {
+        FigRect fig = new FigRect(0, 0, 10, 10);
+        fig.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                ++events;
+            }
+        });
+        FigRect copy = (FigRect) fig.clone();
+        assertEquals(0, copy.getPropertyChangeListeners().length);
+        copy.setFillColor(Color.red);
+        copy.setLineWidth(7);
+        assertEquals(0, events);
+        fig.setLineWidth(7);
+        assertEquals(1, events);
+    }
+}
@@ -0,0 +1,176 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import org.tigris.gef.graph.presentation.DefaultGraphModel;
+import org.tigris.gef.graph.presentation.NetEdge;
+import org.tigris.gef.graph.presentation.NetNode;
+import org.tigris.gef.graph.presentation.NetPort;
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigEdge;
+import org.tigris.gef.presentation.FigEdgeLine;
+import org.tigris.gef.presentation.FigNode;
+import org.tigris.gef.presentation.FigRect;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the layered and force directed layouts and how a LayerPerspective
+ * applies them.
+ */
+public class GraphLayoutTest extends TestCase {
+
+    public static class TestNode extends NetNode {
+        private static final long serialVersionUID = 1L;
+
+        public TestNode() {
+            addPort(new NetPort(this));
+        }
+
+        public String getId() {
+            return toString();
+        }
+
+        public void initialize(Hashtable args) {
+        }
+
+        public FigNode makePresentation(Layer lay) {
+            Fig body = new FigRect(0, 0, 40, 20);
+            body.setOwner(getPort(0));
+            return new FigNode(this, Arrays.asList(new Fig[] {body}));
+        }
+    }
+
+    public static class TestEdge extends NetEdge {
+        private static final long serialVersionUID = 1L;
+
+        public String getId() {
+            return toString();
+        }
+
+        public FigEdge makePresentation(Layer lay) {
+            return new FigEdgeLine();
+        }
+    }
+
+    private DefaultGraphModel model;
+
+    private LayerPerspective layer;
+
+    private TestNode[] nodes;
+
+    protected void setUp() {
+        model = new DefaultGraphModel();
+        layer = new LayerPerspective("test", model);
+    }
+
+    private void addNodes(int count) {
+        nodes = new TestNode[count];
+        for (int i = 0; i < count; ++i) {
+            nodes[i] = new TestNode();
+            model.addNode(nodes[i]);
+        }
+    }
+
+    private void connect(int from, int to) {
+        model.connect(nodes[from].getPort(0), nodes[to].getPort(0),
+                TestEdge.class);
+    }
+
+    private void assertNoOverlaps(Point[] locations, LayoutGraph graph) {
+        for (int i = 0; i < locations.length; ++i) {
+            assertTrue(locations[i].x >= 0 && locations[i].y >= 0);
+            Rectangle r = new Rectangle(locations[i].x, locations[i].y,
+                    graph.getWidth(i), graph.getHeight(i));
+            for (int j = i + 1; j < locations.length; ++j) {
+                assertFalse(r.intersects(new Rectangle(locations[j].x,
+                        locations[j].y, graph.getWidth(j), graph
+                                .getHeight(j))));
+            }
+        }
+    }
+
+    public void testLayeredRanks() {
+        addNodes(5);
+        connect(0, 1);
+        connect(1, 2);
+        connect(0, 2);
+        // closes a cycle, so is turned around
+        connect(2, 3);
+        connect(3, 0);
+        LayoutGraph graph = new LayoutGraph(layer);
+        assertEquals(5, graph.getNodeCount());
+        assertEquals(5, graph.getEdgeCount());
+
+        Point[] locations = new LayeredLayout().layout(graph);
+        assertNoOverlaps(locations, graph);
+        assertTrue(locations[0].y < locations[1].y);
+        assertTrue(locations[1].y < locations[2].y);
+        assertTrue(locations[2].y < locations[3].y);
+        // the node without edges goes below the rest
+        assertTrue(locations[4].y > locations[3].y);
+    }
+
+    public void testForceDirectedSpreadsNodes() {
+        addNodes(40);
+        for (int i = 0; i < 40; ++i) {
+            connect(i, (i + 1) % 40);
+        }
+        LayoutGraph graph = new LayoutGraph(layer);
+        ForceDirectedLayout layout = new ForceDirectedLayout();
+        layout.setThreads(1);
+        Point[] single = layout.layout(graph);
+        layout.setThreads(3);
+        Point[] multiple = layout.layout(graph);
+        assertTrue(Arrays.equals(single, multiple));
+
+        double adjacent = 0;
+        double apart = 0;
+        for (int i = 0; i < 40; ++i) {
+            adjacent += single[i].distance(single[(i + 1) % 40]);
+            apart += single[i].distance(single[(i + 20) % 40]);
+        }
+        assertTrue(adjacent * 3 < apart);
+    }
+
+    public void testLayoutMovesFigs() {
+        addNodes(3);
+        connect(0, 1);
+        connect(1, 2);
+        layer.layout(new LayeredLayout());
+        Fig first = layer.presentationFor(nodes[0]);
+        Fig last = layer.presentationFor(nodes[2]);
+        assertEquals(LayerPerspective.GAP, first.getY());
+        assertTrue(first.getY() < last.getY());
+        // the edges follow the nodes
+        Fig edge = layer.presentationFor(model.getEdges().get(1));
+        assertTrue(last.getBounds().contains(edge.getX(),
+                edge.getY() + edge.getHeight()));
+    }
+}
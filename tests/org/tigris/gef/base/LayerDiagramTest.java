@@ -24,7 +24,16 @@
 package org.tigris.gef.base;
 
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.EventObject;
+import java.util.List;
+import java.util.Random;
 
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigGroup;
 import org.tigris.gef.presentation.FigRect;
 
 import junit.framework.TestCase;
@@ -51,4 +60,335 @@ public class LayerDiagramTest extends TestCase {
         // - penyaskito 29/11/2008
         // assertEquals("Rectangle is the wrong size", new Rectangle(Integer.MAX_VALUE - 4, Integer.MAX_VALUE - 4, 8 - Integer.MAX_VALUE, 8 - Integer.MAX_VALUE), rect);
     }
+
+    final public void testPresentationForFollowsOwner() {
+        LayerDiagram lay = new LayerDiagram();
+        Object owner1 = new Object();
+        Object owner2 = new Object();
+        Fig back = new FigRect(0, 0, 10, 10);
+        Fig front = new FigRect(0, 0, 10, 10);
+        back.setOwner(owner1);
+        lay.add(back);
+        lay.add(front);
+        assertSame(back, lay.presentationFor(owner1));
+        assertNull(lay.presentationFor(owner2));
+
+        front.setOwner(owner1);
+        assertEquals(2, lay.presentationCountFor(owner1));
+        lay.bringToFront(back);
+        assertSame(front, lay.presentationFor(owner1));
+        assertSame(back, lay.presentationsFor(owner1).get(1));
+
+        front.setOwner(owner2);
+        assertSame(front, lay.presentationFor(owner2));
+        assertEquals(1, lay.presentationCountFor(owner1));
+
+        lay.remove(back);
+        assertNull(lay.presentationFor(owner1));
+        assertTrue(lay.presentationsFor(owner1).isEmpty());
+        back.setOwner(owner2);
+        assertEquals(1, lay.presentationCountFor(owner2));
+    }
+
+    final public void testCachedIdsMatchSearchedIds() {
+        LayerDiagram lay = new LayerDiagram();
+        FigGroup group = new FigGroup();
+        group.addFig(new FigRect(0, 0, 10, 10));
+        group.addFig(new FigRect(20, 0, 10, 10));
+        lay.add(new FigRect(0, 0, 10, 10));
+        lay.add(group);
+        List<String> searched = new ArrayList<String>();
+        for (Fig f : lay.getContents()) {
+            searched.add(f.getId());
+        }
+        for (Fig f : group.getFigs()) {
+            searched.add(f.getId());
+        }
+
+        lay.preSave();
+        List<String> cached = new ArrayList<String>();
+        for (Fig f : lay.getContents()) {
+            cached.add(f.getId());
+        }
+        for (Fig f : group.getFigs()) {
+            cached.add(f.getId());
+        }
+        lay.postSave();
+
+        assertEquals(searched, cached);
+        assertEquals("Fig1.1", group.getFigs().get(1).getId());
+    }
+
+    final public void testHitFindsTopFig() {
+        LayerDiagram lay = new LayerDiagram();
+        FigRect back = new FigRect(20, 20, 80, 80);
+        FigRect front = new FigRect(40, 40, 80, 80);
+        lay.add(back);
+        lay.add(front);
+        Rectangle r = new Rectangle(50, 50, 4, 4);
+        assertSame("Front fig should be hit", front, lay.hit(r));
+        lay.sendToBack(front);
+        assertSame("Back fig should now be hit", back, lay.hit(r));
+        assertNull("Nothing should be hit", lay.hit(new Rectangle(500, 500,
+                4, 4)));
+    }
+
+    final public void testHitFollowsMovedFig() {
+        LayerDiagram lay = new LayerDiagram();
+        FigRect fig = new FigRect(20, 20, 80, 80);
+        lay.add(fig);
+        fig.translate(1000, 1000);
+        assertNull("Old position should not be hit", lay.hit(new Rectangle(
+                50, 50, 4, 4)));
+        assertSame("New position should be hit", fig, lay.hit(new Rectangle(
+                1050, 1050, 4, 4)));
+        lay.remove(fig);
+        assertNull("Removed fig should not be hit", lay.hit(new Rectangle(
+                1050, 1050, 4, 4)));
+    }
+
+    /**
+     * Compare the results of the spatial index against a linear search of a
+     * layer with many figs, some of which are moved after being added.
+     */
+    final public void testSpatialIndexMatchesLinearSearch() {
+        Random random = new Random(42);
+        LayerDiagram lay = new LayerDiagram();
+        for (int i = 0; i < 2000; ++i) {
+            lay.add(new FigRect(random.nextInt(5000) - 500, random
+                    .nextInt(5000) - 500, 1 + random.nextInt(300), 1 + random
+                    .nextInt(300)));
+        }
+        List<Fig> contents = lay.getContents();
+        for (int i = 0; i < 200; ++i) {
+            Fig f = contents.get(random.nextInt(contents.size()));
+            f.setBounds(random.nextInt(5000), random.nextInt(5000), 1 + random
+                    .nextInt(2000), 1 + random.nextInt(100));
+        }
+        for (int i = 0; i < 500; ++i) {
+            Rectangle r = new Rectangle(random.nextInt(5000) - 500, random
+                    .nextInt(5000) - 500, random.nextInt(400), random
+                    .nextInt(400));
+            Fig expectedHit = null;
+            List<Fig> expectedIn = new ArrayList<Fig>();
+            for (Fig f : contents) {
+                if (f.hit(r)) {
+                    expectedHit = f;
+                }
+                if (f.intersects(r)) {
+                    expectedIn.add(f);
+                }
+            }
+            assertSame("Wrong fig hit", expectedHit, lay.hit(r));
+            List<Fig> actualIn = new ArrayList<Fig>();
+            Enumeration figs = lay.elementsIn(r);
+            while (figs.hasMoreElements()) {
+                actualIn.add((Fig) figs.nextElement());
+            }
+            assertEquals("Wrong figs in rectangle", expectedIn, actualIn);
+        }
+    }
+
+    /**
+     * Figs added in a bulk add are in the layer at once but listeners only
+     * hear about them when the outermost bulk add ends.
+     */
+    final public void testBulkAddDefersEvents() {
+        final List<Object> events = new ArrayList<Object>();
+        LayerDiagram lay = new LayerDiagram();
+        lay.addLayerListener(new LayerListener() {
+            public void figAdded(EventObject event) {
+                events.add(event.getSource());
+            }
+
+            public void figRemoved(EventObject event) {
+                events.add("removed");
+            }
+        });
+        lay.addLayerListener(new BulkLayerListener() {
+            public void figAdded(EventObject event) {
+                events.add("single");
+            }
+
+            public void figRemoved(EventObject event) {
+                events.add("removed");
+            }
+
+            public void figsAdded(EventObject event) {
+                events.add(new ArrayList<Object>((List) event.getSource()));
+            }
+        });
+
+        Fig a = new FigRect(0, 0, 10, 10);
+        Fig b = new FigRect(20, 20, 10, 10);
+        Fig c = new FigRect(40, 40, 10, 10);
+        lay.startBulkAdd();
+        lay.add(a);
+        lay.addAll(Arrays.asList(new Fig[] {b, c}));
+        lay.remove(c);
+        assertTrue(lay.contains(a));
+        assertSame(b, lay.hit(new Rectangle(22, 22, 2, 2)));
+        assertTrue(events.isEmpty());
+        lay.endBulkAdd();
+
+        List<Fig> added = new ArrayList<Fig>();
+        added.add(a);
+        added.add(b);
+        assertEquals(3, events.size());
+        assertSame(a, events.get(0));
+        assertSame(b, events.get(1));
+        assertEquals(added, events.get(2));
+        assertFalse(lay.isBulkAdding());
+    }
+
+    /**
+     * A Fig inserted during a bulk add is put at its place in the layer, but
+     * is reported with the other Figs of the bulk add.
+     */
+    final public void testInsertAtDuringBulkAdd() {
+        final List<Object> events = new ArrayList<Object>();
+        LayerDiagram lay = new LayerDiagram();
+        lay.addLayerListener(new BulkLayerListener() {
+            public void figAdded(EventObject event) {
+                events.add(event.getSource());
+            }
+
+            public void figRemoved(EventObject event) {
+                events.add("removed");
+            }
+
+            public void figsAdded(EventObject event) {
+                events.add(new ArrayList<Object>((List) event.getSource()));
+            }
+        });
+
+        Fig a = new FigRect(0, 0, 10, 10);
+        Fig b = new FigRect(20, 20, 10, 10);
+        lay.startBulkAdd();
+        lay.add(a);
+        lay.insertAt(b, 0);
+        lay.insertAt(a, 0);
+        assertEquals(0, lay.indexOf(a));
+        assertEquals(1, lay.indexOf(b));
+        assertTrue(events.isEmpty());
+        lay.endBulkAdd();
+
+        assertEquals(1, events.size());
+        assertEquals(Arrays.asList(new Object[] {a, b}), events.get(0));
+    }
+
+    /**
+     * Single reorders and removals must keep the contents in the same order
+     * as the same operations on a plain list, and hit must still find the
+     * front Fig.
+     */
+    final public void testReorderMatchesList() {
+        Random random = new Random(7);
+        LayerDiagram lay = new LayerDiagram();
+        List<Fig> expected = new ArrayList<Fig>();
+        for (int i = 0; i < 3000; ++i) {
+            Fig f = expected.isEmpty() ? null : expected.get(random
+                    .nextInt(expected.size()));
+            int i0 = f == null ? -1 : expected.indexOf(f);
+            Fig other = expected.isEmpty() ? null : expected.get(random
+                    .nextInt(expected.size()));
+            switch (random.nextInt(9)) {
+            case 0:
+            case 1:
+                f = new FigRect(random.nextInt(100), random.nextInt(100), 20,
+                        20);
+                lay.add(f);
+                expected.add(f);
+                break;
+            case 2:
+                if (f != null) {
+                    lay.remove(f);
+                    expected.remove(f);
+                }
+                break;
+            case 3:
+                if (f != null) {
+                    lay.sendToBack(f);
+                    expected.remove(f);
+                    expected.add(0, f);
+                }
+                break;
+            case 4:
+                if (f != null) {
+                    lay.bringToFront(f);
+                    expected.remove(f);
+                    expected.add(f);
+                }
+                break;
+            case 5:
+                if (f != null && i0 > 0) {
+                    lay.sendBackward(f);
+                    Collections.swap(expected, i0, i0 - 1);
+                }
+                break;
+            case 6:
+                if (f != null && i0 < expected.size() - 1) {
+                    lay.bringForward(f);
+                    Collections.swap(expected, i0, i0 + 1);
+                }
+                break;
+            case 7:
+                if (f != null && i0 < expected.indexOf(other)) {
+                    lay.bringInFrontOf(f, other);
+                    expected.remove(f);
+                    expected.add(expected.indexOf(other) + 1, f);
+                }
+                break;
+            case 8:
+                f = new FigRect(random.nextInt(100), random.nextInt(100), 20,
+                        20);
+                int index = random.nextInt(expected.size() + 1);
+                lay.insertAt(f, index);
+                expected.add(index, f);
+                break;
+            }
+            if (i % 100 == 0) {
+                // hit first, as getContents squeezes out the empty slots
+                Rectangle r = new Rectangle(50, 50, 1, 1);
+                Fig expectedHit = null;
+                for (Fig e : expected) {
+                    if (e.hit(r)) {
+                        expectedHit = e;
+                    }
+                }
+                assertSame(expectedHit, lay.hit(r));
+                assertEquals(expected, lay.getContents());
+            }
+        }
+        assertEquals(expected, lay.getContents());
+    }
+
+    final public void testReorderAll() {
+        LayerDiagram lay = new LayerDiagram();
+        Fig[] figs = new Fig[6];
+        for (int i = 0; i < figs.length; ++i) {
+            figs[i] = new FigRect(i, i, 10, 10);
+            lay.add(figs[i]);
+        }
+        List<Fig> moving = Arrays.asList(new Fig[] {figs[4], figs[1]});
+
+        lay.reorderAll(moving, ReorderAction.SEND_TO_BACK);
+        assertEquals(Arrays.asList(new Fig[] {figs[1], figs[4], figs[0],
+            figs[2], figs[3], figs[5]}), lay.getContents());
+        lay.reorderAll(moving, ReorderAction.BRING_FORWARD);
+        assertEquals(Arrays.asList(new Fig[] {figs[0], figs[1], figs[4],
+            figs[2], figs[3], figs[5]}), lay.getContents());
+        lay.reorderAll(moving, ReorderAction.BRING_TO_FRONT);
+        assertEquals(Arrays.asList(new Fig[] {figs[0], figs[2], figs[3],
+            figs[5], figs[1], figs[4]}), lay.getContents());
+        lay.reorderAll(moving, ReorderAction.SEND_BACKWARD);
+        assertEquals(Arrays.asList(new Fig[] {figs[0], figs[2], figs[3],
+            figs[1], figs[4], figs[5]}), lay.getContents());
+
+        lay.removeAll(Arrays.asList(new Fig[] {figs[3], figs[0], figs[3]}));
+        assertEquals(Arrays.asList(new Fig[] {figs[2], figs[1], figs[4],
+            figs[5]}), lay.getContents());
+        assertNull(figs[3].getLayer());
+        assertFalse(lay.contains(figs[0]));
+    }
 }
@@ -0,0 +1,124 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Rectangle;
+
+import org.tigris.gef.graph.GraphEvent;
+import org.tigris.gef.graph.presentation.DefaultGraphModel;
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigNode;
+import org.tigris.gef.presentation.FigRect;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests where a LayerPerspective places the nodes added to its GraphModel.
+ */
+public class LayerPerspectiveTest extends TestCase {
+
+    public void testNodesFillTheirRegion() {
+        DefaultGraphModel model = new DefaultGraphModel();
+        LayerPerspective layer = new LayerPerspective("test", model);
+        layer.addNodeTypeRegion(GraphLayoutTest.TestNode.class,
+                new Rectangle(100, 100, 200, 100));
+        // a node in the way, not placed by the layer
+        Fig other = new FigRectNode(100, 136, 40, 20);
+        layer.add(other);
+
+        GraphLayoutTest.TestNode[] nodes = new GraphLayoutTest.TestNode[20];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = new GraphLayoutTest.TestNode();
+            model.addNode(nodes[i]);
+        }
+        Fig first = layer.presentationFor(nodes[0]);
+        assertEquals(100, first.getX());
+        assertEquals(100, first.getY());
+        // the second skips the node in the way
+        assertEquals(172, layer.presentationFor(nodes[1]).getY());
+        // the region holds two in the first column, three in the next
+        assertEquals(156, layer.presentationFor(nodes[2]).getX());
+        assertEquals(212, layer.presentationFor(nodes[5]).getX());
+        for (int i = 0; i < nodes.length; ++i) {
+            Rectangle r = layer.presentationFor(nodes[i]).getBounds();
+            assertFalse(r.intersects(other.getBounds()));
+            for (int j = i + 1; j < nodes.length; ++j) {
+                assertFalse(r.intersects(layer.presentationFor(nodes[j])
+                        .getBounds()));
+            }
+        }
+
+        // a removed node leaves its place to the next one
+        Rectangle freed = layer.presentationFor(nodes[3]).getBounds();
+        model.removeNode(nodes[3]);
+        GraphLayoutTest.TestNode next = new GraphLayoutTest.TestNode();
+        model.addNode(next);
+        assertEquals(freed, layer.presentationFor(next).getBounds());
+    }
+
+    public void testOnlyPlacesOfTheIndexAreReused() {
+        DefaultGraphModel model = new DefaultGraphModel();
+        LayerPerspective layer = new LayerPerspective("test", model);
+        layer.addNodeTypeRegion(GraphLayoutTest.TestNode.class,
+                new Rectangle(100, 100, 200, 100));
+        // a node put in the region by hand
+        GraphLayoutTest.TestNode byHand = new GraphLayoutTest.TestNode();
+        Fig handFig = new FigRectNode(100, 100, 40, 20);
+        handFig.setOwner(byHand);
+        layer.add(handFig);
+
+        GraphLayoutTest.TestNode first = new GraphLayoutTest.TestNode();
+        model.addNode(first);
+        GraphLayoutTest.TestNode second = new GraphLayoutTest.TestNode();
+        model.addNode(second);
+        Rectangle freed = layer.presentationFor(first).getBounds();
+        Rectangle end = layer.presentationFor(second).getBounds();
+        assertEquals(136, freed.y);
+
+        // removing it leaves no hole, nor does a hole that is filled by hand
+        layer.nodeRemoved(new GraphEvent(model, byHand));
+        model.removeNode(first);
+        Fig filler = new FigRectNode(freed.x, freed.y, 10, 10);
+        layer.add(filler);
+        GraphLayoutTest.TestNode next = new GraphLayoutTest.TestNode();
+        model.addNode(next);
+        assertEquals(new Rectangle(156, 100, 40, 20), layer.presentationFor(
+                next).getBounds());
+
+        // the filled hole was dropped, so the next hole is the one used
+        layer.remove(filler);
+        model.removeNode(second);
+        GraphLayoutTest.TestNode last = new GraphLayoutTest.TestNode();
+        model.addNode(last);
+        assertEquals(end, layer.presentationFor(last).getBounds());
+    }
+
+    private static class FigRectNode extends FigNode {
+        private static final long serialVersionUID = 1L;
+
+        FigRectNode(int x, int y, int w, int h) {
+            addFig(new FigRect(x, y, w, h));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigEdgeRectiline;
+import org.tigris.gef.presentation.FigNode;
+import org.tigris.gef.presentation.FigRect;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that routes avoid the nodes of the layer and follow them when they
+ * move.
+ */
+public class OrthogonalEdgeRouterTest extends TestCase {
+
+    private static final int RIGHT = -2;
+
+    private static final int LEFT = 2;
+
+    private FigNode node(int x, int y, int w, int h) {
+        Fig body = new FigRect(x, y, w, h);
+        return new FigNode(null, Arrays.asList(new Fig[] {body}));
+    }
+
+    /** Make a node with a port on the given side, -2 for right, 2 for left. */
+    private FigNode node(int x, int y, int w, int h, int side) {
+        Fig body = new FigRect(x, y, w, h);
+        Fig port = new FigRect(side == RIGHT ? x + w - 10 : x, y + h / 2 - 5,
+                10, 10);
+        return new FigNode(null, Arrays.asList(new Fig[] {body, port}));
+    }
+
+    private FigEdgeRectiline connect(LayerDiagram lay, FigNode source,
+            FigNode dest) {
+        FigEdgeRectiline edge = new FigEdgeRectiline();
+        edge.setSourcePortFig((Fig) source.getFigs().get(1));
+        edge.setSourceFigNode(source);
+        edge.setDestPortFig((Fig) dest.getFigs().get(1));
+        edge.setDestFigNode(dest);
+        lay.add(edge);
+        edge.computeRoute();
+        return edge;
+    }
+
+    /** Wall in the given rectangle with four nodes. */
+    private void wallIn(LayerDiagram lay, int x, int y, int w, int h) {
+        lay.add(node(x - 40, y - 50, 12, h + 100));
+        lay.add(node(x + w + 28, y - 50, 12, h + 100));
+        lay.add(node(x - 40, y - 40, w + 80, 12));
+        lay.add(node(x - 40, y + h + 28, w + 80, 12));
+    }
+
+    private void assertRectilinear(Point[] route) {
+        for (int i = 1; i < route.length; ++i) {
+            assertTrue(route[i - 1].x == route[i].x
+                    || route[i - 1].y == route[i].y);
+        }
+    }
+
+    private boolean crosses(Point[] route, Rectangle r) {
+        for (int i = 1; i < route.length; ++i) {
+            Point a = route[i - 1];
+            Point b = route[i];
+            Rectangle seg = new Rectangle(Math.min(a.x, b.x), Math.min(a.y,
+                    b.y), Math.abs(a.x - b.x) + 1, Math.abs(a.y - b.y) + 1);
+            if (seg.intersects(r)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testRouteAvoidsNodes() {
+        LayerDiagram lay = new LayerDiagram();
+        FigNode blocker = node(200, 50, 50, 100);
+        lay.add(blocker);
+        EdgeRouter router = lay.getEdgeRouter();
+        Point start = new Point(100, 100);
+        Point end = new Point(400, 100);
+
+        Point[] route = router.route(start, RIGHT, end, LEFT);
+        assertNotNull(route);
+        assertEquals(start, route[0]);
+        assertEquals(end, route[route.length - 1]);
+        assertRectilinear(route);
+        assertFalse(crosses(route, blocker.getBounds()));
+        assertTrue(route.length > 2);
+
+        // moving the blocker out of the way straightens the route
+        blocker.setLocation(200, 300);
+        route = router.route(start, RIGHT, end, LEFT);
+        assertEquals(2, route.length);
+
+        blocker.setLocation(200, 50);
+        assertTrue(router.route(start, RIGHT, end, LEFT).length > 2);
+        lay.remove(blocker);
+        assertEquals(2, router.route(start, RIGHT, end, LEFT).length);
+    }
+
+    public void testReplacedRouterSeesContents() {
+        LayerDiagram lay = new LayerDiagram();
+        FigNode blocker = node(200, 50, 50, 100);
+        lay.add(blocker);
+        lay.setEdgeRouter(new OrthogonalEdgeRouter(lay));
+        Point[] route = lay.getEdgeRouter().route(new Point(100, 100), RIGHT,
+                new Point(400, 100), LEFT);
+        assertFalse(crosses(route, blocker.getBounds()));
+    }
+
+    /**
+     * Every route between nearby nodes of a diagram of 1000 nodes, and
+     * right across it, is found and avoids the nodes. RoutingBenchmark
+     * measures how long this takes.
+     */
+    public void testRoutesManyEdges() {
+        LayerDiagram lay = new LayerDiagram();
+        Random random = new Random(42);
+        List<FigNode> nodes = new ArrayList<FigNode>();
+        List<Rectangle> taken = new ArrayList<Rectangle>();
+        while (nodes.size() < 1000) {
+            Rectangle r = new Rectangle(random.nextInt(3000), random
+                    .nextInt(3000), 40 + random.nextInt(60),
+                    30 + random.nextInt(30));
+            Rectangle around = new Rectangle(r);
+            around.grow(20, 20);
+            boolean free = true;
+            for (Rectangle t : taken) {
+                free &= !t.intersects(around);
+            }
+            if (free) {
+                taken.add(r);
+                FigNode node = node(r.x, r.y, r.width, r.height);
+                lay.add(node);
+                nodes.add(node);
+            }
+        }
+        EdgeRouter router = lay.getEdgeRouter();
+        List<Point[]> routes = new ArrayList<Point[]>();
+        while (routes.size() < 2500) {
+            FigNode from = nodes.get(random.nextInt(nodes.size()));
+            FigNode to = nodes.get(random.nextInt(nodes.size()));
+            boolean nearby = routes.size() < 2000;
+            if (from == to || (nearby
+                    && from.getCenter().distance(to.getCenter()) > 300)) {
+                continue;
+            }
+            Rectangle fr = from.routingRect();
+            Rectangle tr = to.routingRect();
+            Point start = new Point(fr.x + fr.width, fr.y + fr.height / 2);
+            Point end = new Point(tr.x, tr.y + tr.height / 2);
+            Point[] route = router.route(start, RIGHT, end, LEFT);
+            assertNotNull("no route from " + start + " to " + end, route);
+            routes.add(route);
+        }
+        for (Point[] route : routes) {
+            assertRectilinear(route);
+            for (Rectangle r : taken) {
+                assertFalse(crosses(route, r));
+            }
+        }
+    }
+
+    public void testNoRouteIntoWalledInNode() {
+        LayerDiagram lay = new LayerDiagram();
+        lay.add(node(100, 100, 50, 40));
+        lay.add(node(400, 100, 50, 40));
+        wallIn(lay, 400, 100, 50, 40);
+        assertNull(lay.getEdgeRouter().route(new Point(158, 120), RIGHT,
+                new Point(392, 120), LEFT));
+    }
+
+    public void testRectilineEdgeFollowsRoute() {
+        LayerDiagram lay = new LayerDiagram();
+        FigNode source = node(100, 100, 50, 40, RIGHT);
+        FigNode dest = node(400, 100, 50, 40, LEFT);
+        FigNode blocker = node(250, 50, 50, 140);
+        lay.add(source);
+        lay.add(dest);
+        lay.add(blocker);
+        Point[] points = connect(lay, source, dest).getPoints();
+        assertRectilinear(points);
+        assertFalse(crosses(points, blocker.getBounds()));
+    }
+
+    /**
+     * Without a route FigEdgeRectiline falls back to working one out
+     * between the two nodes alone, which still joins the ports.
+     */
+    public void testRectilineEdgeWithoutRoute() {
+        LayerDiagram lay = new LayerDiagram();
+        FigNode source = node(100, 100, 50, 40, RIGHT);
+        FigNode dest = node(400, 100, 50, 40, LEFT);
+        lay.add(source);
+        lay.add(dest);
+        wallIn(lay, 400, 100, 50, 40);
+        Point[] points = connect(lay, source, dest).getPoints();
+        assertEquals(new Point(145, 120), points[0]);
+        assertEquals(new Point(405, 120), points[points.length - 1]);
+    }
+}
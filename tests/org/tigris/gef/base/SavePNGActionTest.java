@@ -0,0 +1,117 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.base;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import org.tigris.gef.presentation.FigCircle;
+import org.tigris.gef.presentation.FigLine;
+import org.tigris.gef.presentation.FigRect;
+import org.tigris.gef.presentation.FigSpline;
+import org.tigris.gef.presentation.FigText;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that a PNG saved a strip at a time, serially or concurrently, is the
+ * same as one saved in one go.
+ */
+public class SavePNGActionTest extends TestCase {
+
+    private BufferedImage save(Editor editor, Rectangle area, int tileHeight,
+            ExecutorService executor) throws Exception {
+        SavePNGAction action = new SavePNGAction("png");
+        action.setScale(3);
+        action.setTileHeight(tileHeight);
+        action.setExecutor(executor);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        action.saveGraphics(out, editor, area);
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); ++y) {
+            for (int x = 0; x < expected.getWidth(); ++x) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y),
+                        actual.getRGB(x, y));
+            }
+        }
+    }
+
+    public void testTiledMatchesWhole() throws Exception {
+        Editor editor = new Editor();
+        editor.setGridHidden(true);
+        Layer layer = editor.getLayerManager().getActiveLayer();
+        layer.add(new FigRect(10, 10, 40, 30, Color.blue, Color.yellow));
+        layer.add(new FigCircle(30, 25, 20, 20, Color.red, Color.green));
+        layer.add(new FigLine(5, 50, 60, 8, Color.black));
+        Rectangle area = new Rectangle(5, 5, 60, 50);
+
+        BufferedImage whole = save(editor, area, 0, null);
+        BufferedImage tiled = save(editor, area, 7, null);
+        assertEquals(180, tiled.getWidth());
+        assertEquals(150, tiled.getHeight());
+        assertSameImage(whole, tiled);
+    }
+
+    public void testConcurrentMatchesSerial() throws Exception {
+        Editor editor = new Editor();
+        editor.setGridHidden(true);
+        Layer layer = editor.getLayerManager().getActiveLayer();
+        for (int i = 0; i < 20; ++i) {
+            layer.add(new FigRect(i * 10, i * 7, 40, 30, Color.blue,
+                    Color.yellow));
+            FigText text = new FigText(i * 9, i * 8, 60, 20, Color.black,
+                    "Dialog", 10);
+            text.setText("Label " + i);
+            layer.add(text);
+            FigSpline spline = new FigSpline(i * 10, 0);
+            spline.addPoint(i * 10 + 30, 60);
+            spline.addPoint(i * 10, 120);
+            spline.addPoint(i * 10 + 30, 180);
+            layer.add(spline);
+        }
+        Rectangle area = new Rectangle(0, 0, 240, 200);
+
+        BufferedImage serial = save(editor, area, 5, null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 3; ++i) {
+                assertSameImage(serial, save(editor, area, 5, executor));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
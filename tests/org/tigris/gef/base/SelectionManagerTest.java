@@ -25,18 +25,25 @@
 package org.tigris.gef.base;
 
 import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JComponent;
 
 import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigEdgePoly;
+import org.tigris.gef.presentation.FigNode;
+import org.tigris.gef.presentation.FigRect;
 
 import junit.framework.TestCase;
 
@@ -104,6 +111,142 @@ public class SelectionManagerTest extends TestCase {
         }
         System.out.println( validMethods +" methods called succesfully.");
     }
+
+    /**
+     * Dragging a node many times should reroute each of its edges once, when
+     * the RedrawManager flushes the reroute before repainting. Painting
+     * itself must not reroute, as it may be done off the event thread.
+     */
+    public void testDragReroutesEdgesOnce() {
+        // without a component no repaint is scheduled behind our back
+        editor.setJComponent(null);
+        SelectionManager manager = editor.getSelectionManager();
+        Layer layer = editor.getLayerManager().getActiveLayer();
+        FigRect hubPort = new FigRect(0, 0, 10, 10);
+        FigNode hub = new FigNode(null, Arrays.asList(new Fig[] {hubPort}));
+        layer.add(hub);
+        CountingEdge[] edges = new CountingEdge[10];
+        for (int i = 0; i < edges.length; ++i) {
+            FigRect port = new FigRect(200, i * 20, 10, 10);
+            FigNode leaf = new FigNode(null, Arrays.asList(new Fig[] {port}));
+            layer.add(leaf);
+            edges[i] = new CountingEdge();
+            edges[i].setSourcePortFig(hubPort);
+            edges[i].setSourceFigNode(hub);
+            edges[i].setDestPortFig(port);
+            edges[i].setDestFigNode(leaf);
+            edges[i].computeRoute();
+            layer.add(edges[i]);
+            edges[i].routes = 0;
+        }
+
+        manager.select(hub);
+        manager.startDrag();
+        for (int i = 0; i < 5; ++i) {
+            manager.drag(3, 2);
+        }
+        for (CountingEdge edge : edges) {
+            assertEquals(0, edge.routes);
+        }
+        Graphics g = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB)
+                .getGraphics();
+        editor.paint(g);
+        g.dispose();
+        for (CountingEdge edge : edges) {
+            assertEquals(0, edge.routes);
+        }
+        editor.getRedrawManager().run();
+        manager.stopDrag();
+        for (CountingEdge edge : edges) {
+            assertEquals(1, edge.routes);
+            assertEquals(hubPort.getCenter(), edge.getFirstPoint());
+        }
+
+        // once the drag is over edges follow the node at once
+        hub.translate(1, 1);
+        assertEquals(2, edges[0].routes);
+    }
+
+    /**
+     * Selections should be found by Fig and by position among many, and
+     * still be found by position after they have moved.
+     */
+    public void testFindSelectionAmongMany() {
+        SelectionManager manager = new SelectionManager(editor);
+        List<FigRect> figs = new ArrayList<FigRect>();
+        for (int i = 0; i < 200; ++i) {
+            figs.add(new FigRect(100 + (i % 20) * 50,
+                    100 + (i / 20) * 50, 30, 30));
+        }
+        manager.selectFigs(figs);
+        assertEquals(200, manager.size());
+        assertSame(manager.getSelections(), manager.getSelections());
+
+        FigRect fig = figs.get(47);
+        Selection sel = manager.findSelectionFor(fig);
+        assertSame(fig, sel.getContent());
+        assertSame(sel, manager.findSelectionAt(465, 215));
+        assertNull(manager.findSelectionAt(490, 240));
+        assertNull(manager.findSelectionAt(-500, -500));
+        assertNull(manager.findSelectionFor(new FigRect(0, 0, 1, 1)));
+
+        manager.translate(-25, -25);
+        assertNull(manager.findSelectionAt(465, 215));
+        assertSame(sel, manager.findSelectionAt(440, 190));
+
+        fig.setLocation(2000, 2000);
+        assertSame(sel, manager.findSelectionAt(2010, 2010));
+
+        manager.deselect(fig);
+        assertNull(manager.findSelectionFor(fig));
+        assertNull(manager.findSelectionAt(2010, 2010));
+        assertFalse(manager.getSelectedFigs().contains(fig));
+        assertEquals(199, manager.getSelections().size());
+    }
+
+    /**
+     * Selected edges should be found at their new route once a node they
+     * are connected to has moved, though the node itself is not selected.
+     */
+    public void testFindRerouteSelectedEdge() {
+        SelectionManager manager = editor.getSelectionManager();
+        Layer layer = editor.getLayerManager().getActiveLayer();
+        FigRect hubPort = new FigRect(0, 0, 10, 10);
+        FigNode hub = new FigNode(null, Arrays.asList(new Fig[] {hubPort}));
+        layer.add(hub);
+        List<Fig> edges = new ArrayList<Fig>();
+        for (int i = 0; i < 40; ++i) {
+            FigRect port = new FigRect(200, i * 20, 10, 10);
+            FigNode leaf = new FigNode(null, Arrays.asList(new Fig[] {port}));
+            layer.add(leaf);
+            FigEdgePoly edge = new FigEdgePoly();
+            edge.setSourcePortFig(hubPort);
+            edge.setSourceFigNode(hub);
+            edge.setDestPortFig(port);
+            edge.setDestFigNode(leaf);
+            edge.computeRoute();
+            // a bend, so the edge contains the points of a triangle
+            edge.setPoints(new Point[] {edge.getFirstPoint(),
+                new Point(205, 505), edge.getLastPoint()});
+            layer.add(edge);
+            edges.add(edge);
+        }
+        manager.selectFigs(edges);
+        assertNull(manager.findSelectionAt(50, 850));
+
+        hub.translate(0, 1000);
+        assertSame(edges.get(0), manager.findSelectionAt(50, 850)
+                .getContent());
+    }
+}
+
+class CountingEdge extends FigEdgePoly {
+    int routes;
+
+    public void computeRouteImpl() {
+        ++routes;
+        super.computeRouteImpl();
+    }
 }
 
 class NewFig extends Fig {
@@ -0,0 +1,74 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.graph.presentation;
+
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the adjacency lists of AdjacencyListGraphModel.
+ */
+public class AdjacencyListGraphModelTest extends TestCase {
+
+    /** Nodes are their own single port. */
+    private static class TestModel extends AdjacencyListGraphModel {
+        private static final long serialVersionUID = 1L;
+
+        public List getPorts(Object nodeOrEdge) {
+            return Collections.singletonList(nodeOrEdge);
+        }
+
+        public Object getOwner(Object port) {
+            return port;
+        }
+
+        public Object connect(Object srcPort, Object destPort, Class edgeClass) {
+            return connect(srcPort, destPort);
+        }
+
+        public void addNodeRelatedEdges(Object node) {
+        }
+    }
+
+    public void testEntriesOnlyForPortsWithEdges() {
+        TestModel model = new TestModel();
+        model.addNode("a");
+        model.addNode("b");
+        assertSame(Collections.EMPTY_LIST, model.getOutEdges("a"));
+        assertSame(Collections.EMPTY_LIST, model.getInEdges("unknown"));
+
+        Object edge = model.connect("a", "b");
+        assertEquals(1, model.getOutEdges("a").size());
+        assertSame(edge, model.getInEdges("b").get(0));
+        assertTrue(model.containsNodePort("a"));
+        assertTrue(model.containsEdge(edge));
+
+        model.removeEdge(edge);
+        assertFalse(model.containsEdge(edge));
+        assertSame(Collections.EMPTY_LIST, model.getOutEdges("a"));
+        assertSame(Collections.EMPTY_LIST, model.getInEdges("b"));
+    }
+}
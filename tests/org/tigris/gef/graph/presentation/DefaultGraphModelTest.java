@@ -0,0 +1,209 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.graph.presentation;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.tigris.gef.base.Layer;
+import org.tigris.gef.graph.BulkGraphListener;
+import org.tigris.gef.graph.GraphEvent;
+import org.tigris.gef.graph.GraphListener;
+import org.tigris.gef.presentation.FigEdge;
+import org.tigris.gef.presentation.FigNode;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the membership and adjacency lookups of DefaultGraphModel as nodes
+ * and edges come and go, and the events it sends during bulk updates.
+ */
+public class DefaultGraphModelTest extends TestCase {
+
+    public static class TestNode extends NetNode {
+        private static final long serialVersionUID = 1L;
+
+        public TestNode() {
+            addPort(new NetPort(this));
+        }
+
+        public String getId() {
+            return toString();
+        }
+
+        public void initialize(Hashtable args) {
+        }
+
+        public FigNode makePresentation(Layer lay) {
+            return null;
+        }
+    }
+
+    public static class TestEdge extends NetEdge {
+        private static final long serialVersionUID = 1L;
+
+        public String getId() {
+            return toString();
+        }
+
+        public FigEdge makePresentation(Layer lay) {
+            return null;
+        }
+    }
+
+    public void testMembershipAndAdjacency() {
+        DefaultGraphModel model = new DefaultGraphModel();
+        TestNode a = new TestNode();
+        TestNode b = new TestNode();
+        TestNode outside = new TestNode();
+        model.addNode(a);
+        model.addNode(b);
+        NetPort portA = a.getPort(0);
+        NetPort portB = b.getPort(0);
+
+        List in = model.getInEdges(portB);
+        List out = model.getOutEdges(portA);
+        assertTrue(in.isEmpty());
+
+        Object edge = model.connect(portA, portB, TestEdge.class);
+        assertNotNull(edge);
+        assertTrue(model.containsNode(a));
+        assertFalse(model.containsNode(outside));
+        assertTrue(model.containsEdge(edge));
+        assertTrue(model.containsPort(portA));
+        assertFalse(model.containsPort(outside.getPort(0)));
+
+        // the views follow the connection made after they were asked for
+        assertEquals(1, in.size());
+        assertSame(edge, in.get(0));
+        assertSame(edge, out.get(0));
+        assertTrue(model.getOutEdges(portB).isEmpty());
+        assertTrue(model.getInEdges(portA).isEmpty());
+        try {
+            in.clear();
+            fail("Adjacency views should not be modifiable");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        portA.removeEdge((NetEdge) edge);
+        portB.removeEdge((NetEdge) edge);
+        model.removeEdge(edge);
+        assertFalse(model.containsEdge(edge));
+        assertTrue(in.isEmpty());
+        assertTrue(out.isEmpty());
+
+        model.removeNode(a);
+        assertFalse(model.containsNode(a));
+        assertFalse(model.containsPort(portA));
+        assertEquals(1, model.getNodes().size());
+    }
+
+    public void testNodeAddedTwice() {
+        NetList netList = new NetList();
+        TestNode node = new TestNode();
+        netList.addNode(node);
+        netList.addNode(node);
+        netList.removeNode(node);
+        assertTrue(netList.containsNode(node));
+        netList.removeNode(node);
+        assertFalse(netList.containsNode(node));
+        assertTrue(netList.getNodes(null).isEmpty());
+    }
+
+    /** Records the events it is sent, one string for each. */
+    private static class RecordingListener implements GraphListener {
+        protected List<String> events = new ArrayList<String>();
+
+        public void nodeAdded(GraphEvent e) {
+            events.add("node");
+        }
+
+        public void edgeAdded(GraphEvent e) {
+            events.add("edge");
+        }
+
+        public void nodeRemoved(GraphEvent e) {
+            events.add("removed");
+        }
+
+        public void edgeRemoved(GraphEvent e) {
+            events.add("removed");
+        }
+
+        public void graphChanged(GraphEvent e) {
+            events.add("changed");
+        }
+    }
+
+    private static class BulkRecordingListener extends RecordingListener
+            implements BulkGraphListener {
+
+        public void nodesAdded(GraphEvent e) {
+            events.add("nodes " + ((List) e.getArg()).size());
+        }
+
+        public void edgesAdded(GraphEvent e) {
+            events.add("edges " + ((List) e.getArg()).size());
+        }
+    }
+
+    public void testBulkUpdateSendsRunsOfAdditions() {
+        DefaultGraphModel model = new DefaultGraphModel();
+        RecordingListener bulk = new BulkRecordingListener();
+        RecordingListener plain = new RecordingListener();
+        model.addGraphEventListener(bulk);
+        model.addGraphEventListener(plain);
+
+        model.startBulkUpdate();
+        model.startBulkUpdate();
+        TestNode[] nodes = new TestNode[4];
+        for (int i = 0; i < 3; ++i) {
+            nodes[i] = new TestNode();
+            model.addNode(nodes[i]);
+        }
+        model.endBulkUpdate();
+        model.connect(nodes[0].getPort(0), nodes[1].getPort(0),
+                TestEdge.class);
+        nodes[3] = new TestNode();
+        model.addNode(nodes[3]);
+        model.removeNode(nodes[2]);
+        assertTrue(model.isBulkUpdating());
+        assertTrue(bulk.events.isEmpty());
+        model.endBulkUpdate();
+
+        assertEquals("[nodes 3, edges 1, nodes 1, removed]", bulk.events
+                .toString());
+        assertEquals("[node, node, node, edge, node, removed]", plain.events
+                .toString());
+
+        model.addNode(new TestNode());
+        assertEquals("node", plain.events.get(plain.events.size() - 1));
+        try {
+            model.endBulkUpdate();
+            fail("Ending a bulk update that was not started should fail");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,175 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.ocl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the results of evaluating and expanding parsed expressions, and that
+ * the caches behind them let go of what they no longer need.
+ */
+public class OCLEvaluatorTest extends TestCase {
+
+    public static class Bean {
+        public int size = 3;
+
+        private String name;
+
+        private Bean child;
+
+        public Bean() {
+            this("bean", null);
+        }
+
+        public Bean(String name, Bean child) {
+            this.name = name;
+            this.child = child;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Bean child() {
+            return child;
+        }
+
+        public List getItems() {
+            return Arrays.asList(new String[] {"a", "b", "c"});
+        }
+    }
+
+    public void testExpressionResults() throws ExpansionException {
+        OCLEvaluator evaluator = new OCLEvaluator();
+        Bean bean = new Bean("parent", new Bean("kid", null));
+        Map bindings = new Hashtable();
+        bindings.put("self", bean);
+
+        assertEquals(Collections.singletonList(bean), evaluator.eval(
+                bindings, "self"));
+        assertEquals(Collections.singletonList("parent"), evaluator.eval(
+                bindings, "self.name"));
+        assertEquals(Collections.singletonList("kid"), evaluator.eval(
+                bindings, "self.child.name"));
+        assertEquals(Collections.singletonList(new Integer(3)), evaluator
+                .eval(bindings, "self.size"));
+        assertEquals(Arrays.asList(new String[] {"b", "c"}), evaluator.eval(
+                bindings, "self.items[1,*]"));
+        assertEquals("a, b", evaluator.evalToString(bean, "self.items[0,2]"));
+
+        // the parsed expression is reused for another target
+        bindings.put("self", bean.child());
+        assertEquals(Collections.singletonList("kid"), evaluator.eval(
+                bindings, "self.name"));
+        assertEquals("kid", OCLEvaluator.getProperty(bean.child(), "name"));
+    }
+
+    private Map templatesFor(String body) {
+        List records = new ArrayList();
+        records.add(new TemplateRecord(Bean.class, "", body));
+        Map templates = new HashMap();
+        templates.put(Bean.class, records);
+        return templates;
+    }
+
+    public void testExpansionFollowsReplacedTemplates()
+            throws ExpansionException {
+        OCLExpander expander = new OCLExpander(
+                templatesFor("name=<ocl>self.name</ocl>"));
+        StringWriter first = new StringWriter();
+        expander.expand(first, new Bean());
+        assertEquals("name=bean", first.toString().trim());
+
+        expander._templates = templatesFor("<ocl>self.items</ocl>;");
+        StringWriter second = new StringWriter();
+        expander.expand(second, new Bean());
+        assertEquals(Arrays.asList(new String[] {"a;", "b;", "c;"}), Arrays
+                .asList(second.toString().trim().split("\\s+")));
+    }
+
+    /** Loads its own copy of Bean, so that the copy can be unloaded. */
+    private static class BeanLoader extends ClassLoader {
+        BeanLoader() {
+            super(OCLEvaluatorTest.class.getClassLoader());
+        }
+
+        protected synchronized Class loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            if (!name.equals(Bean.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            Class loaded = findLoadedClass(name);
+            if (loaded != null) {
+                return loaded;
+            }
+            try {
+                InputStream in = getParent().getResourceAsStream(
+                        name.replace('.', '/') + ".class");
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    bytes.write(buffer, 0, n);
+                }
+                in.close();
+                return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+
+    public void testAccessorsDoNotPinClasses() throws Exception {
+        Class beanClass = new BeanLoader().loadClass(Bean.class.getName());
+        assertNotSame(Bean.class, beanClass);
+        assertEquals("bean", OCLEvaluator.getProperty(beanClass.newInstance(),
+                "name"));
+        WeakReference<Class> ref = new WeakReference<Class>(beanClass);
+        beanClass = null;
+
+        // soft references are all cleared before memory runs out
+        List<byte[]> ballast = new ArrayList<byte[]>();
+        try {
+            while (ref.get() != null) {
+                ballast.add(new byte[1 << 20]);
+            }
+        } catch (OutOfMemoryError expected) {
+        }
+        ballast = null;
+        System.gc();
+        assertNull(ref.get());
+    }
+}
@@ -0,0 +1,114 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.persistence.export;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the SVG written by SvgStreamWriter.
+ */
+public class SvgStreamWriterTest extends TestCase {
+
+    private Document parse(ByteArrayOutputStream out) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        return factory.newDocumentBuilder().parse(
+                new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private void draw(SvgStreamWriter writer) {
+        writer.setColor(Color.red);
+        writer.fillRect(0, 0, 10, 10);
+        writer.fillRect(20, 0, 10, 10);
+        writer.setColor(Color.black);
+        writer.drawLine(0, 0, 30, 10);
+        writer.drawString("a < b & c", 5, 5);
+        writer.setColor(Color.red);
+        writer.fillRect(40, 0, 10, 10);
+        writer.dispose();
+    }
+
+    public void testRunsShareAStyle() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        draw(new SvgStreamWriter(out, new Rectangle(0, 0, 100, 100), true,
+                false));
+        Element svg = parse(out).getDocumentElement();
+
+        Element group = (Element) svg.getElementsByTagName("g").item(0);
+        assertEquals("fill:#ff0000;stroke:none", group.getAttribute("style"));
+        assertEquals(2, group.getElementsByTagName("rect").getLength());
+        Element first = (Element) group.getElementsByTagName("rect").item(0);
+        assertEquals("", first.getAttribute("style"));
+        assertEquals("10", first.getAttribute("x"));
+
+        Element line = (Element) svg.getElementsByTagName("line").item(0);
+        assertEquals("fill:none;stroke:#000000;stroke-width:1", line
+                .getAttribute("style"));
+        assertEquals("a < b & c", svg.getElementsByTagName("text").item(0)
+                .getTextContent());
+        assertEquals(1, svg.getElementsByTagName("g").getLength());
+        assertEquals(3, svg.getElementsByTagName("rect").getLength());
+    }
+
+    public void testStylesWrittenOnceAsClasses() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        draw(new SvgStreamWriter(out, new Rectangle(0, 0, 100, 100), true,
+                true));
+        Element svg = parse(out).getDocumentElement();
+
+        assertEquals(3, svg.getElementsByTagName("style").getLength());
+        Element last = (Element) svg.getElementsByTagName("rect").item(2);
+        assertEquals("s0", last.getAttribute("class"));
+        assertEquals("", last.getAttribute("style"));
+    }
+
+    public void testTransformedShapes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SvgStreamWriter writer = new SvgStreamWriter(out, new Rectangle(10,
+                10, 100, 100), true, false);
+        writer.scale(2, 2);
+        writer.drawRect(10, 10, 5, 5);
+        writer.rotate(Math.PI / 2);
+        writer.drawRect(10, 10, 5, 5);
+        writer.dispose();
+        Element svg = parse(out).getDocumentElement();
+
+        Element rect = (Element) svg.getElementsByTagName("rect").item(0);
+        assertEquals("20", rect.getAttribute("x"));
+        assertEquals("10", rect.getAttribute("width"));
+        assertEquals(1, svg.getElementsByTagName("path").getLength());
+        Element group = (Element) svg.getElementsByTagName("g").item(0);
+        assertEquals("fill:none;stroke:#000000;stroke-width:2", group
+                .getAttribute("style"));
+    }
+}
@@ -0,0 +1,200 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.persistence.pgml;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.tigris.gef.base.Diagram;
+import org.tigris.gef.base.Layer;
+import org.tigris.gef.base.LayerPerspective;
+import org.tigris.gef.graph.presentation.DefaultGraphModel;
+import org.tigris.gef.graph.presentation.NetEdge;
+import org.tigris.gef.graph.presentation.NetNode;
+import org.tigris.gef.graph.presentation.NetPort;
+import org.tigris.gef.ocl.OCLExpander;
+import org.tigris.gef.ocl.TemplateReader;
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigCircle;
+import org.tigris.gef.presentation.FigEdge;
+import org.tigris.gef.presentation.FigEdgeLine;
+import org.tigris.gef.presentation.FigInk;
+import org.tigris.gef.presentation.FigLine;
+import org.tigris.gef.presentation.FigNode;
+import org.tigris.gef.presentation.FigPoly;
+import org.tigris.gef.presentation.FigRRect;
+import org.tigris.gef.presentation.FigRect;
+import org.tigris.gef.presentation.FigSpline;
+import org.tigris.gef.presentation.FigText;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that PgmlWriter writes the same bytes as expanding the PGML template,
+ * so that the two cannot drift apart when either is changed.
+ */
+public class PgmlWriterTest extends TestCase {
+
+    public static class TestNode extends NetNode {
+        private static final long serialVersionUID = 1L;
+
+        public TestNode() {
+            addPort(new NetPort(this));
+        }
+
+        public String getId() {
+            return "node" + hashCode();
+        }
+
+        public void initialize(Hashtable args) {
+        }
+
+        public FigNode makePresentation(Layer lay) {
+            Fig body = new FigRect(0, 0, 40, 20, Color.black, Color.white);
+            body.setOwner(getPort(0));
+            FigText label = new FigText(0, 0, 40, 20);
+            label.setText("a < b & \"c\"");
+            return new EnclosedNode(this, Arrays.asList(new Fig[] {body,
+                label}));
+        }
+    }
+
+    /** A FigNode that remembers its enclosing Fig, which PGML requires. */
+    private static class EnclosedNode extends FigNode {
+        private static final long serialVersionUID = 1L;
+
+        private Fig enclosing;
+
+        EnclosedNode(Object owner, List figs) {
+            super(owner, figs);
+        }
+
+        public void setEnclosingFig(Fig f) {
+            super.setEnclosingFig(f);
+            enclosing = f;
+        }
+
+        public Fig getEnclosingFig() {
+            return enclosing;
+        }
+    }
+
+    public static class TestEdge extends NetEdge {
+        private static final long serialVersionUID = 1L;
+
+        public String getId() {
+            return "edge" + hashCode();
+        }
+
+        public FigEdge makePresentation(Layer lay) {
+            return new FigEdgeLine();
+        }
+    }
+
+    private Diagram makeDiagram() {
+        DefaultGraphModel model = new DefaultGraphModel();
+        LayerPerspective layer = new LayerPerspective("test", model);
+        Diagram diagram = new Diagram("test", model, layer);
+
+        Fig enclosing = new FigRect(10, 10, 30, 40, Color.red, Color.blue);
+        layer.add(enclosing);
+        layer.add(new FigRRect(50, 10, 30, 40, Color.green, null));
+        layer.add(new FigCircle(90, 10, 30, 30, Color.black, Color.yellow));
+        FigText text = new FigText(10, 60, 80, 20);
+        text.setText("first line\nsecond <line>");
+        layer.add(text);
+        layer.add(new FigLine(10, 100, 60, 120, Color.magenta));
+        FigPoly poly = new FigPoly(Color.black, Color.white);
+        poly.addPoint(100, 100);
+        poly.addPoint(140, 100);
+        poly.addPoint(120, 130);
+        layer.add(poly);
+        FigSpline spline = new FigSpline(Color.blue);
+        spline.addPoint(150, 100);
+        spline.addPoint(170, 120);
+        spline.addPoint(190, 100);
+        layer.add(spline);
+        FigInk ink = new FigInk(200, 100);
+        ink.addPoint(210, 110);
+        ink.addPoint(220, 105);
+        layer.add(ink);
+
+        TestNode[] nodes = new TestNode[3];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = new TestNode();
+            model.addNode(nodes[i]);
+            Fig node = layer.presentationFor(nodes[i]);
+            node.setLocation(10 + 60 * i, 200);
+            node.setEnclosingFig(enclosing);
+        }
+        model.connect(nodes[0].getPort(0), nodes[1].getPort(0),
+                TestEdge.class);
+        model.connect(nodes[1].getPort(0), nodes[2].getPort(0),
+                TestEdge.class);
+        return diagram;
+    }
+
+    public void testSameBytesAsTemplate() throws Exception {
+        Diagram diagram = makeDiagram();
+        OCLExpander expander = new OCLExpander(TemplateReader.getInstance()
+                .read("/org/tigris/gef/xml/dtd/PGML.tee"));
+        ByteArrayOutputStream expanded = new ByteArrayOutputStream();
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        diagram.preSave();
+        try {
+            // expand through a Writer as the save commands do
+            Writer w = new OutputStreamWriter(expanded);
+            expander.expand(w, diagram);
+            w.flush();
+            new PgmlWriter(written).write(diagram);
+        } finally {
+            diagram.postSave();
+        }
+
+        String expected = expanded.toString();
+        assertTrue(expected.indexOf("<group") >= 0);
+        assertTrue(expected.indexOf("&lt;line&gt;") >= 0);
+        assertEquals(expected, written.toString());
+        assertTrue(Arrays.equals(expanded.toByteArray(), written
+                .toByteArray()));
+    }
+
+    public void testMissingValueFails() {
+        Diagram diagram = makeDiagram();
+        // a group must have an enclosing Fig
+        diagram.getLayer().add(new FigNode(null, Arrays.asList(new Fig[] {
+            new FigRect(0, 0, 10, 10)})));
+        try {
+            new PgmlWriter(new ByteArrayOutputStream()).write(diagram);
+            fail("A group without an enclosing Fig cannot be written");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,131 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.presentation;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import org.tigris.gef.base.Editor;
+import org.tigris.gef.base.LayerDiagram;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the CachingFigPainter paints the same pixels as the Figs do, and
+ * that it draws a Fig again only after the Fig changes.
+ */
+public class CachingFigPainterTest extends TestCase {
+
+    private BufferedImage paint(Fig fig, FigPainter painter, double scale) {
+        BufferedImage image = new BufferedImage(100, 100,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.white);
+        g.fillRect(0, 0, 100, 100);
+        g.translate(3, 5);
+        g.scale(scale, scale);
+        if (painter == null) {
+            fig.paint(g);
+        } else {
+            painter.paint(g, fig);
+        }
+        g.dispose();
+        return image;
+    }
+
+    private void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); ++y) {
+            for (int x = 0; x < expected.getWidth(); ++x) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y),
+                        actual.getRGB(x, y));
+            }
+        }
+    }
+
+    public void testPaintsFromBitmapUntilChanged() {
+        Fig fig = new FigRect(10, 10, 30, 20, Color.blue, Color.yellow);
+        CachingFigPainter painter = new CachingFigPainter();
+
+        assertSamePixels(paint(fig, null, 1), paint(fig, painter, 1));
+        assertSamePixels(paint(fig, null, 1), paint(fig, painter, 1));
+        assertEquals(1, painter.getMisses());
+        assertEquals(1, painter.getHits());
+
+        fig.setFillColor(Color.red);
+        assertSamePixels(paint(fig, null, 1), paint(fig, painter, 1));
+        assertEquals(2, painter.getMisses());
+
+        fig.translate(7, 3);
+        assertSamePixels(paint(fig, null, 1), paint(fig, painter, 1));
+        assertSamePixels(paint(fig, null, 2), paint(fig, painter, 2));
+        assertEquals(4, painter.getMisses());
+        assertEquals(1, painter.size());
+
+        painter.invalidate(fig);
+        assertEquals(0, painter.size());
+        assertEquals(0, painter.getMemorySize());
+    }
+
+    public void testOldestBitmapsThrownAway() {
+        Fig first = new FigRect(0, 0, 10, 10);
+        Fig second = new FigRect(20, 0, 10, 10);
+        CachingFigPainter painter = new CachingFigPainter(20000, 0);
+        paint(first, painter, 1);
+        paint(second, painter, 1);
+        assertEquals(2 * 12 * 12 * 4, painter.getMemorySize());
+
+        painter.setMaxBytes(1000);
+        assertEquals(1, painter.size());
+        paint(second, painter, 1);
+        assertEquals(1, painter.getHits());
+    }
+
+    public void testBitmapsOfRemovedFigsThrownAway() {
+        CachingFigPainter painter = new CachingFigPainter();
+        Editor editor = new Editor();
+        editor.setFigPainter(painter);
+        LayerDiagram layer = (LayerDiagram) editor.getLayerManager()
+                .getActiveLayer();
+        Fig[] figs = new Fig[3];
+        for (int i = 0; i < figs.length; ++i) {
+            figs[i] = new FigRect(i * 20, 0, 10, 10);
+            layer.add(figs[i]);
+            paint(figs[i], painter, 1);
+        }
+        assertEquals(3, painter.size());
+
+        layer.remove(figs[0]);
+        assertEquals(2, painter.size());
+        layer.removeAll(Arrays.asList(new Fig[] {figs[1]}));
+        assertEquals(1, painter.size());
+        layer.removeAll();
+        assertEquals(0, painter.size());
+        assertEquals(0, painter.getMemorySize());
+        for (int i = 0; i < figs.length; ++i) {
+            assertEquals(0, figs[i].getPropertyChangeListeners().length);
+        }
+    }
+}
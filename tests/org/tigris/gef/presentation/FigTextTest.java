@@ -0,0 +1,128 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.presentation;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tigris.gef.persistence.export.FontUtility;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that FigText sizes and paints its lines the same whether they are
+ * measured afresh or taken from its layout of the text.
+ */
+public class FigTextTest extends TestCase {
+
+    private static final String NL = System.getProperty("line.separator");
+
+    private List<String> drawn = new ArrayList<String>();
+
+    private List<Integer> baselines = new ArrayList<Integer>();
+
+    private FigText makeFigText() {
+        FigText text = new FigText(10, 10, 100, 20) {
+            protected void drawString(Graphics graphics, String curLine,
+                    int xPos, int yPos) {
+                drawn.add(curLine);
+                baselines.add(new Integer(yPos));
+                super.drawString(graphics, curLine, xPos, yPos);
+            }
+        };
+        text.setLineWidth(0);
+        return text;
+    }
+
+    private void paint(Fig fig) {
+        BufferedImage image = new BufferedImage(200, 200,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.white);
+        fig.paint(g);
+        g.dispose();
+    }
+
+    public void testBoundsOfLines() {
+        FigText text = makeFigText();
+        text.setText("a" + NL + NL + "a much longer line");
+        FontMetrics fm = FontUtility.getFontMetrics(text.getFont());
+        assertSame(fm, FontUtility.getFontMetrics(text.getFont()));
+        assertEquals(3 * fm.getHeight(), text.getHeight());
+        assertEquals(fm.stringWidth("a much longer line"), text.getWidth());
+
+        text.setText("short");
+        assertEquals(fm.getHeight(), text.getHeight());
+        assertEquals(FigText.MIN_TEXT_WIDTH, text.getWidth());
+        assertEquals(text.getSize(), text.getMinimumSize());
+    }
+
+    public void testPaintsEachLine() {
+        FigText text = makeFigText();
+        text.setText("one" + NL + NL + "three");
+        text.setExpandOnly(true);
+        text.setSize(100, 200);
+        paint(text);
+        paint(text);
+        assertEquals(4, drawn.size());
+        assertEquals("one", drawn.get(0));
+        assertEquals("three", drawn.get(1));
+        int height = FontUtility.getFontMetrics(text.getFont()).getHeight();
+        assertEquals(2 * height, baselines.get(1).intValue()
+                - baselines.get(0).intValue());
+
+        text.setText("changed");
+        drawn.clear();
+        paint(text);
+        assertEquals(1, drawn.size());
+        assertEquals("changed", drawn.get(0));
+    }
+
+    public void testWordWrapFollowsWidth() {
+        FigText text = makeFigText();
+        text.setWordWrap(true);
+        text.setExpandOnly(true);
+        text.setSize(60, 200);
+        text.setText("wrap these few words");
+        paint(text);
+        int wrapped = drawn.size();
+        assertTrue(wrapped > 1);
+        assertEquals("wrap these few words", text.getText());
+
+        text.setSize(400, 200);
+        drawn.clear();
+        paint(text);
+        assertEquals(1, drawn.size());
+
+        text.setSize(60, 200);
+        drawn.clear();
+        paint(text);
+        assertEquals(wrapped, drawn.size());
+    }
+}
@@ -0,0 +1,143 @@
+// $Id$
+// Copyright (c) 2009 The Regents of the University of California. All
+// Rights Reserved. Permission to use, copy, modify, and distribute this
+// software and its documentation without fee, and without a written
+// agreement is hereby granted, provided that the above copyright notice
+// and this paragraph appear in all copies.  This software program and
+// documentation are copyrighted by The Regents of the University of
+// California. The software program and documentation are supplied "AS
+// IS", without any accompanying services from The Regents. The Regents
+// does not warrant that the operation of the program will be
+// uninterrupted or error-free. The end-user understands that the program
+// was developed for research purposes and is advised not to rely
+// exclusively on the program for any reason.  IN NO EVENT SHALL THE
+// UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT,
+// SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS,
+// ARISING OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF
+// THE UNIVERSITY OF CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF
+// SUCH DAMAGE. THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY
+// WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+// MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE SOFTWARE
+// PROVIDED HEREUNDER IS ON AN "AS IS" BASIS, AND THE UNIVERSITY OF
+// CALIFORNIA HAS NO OBLIGATIONS TO PROVIDE MAINTENANCE, SUPPORT,
+// UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+package org.tigris.gef.undo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tigris.gef.presentation.Fig;
+import org.tigris.gef.presentation.FigRect;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the limits placed on the undo history and the coalescing of
+ * mementos within a chain.
+ */
+public class UndoManagerTest extends TestCase {
+
+    private List<Memento> disposed = new ArrayList<Memento>();
+
+    private class TestMemento extends Memento {
+        private long size;
+
+        TestMemento(long size) {
+            this.size = size;
+        }
+
+        public void undo() {
+        }
+
+        public void redo() {
+        }
+
+        public void dispose() {
+            disposed.add(this);
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private void addChain(UndoManager manager, Memento[] chain) {
+        manager.startChain();
+        for (int i = 0; i < chain.length; ++i) {
+            manager.addMemento(chain[i]);
+        }
+    }
+
+    public void testOldestChainDisposedWhenFull() {
+        UndoManager manager = new UndoManager();
+        manager.setUndoMax(2);
+        Memento[] first = {new TestMemento(1), new TestMemento(1)};
+        addChain(manager, first);
+        addChain(manager, new Memento[] {new TestMemento(1)});
+        assertTrue(disposed.isEmpty());
+
+        addChain(manager, new Memento[] {new TestMemento(1)});
+        assertEquals(2, disposed.size());
+        assertSame(first[0], disposed.get(0));
+        assertSame(first[1], disposed.get(1));
+        assertEquals(2, manager.undoStack.size());
+    }
+
+    public void testOldestChainDisposedOverBudget() {
+        UndoManager manager = new UndoManager();
+        manager.setUndoMaxSize(1000);
+        for (int i = 0; i < 10; ++i) {
+            addChain(manager, new Memento[] {new TestMemento(300)});
+        }
+        assertEquals(7, disposed.size());
+        assertEquals(900, manager.undoStack.getMemorySize());
+
+        // the latest chain is kept even when it alone is over budget
+        addChain(manager, new Memento[] {new TestMemento(5000)});
+        assertEquals(1, manager.undoStack.size());
+    }
+
+    public void testUndoRedoAfterEviction() {
+        UndoManager manager = new UndoManager();
+        manager.setUndoMax(3);
+        for (int i = 0; i < 50; ++i) {
+            addChain(manager, new Memento[] {new TestMemento(1),
+                new TestMemento(1)});
+        }
+        assertEquals(6, manager.undoStack.size());
+        manager.undo();
+        manager.undo();
+        manager.redo();
+        assertEquals(4, manager.undoStack.size());
+        assertEquals(2, manager.redoStack.size());
+    }
+
+    public void testTranslationsCoalesce() {
+        UndoManager manager = UndoManager.getInstance();
+        manager.empty();
+        Fig fig = new FigRect(10, 10, 20, 20);
+        Fig other = new FigRect(100, 100, 20, 20);
+        manager.startChain();
+        for (int i = 0; i < 20; ++i) {
+            fig.translate(1, 2);
+            other.translate(-1, 0);
+        }
+        fig.setBounds(0, 0, 5, 5);
+        fig.setBounds(1, 1, 6, 6);
+        fig.translate(3, 3);
+        assertEquals(4, manager.undoStack.size());
+
+        manager.undo();
+        assertEquals(10, fig.getX());
+        assertEquals(10, fig.getY());
+        assertEquals(20, fig.getWidth());
+        assertEquals(100, other.getX());
+
+        manager.redo();
+        assertEquals(4, fig.getX());
+        assertEquals(4, fig.getY());
+        assertEquals(6, fig.getWidth());
+        assertEquals(80, other.getX());
+        manager.empty();
+    }
+}